@@ -43,7 +43,6 @@ import ee.ria.DigiDoc.android.main.home.HomeScreen;
 import ee.ria.DigiDoc.android.main.settings.SettingsDataStore;
 import ee.ria.DigiDoc.android.main.sharing.SharingScreen;
 import ee.ria.DigiDoc.android.signature.create.SignatureCreateScreen;
-import ee.ria.DigiDoc.android.utils.ContainerMimeTypeUtil;
 import ee.ria.DigiDoc.android.utils.IntentUtils;
 import ee.ria.DigiDoc.android.utils.SecureUtil;
 import ee.ria.DigiDoc.android.utils.ToastUtil;
@@ -53,6 +52,8 @@ import ee.ria.DigiDoc.android.utils.navigator.Screen;
 import ee.ria.DigiDoc.android.utils.widget.ErrorDialog;
 import ee.ria.DigiDoc.common.FileUtil;
 import ee.ria.DigiDoc.crypto.CryptoContainer;
+import ee.ria.DigiDoc.sign.ContainerFormat;
+import ee.ria.DigiDoc.sign.ContainerFormatDetector;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import timber.log.Timber;
 
@@ -304,14 +305,15 @@ public final class Activity extends AppCompatActivity {
                             externallyOpenedFilesDir);
                     try {
                         String newFileName = "container";
-                        if (SignedContainer.isCdoc(file)) {
+                        ContainerFormat format = ContainerFormatDetector.detect(file);
+                        if (format == ContainerFormat.CDOC) {
                             Path renamedFile = FileUtil.renameFile(file.toPath(),
                                     newFileName + ".cdoc");
                             CryptoContainer.open(renamedFile.toFile());
                             Intent updatedIntent = setIntentData(intent, renamedFile, activity);
                             return CryptoCreateScreen.open(updatedIntent);
                         } else {
-                            String externalFileName = getFileName(file);
+                            String externalFileName = getFileName(file, format);
                             if (!externalFileName.isEmpty()) {
                                 Path renamedFile = FileUtil.renameFile(file.toPath(),
                                         newFileName);
@@ -331,18 +333,16 @@ public final class Activity extends AppCompatActivity {
             return SignatureCreateScreen.create(intent);
         }
 
-        private static String getFileName(File file) {
-            if (SignedContainer.isDdoc(file)) {
-                return "container." + "ddoc";
-            } else if (FileUtil.isPDF(file)) {
-                return "file.pdf";
-            } else {
-                String extension = ContainerMimeTypeUtil.getContainerExtension(file);
-                if (!extension.isEmpty()) {
-                    return "container." + extension;
-                } else {
+        private static String getFileName(File file, ContainerFormat format) {
+            switch (format) {
+                case DDOC:
+                    return "container." + "ddoc";
+                case PDF:
+                    return "file.pdf";
+                case UNKNOWN:
                     return file.getName();
-                }
+                default:
+                    return "container." + format.extension();
             }
         }
 
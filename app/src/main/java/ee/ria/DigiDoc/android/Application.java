@@ -33,6 +33,7 @@ import android.os.StrictMode;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.ViewModel;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.preference.PreferenceManager;
@@ -43,12 +44,12 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.security.Security;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
 
@@ -79,9 +80,12 @@ import ee.ria.DigiDoc.android.signature.list.SignatureListViewModel;
 import ee.ria.DigiDoc.android.signature.update.SignatureUpdateViewModel;
 import ee.ria.DigiDoc.android.utils.Formatter;
 import ee.ria.DigiDoc.android.utils.LocaleService;
+import ee.ria.DigiDoc.android.utils.TSLRefreshJobService;
+import ee.ria.DigiDoc.android.utils.TSLSequenceNumbers;
 import ee.ria.DigiDoc.android.utils.TSLUtil;
 import ee.ria.DigiDoc.android.utils.navigator.Navigator;
 import ee.ria.DigiDoc.android.utils.navigator.conductor.ConductorNavigator;
+import ee.ria.DigiDoc.common.NativeHandle;
 import ee.ria.DigiDoc.configuration.ConfigurationConstants;
 import ee.ria.DigiDoc.configuration.ConfigurationManager;
 import ee.ria.DigiDoc.configuration.ConfigurationManagerService;
@@ -110,12 +114,15 @@ public class Application extends android.app.Application {
         super.onCreate();
         setupBouncyCastle();
         setupTimber();
+        setupNativeHandles();
         setupConfiguration();
         setupRxJava();
         setupDagger();
     }
 
-    // Copy every TSL file from APKs assets into cache if non-existent
+    // Copy every TSL file from APKs assets into cache if non-existent or older.
+    // Sequence numbers come from the manifest generated at build time and the sidecar file of
+    // the cache, so TSL XML is parsed only when either of them is missing or out of date.
     private void setupTSLFiles() {
         String destination = getCacheDir().toString() + "/schema";
         String assetsPath = "tslFiles";
@@ -128,31 +135,60 @@ public class Application extends android.app.Application {
 
         if (tslFiles != null && tslFiles.length > 0) {
             FileUtils.createDirectoryIfNotExist(destination);
+            Map<String, Integer> assetsTslVersions = readTSLManifest(assetsPath);
+            TSLSequenceNumbers cachedTslVersions = TSLSequenceNumbers.load(new File(destination));
             for (String fileName : tslFiles) {
-                if (shouldCopyTSL(assetsPath, fileName, destination)) {
+                if (!fileName.endsWith(".xml")) {
+                    continue;
+                }
+                Integer assetsTslVersion = assetsTslVersion(assetsPath, fileName, assetsTslVersions);
+                if (shouldCopyTSL(fileName, assetsTslVersion, cachedTslVersions)) {
                     copyTSLFromAssets(assetsPath, fileName, destination);
                     removeExistingETag(destination + File.separator + fileName);
+                    if (assetsTslVersion != null) {
+                        cachedTslVersions.put(fileName, assetsTslVersion);
+                    }
                 }
             }
+            cachedTslVersions.save();
         }
     }
 
-    private boolean shouldCopyTSL(String sourcePath, String fileName, String destionationDir) {
-        if (!FileUtils.fileExists(destionationDir + File.separator + fileName)) {
-            return true;
-        } else {
-            try (
-                    InputStream assetsTSLInputStream = getAssets().open(sourcePath + File.separator + fileName);
-                    InputStream cachedTSLInputStream = new FileInputStream(destionationDir + File.separator + fileName)
-            ) {
-                Integer assetsTslVersion = TSLUtil.readSequenceNumber(assetsTSLInputStream);
-                Integer cachedTslVersion = TSLUtil.readSequenceNumber(cachedTSLInputStream);
-                return assetsTslVersion != null && assetsTslVersion > cachedTslVersion;
-            } catch (Exception e) {
-                String message = "Error comparing sequence number between assets and cached TSLs";
-                Timber.log(Log.ERROR, e, message);
-                return false;
+    private Map<String, Integer> readTSLManifest(String assetsPath) {
+        try (InputStream manifestInputStream = getAssets().open(assetsPath + File.separator + TSLUtil.MANIFEST)) {
+            return TSLUtil.readManifest(manifestInputStream);
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Failed to read TSL manifest, reading sequence numbers from TSLs");
+            return Collections.emptyMap();
+        }
+    }
+
+    @Nullable
+    private Integer assetsTslVersion(String assetsPath, String fileName, Map<String, Integer> assetsTslVersions) {
+        Integer assetsTslVersion = assetsTslVersions.get(fileName);
+        if (assetsTslVersion != null) {
+            return assetsTslVersion;
+        }
+        try (InputStream assetsTSLInputStream = getAssets().open(assetsPath + File.separator + fileName)) {
+            return TSLUtil.readSequenceNumber(assetsTSLInputStream);
+        } catch (Exception e) {
+            Timber.log(Log.ERROR, e, "Failed to read sequence number of %s from assets", fileName);
+            return null;
+        }
+    }
+
+    private boolean shouldCopyTSL(String fileName, @Nullable Integer assetsTslVersion,
+                                  TSLSequenceNumbers cachedTslVersions) {
+        try {
+            Integer cachedTslVersion = cachedTslVersions.get(fileName);
+            if (cachedTslVersion == null) {
+                return true;
             }
+            return assetsTslVersion != null && assetsTslVersion > cachedTslVersion;
+        } catch (Exception e) {
+            String message = "Error comparing sequence number between assets and cached TSLs";
+            Timber.log(Log.ERROR, e, message);
+            return false;
         }
     }
 
@@ -195,6 +231,14 @@ public class Application extends android.app.Application {
         // TODO error reporting
     }
 
+    // libdigidocpp objects not deleted after use
+
+    private void setupNativeHandles() {
+        NativeHandle.setTrackAllocationSites(BuildConfig.DEBUG);
+        NativeHandle.setLeakListener((type, allocationSite) ->
+                Timber.log(Log.WARN, allocationSite, "Native %s was not deleted", type));
+    }
+
     // Container configuration
 
     private void setupSignLib() {
@@ -305,6 +349,7 @@ public class Application extends android.app.Application {
             if (resultCode == ConfigurationManagerService.NEW_CONFIGURATION_LOADED) {
                 setupSignLib();
             }
+            TSLRefreshJobService.schedule(Application.this, configurationProvider);
             if (diagnosticsView != null) {
                 diagnosticsView.updateViewData(configurationProvider, resultCode);
             }
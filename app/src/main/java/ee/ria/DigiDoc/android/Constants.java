@@ -13,6 +13,7 @@ public final class Constants {
     public static final int RC_CRYPTO_CREATE_INITIAL = 2;
     public static final int RC_CRYPTO_CREATE_DATA_FILE_ADD = 3;
     public static final int SAVE_FILE = 4;
+    public static final int SAVE_ALL_FILES = 5;
 
     /**
      * Sub-directory name in {@link android.content.Context#getFilesDir() files dir} for signature
@@ -21,6 +22,13 @@ public final class Constants {
     public static final String DIR_SIGNATURE_CONTAINERS = "signed_containers";
     public static final String DIR_INTERNAL_FILES = "internal_files";
     public static final String DIR_EXTERNALLY_OPENED_FILES = "external_files";
+    public static final String FILE_CONTAINER_INDEX = "signed_containers.index";
+
+    /**
+     * Sub-directory names in {@link android.content.Context#getCacheDir() cache dir}.
+     */
+    public static final String DIR_SCHEMA = "schema";
+    public static final String DIR_SIGNATURE_VALIDATION_CACHE = "signature_validation";
 
     public static final String SIGNATURE_CONTAINER_EXT = "asice";
 
@@ -18,6 +18,7 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toolbar;
 
@@ -91,7 +92,7 @@ public final class CryptoCreateScreen extends Controller implements Screen,
     private ConfirmationDialog fileRemoveConfirmationDialog;
     private CryptoCreateAdapter adapter;
     private View activityOverlayView;
-    private View activityIndicatorView;
+    private ProgressBar activityIndicatorView;
     private Button encryptButton;
     private RecyclerView listView;
     private TextView decryptButton;
@@ -252,8 +253,10 @@ public final class CryptoCreateScreen extends Controller implements Screen,
         encryptError = state.encryptError();
         decryptError = state.decryptError();
 
-        setActivity(state.dataFilesAddState().equals(State.ACTIVE) ||
-                state.encryptState().equals(State.ACTIVE));
+        boolean encryptActive = state.encryptState().equals(State.ACTIVE);
+        setActivity(state.dataFilesAddState().equals(State.ACTIVE) || encryptActive);
+        activityIndicatorView.setIndeterminate(!encryptActive);
+        activityIndicatorView.setProgress(encryptActive ? state.encryptProgress() : 0);
 
         nameUpdateDialog.render(state.nameUpdateShowing(), FileUtil.sanitizeString(state.name(), ""), state.nameUpdateError());
 
@@ -61,7 +61,6 @@ import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableSource;
 import io.reactivex.rxjava3.core.ObservableTransformer;
-import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import timber.log.Timber;
 
@@ -410,17 +409,20 @@ final class Processor implements ObservableTransformer<Intent, Result> {
             ImmutableList<File> dataFiles = intent.dataFiles();
             ImmutableList<Certificate> recipients = intent.recipients();
             if (name != null && dataFiles != null && recipients != null) {
-                return Single
-                        .fromCallable(() -> {
+                return Observable
+                        .<Result.EncryptResult>create(emitter -> {
                             File containerFile = fileSystem.generateSignatureContainerFile(name);
                             try {
-                                File file = CryptoContainer.encrypt(dataFiles, recipients, containerFile).file();
+                                File file = CryptoContainer.encrypt(dataFiles, recipients, containerFile,
+                                        (processed, total) -> emitter.onNext(Result.EncryptResult.progress(
+                                                total == 0 ? 100 : (int) (processed * 100 / total)))).file();
                                 if (dataFiles.size() > 1) {
                                     AccessibilityUtils.sendAccessibilityEvent(application.getApplicationContext(), TYPE_ANNOUNCEMENT, R.string.files_encrypted);
                                 } else {
                                     AccessibilityUtils.sendAccessibilityEvent(application.getApplicationContext(), TYPE_ANNOUNCEMENT, R.string.crypto_create_encrypt_success_message);
                                 }
-                                return file;
+                                emitter.onNext(Result.EncryptResult.successMessage(file));
+                                emitter.onComplete();
                             } catch (Exception e) {
                                 boolean isFileDeleted = containerFile.delete();
                                 if (isFileDeleted) {
@@ -429,11 +431,12 @@ final class Processor implements ObservableTransformer<Intent, Result> {
                                 throw e;
                             }
                         })
-                        .flatMapObservable(file ->
-                                Observable
+                        .concatMap(result -> result.successMessageVisible()
+                                ? Observable
                                         .timer(3, TimeUnit.SECONDS)
-                                        .map(ignored -> Result.EncryptResult.success(file))
-                                        .startWithItem(Result.EncryptResult.successMessage(file)))
+                                        .map(ignored -> Result.EncryptResult.success(result.containerFile()))
+                                        .startWithItem(result)
+                                : Observable.just(result))
                         .onErrorReturn(Result.EncryptResult::failure)
                         .subscribeOn(Schedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
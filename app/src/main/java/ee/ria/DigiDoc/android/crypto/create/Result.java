@@ -314,6 +314,11 @@ interface Result extends MviResult<ViewState> {
 
         abstract boolean successMessageVisible();
 
+        /**
+         * Percentage of data files encrypted.
+         */
+        abstract int progress();
+
         @Nullable abstract File containerFile();
 
         @Nullable abstract Throwable error();
@@ -323,6 +328,7 @@ interface Result extends MviResult<ViewState> {
             ViewState.Builder builder = state.buildWith()
                     .encryptState(state())
                     .encryptSuccessMessageVisible(successMessageVisible())
+                    .encryptProgress(progress())
                     .encryptError(error());
             if (containerFile() != null) {
                 builder
@@ -340,30 +346,34 @@ interface Result extends MviResult<ViewState> {
         }
 
         static EncryptResult activity() {
-            return create(State.ACTIVE, false, null, null);
+            return create(State.ACTIVE, false, 0, null, null);
+        }
+
+        static EncryptResult progress(int progress) {
+            return create(State.ACTIVE, false, progress, null, null);
         }
 
         static EncryptResult successMessage(File containerFile) {
-            return create(State.IDLE, true, containerFile, null);
+            return create(State.IDLE, true, 100, containerFile, null);
         }
 
         static EncryptResult success(File containerFile) {
-            return create(State.IDLE, false, containerFile, null);
+            return create(State.IDLE, false, 100, containerFile, null);
         }
 
         static EncryptResult failure(Throwable error) {
-            return create(State.IDLE, false, null, error);
+            return create(State.IDLE, false, 0, null, error);
         }
 
         static EncryptResult clear() {
-            return create(State.IDLE, false, null, null);
+            return create(State.IDLE, false, 0, null, null);
         }
 
         private static EncryptResult create(@State String state, boolean successMessageVisible,
-                                            @Nullable File containerFile,
+                                            int progress, @Nullable File containerFile,
                                             @Nullable Throwable error) {
-            return new AutoValue_Result_EncryptResult(state, successMessageVisible, containerFile,
-                    error);
+            return new AutoValue_Result_EncryptResult(state, successMessageVisible, progress,
+                    containerFile, error);
         }
     }
 
@@ -45,6 +45,7 @@ abstract class ViewState implements MviViewState {
 
     @State abstract String encryptState();
     abstract boolean encryptSuccessMessageVisible();
+    abstract int encryptProgress();
     @Nullable abstract Throwable encryptError();
 
     @Nullable abstract IdCardDataResponse decryptionIdCardDataResponse();
@@ -74,6 +75,7 @@ abstract class ViewState implements MviViewState {
                 .recipientsSearchState(State.IDLE)
                 .encryptState(State.IDLE)
                 .encryptSuccessMessageVisible(false)
+                .encryptProgress(0)
                 .decryptState(State.IDLE)
                 .decryptSuccessMessageVisible(false)
                 .build();
@@ -106,6 +108,7 @@ abstract class ViewState implements MviViewState {
         Builder recipientsSearchError(@Nullable Throwable recipientsSearchError);
         Builder encryptState(@State String encryptState);
         Builder encryptSuccessMessageVisible(boolean encryptSuccessMessageVisible);
+        Builder encryptProgress(int encryptProgress);
         Builder encryptError(@Nullable Throwable encryptError);
         Builder decryptionIdCardDataResponse(
                 @Nullable IdCardDataResponse decryptionIdCardDataResponse);
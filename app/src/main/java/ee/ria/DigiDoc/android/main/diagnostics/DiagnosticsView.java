@@ -42,6 +42,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 import ee.ria.DigiDoc.BuildConfig;
 import ee.ria.DigiDoc.R;
@@ -55,13 +57,18 @@ import ee.ria.DigiDoc.android.utils.ViewDisposables;
 import ee.ria.DigiDoc.android.utils.navigator.Navigator;
 import ee.ria.DigiDoc.android.utils.navigator.Transaction;
 import ee.ria.DigiDoc.android.utils.widget.ConfirmationDialog;
+import ee.ria.DigiDoc.common.CertificateCache;
 import ee.ria.DigiDoc.common.FileUtil;
+import ee.ria.DigiDoc.common.NativeHandle;
+import ee.ria.DigiDoc.common.SignLibReady;
+import ee.ria.DigiDoc.common.SigningTrace;
 import ee.ria.DigiDoc.configuration.ConfigurationDateUtil;
 import ee.ria.DigiDoc.configuration.ConfigurationManagerService;
 import ee.ria.DigiDoc.configuration.ConfigurationProvider;
 import ee.ria.DigiDoc.sign.SignLib;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
 import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import okhttp3.OkHttpClient;
@@ -79,11 +86,13 @@ public final class DiagnosticsView extends CoordinatorLayout {
     private final ViewDisposables disposables;
 
     private Disposable tslVersionDisposable;
+    private Disposable libDigiDocVersionDisposable;
 
     private final String DIAGNOSTICS_FILE_NAME = "ria_digidoc_" + getAppVersion() + "_diagnostics.txt";
     private final String DIAGNOSTICS_FILE_PATH = getContext().getFilesDir().getPath()
             + File.separator + "diagnostics" + File.separator;
     private final String DIAGNOSTICS_LOGS_FILE_NAME = "ria_digidoc_" + getAppVersion() + "_logs.txt";
+    private final String DIAGNOSTICS_SIGNING_TRACES_FILE_NAME = "ria_digidoc_" + getAppVersion() + "_signing_timings.json";
 
     public DiagnosticsView(Context context) {
         super(context);
@@ -100,6 +109,7 @@ public final class DiagnosticsView extends CoordinatorLayout {
         SwitchCompat activateLogFileGenerating = findViewById(R.id.mainDiagnosticsLogging);
         activateLogFileGenerating.setChecked(((Activity) this.getContext()).getSettingsDataStore().getIsLogFileGenerationEnabled());
         Button saveLogFileButton = findViewById(R.id.mainDiagnosticsSaveLoggingButton);
+        View saveSigningTracesButton = findViewById(R.id.mainDiagnosticsSaveSigningTracesButton);
         saveLogFileButton.setVisibility(
                 (activateLogFileGenerating.isChecked() &&
                         FileUtil.logsExist(FileUtil.getLogsDirectory(getContext()))) ? VISIBLE : GONE);
@@ -123,6 +133,10 @@ public final class DiagnosticsView extends CoordinatorLayout {
                 (saveLogFile()))
                 .subscribe(diagnosticsFileLogsSaveClicksSubject);
 
+        clicks(saveSigningTracesButton).map(ignored ->
+                (saveSigningTraces()))
+                .subscribe(diagnosticsFileSaveClicksSubject);
+
         setData(configurationProvider);
     }
 
@@ -171,6 +185,9 @@ public final class DiagnosticsView extends CoordinatorLayout {
         if (tslVersionDisposable != null) {
             tslVersionDisposable.dispose();
         }
+        if (libDigiDocVersionDisposable != null) {
+            libDigiDocVersionDisposable.dispose();
+        }
         super.onDetachedFromWindow();
     }
 
@@ -189,15 +206,7 @@ public final class DiagnosticsView extends CoordinatorLayout {
         List<TextView> textViews = new ArrayList<>();
         findAllTextViews(this, textViews);
 
-        File root = new File(DIAGNOSTICS_FILE_PATH);
-        if (!root.exists()) {
-            boolean isDirectoryCreated = root.mkdirs();
-            if (!isDirectoryCreated) {
-                Timber.log(Log.ERROR, "Unable to create directory for diagnostics files");
-                throw new NoSuchFileException(root.getAbsolutePath(), null,
-                        "Unable to create directory for diagnostics files");
-            }
-        }
+        createDiagnosticsDirectory();
 
         File diagnosticsFileLocation = new File(DIAGNOSTICS_FILE_PATH + DIAGNOSTICS_FILE_NAME);
         try (FileOutputStream fileStream = new FileOutputStream(diagnosticsFileLocation);
@@ -213,6 +222,33 @@ public final class DiagnosticsView extends CoordinatorLayout {
         }
     }
 
+    private File saveSigningTraces() throws IOException {
+        createDiagnosticsDirectory();
+
+        File signingTracesFile = new File(DIAGNOSTICS_FILE_PATH + DIAGNOSTICS_SIGNING_TRACES_FILE_NAME);
+        try (FileOutputStream fileStream = new FileOutputStream(signingTracesFile);
+             OutputStreamWriter writer = new OutputStreamWriter(fileStream, StandardCharsets.UTF_8.name())) {
+            writer.append(SigningTrace.recentJson());
+            writer.flush();
+            return signingTracesFile;
+        } catch (IOException ex) {
+            Timber.log(Log.ERROR, ex, "Unable to save signing timings");
+            throw ex;
+        }
+    }
+
+    private void createDiagnosticsDirectory() throws IOException {
+        File root = new File(DIAGNOSTICS_FILE_PATH);
+        if (!root.exists()) {
+            boolean isDirectoryCreated = root.mkdirs();
+            if (!isDirectoryCreated) {
+                Timber.log(Log.ERROR, "Unable to create directory for diagnostics files");
+                throw new NoSuchFileException(root.getAbsolutePath(), null,
+                        "Unable to create directory for diagnostics files");
+            }
+        }
+    }
+
     private static void findAllTextViews(View view, List<TextView> textViews) {
         if (view instanceof ViewGroup) {
             final ViewGroup viewGroup = (ViewGroup) view;
@@ -257,14 +293,17 @@ public final class DiagnosticsView extends CoordinatorLayout {
                 text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_configuration_check_for_update_button)) ||
                 text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_configuration_save_diagnostics_button)) ||
                 text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_logging_switch)) ||
-                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_save_log));
+                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_save_log)) ||
+                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_save_signing_traces));
     }
 
     private boolean isCategoryLabel(String text) {
         return text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_libraries_title)) ||
                 text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_urls_title)) ||
                 text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_central_configuration_title)) ||
-                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_tsl_cache_title));
+                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_tsl_cache_title)) ||
+                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_signing_traces_title)) ||
+                text.equalsIgnoreCase(getResources().getString(R.string.main_diagnostics_native_objects_title));
     }
 
     private String getTSLFileVersion(InputStream tslInputStream, String tslFileName) throws XmlPullParserException, IOException {
@@ -303,8 +342,7 @@ public final class DiagnosticsView extends CoordinatorLayout {
                 getAppVersion(), Typeface.DEFAULT_BOLD));
         androidVersion.setText(setDisplayTextWithTitle(R.string.main_diagnostics_operating_system_title,
                 getAndroidVersion(), Typeface.DEFAULT_BOLD));
-        libDocVersion.setText(setDisplayTextWithTitle(R.string.main_diagnostics_libdigidocpp_title,
-                getLibDigiDocVersion(), Typeface.DEFAULT_BOLD));
+        setLibDigiDocVersion(libDocVersion);
 
         configUrl.setText(setDisplayTextWithTitle(R.string.main_diagnostics_config_url_title,
                 configurationProvider.getConfigUrl(), Typeface.DEFAULT));
@@ -333,6 +371,8 @@ public final class DiagnosticsView extends CoordinatorLayout {
                 getRpUuidText(), Typeface.DEFAULT));
 
         setTslCacheData();
+        setSigningTracesData();
+        setNativeObjectsData();
 
         centralConfigurationDate.setText(setDisplayTextWithTitle(R.string.main_diagnostics_date_title,
                 configurationProvider.getMetaInf().getDate(), Typeface.DEFAULT));
@@ -348,6 +388,26 @@ public final class DiagnosticsView extends CoordinatorLayout {
                 displayDate(configurationProvider.getConfigurationLastUpdateCheckDate()), Typeface.DEFAULT));
     }
 
+    /**
+     * libdigidocpp may still be initializing, so the version is read in the background.
+     */
+    private void setLibDigiDocVersion(TextView libDocVersionTextView) {
+        libDocVersionTextView.setText(setDisplayTextWithTitle(
+                R.string.main_diagnostics_libdigidocpp_title, "", Typeface.DEFAULT_BOLD));
+        if (libDigiDocVersionDisposable != null) {
+            libDigiDocVersionDisposable.dispose();
+        }
+        libDigiDocVersionDisposable = Single.fromCallable(SignLib::libdigidocppVersion)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        (version) -> libDocVersionTextView.setText(setDisplayTextWithTitle(
+                                R.string.main_diagnostics_libdigidocpp_title, version,
+                                Typeface.DEFAULT_BOLD)),
+                        (error) -> Timber.log(Log.ERROR, error, "Error reading libdigidocpp version")
+                );
+    }
+
     private void appendTslVersion(TextView tslUrlTextView, String tslUrl) {
         tslVersionDisposable = getObservableTslVersion(tslUrl )
                 .subscribeOn(Schedulers.io())
@@ -412,6 +472,82 @@ public final class DiagnosticsView extends CoordinatorLayout {
         }
     }
 
+    private void setSigningTracesData() {
+        LinearLayout signingTracesLayout = findViewById(R.id.mainDiagnosticsSigningTracesLayout);
+        while (signingTracesLayout.getChildCount() > 1) {
+            signingTracesLayout.removeViewAt(signingTracesLayout.getChildCount() - 1);
+        }
+
+        List<SigningTrace> signingTraces = SigningTrace.recent();
+        if (signingTraces.isEmpty()) {
+            signingTracesLayout.addView(createEntry(signingTracesLayout,
+                    getResources().getString(R.string.main_diagnostics_signing_traces_empty)));
+            return;
+        }
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+        for (SigningTrace signingTrace : signingTraces) {
+            StringBuilder text = new StringBuilder()
+                    .append(signingTrace.method())
+                    .append(' ')
+                    .append(timeFormat.format(new Date(signingTrace.startedAt())))
+                    .append(": ")
+                    .append(signingTrace.total())
+                    .append(" ms");
+            if (signingTrace.error() != null) {
+                text.append(" (")
+                        .append(getResources().getString(R.string.main_diagnostics_signing_traces_failed))
+                        .append(' ')
+                        .append(signingTrace.error())
+                        .append(')');
+            }
+            for (Map.Entry<SigningTrace.Phase, Long> duration : signingTrace.durations().entrySet()) {
+                text.append("\n    ")
+                        .append(duration.getKey().name())
+                        .append(' ')
+                        .append(duration.getValue())
+                        .append(" ms");
+            }
+            signingTracesLayout.addView(createEntry(signingTracesLayout, text.toString()));
+        }
+    }
+
+    private void setNativeObjectsData() {
+        LinearLayout nativeObjectsLayout = findViewById(R.id.mainDiagnosticsNativeObjectsLayout);
+        while (nativeObjectsLayout.getChildCount() > 1) {
+            nativeObjectsLayout.removeViewAt(nativeObjectsLayout.getChildCount() - 1);
+        }
+
+        Map<String, Long> liveObjects = NativeHandle.live();
+        if (liveObjects.isEmpty()) {
+            nativeObjectsLayout.addView(createEntry(nativeObjectsLayout,
+                    getResources().getString(R.string.main_diagnostics_native_objects_none)));
+        }
+        for (Map.Entry<String, Long> liveObject : liveObjects.entrySet()) {
+            nativeObjectsLayout.addView(createEntry(nativeObjectsLayout,
+                    liveObject.getKey() + ": " + liveObject.getValue()));
+        }
+        nativeObjectsLayout.addView(createEntry(nativeObjectsLayout,
+                getResources().getString(R.string.main_diagnostics_native_objects_leaked,
+                        NativeHandle.leaked())));
+
+        CertificateCache.Stats certificateCacheStats = CertificateCache.stats();
+        nativeObjectsLayout.addView(createEntry(nativeObjectsLayout,
+                getResources().getString(R.string.main_diagnostics_certificate_cache,
+                        certificateCacheStats.hits(), certificateCacheStats.misses(),
+                        certificateCacheStats.size())));
+        nativeObjectsLayout.addView(createEntry(nativeObjectsLayout,
+                getResources().getString(R.string.main_diagnostics_sign_lib_waits,
+                        SignLibReady.waits(), SignLibReady.waitedMillis())));
+    }
+
+    private static TextView createEntry(LinearLayout layout, String text) {
+        TextView entry = new TextView(layout.getContext());
+        entry.setTextAppearance(R.style.MaterialTypography_Dense_Body1);
+        entry.setLayoutParams(new ViewGroup.LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        entry.setText(text);
+        return entry;
+    }
+
     private ArrayList<View> getDisplayedNonExistentTSLCacheFiles(LinearLayout tslCacheLayout) {
         ArrayList<View> removeViews = new ArrayList<>();
         for (int i = 0; i < tslCacheLayout.getChildCount(); i++) {
@@ -448,8 +584,4 @@ public final class DiagnosticsView extends CoordinatorLayout {
     private static String getAndroidVersion() {
         return "Android " + Build.VERSION.RELEASE;
     }
-
-    private static String getLibDigiDocVersion() {
-        return SignLib.libdigidocppVersion();
-    }
 }
@@ -10,6 +10,8 @@ import javax.inject.Singleton;
 
 import ee.ria.DigiDoc.android.utils.files.FileSystem;
 import ee.ria.DigiDoc.common.Certificate;
+import ee.ria.DigiDoc.common.CertificateCache;
+import ee.ria.DigiDoc.common.SigningTrace;
 import ee.ria.DigiDoc.crypto.CryptoContainer;
 import ee.ria.DigiDoc.crypto.CryptoException;
 import ee.ria.DigiDoc.crypto.DecryptToken;
@@ -67,11 +69,12 @@ public final class IdCardService {
     public Single<SignedContainer> sign(Token token, SignedContainer container, String pin2) {
         return Single
                 .fromCallable(() -> {
-                    IdCardData data = data(token);
-                    return container.sign(data.signCertificate().data(),
+                    Certificate signCertificate = signCertificate(token);
+                    return container.sign(signCertificate.data(),
                             signData -> ByteString.of(token.calculateSignature(pin2.getBytes(StandardCharsets.US_ASCII),
                                     signData.toByteArray(),
-                                    data.signCertificate().ellipticCurve())));
+                                    signCertificate.ellipticCurve())),
+                            SigningTrace.start("ID-card"));
                 })
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
@@ -112,13 +115,18 @@ public final class IdCardService {
         int pin2RetryCounter = token.codeRetryCounter(CodeType.PIN2);
         int pukRetryCounter = token.codeRetryCounter(CodeType.PUK);
 
-        Certificate authCertificate = Certificate.create(authenticationCertificateData);
-        Certificate signCertificate = Certificate.create(signingCertificateData);
+        Certificate authCertificate = CertificateCache.certificate(authenticationCertificateData);
+        Certificate signCertificate = CertificateCache.certificate(signingCertificateData);
 
         return IdCardData.create(authCertificate.type(), personalData, authCertificate,
                 signCertificate, pin1RetryCounter, pin2RetryCounter, pukRetryCounter);
     }
 
+    private static Certificate signCertificate(Token token) throws Exception {
+        return CertificateCache.certificate(ByteString
+                .of(token.certificate(CertificateType.SIGNING)));
+    }
+
     static final class IdCardToken implements DecryptToken {
 
         private final Token token;
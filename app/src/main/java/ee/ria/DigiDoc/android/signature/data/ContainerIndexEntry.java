@@ -0,0 +1,100 @@
+package ee.ria.DigiDoc.android.signature.data;
+
+import androidx.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+
+import ee.ria.DigiDoc.sign.SignatureStatus;
+
+/**
+ * Summary of a stored container, kept in the container index so that the list can be shown
+ * without opening any container.
+ */
+@AutoValue
+public abstract class ContainerIndexEntry {
+
+    public static final int UNKNOWN_COUNT = -1;
+
+    public abstract File file();
+
+    public abstract long size();
+
+    public abstract long lastModified();
+
+    /**
+     * Whether the file is a signature or crypto container, other files are not listed.
+     */
+    public abstract boolean container();
+
+    /**
+     * @return Number of data files or {@link #UNKNOWN_COUNT} if the container hasn't been read.
+     */
+    public abstract int dataFileCount();
+
+    /**
+     * @return Names of data files, empty if the container hasn't been read.
+     */
+    public abstract ImmutableList<String> dataFileNames();
+
+    /**
+     * @return Number of signatures or {@link #UNKNOWN_COUNT} if the container hasn't been read.
+     */
+    public abstract int signatureCount();
+
+    /**
+     * Worst status of all signatures, null when the signatures haven't been validated.
+     */
+    @Nullable public abstract SignatureStatus status();
+
+    public abstract ImmutableList<String> signerNames();
+
+    /**
+     * Serial numbers from the subjects of signing certificates, usually personal codes.
+     */
+    public abstract ImmutableList<String> signerCodes();
+
+    /**
+     * Whether {@link #signerNames()} and {@link #signerCodes()} are known, until then the
+     * container can't be found by its signers.
+     */
+    public abstract boolean signersIndexed();
+
+    public final String name() {
+        return file().getName();
+    }
+
+    /**
+     * Whether the entry still describes the file on disk.
+     */
+    public final boolean matches(long size, long lastModified) {
+        return size() == size && lastModified() == lastModified;
+    }
+
+    public final ContainerIndexEntry withFile(File file) {
+        return create(file, size(), lastModified(), container(), dataFileCount(),
+                dataFileNames(), signatureCount(), status(), signerNames(), signerCodes(),
+                signersIndexed());
+    }
+
+    public final ContainerIndexEntry withSigners(ImmutableList<String> signerNames,
+                                                ImmutableList<String> signerCodes) {
+        return create(file(), size(), lastModified(), container(), dataFileCount(),
+                dataFileNames(), signatureCount(), status(), signerNames, signerCodes, true);
+    }
+
+    public static ContainerIndexEntry create(File file, long size, long lastModified,
+                                             boolean container, int dataFileCount,
+                                             ImmutableList<String> dataFileNames,
+                                             int signatureCount,
+                                             @Nullable SignatureStatus status,
+                                             ImmutableList<String> signerNames,
+                                             ImmutableList<String> signerCodes,
+                                             boolean signersIndexed) {
+        return new AutoValue_ContainerIndexEntry(file, size, lastModified, container,
+                dataFileCount, dataFileNames, signatureCount, status, signerNames, signerCodes,
+                signersIndexed);
+    }
+}
@@ -8,21 +8,61 @@ import java.io.File;
 
 import ee.ria.DigiDoc.android.utils.files.FileStream;
 import ee.ria.DigiDoc.sign.DataFile;
+import ee.ria.DigiDoc.sign.DataFileExtraction;
 import ee.ria.DigiDoc.sign.Signature;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 
 public interface SignatureContainerDataSource {
 
-    Single<ImmutableList<File>> find();
+    /**
+     * Find stored containers using the container index, sorted by modification time.
+     *
+     * @param query Words to look for in container names, document names and signers,
+     *              matched as prefixes. All containers are returned when it's empty.
+     */
+    Single<ImmutableList<ContainerIndexEntry>> find(String query);
 
     Single<ContainerAdd> addContainer(Context context, ImmutableList<FileStream> fileStreams, boolean forceCreate);
 
     Single<SignedContainer> get(File containerFile);
 
+    /**
+     * Open the container and keep it open until every owner has called
+     * {@link #closeSession(File, Object)}. Owners opening a file that is already open share
+     * the container, other operations on the same file reuse it as well.
+     * <p>
+     * Signatures are not validated, use {@link #validateSignatures(File)} to get the statuses.
+     *
+     * @param owner Identifies the caller, opening again with the same owner has no effect.
+     */
+    Single<SignedContainer> openSession(File containerFile, Object owner);
+
+    /**
+     * Validate signatures of a container opened with {@link #openSession(File, Object)}.
+     *
+     * @return Validated signatures one by one as they finish.
+     */
+    Observable<Signature> validateSignatures(File containerFile);
+
+    /**
+     * Release the container opened with {@link #openSession(File, Object)}, it is closed when
+     * the last owner releases it. Does nothing when the owner doesn't hold the session, for
+     * example after the container was renamed or removed.
+     * <p>
+     * Blocks until validations running on it have finished, don't call on the main thread.
+     */
+    void closeSession(File containerFile, Object owner);
+
     Completable remove(File containerFile);
 
+    /**
+     * Rename a stored container, closing its session.
+     */
+    Completable rename(File containerFile, File newFile);
+
     Single<SignedContainer> addDocuments(File containerFile,
                                          ImmutableList<FileStream> documentStreams);
 
@@ -30,6 +70,13 @@ public interface SignatureContainerDataSource {
 
     Single<File> getDocumentFile(File containerFile, DataFile document);
 
+    /**
+     * Extract all documents of the container with a single pass.
+     *
+     * @return Progress of the extraction, one item per extracted document.
+     */
+    Observable<DataFileExtraction> getDocumentFiles(File containerFile);
+
     Single<SignedContainer> removeSignature(File containerFile, Signature signature);
 
     Single<SignedContainer> addSignature(File containerFile, String signature);
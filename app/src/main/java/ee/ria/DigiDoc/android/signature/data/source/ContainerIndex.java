@@ -0,0 +1,471 @@
+package ee.ria.DigiDoc.android.signature.data.source;
+
+import android.app.Application;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
+import ee.ria.DigiDoc.android.utils.files.FileSystem;
+import ee.ria.DigiDoc.common.CertificateCache;
+import ee.ria.DigiDoc.sign.AsicContainerReader;
+import ee.ria.DigiDoc.sign.ContainerFormat;
+import ee.ria.DigiDoc.sign.ContainerFormatDetector;
+import ee.ria.DigiDoc.sign.DataFile;
+import ee.ria.DigiDoc.sign.Signature;
+import ee.ria.DigiDoc.sign.SignatureStatus;
+import ee.ria.DigiDoc.sign.SignedContainer;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import okio.ByteString;
+import timber.log.Timber;
+
+/**
+ * Persistent index of the signature containers directory.
+ * <p>
+ * Entries are reused while the size and modification time of the file are unchanged, so
+ * listing the containers costs one directory listing and one stat per file. Files that are
+ * new or changed outside of the app are checked once; data file counts are read from the ZIP
+ * central directory of ASiC containers, and signers are read from their signature files in
+ * the background afterwards. Everything else is filled in by {@link #update} when the
+ * container is opened or changed. The entries are also kept in a {@link ContainerSearchIndex}
+ * for {@link #search}.
+ */
+@Singleton
+final class ContainerIndex {
+
+    private static final int VERSION = 3;
+
+    private static final Comparator<ContainerIndexEntry> NEWEST_FIRST =
+            Comparator.comparingLong(ContainerIndexEntry::lastModified).reversed()
+                    .thenComparing(ContainerIndexEntry::name);
+
+    private final Application application;
+    private final FileSystem fileSystem;
+
+    private final Map<File, ContainerIndexEntry> entries = new HashMap<>();
+    private final ContainerSearchIndex searchIndex = new ContainerSearchIndex();
+    private final Set<ContainerIndexEntry> signersUnreadable = new HashSet<>();
+    private boolean loaded;
+    private boolean reconciled;
+    private boolean indexingSigners;
+
+    @Inject ContainerIndex(Application application, FileSystem fileSystem) {
+        this.application = application;
+        this.fileSystem = fileSystem;
+    }
+
+    /**
+     * Bring the index up to date with the containers directory.
+     *
+     * @return Containers sorted by modification time, newest first.
+     */
+    synchronized ImmutableList<ContainerIndexEntry> containers() {
+        load();
+        boolean changed = false;
+        Set<File> files = new HashSet<>();
+        for (File file : fileSystem.listSignatureContainerFiles()) {
+            files.add(file);
+            long size = file.length();
+            long lastModified = file.lastModified();
+            ContainerIndexEntry entry = entries.get(file);
+            if (entry != null && entry.matches(size, lastModified)) {
+                continue;
+            }
+            entry = read(file, size, lastModified);
+            if (entry != null) {
+                put(entry);
+            } else {
+                remove(file);
+            }
+            changed = true;
+        }
+        for (File file : ImmutableList.copyOf(entries.keySet())) {
+            if (!files.contains(file)) {
+                remove(file);
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+        reconciled = true;
+
+        ImmutableList.Builder<ContainerIndexEntry> containers = ImmutableList.builder();
+        for (ContainerIndexEntry entry : entries.values()) {
+            if (entry.container()) {
+                containers.add(entry);
+            }
+        }
+        if (nextWithoutSigners() != null) {
+            startIndexingSigners();
+        }
+        return ImmutableList.sortedCopyOf(NEWEST_FIRST, containers.build());
+    }
+
+    /**
+     * Find containers by prefixes of words in their names, data file names, signer names
+     * and signer codes.
+     * <p>
+     * The directory is checked on the first call and whenever all containers are returned,
+     * otherwise the search runs on the index alone.
+     *
+     * @param query Search query, all containers are returned when it has no words.
+     * @return Matching containers sorted by modification time, newest first.
+     */
+    synchronized ImmutableList<ContainerIndexEntry> search(String query) {
+        ImmutableList<ContainerIndexEntry> all = reconciled ? null : containers();
+        Set<File> files = searchIndex.search(query);
+        if (files == null) {
+            return all != null ? all : containers();
+        }
+        ImmutableList.Builder<ContainerIndexEntry> containers = ImmutableList.builder();
+        for (File file : files) {
+            containers.add(entries.get(file));
+        }
+        return ImmutableList.sortedCopyOf(NEWEST_FIRST, containers.build());
+    }
+
+    /**
+     * Store counts, status and signers of a container that was opened or changed.
+     */
+    synchronized void update(SignedContainer container) {
+        File file = container.file();
+        if (!fileSystem.isSignatureContainerFile(file)) {
+            return;
+        }
+        load();
+        ImmutableList.Builder<String> dataFileNames = ImmutableList.builder();
+        for (DataFile dataFile : container.dataFiles()) {
+            dataFileNames.add(dataFile.name());
+        }
+        ImmutableList.Builder<String> signerNames = ImmutableList.builder();
+        ImmutableList.Builder<String> signerCodes = ImmutableList.builder();
+        for (Signature signature : container.signatures()) {
+            signerNames.add(signature.name());
+            String signerCode = signerCode(signature.signingCertificate());
+            if (signerCode != null) {
+                signerCodes.add(signerCode);
+            }
+        }
+        put(ContainerIndexEntry.create(file, file.length(), file.lastModified(), true,
+                container.dataFiles().size(), dataFileNames.build(),
+                container.signatures().size(), status(container), signerNames.build(),
+                signerCodes.build(), true));
+        save();
+    }
+
+    synchronized void rename(File file, File newFile) {
+        if (!fileSystem.isSignatureContainerFile(newFile)) {
+            delete(file);
+            return;
+        }
+        load();
+        ContainerIndexEntry entry = remove(file);
+        if (entry != null) {
+            put(entry.withFile(newFile));
+            save();
+        }
+    }
+
+    synchronized void delete(File file) {
+        load();
+        if (remove(file) != null) {
+            save();
+        }
+    }
+
+    private void put(ContainerIndexEntry entry) {
+        ContainerIndexEntry previous = entries.put(entry.file(), entry);
+        if (previous != null) {
+            signersUnreadable.remove(previous);
+        }
+        searchIndex.put(entry);
+    }
+
+    @Nullable
+    private ContainerIndexEntry remove(File file) {
+        searchIndex.remove(file);
+        ContainerIndexEntry entry = entries.remove(file);
+        if (entry != null) {
+            signersUnreadable.remove(entry);
+        }
+        return entry;
+    }
+
+    private void startIndexingSigners() {
+        if (indexingSigners) {
+            return;
+        }
+        indexingSigners = true;
+        Completable
+                .fromAction(this::indexSigners)
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> {}, throwable -> {
+                    synchronized (this) {
+                        indexingSigners = false;
+                    }
+                    Timber.log(Log.ERROR, throwable, "Failed to index signers");
+                });
+    }
+
+    /**
+     * Read signers of containers that haven't been opened since they were indexed, one at a
+     * time so that the index stays available in between.
+     */
+    private void indexSigners() {
+        boolean changed = false;
+        while (true) {
+            ContainerIndexEntry entry;
+            synchronized (this) {
+                entry = nextWithoutSigners();
+                if (entry == null) {
+                    if (changed) {
+                        save();
+                    }
+                    indexingSigners = false;
+                    return;
+                }
+            }
+            ContainerIndexEntry indexed = readSigners(entry);
+            synchronized (this) {
+                if (!entry.equals(entries.get(entry.file()))) {
+                    continue;
+                }
+                if (indexed != null) {
+                    put(indexed);
+                    changed = true;
+                } else {
+                    signersUnreadable.add(entry);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private ContainerIndexEntry nextWithoutSigners() {
+        for (ContainerIndexEntry entry : entries.values()) {
+            if (entry.container() && !entry.signersIndexed()
+                    && !signersUnreadable.contains(entry)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Entry with signers from the signature files, null when they can't be read
+     * without opening the container.
+     */
+    @Nullable
+    private static ContainerIndexEntry readSigners(ContainerIndexEntry entry) {
+        ContainerFormat format = ContainerFormatDetector.detect(entry.file());
+        if (format == ContainerFormat.CDOC) {
+            return entry.withSigners(ImmutableList.of(), ImmutableList.of());
+        }
+        if (format != ContainerFormat.ASICE && format != ContainerFormat.ASICS) {
+            return null;
+        }
+        ImmutableList.Builder<String> signerNames = ImmutableList.builder();
+        ImmutableList.Builder<String> signerCodes = ImmutableList.builder();
+        try (AsicContainerReader reader = AsicContainerReader.open(entry.file())) {
+            for (ByteString der : reader.signingCertificates()) {
+                signerNames.add(CertificateCache.certificate(der).friendlyName());
+                String signerCode = signerCode(CertificateCache.x509Certificate(der));
+                if (signerCode != null) {
+                    signerCodes.add(signerCode);
+                }
+            }
+        } catch (IOException | CertificateException | RuntimeException e) {
+            Timber.log(Log.DEBUG, e, "Unable to read signers of %s", entry.name());
+            return null;
+        }
+        return entry.withSigners(signerNames.build(), signerCodes.build());
+    }
+
+    @Nullable
+    private ContainerIndexEntry read(File file, long size, long lastModified) {
+        boolean container;
+        try {
+            container = FileSystem.isContainer(application, file);
+        } catch (Exception e) {
+            Timber.log(Log.ERROR, e, "Unable to check if %s is a container", file.getName());
+            return null;
+        }
+        int dataFileCount = ContainerIndexEntry.UNKNOWN_COUNT;
+        ImmutableList.Builder<String> dataFileNames = ImmutableList.builder();
+        ContainerFormat format = container
+                ? ContainerFormatDetector.detect(file)
+                : ContainerFormat.UNKNOWN;
+        if (format == ContainerFormat.ASICE || format == ContainerFormat.ASICS) {
+            try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+                ImmutableList<DataFile> dataFiles = reader.dataFiles();
+                dataFileCount = dataFiles.size();
+                for (DataFile dataFile : dataFiles) {
+                    dataFileNames.add(dataFile.name());
+                }
+            } catch (IOException e) {
+                Timber.log(Log.DEBUG, e, "Unable to count data files of %s", file.getName());
+            }
+        }
+        return ContainerIndexEntry.create(file, size, lastModified, container, dataFileCount,
+                dataFileNames.build(), ContainerIndexEntry.UNKNOWN_COUNT, null,
+                ImmutableList.of(), ImmutableList.of(), false);
+    }
+
+    @Nullable
+    private static SignatureStatus status(SignedContainer container) {
+        if (container.signatures().isEmpty() || !container.signaturesValidated()) {
+            return null;
+        }
+        SignatureStatus status = SignatureStatus.VALID;
+        for (Signature signature : container.signatures()) {
+            if (SignatureStatus.ORDER.get(signature.status()) < SignatureStatus.ORDER.get(status)) {
+                status = signature.status();
+            }
+        }
+        return status;
+    }
+
+    @Nullable
+    private static String signerCode(@Nullable X509Certificate certificate) {
+        if (certificate == null) {
+            return null;
+        }
+        try {
+            RDN[] serialNumbers = new JcaX509CertificateHolder(certificate).getSubject()
+                    .getRDNs(BCStyle.SERIALNUMBER);
+            return serialNumbers.length == 0
+                    ? null
+                    : IETFUtils.valueToString(serialNumbers[0].getFirst().getValue());
+        } catch (CertificateEncodingException e) {
+            Timber.log(Log.ERROR, e, "Unable to get signer serial number");
+            return null;
+        }
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File indexFile = fileSystem.getContainerIndexFile();
+        if (!indexFile.isFile()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile)))) {
+            int version = input.readInt();
+            if (version != VERSION) {
+                return;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                put(readEntry(input));
+            }
+        } catch (IOException | RuntimeException e) {
+            Timber.log(Log.ERROR, e, "Failed to read container index");
+            entries.clear();
+            searchIndex.clear();
+        }
+    }
+
+    private void save() {
+        File indexFile = fileSystem.getContainerIndexFile();
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                output.writeInt(VERSION);
+                output.writeInt(entries.size());
+                for (ContainerIndexEntry entry : entries.values()) {
+                    writeEntry(output, entry);
+                }
+            }
+            Files.move(tmpFile, indexFile);
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Failed to write container index");
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                Timber.log(Log.DEBUG, "Failed to delete %s", tmpFile.getName());
+            }
+        }
+    }
+
+    private static void writeEntry(DataOutputStream output, ContainerIndexEntry entry)
+            throws IOException {
+        output.writeUTF(entry.file().getPath());
+        output.writeLong(entry.size());
+        output.writeLong(entry.lastModified());
+        output.writeBoolean(entry.container());
+        output.writeInt(entry.dataFileCount());
+        writeStrings(output, entry.dataFileNames());
+        output.writeInt(entry.signatureCount());
+        output.writeUTF(entry.status() != null ? entry.status().name() : "");
+        writeStrings(output, entry.signerNames());
+        writeStrings(output, entry.signerCodes());
+        output.writeBoolean(entry.signersIndexed());
+    }
+
+    private static ContainerIndexEntry readEntry(DataInputStream input) throws IOException {
+        File file = new File(input.readUTF());
+        long size = input.readLong();
+        long lastModified = input.readLong();
+        boolean container = input.readBoolean();
+        int dataFileCount = input.readInt();
+        ImmutableList<String> dataFileNames = readStrings(input);
+        int signatureCount = input.readInt();
+        String status = input.readUTF();
+        ImmutableList<String> signerNames = readStrings(input);
+        ImmutableList<String> signerCodes = readStrings(input);
+        boolean signersIndexed = input.readBoolean();
+        return ContainerIndexEntry.create(file, size, lastModified, container, dataFileCount,
+                dataFileNames, signatureCount,
+                status.isEmpty() ? null : SignatureStatus.valueOf(status), signerNames,
+                signerCodes, signersIndexed);
+    }
+
+    private static void writeStrings(DataOutputStream output, ImmutableList<String> values)
+            throws IOException {
+        output.writeInt(values.size());
+        for (String value : values) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static ImmutableList<String> readStrings(DataInputStream input) throws IOException {
+        ImmutableList.Builder<String> values = ImmutableList.builder();
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            values.add(input.readUTF());
+        }
+        return values.build();
+    }
+}
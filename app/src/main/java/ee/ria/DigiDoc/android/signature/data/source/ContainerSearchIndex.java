@@ -0,0 +1,125 @@
+package ee.ria.DigiDoc.android.signature.data.source;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.File;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
+
+/**
+ * In-memory inverted index from terms to container files.
+ * <p>
+ * Terms are taken from container names, data file names, signer names and signer codes.
+ * Text is lower-cased, diacritics are removed and it's split on anything that isn't a letter
+ * or a digit, so "Õun_2023.pdf" is found with "oun 2023". Every query term is matched as a
+ * prefix and the results are intersected. Not thread-safe, guarded by {@link ContainerIndex}.
+ */
+final class ContainerSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Splitter SPLITTER = Splitter.onPattern("[^\\p{L}\\p{N}]+")
+            .omitEmptyStrings();
+
+    private final NavigableMap<String, Set<File>> postings = new TreeMap<>();
+    private final Map<File, ImmutableSet<String>> terms = new HashMap<>();
+
+    void put(ContainerIndexEntry entry) {
+        remove(entry.file());
+        if (!entry.container()) {
+            return;
+        }
+        ImmutableSet<String> entryTerms = terms(entry);
+        terms.put(entry.file(), entryTerms);
+        for (String term : entryTerms) {
+            Set<File> files = postings.get(term);
+            if (files == null) {
+                files = new HashSet<>();
+                postings.put(term, files);
+            }
+            files.add(entry.file());
+        }
+    }
+
+    void remove(File file) {
+        ImmutableSet<String> entryTerms = terms.remove(file);
+        if (entryTerms == null) {
+            return;
+        }
+        for (String term : entryTerms) {
+            Set<File> files = postings.get(term);
+            if (files != null && files.remove(file) && files.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    void clear() {
+        postings.clear();
+        terms.clear();
+    }
+
+    /**
+     * @param query Search query.
+     * @return Files matching all terms of the query, null when the query has no terms.
+     */
+    @Nullable
+    Set<File> search(String query) {
+        ImmutableList<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty()) {
+            return null;
+        }
+        Set<File> result = null;
+        for (String prefix : queryTerms) {
+            Set<File> matches = new HashSet<>();
+            for (Set<File> files : postings
+                    .subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+                matches.addAll(files);
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static ImmutableSet<String> terms(ContainerIndexEntry entry) {
+        ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+        builder.addAll(tokenize(entry.name()));
+        for (String dataFileName : entry.dataFileNames()) {
+            builder.addAll(tokenize(dataFileName));
+        }
+        for (String signerName : entry.signerNames()) {
+            builder.addAll(tokenize(signerName));
+        }
+        for (String signerCode : entry.signerCodes()) {
+            builder.addAll(tokenize(signerCode));
+        }
+        return builder.build();
+    }
+
+    private static ImmutableList<String> tokenize(String text) {
+        String normalized = DIACRITICS
+                .matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        return ImmutableList.copyOf(SPLITTER.split(normalized));
+    }
+}
@@ -1,5 +1,8 @@
 package ee.ria.DigiDoc.android.signature.data.source;
 
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 
 import org.apache.commons.io.FilenameUtils;
@@ -8,20 +11,32 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import ee.ria.DigiDoc.android.signature.data.ContainerAdd;
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
 import ee.ria.DigiDoc.android.signature.data.SignatureContainerDataSource;
 import ee.ria.DigiDoc.android.utils.files.FileStream;
 import ee.ria.DigiDoc.android.utils.files.FileSystem;
+import ee.ria.DigiDoc.android.utils.files.IngestedFile;
 import ee.ria.DigiDoc.common.FileUtil;
+import ee.ria.DigiDoc.sign.ContainerSession;
 import ee.ria.DigiDoc.sign.DataFile;
+import ee.ria.DigiDoc.sign.DataFileExtraction;
 import ee.ria.DigiDoc.sign.Signature;
+import ee.ria.DigiDoc.sign.SignatureValidationCache;
+import ee.ria.DigiDoc.sign.SignatureValidationEngine;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 
 import static com.google.common.io.Files.getNameWithoutExtension;
@@ -29,94 +44,206 @@ import static ee.ria.DigiDoc.android.Constants.SIGNATURE_CONTAINER_EXT;
 
 import android.content.Context;
 
+@Singleton
 public final class FileSystemSignatureContainerDataSource implements SignatureContainerDataSource {
 
+    private static final int VALIDATION_CACHE_MAX_ENTRIES = 500;
+
     private final FileSystem fileSystem;
+    private final SignatureValidationEnvironment validationEnvironment;
+    private final SignatureValidationCache validationCache;
+    private final ContainerIndex containerIndex;
+
+    private final Map<File, OwnedSession> sessions = new HashMap<>();
+
+    private final SignatureValidationEngine validationEngine = new SignatureValidationEngine();
 
-    @Inject FileSystemSignatureContainerDataSource(FileSystem fileSystem) {
+    @Inject FileSystemSignatureContainerDataSource(FileSystem fileSystem,
+            SignatureValidationEnvironment validationEnvironment, ContainerIndex containerIndex) {
         this.fileSystem = fileSystem;
+        this.validationEnvironment = validationEnvironment;
+        this.containerIndex = containerIndex;
+        this.validationCache = new SignatureValidationCache(
+                fileSystem.getSignatureValidationCacheDir(), VALIDATION_CACHE_MAX_ENTRIES);
     }
 
     @Override
-    public Single<ImmutableList<File>> find() {
-        return Single.fromCallable(fileSystem::findSignatureContainerFiles);
+    public Single<ImmutableList<ContainerIndexEntry>> find(String query) {
+        return Single.fromCallable(() -> containerIndex.search(query));
     }
 
     @Override
     public Single<ContainerAdd> addContainer(Context context, ImmutableList<FileStream> fileStreams,
                                              boolean forceCreate) {
         return Single.fromCallable(() -> {
-            boolean isExistingContainer;
-            File containerFile;
-            if (!forceCreate && fileStreams.size() == 1
-                    && SignedContainer.isContainer(context, fileSystem.cache(fileStreams.get(0)))) {
+            ImmutableList<File> dataFiles;
+            if (!forceCreate && fileStreams.size() == 1) {
                 FileStream fileStream = fileStreams.get(0);
-                isExistingContainer = true;
-                containerFile = fileSystem.addSignatureContainer(fileStream);
+                IngestedFile ingestedFile = fileSystem.ingest(fileStream);
+                if (SignedContainer.isContainer(context, ingestedFile.file())) {
+                    File containerFile = fileSystem.addSignatureContainer(ingestedFile.file(),
+                            fileStream.displayName());
+                    validationCache.putContentDigest(containerFile, ingestedFile.sha256());
+                    return ContainerAdd.create(true, containerFile);
+                }
+                dataFiles = ImmutableList.of(ingestedFile.file());
             } else {
-                String normalizedDisplayName = FilenameUtils.getName(FileUtil.sanitizeString(FileUtil.normalizePath(
-                        fileStreams.get(0).displayName()).getPath(), ""));
-                String containerName = String.format(Locale.US, "%s.%s",
-                        FilenameUtils.removeExtension(normalizedDisplayName),
-                        SIGNATURE_CONTAINER_EXT);
-                isExistingContainer = false;
-                containerFile = fileSystem.generateSignatureContainerFile(containerName);
-                SignedContainer.create(containerFile, cacheFileStreams(fileStreams));
+                dataFiles = cacheFileStreams(fileStreams);
             }
-            return ContainerAdd.create(isExistingContainer, containerFile);
+            String normalizedDisplayName = FilenameUtils.getName(FileUtil.sanitizeString(FileUtil.normalizePath(
+                    fileStreams.get(0).displayName()).getPath(), ""));
+            String containerName = String.format(Locale.US, "%s.%s",
+                    FilenameUtils.removeExtension(normalizedDisplayName),
+                    SIGNATURE_CONTAINER_EXT);
+            File containerFile = fileSystem.generateSignatureContainerFile(containerName);
+            containerIndex.update(SignedContainer.create(containerFile, dataFiles));
+            return ContainerAdd.create(false, containerFile);
         });
     }
 
     @Override
     public Single<SignedContainer> get(File containerFile) {
-        return Single.fromCallable(() -> SignedContainer.open(containerFile));
+        return Single.fromCallable(() -> {
+            ContainerSession session = session(containerFile);
+            return session != null ? session.container() : SignedContainer.open(containerFile);
+        });
+    }
+
+    @Override
+    public Single<SignedContainer> openSession(File containerFile, Object owner) {
+        return Single.fromCallable(() -> {
+            ContainerSession session = acquire(containerFile, owner, null);
+            if (session == null) {
+                ContainerSession opened = ContainerSession.open(containerFile, false);
+                session = acquire(containerFile, owner, opened);
+                if (session != opened) {
+                    opened.close();
+                }
+            }
+            return indexed(session.container());
+        });
+    }
+
+    @Override
+    public Observable<Signature> validateSignatures(File containerFile) {
+        return Observable.defer(() -> {
+            ContainerSession session = session(containerFile);
+            if (session == null) {
+                return Observable.empty();
+            }
+            return Observable.<Signature>create(emitter -> {
+                session.validate(validationEngine, validationCache,
+                        validationEnvironment.current(),
+                        validation -> emitter.onNext(validation.signature()));
+                containerIndex.update(session.container());
+                emitter.onComplete();
+            });
+        });
+    }
+
+    @Override
+    public void closeSession(File containerFile, Object owner) {
+        OwnedSession owned;
+        synchronized (sessions) {
+            owned = sessions.get(containerFile);
+            if (owned == null || !owned.owners.remove(owner) || !owned.owners.isEmpty()) {
+                return;
+            }
+            sessions.remove(containerFile);
+        }
+        owned.session.close();
     }
 
     @Override
     public Completable remove(File containerFile) {
-        //noinspection ResultOfMethodCallIgnored
-        return Completable.fromAction(containerFile::delete);
+        return Completable.fromAction(() -> {
+            closeSessions(containerFile);
+            //noinspection ResultOfMethodCallIgnored
+            containerFile.delete();
+            containerIndex.delete(containerFile);
+        });
+    }
+
+    @Override
+    public Completable rename(File containerFile, File newFile) {
+        return Completable.fromAction(() -> {
+            closeSessions(containerFile);
+            if (!containerFile.renameTo(newFile)) {
+                throw new IOException("Failed to rename " + containerFile.getName());
+            }
+            containerIndex.rename(containerFile, newFile);
+        });
     }
 
     @Override
     public Single<SignedContainer> addDocuments(File containerFile,
                                                 ImmutableList<FileStream> documentStreams) {
-        return Single.fromCallable(() ->
-                SignedContainer
-                        .open(containerFile)
-                        .addDataFiles(cacheFileStreams(getContainerFiles(containerFile, documentStreams))));
+        return Single.fromCallable(() -> {
+            ImmutableList<File> dataFiles =
+                    cacheFileStreams(getContainerFiles(containerFile, documentStreams));
+            ContainerSession session = session(containerFile);
+            return indexed(session != null
+                    ? session.addDataFiles(dataFiles)
+                    : SignedContainer.open(containerFile).addDataFiles(dataFiles));
+        });
     }
 
     @Override
     public Single<SignedContainer> removeDocument(File containerFile, DataFile document) {
-        return Single.fromCallable(() ->
-                SignedContainer
-                        .open(containerFile)
-                        .removeDataFile(document));
+        return Single.fromCallable(() -> {
+            ContainerSession session = session(containerFile);
+            return indexed(session != null
+                    ? session.removeDataFile(document)
+                    : SignedContainer.open(containerFile).removeDataFile(document));
+        });
     }
 
     @Override
     public Single<File> getDocumentFile(File containerFile, DataFile document) {
-        return Single.fromCallable(() ->
-                SignedContainer
-                        .open(containerFile)
-                        .getDataFile(document, fileSystem.getContainerDataFilesDir(containerFile)));
+        return Single.fromCallable(() -> {
+            File directory = fileSystem.getContainerDataFilesDir(containerFile);
+            ContainerSession session = session(containerFile);
+            return session != null
+                    ? session.getDataFile(document, directory)
+                    : SignedContainer.open(containerFile).getDataFile(document, directory);
+        });
+    }
+
+    @Override
+    public Observable<DataFileExtraction> getDocumentFiles(File containerFile) {
+        return Observable.create(emitter -> {
+            File directory = fileSystem.getContainerDataFilesDir(containerFile);
+            ContainerSession session = session(containerFile);
+            if (session != null) {
+                session.extractAll(directory, Predicates.alwaysTrue(),
+                        Runtime.getRuntime().availableProcessors(), emitter::onNext);
+            } else {
+                SignedContainer.open(containerFile)
+                        .extractAll(directory, Predicates.alwaysTrue(), emitter::onNext);
+            }
+            emitter.onComplete();
+        });
     }
 
     @Override
     public Single<SignedContainer> removeSignature(File containerFile, Signature signature) {
-        return Single.fromCallable(() ->
-                SignedContainer
-                        .open(containerFile)
-                        .removeSignature(signature));
+        return Single.fromCallable(() -> {
+            ContainerSession session = session(containerFile);
+            return indexed(session != null
+                    ? session.removeSignature(signature)
+                    : SignedContainer.open(containerFile).removeSignature(signature));
+        });
     }
 
     @Override
     public Single<SignedContainer> addSignature(File containerFile, String signature) {
-        return Single.fromCallable(() ->
-                SignedContainer
-                        .open(containerFile)
-                        .addAdEsSignature(signature.getBytes(StandardCharsets.UTF_8)));
+        return Single.fromCallable(() -> {
+            byte[] adEsSignature = signature.getBytes(StandardCharsets.UTF_8);
+            ContainerSession session = session(containerFile);
+            return indexed(session != null
+                    ? session.addAdEsSignature(adEsSignature)
+                    : SignedContainer.open(containerFile).addAdEsSignature(adEsSignature));
+        });
     }
 
     private ImmutableList<FileStream> getContainerFiles(File containerFile, ImmutableList<FileStream> documentStreams) throws Exception {
@@ -138,7 +265,10 @@ public final class FileSystemSignatureContainerDataSource implements SignatureCo
 
     private List<String> getFileNamesInContainer(File containerFile) throws Exception {
         List<String> containerFileNames = new ArrayList<>();
-        ImmutableList<DataFile> dataFiles = SignedContainer.open(containerFile).dataFiles();
+        ContainerSession session = session(containerFile);
+        ImmutableList<DataFile> dataFiles = session != null
+                ? session.container().dataFiles()
+                : SignedContainer.listDataFiles(containerFile);
 
         for (int i = 0; i < dataFiles.size(); i++) {
             containerFileNames.add(dataFiles.get(i).name());
@@ -156,6 +286,55 @@ public final class FileSystemSignatureContainerDataSource implements SignatureCo
         return documentNamesToAdd;
     }
 
+    private SignedContainer indexed(SignedContainer container) {
+        containerIndex.update(container);
+        return container;
+    }
+
+    @Nullable
+    private ContainerSession session(File containerFile) {
+        synchronized (sessions) {
+            OwnedSession owned = sessions.get(containerFile);
+            return owned != null ? owned.session : null;
+        }
+    }
+
+    /**
+     * Add an owner to the open session of the file, or to the given newly opened session
+     * when there is none.
+     *
+     * @return Session the owner holds now, null when none is open and none was given.
+     */
+    @Nullable
+    private ContainerSession acquire(File containerFile, Object owner,
+                                     @Nullable ContainerSession opened) {
+        synchronized (sessions) {
+            OwnedSession owned = sessions.get(containerFile);
+            if (owned == null) {
+                if (opened == null) {
+                    return null;
+                }
+                owned = new OwnedSession(opened);
+                sessions.put(containerFile, owned);
+            }
+            owned.owners.add(owner);
+            return owned.session;
+        }
+    }
+
+    /**
+     * Close the session of a file that is removed or renamed, whoever owns it.
+     */
+    private void closeSessions(File containerFile) {
+        OwnedSession owned;
+        synchronized (sessions) {
+            owned = sessions.remove(containerFile);
+        }
+        if (owned != null) {
+            owned.session.close();
+        }
+    }
+
     private ImmutableList<File> cacheFileStreams(ImmutableList<FileStream> fileStreams) throws
             IOException {
         ImmutableList.Builder<File> fileBuilder = ImmutableList.builder();
@@ -164,4 +343,17 @@ public final class FileSystemSignatureContainerDataSource implements SignatureCo
         }
         return fileBuilder.build();
     }
+
+    /**
+     * Session shared by the screens that opened the same file.
+     */
+    private static final class OwnedSession {
+
+        final ContainerSession session;
+        final Set<Object> owners = new HashSet<>();
+
+        OwnedSession(ContainerSession session) {
+            this.session = session;
+        }
+    }
 }
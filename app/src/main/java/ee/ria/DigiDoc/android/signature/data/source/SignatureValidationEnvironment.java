@@ -0,0 +1,94 @@
+package ee.ria.DigiDoc.android.signature.data.source;
+
+import android.app.Application;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import ee.ria.DigiDoc.android.utils.TSLUtil;
+import ee.ria.DigiDoc.android.utils.files.FileSystem;
+import ee.ria.DigiDoc.configuration.loader.CachedConfigurationHandler;
+import timber.log.Timber;
+
+/**
+ * Describes everything besides the container content that signature validation results
+ * depend on: sequence numbers of the TSLs libdigidocpp uses and the configuration serial.
+ * <p>
+ * TSL sequence numbers are read once per file and reused while the file size and
+ * modification time stay the same.
+ */
+@Singleton
+final class SignatureValidationEnvironment {
+
+    private static final String TSL_EXTENSION = ".xml";
+
+    private final Application application;
+    private final FileSystem fileSystem;
+
+    private final Map<String, TslVersion> tslVersions = new HashMap<>();
+
+    @Inject SignatureValidationEnvironment(Application application, FileSystem fileSystem) {
+        this.application = application;
+        this.fileSystem = fileSystem;
+    }
+
+    synchronized String current() {
+        StringBuilder builder = new StringBuilder();
+        Integer configurationSerial = new CachedConfigurationHandler(application.getCacheDir())
+                .getConfigurationVersionSerial();
+        builder.append("conf=").append(configurationSerial);
+
+        File[] tslFiles = fileSystem.getSchemaDir()
+                .listFiles((dir, name) -> name.endsWith(TSL_EXTENSION));
+        if (tslFiles != null) {
+            Arrays.sort(tslFiles);
+            for (File tslFile : tslFiles) {
+                builder.append(';')
+                        .append(tslFile.getName())
+                        .append('=')
+                        .append(sequenceNumber(tslFile));
+            }
+        }
+        return builder.toString();
+    }
+
+    private Integer sequenceNumber(File tslFile) {
+        TslVersion cached = tslVersions.get(tslFile.getName());
+        if (cached != null && cached.length == tslFile.length()
+                && cached.lastModified == tslFile.lastModified()) {
+            return cached.sequenceNumber;
+        }
+        Integer sequenceNumber;
+        try (InputStream inputStream = new FileInputStream(tslFile)) {
+            sequenceNumber = TSLUtil.readSequenceNumber(inputStream);
+        } catch (Exception e) {
+            Timber.log(Log.DEBUG, e, "Unable to read TSL sequence number from %s",
+                    tslFile.getName());
+            sequenceNumber = null;
+        }
+        tslVersions.put(tslFile.getName(),
+                new TslVersion(tslFile.length(), tslFile.lastModified(), sequenceNumber));
+        return sequenceNumber;
+    }
+
+    private static final class TslVersion {
+
+        final long length;
+        final long lastModified;
+        final Integer sequenceNumber;
+
+        TslVersion(long length, long lastModified, Integer sequenceNumber) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+}
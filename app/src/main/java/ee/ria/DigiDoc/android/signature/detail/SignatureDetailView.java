@@ -16,6 +16,7 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 
+import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 
@@ -27,9 +28,14 @@ import ee.ria.DigiDoc.android.utils.ViewDisposables;
 import ee.ria.DigiDoc.android.utils.ViewSavedState;
 import ee.ria.DigiDoc.android.utils.navigator.Navigator;
 import ee.ria.DigiDoc.android.utils.navigator.Transaction;
+import ee.ria.DigiDoc.sign.AsicContainerReader;
+import ee.ria.DigiDoc.sign.ContainerFormat;
+import ee.ria.DigiDoc.sign.ContainerFormatDetector;
 import ee.ria.DigiDoc.sign.Signature;
 import ee.ria.DigiDoc.sign.SignedContainer;
-import ee.ria.libdigidocpp.Container;
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import timber.log.Timber;
 
 @SuppressLint("ViewConstructor")
@@ -40,8 +46,11 @@ public final class SignatureDetailView extends CoordinatorLayout {
 
     private final ViewDisposables disposables = new ViewDisposables();
 
+    private final SignedContainer signedContainer;
+
     public SignatureDetailView(Context context, Signature signature, SignedContainer signedContainer) {
         super(context);
+        this.signedContainer = signedContainer;
 
         inflate(context, R.layout.signature_detail_screen, this);
         AccessibilityUtils.setViewAccessibilityPaneTitle(this, R.string.signature_details_title);
@@ -68,12 +77,21 @@ public final class SignatureDetailView extends CoordinatorLayout {
         setData(signature, signedContainer);
     }
 
-    private String getContainerMimeType(SignedContainer signedContainer) {
-        Container container = Container.open(signedContainer.file().getAbsolutePath());
-        if (container == null) {
+    /**
+     * libdigidocpp also opens ASiC containers with a compressed {@code mimetype} entry,
+     * which the detector doesn't recognize. Their media type is read from the entry.
+     */
+    private static String getContainerMediaType(SignedContainer signedContainer) {
+        ContainerFormat format = ContainerFormatDetector.detect(signedContainer.file());
+        if (format != ContainerFormat.UNKNOWN) {
+            return format.mediaType();
+        }
+        try (AsicContainerReader reader = AsicContainerReader.open(signedContainer.file())) {
+            return reader.mimeType();
+        } catch (IOException e) {
+            Timber.log(Log.DEBUG, e, "Container is not a ZIP file");
             return "";
         }
-        return container.mediaType();
     }
 
     private int getNumberOfFilesInContainer(SignedContainer signedContainer) {
@@ -84,7 +102,8 @@ public final class SignatureDetailView extends CoordinatorLayout {
         TextUtil.handleDetailText((signature.signersCertificateIssuer()), findViewById(R.id.signatureDetailSignersCertificateIssuer));
         TextUtil.handleDetailText((signature.name()).replace(",", ", "), findViewById(R.id.signersCertificateButton));
         TextUtil.handleDetailText((signature.signatureMethod()), findViewById(R.id.signatureDetailMethod));
-        TextUtil.handleDetailText((getContainerMimeType(signedContainer)), findViewById(R.id.containerDetailFormat));
+        // Container format is filled in when detected, see onAttachedToWindow
+        TextUtil.handleDetailText(null, findViewById(R.id.containerDetailFormat));
         TextUtil.handleDetailText((signature.signatureFormat()), findViewById(R.id.signatureDetailFormat));
         TextUtil.handleDetailText((String.valueOf(getNumberOfFilesInContainer(signedContainer))), findViewById(R.id.containerDetailSignedFileCount));
         TextUtil.handleDetailText((signature.signatureTimestamp()), findViewById(R.id.signatureDetailTimestamp));
@@ -118,6 +137,14 @@ public final class SignatureDetailView extends CoordinatorLayout {
         disposables.attach();
         disposables.add(navigationClicks(toolbarView).subscribe(o ->
                 navigator.execute(Transaction.pop())));
+        disposables.add(Single
+                .fromCallable(() -> getContainerMediaType(signedContainer))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(mediaType -> TextUtil.handleDetailText(mediaType,
+                                findViewById(R.id.containerDetailFormat)),
+                        throwable -> Timber.log(Log.ERROR, throwable,
+                                "Unable to detect container format")));
     }
 
     @Override
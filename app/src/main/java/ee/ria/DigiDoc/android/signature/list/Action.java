@@ -17,8 +17,10 @@ interface Action extends MviAction {
 
         abstract boolean indicateActivity();
 
-        static ContainersLoadAction create(boolean indicateActivity) {
-            return new AutoValue_Action_ContainersLoadAction(indicateActivity);
+        abstract String query();
+
+        static ContainersLoadAction create(boolean indicateActivity, String query) {
+            return new AutoValue_Action_ContainersLoadAction(indicateActivity, query);
         }
     }
 
@@ -52,8 +54,12 @@ interface Action extends MviAction {
 
         abstract boolean confirmation();
 
-        static ContainerRemoveAction create(@Nullable File containerFile, boolean confirmation) {
-            return new AutoValue_Action_ContainerRemoveAction(containerFile, confirmation);
+        abstract String query();
+
+        static ContainerRemoveAction create(@Nullable File containerFile, boolean confirmation,
+                                            String query) {
+            return new AutoValue_Action_ContainerRemoveAction(containerFile, confirmation,
+                    query);
         }
     }
 }
@@ -70,29 +70,47 @@ interface Intent extends MviIntent {
 
         abstract boolean confirmation();
 
+        /**
+         * Search query to list the remaining containers with.
+         */
+        abstract String query();
+
         static ContainerRemoveIntent confirmation(File containerFile) {
-            return create(containerFile, true);
+            return create(containerFile, true, "");
         }
 
-        static ContainerRemoveIntent remove(File containerFile) {
-            return create(containerFile, false);
+        static ContainerRemoveIntent remove(File containerFile, String query) {
+            return create(containerFile, false, query);
         }
 
         static ContainerRemoveIntent cancel() {
-            return create(null, false);
+            return create(null, false, "");
         }
 
         private static ContainerRemoveIntent create(@Nullable File containerFile,
-                                                    boolean confirmation) {
-            return new AutoValue_Intent_ContainerRemoveIntent(containerFile, confirmation);
+                                                    boolean confirmation, String query) {
+            return new AutoValue_Intent_ContainerRemoveIntent(containerFile, confirmation,
+                    query);
         }
     }
 
     @AutoValue
     abstract class RefreshIntent implements Intent {
 
-        static RefreshIntent create() {
-            return new AutoValue_Intent_RefreshIntent();
+        abstract String query();
+
+        static RefreshIntent create(String query) {
+            return new AutoValue_Intent_RefreshIntent(query);
+        }
+    }
+
+    @AutoValue
+    abstract class SearchIntent implements Intent {
+
+        abstract String query();
+
+        static SearchIntent create(String query) {
+            return new AutoValue_Intent_SearchIntent(query);
         }
     }
 }
@@ -45,9 +45,9 @@ final class Processor implements ObservableTransformer<Action, Result> {
                       SignatureContainerDataSource signatureContainerDataSource,
                       LocaleService localeService) {
         containersLoad = upstream -> upstream.switchMap(action ->
-                signatureContainerDataSource.find()
+                signatureContainerDataSource.find(action.query())
                         .toObservable()
-                        .map((containerFiles) -> Result.ContainersLoadResult.success(navigator.activity(),containerFiles))
+                        .map(Result.ContainersLoadResult::success)
                         .onErrorReturn(Result.ContainersLoadResult::failure)
                         .subscribeOn(Schedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
@@ -90,11 +90,11 @@ final class Processor implements ObservableTransformer<Action, Result> {
                         .just(Result.ContainerRemoveResult.confirmation(action.containerFile()));
             } else {
                 return signatureContainerDataSource.remove(action.containerFile())
-                        .andThen(signatureContainerDataSource.find())
+                        .andThen(signatureContainerDataSource.find(action.query()))
                         .toObservable()
-                        .map(file -> {
+                        .map(containers -> {
                             AccessibilityUtils.sendAccessibilityEvent(application.getApplicationContext(), AccessibilityEvent.TYPE_ANNOUNCEMENT, R.string.document_removed);
-                            return Result.ContainerRemoveResult.success(navigator.activity(), file);
+                            return Result.ContainerRemoveResult.success(containers);
                         })
                         .onErrorReturn(Result.ContainerRemoveResult::failure)
                         .subscribeOn(Schedulers.io())
@@ -1,7 +1,5 @@
 package ee.ria.DigiDoc.android.signature.list;
 
-import android.content.Context;
-
 import androidx.annotation.Nullable;
 
 import com.google.auto.value.AutoValue;
@@ -9,7 +7,7 @@ import com.google.common.collect.ImmutableList;
 
 import java.io.File;
 
-import ee.ria.DigiDoc.android.utils.files.FileSystem;
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
 import ee.ria.DigiDoc.android.utils.mvi.MviResult;
 
 interface Result extends MviResult<ViewState> {
@@ -21,7 +19,7 @@ interface Result extends MviResult<ViewState> {
 
         abstract boolean inProgress();
 
-        @Nullable abstract ImmutableList<File> containerFiles();
+        @Nullable abstract ImmutableList<ContainerIndexEntry> containers();
 
         @Nullable abstract Throwable error();
 
@@ -30,8 +28,8 @@ interface Result extends MviResult<ViewState> {
             ViewState.Builder builder = state.buildWith()
                     .indicateActivity(indicateActivity())
                     .containerLoadProgress(inProgress());
-            if (containerFiles() != null) {
-                builder.containerFiles(containerFiles());
+            if (containers() != null) {
+                builder.containers(containers());
             }
             return builder.build();
         }
@@ -40,8 +38,8 @@ interface Result extends MviResult<ViewState> {
             return create(indicateActivity, true, null, null);
         }
 
-        static ContainersLoadResult success(Context context, ImmutableList<File> containerFiles) {
-            return create(true, false, FileSystem.filterContainers(context, containerFiles), null);
+        static ContainersLoadResult success(ImmutableList<ContainerIndexEntry> containers) {
+            return create(true, false, containers, null);
         }
 
         static ContainersLoadResult failure(Throwable error) {
@@ -49,10 +47,10 @@ interface Result extends MviResult<ViewState> {
         }
 
         private static ContainersLoadResult create(boolean indicateActivity, boolean inProgress,
-                                                   @Nullable ImmutableList<File> containerFiles,
+                                                   @Nullable ImmutableList<ContainerIndexEntry> containers,
                                                    @Nullable Throwable error) {
             return new AutoValue_Result_ContainersLoadResult(indicateActivity, inProgress,
-                    containerFiles, error);
+                    containers, error);
         }
     }
 
@@ -92,7 +90,7 @@ interface Result extends MviResult<ViewState> {
 
         abstract boolean inProgress();
 
-        @Nullable abstract ImmutableList<File> containerFiles();
+        @Nullable abstract ImmutableList<ContainerIndexEntry> containers();
 
         @Nullable abstract Throwable error();
 
@@ -101,8 +99,8 @@ interface Result extends MviResult<ViewState> {
             ViewState.Builder builder = state.buildWith()
                     .removeConfirmationContainerFile(confirmationContainerFile())
                     .containerRemoveProgress(inProgress());
-            if (containerFiles() != null) {
-                builder.containerFiles(containerFiles());
+            if (containers() != null) {
+                builder.containers(containers());
             }
             return builder.build();
         }
@@ -115,8 +113,8 @@ interface Result extends MviResult<ViewState> {
             return create(null, true, null, null);
         }
 
-        static ContainerRemoveResult success(Context context, ImmutableList<File> containerFiles) {
-            return create(null, false, FileSystem.filterContainers(context, containerFiles), null);
+        static ContainerRemoveResult success(ImmutableList<ContainerIndexEntry> containers) {
+            return create(null, false, containers, null);
         }
 
         static ContainerRemoveResult failure(Throwable error) {
@@ -129,10 +127,10 @@ interface Result extends MviResult<ViewState> {
 
         private static ContainerRemoveResult create(@Nullable File confirmationContainerFile,
                                                     boolean inProgress,
-                                                    @Nullable ImmutableList<File> containerFiles,
+                                                    @Nullable ImmutableList<ContainerIndexEntry> containers,
                                                     @Nullable Throwable error) {
             return new AutoValue_Result_ContainerRemoveResult(confirmationContainerFile, inProgress,
-                    containerFiles, error);
+                    containers, error);
         }
     }
 }
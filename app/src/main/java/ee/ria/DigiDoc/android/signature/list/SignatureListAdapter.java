@@ -13,6 +13,7 @@ import com.google.common.collect.ImmutableList;
 import java.io.File;
 
 import ee.ria.DigiDoc.R;
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.subjects.PublishSubject;
 import io.reactivex.rxjava3.subjects.Subject;
@@ -25,9 +26,9 @@ final class SignatureListAdapter extends
     private final Subject<File> itemClickSubject = PublishSubject.create();
     private final Subject<File> removeButtonClickSubject = PublishSubject.create();
 
-    private ImmutableList<File> data = ImmutableList.of();
+    private ImmutableList<ContainerIndexEntry> data = ImmutableList.of();
 
-    void setData(ImmutableList<File> data) {
+    void setData(ImmutableList<ContainerIndexEntry> data) {
         DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtilCallback(this.data, data));
         this.data = data;
         result.dispatchUpdatesTo(this);
@@ -49,16 +50,19 @@ final class SignatureListAdapter extends
 
     @Override
     public void onBindViewHolder(SignatureViewHolder holder, int position) {
-        holder.nameView.setText(data.get(position).getName());
+        ContainerIndexEntry entry = data.get(position);
+        holder.nameView.setText(entry.name());
+        holder.signersView.setText(String.join(", ", entry.signerNames()));
+        holder.signersView.setVisibility(entry.signerNames().isEmpty() ? View.GONE : View.VISIBLE);
         String documentNameDescription = holder.nameView.getResources().getString(R.string.document);
         holder.nameView.setContentDescription(documentNameDescription + " " + holder.nameView.getText());
         String removeDocumentButtonText = holder.nameView.getResources().getString(R.string.signature_list_remove_button);
         holder.removeButton.setContentDescription(removeDocumentButtonText + " " + holder.nameView.getText());
         clicks(holder.itemView)
-                .map(ignored -> data.get(holder.getBindingAdapterPosition()))
+                .map(ignored -> data.get(holder.getBindingAdapterPosition()).file())
                 .subscribe(itemClickSubject);
         clicks(holder.removeButton)
-                .map(ignored -> data.get(holder.getBindingAdapterPosition()))
+                .map(ignored -> data.get(holder.getBindingAdapterPosition()).file())
                 .subscribe(removeButtonClickSubject);
     }
 
@@ -70,21 +74,24 @@ final class SignatureListAdapter extends
     static final class SignatureViewHolder extends RecyclerView.ViewHolder {
 
         final TextView nameView;
+        final TextView signersView;
         final ImageButton removeButton;
 
         SignatureViewHolder(View itemView) {
             super(itemView);
             nameView = itemView.findViewById(R.id.signatureListItemName);
+            signersView = itemView.findViewById(R.id.signatureListItemSigners);
             removeButton = itemView.findViewById(R.id.signatureListItemRemoveButton);
         }
     }
 
     static final class DiffUtilCallback extends DiffUtil.Callback {
 
-        private final ImmutableList<File> oldList;
-        private final ImmutableList<File> newList;
+        private final ImmutableList<ContainerIndexEntry> oldList;
+        private final ImmutableList<ContainerIndexEntry> newList;
 
-        DiffUtilCallback(ImmutableList<File> oldList, ImmutableList<File> newList) {
+        DiffUtilCallback(ImmutableList<ContainerIndexEntry> oldList,
+                         ImmutableList<ContainerIndexEntry> newList) {
             this.oldList = oldList;
             this.newList = newList;
         }
@@ -101,12 +108,13 @@ final class SignatureListAdapter extends
 
         @Override
         public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-            return oldList.get(oldItemPosition).equals(newList.get(newItemPosition));
+            return oldList.get(oldItemPosition).file()
+                    .equals(newList.get(newItemPosition).file());
         }
 
         @Override
         public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-            return areItemsTheSame(oldItemPosition, newItemPosition);
+            return oldList.get(oldItemPosition).equals(newList.get(newItemPosition));
         }
     }
 }
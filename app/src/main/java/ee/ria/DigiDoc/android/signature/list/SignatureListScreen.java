@@ -10,9 +10,11 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.SearchView;
 import android.widget.Toolbar;
 
 import com.bluelinelabs.conductor.Controller;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
 
 import java.io.File;
@@ -25,12 +27,14 @@ import ee.ria.DigiDoc.android.utils.ViewDisposables;
 import ee.ria.DigiDoc.android.utils.mvi.MviView;
 import ee.ria.DigiDoc.android.utils.navigator.Screen;
 import ee.ria.DigiDoc.android.utils.widget.ConfirmationDialog;
+import ee.ria.DigiDoc.sign.DataFile;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import io.reactivex.rxjava3.core.Observable;
 
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
 import static android.view.accessibility.AccessibilityEvent.TYPE_ANNOUNCEMENT;
+import static com.jakewharton.rxbinding4.widget.RxSearchView.queryTextChanges;
 import static com.jakewharton.rxbinding4.widget.RxToolbar.navigationClicks;
 
 public final class SignatureListScreen extends Controller implements Screen,
@@ -46,6 +50,7 @@ public final class SignatureListScreen extends Controller implements Screen,
     private ConfirmationDialog removeConfirmationDialog;
     private ConfirmationDialog sivaConfirmationDialog;
     private Toolbar toolbarView;
+    private SearchView searchView;
     private RecyclerView listView;
     private SignatureListAdapter adapter;
     private View emptyView;
@@ -78,9 +83,10 @@ public final class SignatureListScreen extends Controller implements Screen,
                             if (sivaConfirmationContainerFile != null &&
                                     SignedContainer.isContainer(getApplicationContext(), sivaConfirmationContainerFile) &&
                                     SignedContainer.isAsicsFile(sivaConfirmationContainerFile.getName())) {
-                                SignedContainer signedContainer = SignedContainer.open(sivaConfirmationContainerFile);
-                                if (signedContainer.dataFiles().size() == 1 &&
-                                        Files.getFileExtension(signedContainer.dataFiles().get(0).name()).equalsIgnoreCase("ddoc")) {
+                                ImmutableList<DataFile> dataFiles =
+                                        SignedContainer.listDataFiles(sivaConfirmationContainerFile);
+                                if (dataFiles.size() == 1 &&
+                                        Files.getFileExtension(dataFiles.get(0).name()).equalsIgnoreCase("ddoc")) {
                                     return Intent.ContainerOpenIntent.open(sivaConfirmationContainerFile, false);
                                 }
                             }
@@ -94,7 +100,7 @@ public final class SignatureListScreen extends Controller implements Screen,
                         .map(Intent.ContainerRemoveIntent::confirmation),
                 removeConfirmationDialog.positiveButtonClicks()
                         .map(ignored -> Intent.ContainerRemoveIntent
-                                .remove(removeConfirmationContainerFile)),
+                                .remove(removeConfirmationContainerFile, query())),
                 removeConfirmationDialog.cancels()
                         .map(ignored -> {
                             if (getApplicationContext() != null) {
@@ -105,14 +111,24 @@ public final class SignatureListScreen extends Controller implements Screen,
     }
 
     private Observable<Intent.RefreshIntent> refreshIntent() {
-        return Observable.just(Intent.RefreshIntent.create());
+        return Observable.just(Intent.RefreshIntent.create(query()));
+    }
+
+    private Observable<Intent.SearchIntent> searchIntent() {
+        return queryTextChanges(searchView)
+                .skipInitialValue()
+                .map(query -> Intent.SearchIntent.create(query.toString().trim()));
+    }
+
+    private String query() {
+        return searchView.getQuery().toString().trim();
     }
 
     @SuppressWarnings("unchecked")
     @Override
     public Observable<Intent> intents() {
         return Observable.mergeArray(initialIntent(), upButtonIntent(), containerOpenIntent(),
-                containerRemoveIntent(), refreshIntent());
+                containerRemoveIntent(), refreshIntent(), searchIntent());
     }
 
     @Override
@@ -123,7 +139,7 @@ public final class SignatureListScreen extends Controller implements Screen,
         setActivity(state.indicateActivity()
                 && (state.containerLoadProgress() || state.containerRemoveProgress()));
 
-        adapter.setData(state.containerFiles());
+        adapter.setData(state.containers());
         if (removeConfirmationContainerFile != null) {
             removeConfirmationDialog.show();
         } else {
@@ -137,7 +153,7 @@ public final class SignatureListScreen extends Controller implements Screen,
             sivaConfirmationDialog.cancel();
         }
 
-        setEmpty(!state.containerLoadProgress() && state.containerFiles().size() == 0);
+        setEmpty(!state.containerLoadProgress() && state.containers().size() == 0);
     }
 
     private void setActivity(boolean activity) {
@@ -177,6 +193,9 @@ public final class SignatureListScreen extends Controller implements Screen,
         toolbarView.setTitle(R.string.signature_list_title);
         toolbarView.setNavigationIcon(androidx.appcompat.R.drawable.abc_ic_ab_back_material);
         toolbarView.setNavigationContentDescription(R.string.back);
+        searchView = view.findViewById(R.id.signatureListSearch);
+        searchView.setIconifiedByDefault(false);
+        searchView.setQueryHint(getResources().getString(R.string.signature_list_search));
         listView = view.findViewById(R.id.signatureList);
         listView.setLayoutManager(new LinearLayoutManager(container.getContext()));
         listView.setAdapter(adapter = new SignatureListAdapter());
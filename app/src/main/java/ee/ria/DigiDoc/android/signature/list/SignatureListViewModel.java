@@ -19,21 +19,25 @@ public final class SignatureListViewModel extends
     @Override
     protected Action action(Intent intent) {
         if (intent instanceof Intent.InitialIntent) {
-            return Action.ContainersLoadAction.create(true);
+            return Action.ContainersLoadAction.create(true, "");
         } else if (intent instanceof Intent.UpButtonIntent) {
             return Action.NavigateUpAction.create();
         } else if (intent instanceof Intent.ContainerRemoveIntent) {
             Intent.ContainerRemoveIntent containerRemoveIntent =
                     (Intent.ContainerRemoveIntent) intent;
             return Action.ContainerRemoveAction.create(containerRemoveIntent.containerFile(),
-                    containerRemoveIntent.confirmation());
+                    containerRemoveIntent.confirmation(), containerRemoveIntent.query());
         } else if (intent instanceof Intent.ContainerOpenIntent) {
             Intent.ContainerOpenIntent containerOpenIntent =
                     (Intent.ContainerOpenIntent) intent;
             return Action.ContainerOpenAction.create(containerOpenIntent.containerFile(),
                     containerOpenIntent.confirmation(), containerOpenIntent.isSivaConfirmed());
         } else if (intent instanceof Intent.RefreshIntent) {
-            return Action.ContainersLoadAction.create(false);
+            return Action.ContainersLoadAction.create(false,
+                    ((Intent.RefreshIntent) intent).query());
+        } else if (intent instanceof Intent.SearchIntent) {
+            return Action.ContainersLoadAction.create(false,
+                    ((Intent.SearchIntent) intent).query());
         } else if (intent instanceof Action) {
             return (Action) intent;
         } else {
@@ -7,6 +7,7 @@ import com.google.common.collect.ImmutableList;
 
 import java.io.File;
 
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
 import ee.ria.DigiDoc.android.utils.mvi.MviViewState;
 
 @AutoValue
@@ -16,7 +17,7 @@ abstract class ViewState implements MviViewState {
 
     abstract boolean containerLoadProgress();
 
-    abstract ImmutableList<File> containerFiles();
+    abstract ImmutableList<ContainerIndexEntry> containers();
 
     @Nullable abstract File removeConfirmationContainerFile();
 
@@ -30,7 +31,7 @@ abstract class ViewState implements MviViewState {
         return new AutoValue_ViewState.Builder()
                 .indicateActivity(true)
                 .containerLoadProgress(false)
-                .containerFiles(ImmutableList.of())
+                .containers(ImmutableList.of())
                 .sivaConfirmationContainerFile(null)
                 .containerRemoveProgress(false)
                 .build();
@@ -40,7 +41,7 @@ abstract class ViewState implements MviViewState {
     interface Builder {
         Builder indicateActivity(boolean indicateActivity);
         Builder containerLoadProgress(boolean containerLoadProgress);
-        Builder containerFiles(ImmutableList<File> containerFiles);
+        Builder containers(ImmutableList<ContainerIndexEntry> containers);
         Builder removeConfirmationContainerFile(@Nullable File removeConfirmationContainerFile);
         Builder sivaConfirmationContainerFile(@Nullable File sivaConfirmationContainerFile);
         Builder containerRemoveProgress(boolean containerRemoveProgress);
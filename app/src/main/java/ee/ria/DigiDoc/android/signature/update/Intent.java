@@ -134,6 +134,16 @@ interface Intent extends MviIntent {
         }
     }
 
+    @AutoValue
+    abstract class DocumentsSaveIntent implements Intent, Action {
+
+        abstract File containerFile();
+
+        static DocumentsSaveIntent create(File containerFile) {
+            return new AutoValue_Intent_DocumentsSaveIntent(containerFile);
+        }
+    }
+
     @AutoValue
     abstract class SignatureViewIntent implements Intent {
 
@@ -3,18 +3,23 @@ package ee.ria.DigiDoc.android.signature.update;
 import static android.app.Activity.RESULT_OK;
 import static androidx.core.app.ActivityCompat.shouldShowRequestPermissionRationale;
 import static com.google.common.io.Files.getFileExtension;
+import static ee.ria.DigiDoc.android.Constants.SAVE_ALL_FILES;
 import static ee.ria.DigiDoc.android.Constants.SAVE_FILE;
 import static ee.ria.DigiDoc.android.utils.IntentUtils.createActionIntent;
+import static ee.ria.DigiDoc.android.utils.IntentUtils.createSaveAllIntent;
 import static ee.ria.DigiDoc.android.utils.IntentUtils.createSaveIntent;
 import static ee.ria.DigiDoc.android.utils.IntentUtils.parseGetContentIntent;
 import static ee.ria.DigiDoc.smartid.service.SmartSignConstants.NOTIFICATION_PERMISSION_CODE;
 
 import android.Manifest;
 import android.app.Application;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Handler;
+import android.provider.DocumentsContract;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 
@@ -29,8 +34,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -52,10 +59,12 @@ import ee.ria.DigiDoc.common.FileUtil;
 import ee.ria.DigiDoc.crypto.CryptoContainer;
 import ee.ria.DigiDoc.mobileid.service.MobileSignService;
 import ee.ria.DigiDoc.sign.DataFile;
+import ee.ria.DigiDoc.sign.DataFileExtraction;
 import ee.ria.DigiDoc.sign.NoInternetConnectionException;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import ee.ria.DigiDoc.smartid.service.SmartSignService;
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.ObservableSource;
 import io.reactivex.rxjava3.core.ObservableTransformer;
@@ -65,8 +74,7 @@ import timber.log.Timber;
 
 final class Processor implements ObservableTransformer<Action, Result> {
 
-    private final ObservableTransformer<Action.ContainerLoadAction,
-                                        Result.ContainerLoadResult> containerLoad;
+    private final ObservableTransformer<Action.ContainerLoadAction, Result> containerLoad;
 
     private final ObservableTransformer<Intent.NameUpdateIntent, Result.NameUpdateResult>
             nameUpdate;
@@ -80,6 +88,9 @@ final class Processor implements ObservableTransformer<Action, Result> {
     private final ObservableTransformer<Intent.DocumentSaveIntent,
             Result> documentSave;
 
+    private final ObservableTransformer<Intent.DocumentsSaveIntent,
+            Result> documentsSave;
+
     private final ObservableTransformer<Action.DocumentRemoveAction,
                                         Result.DocumentRemoveResult> documentRemove;
 
@@ -96,25 +107,42 @@ final class Processor implements ObservableTransformer<Action, Result> {
 
     private final PublishSubject<Boolean> notificationsPermissionSubject = PublishSubject.create();
 
+    private final SignatureContainerDataSource signatureContainerDataSource;
+
+    private final Set<File> sessionFiles = new HashSet<>();
+
     private android.content.Intent intent;
 
     @Inject Processor(SignatureContainerDataSource signatureContainerDataSource,
                       SignatureAddSource signatureAddSource, Application application,
                       Navigator navigator,
                       FileSystem fileSystem) {
+        this.signatureContainerDataSource = signatureContainerDataSource;
+
         containerLoad = upstream -> upstream.switchMap(action ->
-                signatureContainerDataSource.get(action.containerFile())
+                signatureContainerDataSource.openSession(action.containerFile(), this)
+                        .doOnSuccess(ignored -> {
+                            synchronized (sessionFiles) {
+                                sessionFiles.add(action.containerFile());
+                            }
+                        })
                         .toObservable()
                         .switchMap(container -> {
+                            Observable<Result> signatureValidations = signatureContainerDataSource
+                                    .validateSignatures(action.containerFile())
+                                    .map(Result.SignatureValidationResult::create);
                             if (action.signatureAddSuccessMessageVisible()) {
                                 return Observable.timer(3, TimeUnit.SECONDS)
-                                        .map(ignored ->
-                                                Result.ContainerLoadResult.success(container, null,
-                                                        false))
+                                        .flatMapSingle(ignored -> signatureContainerDataSource
+                                                .get(action.containerFile()))
+                                        .<Result>map(validatedContainer ->
+                                                Result.ContainerLoadResult.success(
+                                                        validatedContainer, null, false))
+                                        .mergeWith(signatureValidations)
                                         .startWithItem(Result.ContainerLoadResult.success(container,
                                                 null, true));
                             } else {
-                                final Observable<Result.ContainerLoadResult> just = Observable
+                                final Observable<Result> just = Observable
                                         .just(Result.ContainerLoadResult.success(container,
                                                 action.signatureAddMethod(),
                                                 action.signatureAddSuccessMessageVisible()));
@@ -122,7 +150,7 @@ final class Processor implements ObservableTransformer<Action, Result> {
                                     announceAccessibilityFilesAddedEvent(application.getApplicationContext(),
                                             container.dataFiles().size());
                                 }
-                                return just;
+                                return just.concatWith(signatureValidations);
                             }
                         })
                         .onErrorReturn(Result.ContainerLoadResult::failure)
@@ -156,14 +184,10 @@ final class Processor implements ObservableTransformer<Action, Result> {
                                 checkContainerName(newFile);
 
                                 boolean isFileDeleted = newFile.delete();
-                                if (!isFileDeleted || !containerFile.renameTo(newFile)) {
+                                if (!isFileDeleted) {
                                     throw new IOException();
                                 }
 
-                                AccessibilityUtils.sendAccessibilityEvent(
-                                        application.getApplicationContext(), AccessibilityEvent.TYPE_ANNOUNCEMENT, R.string.container_name_changed);
-
-
                                 return newFile;
                             } else {
                                 checkContainerName(newFile);
@@ -171,6 +195,11 @@ final class Processor implements ObservableTransformer<Action, Result> {
                                 throw new FileAlreadyExistsException(newFile);
                             }
                         })
+                        .flatMap(newFile -> signatureContainerDataSource
+                                .rename(containerFile, newFile)
+                                .doOnComplete(() -> AccessibilityUtils.sendAccessibilityEvent(
+                                        application.getApplicationContext(), AccessibilityEvent.TYPE_ANNOUNCEMENT, R.string.container_name_changed))
+                                .andThen(Observable.just(newFile)))
                         .subscribeOn(Schedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .map(newFile -> {
@@ -297,6 +326,38 @@ final class Processor implements ObservableTransformer<Action, Result> {
                             .startWithItem(Result.DocumentSaveResult.activity()));
         });
 
+        documentsSave = upstream -> upstream.switchMap(action -> {
+            navigator.execute(Transaction.activityForResult(SAVE_ALL_FILES,
+                    createSaveAllIntent(), null));
+            return navigator.activityResults()
+                    .filter(activityResult ->
+                            activityResult.requestCode() == SAVE_ALL_FILES)
+                    .switchMap(activityResult -> {
+                        if (activityResult.resultCode() != RESULT_OK
+                                || activityResult.data() == null
+                                || activityResult.data().getData() == null) {
+                            return Observable.just(Result.DocumentSaveResult.idle());
+                        }
+                        Uri treeUri = activityResult.data().getData();
+                        return signatureContainerDataSource
+                                .getDocumentFiles(action.containerFile())
+                                .subscribeOn(Schedulers.io())
+                                .observeOn(Schedulers.io())
+                                .doOnNext(extraction -> saveToTree(treeUri, extraction))
+                                .ignoreElements()
+                                .observeOn(AndroidSchedulers.mainThread())
+                                .doOnComplete(() ->
+                                        ToastUtil.showError(navigator.activity(), R.string.files_saved))
+                                .andThen(Observable.just(Result.DocumentSaveResult.idle()))
+                                .onErrorReturn(throwable -> {
+                                    Timber.log(Log.ERROR, throwable, "Unable to save documents");
+                                    ToastUtil.showError(navigator.activity(), R.string.file_saved_error);
+                                    return Result.DocumentSaveResult.idle();
+                                })
+                                .startWithItem(Result.DocumentSaveResult.activity());
+                    });
+        });
+
         documentRemove = upstream -> upstream.flatMap(action -> {
             if (action.containerFile() == null || action.document() == null) {
                 return Observable.just(Result.DocumentRemoveResult.clear());
@@ -440,6 +501,7 @@ final class Processor implements ObservableTransformer<Action, Result> {
                 shared.ofType(Action.DocumentsAddAction.class).compose(documentsAdd),
                 shared.ofType(Intent.DocumentViewIntent.class).compose(documentView),
                 shared.ofType(Intent.DocumentSaveIntent.class).compose(documentSave),
+                shared.ofType(Intent.DocumentsSaveIntent.class).compose(documentsSave),
                 shared.ofType(Action.DocumentRemoveAction.class).compose(documentRemove),
                 shared.ofType(Action.SignatureRemoveAction.class).compose(signatureRemove),
                 shared.ofType(Action.SignatureViewAction.class).compose(signatureView),
@@ -447,6 +509,55 @@ final class Processor implements ObservableTransformer<Action, Result> {
                 shared.ofType(Action.SendAction.class).compose(send)));
     }
 
+    /**
+     * Release the containers opened by this screen. A screen replacing this one for the same
+     * file may already hold them too, they stay open for it.
+     * <p>
+     * Closing waits for signature validations still running on the container, so it is done
+     * on a background thread.
+     */
+    void close() {
+        ImmutableList<File> files;
+        synchronized (sessionFiles) {
+            files = ImmutableList.copyOf(sessionFiles);
+            sessionFiles.clear();
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+        Completable
+                .fromAction(() -> {
+                    for (File file : files) {
+                        signatureContainerDataSource.closeSession(file, this);
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .subscribe(() -> {}, throwable ->
+                        Timber.log(Log.ERROR, throwable, "Failed to close containers"));
+    }
+
+    /**
+     * Copy an extracted document into the directory the user picked.
+     */
+    private void saveToTree(Uri treeUri, DataFileExtraction extraction) throws IOException {
+        ContentResolver contentResolver = application.getContentResolver();
+        Uri directoryUri = DocumentsContract.buildDocumentUriUsingTree(treeUri,
+                DocumentsContract.getTreeDocumentId(treeUri));
+        Uri documentUri = DocumentsContract.createDocument(contentResolver, directoryUri,
+                SignedContainer.mimeType(extraction.file()), extraction.file().getName());
+        if (documentUri == null) {
+            throw new IOException("Unable to create document " + extraction.file().getName());
+        }
+        try (
+                InputStream inputStream = new FileInputStream(extraction.file());
+                OutputStream outputStream = contentResolver.openOutputStream(documentUri)
+        ) {
+            ByteStreams.copy(inputStream, outputStream);
+        }
+        Timber.log(Log.DEBUG, "Saved document %d of %d", extraction.completed(),
+                extraction.total());
+    }
+
     private void checkContainerName(File newContainerFileName) throws IOException {
         if (newContainerFileName.getName().startsWith(".")) {
             throw new IOException();
@@ -473,8 +584,7 @@ final class Processor implements ObservableTransformer<Action, Result> {
         List<FileStream> filesNotInContainer = new ArrayList<>();
         List<String> containerDataFileNames = new ArrayList<>();
         if (!validFiles.isEmpty() && SignedContainer.isContainer(context, container)) {
-            SignedContainer signedContainer = SignedContainer.open(container);
-            ImmutableList<DataFile> dataFiles = signedContainer.dataFiles();
+            ImmutableList<DataFile> dataFiles = SignedContainer.listDataFiles(container);
             for (DataFile dataFile : dataFiles) {
                 containerDataFileNames.add(FileUtil.normalizeString(dataFile.name()));
             }
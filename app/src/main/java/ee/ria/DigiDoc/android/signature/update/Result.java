@@ -55,6 +55,27 @@ interface Result extends MviResult<ViewState> {
         }
     }
 
+    @AutoValue
+    abstract class SignatureValidationResult implements Result {
+
+        abstract Signature signature();
+
+        @Override
+        public ViewState reduce(ViewState state) {
+            SignedContainer container = state.container();
+            if (container == null) {
+                return state;
+            }
+            return state.buildWith()
+                    .container(container.withSignature(signature()))
+                    .build();
+        }
+
+        static SignatureValidationResult create(Signature signature) {
+            return new AutoValue_Result_SignatureValidationResult(signature);
+        }
+    }
+
     @AutoValue
     abstract class NameUpdateResult implements Result {
 
@@ -69,6 +69,7 @@ final class SignatureUpdateAdapter extends
     final Subject<DataFile> documentClicksSubject = PublishSubject.create();
     final Subject<Object> documentAddClicksSubject = PublishSubject.create();
     final Subject<DataFile> documentSaveClicksSubject = PublishSubject.create();
+    final Subject<Object> documentsSaveClicksSubject = PublishSubject.create();
     final Subject<DataFile> documentRemoveClicksSubject = PublishSubject.create();
     final Subject<Signature> signatureClicksSubject = PublishSubject.create();
     final Subject<Signature> signatureRemoveClicksSubject = PublishSubject.create();
@@ -153,7 +154,8 @@ final class SignatureUpdateAdapter extends
         builder.add(NameItem.create(name, !isNestedContainer))
                 .add(SubheadItem.create(DOCUMENT,
                         isExistingContainer && !isNestedContainer
-                                && container.dataFileAddEnabled()))
+                                && container.dataFileAddEnabled(),
+                        container.dataFiles().size() > 1))
                 .addAll(DocumentItem.of(container.dataFiles(),
                         !isNestedContainer && container.dataFileRemoveEnabled()));
     }
@@ -177,7 +179,8 @@ final class SignatureUpdateAdapter extends
         builder.add(NameItem.create(name, false))
                 .add(SubheadItem.create(DOCUMENT,
                         !isNestedContainer
-                                && container.dataFileAddEnabled()))
+                                && container.dataFileAddEnabled(),
+                        signedContainerNested.dataFiles().size() > 1))
                 .addAll(DocumentItem.of(signedContainerNested.dataFiles(), false));
     }
 
@@ -212,6 +215,10 @@ final class SignatureUpdateAdapter extends
         return documentSaveClicksSubject;
     }
 
+    Observable<Object> documentsSaveClicks() {
+        return documentsSaveClicksSubject;
+    }
+
     Observable<Signature> signatureClicks() {
         return signatureClicksSubject;
     }
@@ -389,11 +396,13 @@ final class SignatureUpdateAdapter extends
     static final class SubheadViewHolder extends UpdateViewHolder<SubheadItem> {
 
         private final TextView titleView;
+        private final ImageButton saveAllButtonView;
         private final ImageButton buttonView;
 
         SubheadViewHolder(View itemView) {
             super(itemView);
             titleView = itemView.findViewById(R.id.signatureUpdateListSubheadTitle);
+            saveAllButtonView = itemView.findViewById(R.id.signatureUpdateListSubheadSaveAllButton);
             buttonView = itemView.findViewById(R.id.signatureUpdateListSubheadButton);
         }
 
@@ -405,8 +414,11 @@ final class SignatureUpdateAdapter extends
                         item.buttonRes()));
                 buttonView.setVisibility(item.buttonVisible() ? View.VISIBLE : View.INVISIBLE);
                 clicks(buttonView).subscribe(adapter.documentAddClicksSubject);
+                saveAllButtonView.setVisibility(item.saveAllButtonVisible() ? View.VISIBLE : View.GONE);
+                clicks(saveAllButtonView).subscribe(adapter.documentsSaveClicksSubject);
             } else {
                 buttonView.setVisibility(View.INVISIBLE);
+                saveAllButtonView.setVisibility(View.GONE);
             }
         }
     }
@@ -495,18 +507,23 @@ final class SignatureUpdateAdapter extends
                 }
             }
             nameView.setContentDescription(nameViewAccessibility.toString().toLowerCase());
-            switch (item.signature().status()) {
-                case INVALID:
-                    statusView.setText(R.string.signature_update_signature_status_invalid);
-                    break;
-                case UNKNOWN:
-                    statusView.setText(R.string.signature_update_signature_status_unknown);
-                    break;
-                default:
-                    statusView.setText(R.string.signature_update_signature_status_valid);
-                    break;
+            if (!item.signature().validated()) {
+                statusView.setText(R.string.signature_update_signature_status_validating);
+            } else {
+                switch (item.signature().status()) {
+                    case INVALID:
+                        statusView.setText(R.string.signature_update_signature_status_invalid);
+                        break;
+                    case UNKNOWN:
+                        statusView.setText(R.string.signature_update_signature_status_unknown);
+                        break;
+                    default:
+                        statusView.setText(R.string.signature_update_signature_status_valid);
+                        break;
+                }
             }
-            statusView.setTextColor(item.signature().valid() ? colorValid : colorInvalid);
+            statusView.setTextColor(item.signature().valid() || !item.signature().validated()
+                    ? colorValid : colorInvalid);
             switch (item.signature().status()) {
                 case WARNING:
                     statusCautionView.setVisibility(View.VISIBLE);
@@ -597,18 +614,23 @@ final class SignatureUpdateAdapter extends
                     ((TimestampItem) adapter.getItem(getBindingAdapterPosition())).signature())
                     .subscribe(adapter.signatureClicksSubject);
             nameView.setText(item.signature().name());
-            switch (item.signature().status()) {
-                case INVALID:
-                    statusView.setText(R.string.signature_update_timestamp_status_invalid);
-                    break;
-                case UNKNOWN:
-                    statusView.setText(R.string.signature_update_timestamp_status_unknown);
-                    break;
-                default:
-                    statusView.setText(R.string.signature_update_timestamp_status_valid);
-                    break;
+            if (!item.signature().validated()) {
+                statusView.setText(R.string.signature_update_signature_status_validating);
+            } else {
+                switch (item.signature().status()) {
+                    case INVALID:
+                        statusView.setText(R.string.signature_update_timestamp_status_invalid);
+                        break;
+                    case UNKNOWN:
+                        statusView.setText(R.string.signature_update_timestamp_status_unknown);
+                        break;
+                    default:
+                        statusView.setText(R.string.signature_update_timestamp_status_valid);
+                        break;
+                }
             }
-            statusView.setTextColor(item.signature().valid() ? colorValid : colorInvalid);
+            statusView.setTextColor(item.signature().valid() || !item.signature().validated()
+                    ? colorValid : colorInvalid);
             switch (item.signature().status()) {
                 case WARNING:
                     statusCautionView.setVisibility(View.VISIBLE);
@@ -711,7 +733,14 @@ final class SignatureUpdateAdapter extends
 
         abstract boolean buttonVisible();
 
+        abstract boolean saveAllButtonVisible();
+
         static SubheadItem create(@SubheadItemType String subheadItemType, boolean buttonVisible) {
+            return create(subheadItemType, buttonVisible, false);
+        }
+
+        static SubheadItem create(@SubheadItemType String subheadItemType, boolean buttonVisible,
+                                  boolean saveAllButtonVisible) {
             int titleRes;
             int buttonRes;
             if (subheadItemType.equals(DOCUMENT)) {
@@ -726,7 +755,7 @@ final class SignatureUpdateAdapter extends
             }
             return new AutoValue_SignatureUpdateAdapter_SubheadItem(
                     R.layout.signature_update_list_item_subhead, subheadItemType, titleRes,
-                    buttonRes, buttonVisible);
+                    buttonRes, buttonVisible, saveAllButtonVisible);
         }
     }
 
@@ -259,7 +259,8 @@ public final class SignatureUpdateView extends LinearLayout implements MviView<I
     @Override
     public Observable<Intent> intents() {
         return Observable.mergeArray(initialIntent(), nameUpdateIntent(), addDocumentsIntent(),
-                documentViewIntent(), documentSaveIntent(), documentRemoveIntent(), signatureRemoveIntent(),
+                documentViewIntent(), documentSaveIntent(), documentsSaveIntent(),
+                documentRemoveIntent(), signatureRemoveIntent(),
                 signatureAddIntent(), signatureViewIntent(), sendIntent());
     }
 
@@ -560,6 +561,12 @@ public final class SignatureUpdateView extends LinearLayout implements MviView<I
         return documentSaveIntentSubject;
     }
 
+    private Observable<Intent.DocumentsSaveIntent> documentsSaveIntent() {
+        return adapter.documentsSaveClicks()
+                .map(ignored -> Intent.DocumentsSaveIntent
+                        .create((nestedFile != null) ? nestedFile : containerFile));
+    }
+
     private Observable<Intent.DocumentRemoveIntent> documentRemoveIntent() {
         return documentRemoveIntentSubject;
     }
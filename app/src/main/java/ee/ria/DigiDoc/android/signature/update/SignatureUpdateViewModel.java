@@ -8,10 +8,12 @@ import ee.ria.DigiDoc.android.utils.mvi.BaseMviViewModel;
 public final class SignatureUpdateViewModel extends
         BaseMviViewModel<Intent, ViewState, Action, Result> {
 
+    private final Processor processor;
     private final SettingsDataStore settingsDataStore;
 
     @Inject SignatureUpdateViewModel(Processor processor, SettingsDataStore settingsDataStore) {
         super(processor);
+        this.processor = processor;
         this.settingsDataStore = settingsDataStore;
     }
 
@@ -84,4 +86,10 @@ public final class SignatureUpdateViewModel extends
     protected ViewState initialViewState() {
         return ViewState.initial();
     }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        processor.close();
+    }
 }
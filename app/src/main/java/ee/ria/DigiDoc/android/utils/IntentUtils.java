@@ -29,9 +29,6 @@ import com.google.common.io.Files;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
 
 import java.io.File;
 import java.io.IOException;
@@ -42,12 +39,10 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
 import ee.ria.DigiDoc.R;
 import ee.ria.DigiDoc.android.utils.files.FileStream;
 import ee.ria.DigiDoc.common.FileUtil;
+import ee.ria.DigiDoc.sign.ContainerFormatDetector;
 import ee.ria.DigiDoc.sign.DataFile;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import timber.log.Timber;
@@ -117,43 +112,15 @@ public final class IntentUtils {
 
     private static String getFileName(File file) {
         if (Files.getFileExtension(file.getName()).isEmpty()) {
-            String containerExtension = ContainerMimeTypeUtil.getContainerExtension(file);
-            if (!containerExtension.isEmpty()) {
-                return file.getName() + "." + containerExtension;
-            } else if (SignedContainer.isCdoc(file)) {
-                return file.getName() + ".cdoc";
-            } else if (SignedContainer.isDdoc(file)) {
-                return file.getName() + ".ddoc";
-            } else if (FileUtil.isPDF(file)) {
-                return file.getName() + ".pdf";
+            String extension = ContainerFormatDetector.detect(file).extension();
+            if (!extension.isEmpty()) {
+                return file.getName() + "." + extension;
             }
         }
 
         return file.getName();
     }
 
-    private static boolean isCdoc(File file) {
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(file);
-            NodeList nodes = doc.getElementsByTagName("denc:EncryptionProperty");
-            for (int i = 0; i < nodes.getLength(); i++) {
-                NamedNodeMap attributes = nodes.item(i).getAttributes();
-                for (int j = 0; j < attributes.getLength(); j++) {
-                    if (attributes.item(j).getNodeValue().equals("DocumentFormat")) {
-                        return true;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Timber.log(Log.ERROR, e, "XML parsing failed");
-            return false;
-        }
-
-        return false;
-    }
-
     public static File parseGetContentIntent(Context context, ContentResolver contentResolver, Uri uri,
                                             File externallyOpenedFilesDirectory) {
        return getExternallyOpenedFile(context, contentResolver, uri,
@@ -224,6 +191,15 @@ public final class IntentUtils {
                         .addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION), null);
     }
 
+    /**
+     * Create an intent to pick a directory to save all documents of a container to.
+     */
+    public static Intent createSaveAllIntent() {
+        return Intent
+                .createChooser(new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE)
+                        .addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION), null);
+    }
+
     public static Intent createSaveIntent(File file, Context context) {
         String storagePath = "";
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
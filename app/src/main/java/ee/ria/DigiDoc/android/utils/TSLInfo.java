@@ -0,0 +1,70 @@
+package ee.ria.DigiDoc.android.utils;
+
+import androidx.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.time.Instant;
+
+import okio.ByteString;
+
+/**
+ * Fields of a TSL needed to decide whether it can replace the cached one.
+ */
+@AutoValue
+public abstract class TSLInfo {
+
+    public abstract int sequenceNumber();
+
+    @Nullable public abstract String territory();
+
+    @Nullable public abstract Instant nextUpdate();
+
+    /**
+     * Pointers to other TSLs, only the list of the lists has them.
+     */
+    public abstract ImmutableList<Pointer> pointers();
+
+    /**
+     * @return Pointer to the XML TSL of given territory, null if there is none.
+     */
+    @Nullable
+    public Pointer pointer(String territory) {
+        for (Pointer pointer : pointers()) {
+            if (territory.equals(pointer.territory()) && pointer.isXml()) {
+                return pointer;
+            }
+        }
+        return null;
+    }
+
+    static TSLInfo create(int sequenceNumber, @Nullable String territory,
+                          @Nullable Instant nextUpdate, ImmutableList<Pointer> pointers) {
+        return new AutoValue_TSLInfo(sequenceNumber, territory, nextUpdate, pointers);
+    }
+
+    @AutoValue
+    public abstract static class Pointer {
+
+        public abstract String location();
+
+        @Nullable public abstract String territory();
+
+        @Nullable public abstract String mimeType();
+
+        /**
+         * Certificates allowed to sign the TSL pointed to.
+         */
+        public abstract ImmutableList<ByteString> certificates();
+
+        boolean isXml() {
+            return mimeType() == null || mimeType().endsWith("xml");
+        }
+
+        static Pointer create(String location, @Nullable String territory,
+                              @Nullable String mimeType, ImmutableList<ByteString> certificates) {
+            return new AutoValue_TSLInfo_Pointer(location, territory, mimeType, certificates);
+        }
+    }
+}
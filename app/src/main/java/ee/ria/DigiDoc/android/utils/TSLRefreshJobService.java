@@ -0,0 +1,140 @@
+package ee.ria.DigiDoc.android.utils;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.PersistableBundle;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import ee.ria.DigiDoc.configuration.ConfigurationProvider;
+import ee.ria.DigiDoc.configuration.util.UserAgentUtil;
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
+import timber.log.Timber;
+
+/**
+ * Keeps the TSL cache of libdigidocpp fresh in the background, see {@link TSLRefresher}.
+ * <p>
+ * A daily job refreshes every file on an unmetered network while charging. On startup another
+ * job refreshes the files that are missing or about to expire as soon as there is any network.
+ * Both can run at the same time, each has its own subscription.
+ */
+public final class TSLRefreshJobService extends JobService {
+
+    private static final int PERIODIC_JOB_ID = 2000;
+    private static final int STARTUP_JOB_ID = 2001;
+
+    private static final long PERIOD = TimeUnit.DAYS.toMillis(1);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String EXTRA_LOTL_URL = "lotlUrl";
+    private static final String EXTRA_LOTL_CERTIFICATES = "lotlCertificates";
+    private static final String EXTRA_ONLY_STALE = "onlyStale";
+
+    private final SparseArray<Disposable> disposables = new SparseArray<>();
+
+    /**
+     * Schedule the refresh jobs for the TSL URL and certificates in the configuration.
+     * <p>
+     * The periodic job is replaced only when the configuration changes, so that it doesn't
+     * start over on every launch.
+     */
+    public static void schedule(Context context, ConfigurationProvider configurationProvider) {
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        ComponentName component = new ComponentName(context, TSLRefreshJobService.class);
+
+        PersistableBundle periodicExtras = extras(configurationProvider, false);
+        JobInfo periodicJob = jobScheduler.getPendingJob(PERIODIC_JOB_ID);
+        if (periodicJob == null || !sameConfiguration(periodicJob.getExtras(), periodicExtras)) {
+            jobScheduler.schedule(new JobInfo.Builder(PERIODIC_JOB_ID, component)
+                    .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                    .setRequiresCharging(true)
+                    .setPeriodic(PERIOD)
+                    .setExtras(periodicExtras)
+                    .build());
+        }
+        jobScheduler.schedule(new JobInfo.Builder(STARTUP_JOB_ID, component)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setExtras(extras(configurationProvider, true))
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        PersistableBundle extras = params.getExtras();
+        String lotlUrl = extras.getString(EXTRA_LOTL_URL);
+        String[] lotlCertificates = extras.getStringArray(EXTRA_LOTL_CERTIFICATES);
+        if (lotlUrl == null || lotlCertificates == null) {
+            return false;
+        }
+        boolean onlyStale = extras.getBoolean(EXTRA_ONLY_STALE);
+        TSLRefresher refresher = new TSLRefresher(new File(getCacheDir(), "schema"),
+                new OkHttpClient.Builder()
+                        .connectTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                        .readTimeout(TIMEOUT, TimeUnit.MILLISECONDS)
+                        .build(),
+                UserAgentUtil.getUserAgent(getApplicationContext()));
+        int jobId = params.getJobId();
+        Disposable previous = disposables.get(jobId);
+        if (previous != null) {
+            previous.dispose();
+        }
+        // Results come on the main thread, so a disposed subscription never removes its
+        // replacement
+        disposables.put(jobId, Single
+                .fromCallable(() -> refresher.refresh(lotlUrl, Arrays.asList(lotlCertificates),
+                        onlyStale))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        replaced -> {
+                            Timber.log(Log.DEBUG, "TSL refresh replaced %d files", replaced);
+                            disposables.remove(jobId);
+                            jobFinished(params, false);
+                        },
+                        throwable -> {
+                            Timber.log(Log.ERROR, throwable, "TSL refresh failed");
+                            disposables.remove(jobId);
+                            jobFinished(params, true);
+                        }));
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Disposable disposable = disposables.get(params.getJobId());
+        if (disposable != null) {
+            disposable.dispose();
+            disposables.remove(params.getJobId());
+        }
+        return true;
+    }
+
+    private static PersistableBundle extras(ConfigurationProvider configurationProvider,
+                                            boolean onlyStale) {
+        PersistableBundle extras = new PersistableBundle();
+        extras.putString(EXTRA_LOTL_URL, configurationProvider.getTslUrl());
+        extras.putStringArray(EXTRA_LOTL_CERTIFICATES,
+                configurationProvider.getTslCerts().toArray(new String[0]));
+        extras.putBoolean(EXTRA_ONLY_STALE, onlyStale);
+        return extras;
+    }
+
+    private static boolean sameConfiguration(PersistableBundle a, PersistableBundle b) {
+        return String.valueOf(a.getString(EXTRA_LOTL_URL))
+                .equals(b.getString(EXTRA_LOTL_URL))
+                && Arrays.equals(a.getStringArray(EXTRA_LOTL_CERTIFICATES),
+                b.getStringArray(EXTRA_LOTL_CERTIFICATES));
+    }
+}
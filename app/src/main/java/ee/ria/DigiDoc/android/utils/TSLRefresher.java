@@ -0,0 +1,249 @@
+package ee.ria.DigiDoc.android.utils;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Refreshes the TSL files libdigidocpp has cached, so that validation doesn't have to wait
+ * for them to download.
+ * <p>
+ * Files are requested with the ETag of the cached copy and downloaded next to it under a
+ * unique temporary name, so concurrent refreshes don't overwrite each other's downloads. A download
+ * replaces the cached file only when it is not older than the cached one, has not expired and
+ * its XML signature is valid with a trusted certificate, see {@link TSLSignature}. Trusted
+ * certificates of the list of the lists come from the central configuration, those of the
+ * other lists from the list of the lists.
+ */
+public final class TSLRefresher {
+
+    /**
+     * Files expiring sooner than this are refreshed even when only stale files are requested.
+     */
+    private static final Duration STALE_BEFORE_NEXT_UPDATE = Duration.ofDays(2);
+
+    private static final String ETAG_EXTENSION = ".etag";
+    private static final String DOWNLOAD_EXTENSION = ".download";
+
+    private final File directory;
+    private final OkHttpClient httpClient;
+    private final String userAgent;
+
+    public TSLRefresher(File directory, OkHttpClient httpClient, String userAgent) {
+        this.directory = directory;
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * Refresh the list of the lists and every TSL it points to, downloading the ones that are
+     * not cached yet.
+     *
+     * @param lotlUrl URL of the list of the lists.
+     * @param lotlCertificates Base64 encoded certificates trusted to sign the list of the lists.
+     * @param onlyStale Whether to skip files that are not missing or about to expire.
+     * @return Number of files downloaded and stored.
+     * @throws Exception When the list of the lists could not be refreshed.
+     */
+    public int refresh(String lotlUrl, List<String> lotlCertificates, boolean onlyStale)
+            throws Exception {
+        HttpUrl url = HttpUrl.get(lotlUrl);
+        String lotlFileName = url.pathSegments().get(url.pathSize() - 1);
+        ImmutableSet.Builder<ByteString> trusted = ImmutableSet.builder();
+        for (String certificate : lotlCertificates) {
+            ByteString decoded = ByteString.decodeBase64(certificate);
+            if (decoded != null) {
+                trusted.add(decoded);
+            }
+        }
+
+        int replaced = 0;
+        Result lotl = refresh(lotlFileName, lotlUrl, null, trusted.build(), onlyStale);
+        if (lotl.replaced) {
+            replaced++;
+        }
+
+        Set<String> territories = new LinkedHashSet<>();
+        for (TSLInfo.Pointer pointer : lotl.info.pointers()) {
+            if (pointer.territory() != null && pointer.isXml()
+                    && !pointer.territory().equals(lotl.info.territory())
+                    && !pointer.location().equals(lotlUrl)) {
+                territories.add(pointer.territory());
+            }
+        }
+        for (String territory : territories) {
+            TSLInfo.Pointer pointer = lotl.info.pointer(territory);
+            String fileName = territory + ".xml";
+            if (pointer == null || fileName.equals(lotlFileName)) {
+                continue;
+            }
+            try {
+                if (refresh(fileName, pointer.location(), territory,
+                        ImmutableSet.copyOf(pointer.certificates()), onlyStale).replaced) {
+                    replaced++;
+                }
+            } catch (Exception e) {
+                Timber.log(Log.ERROR, e, "Failed to refresh %s TSL", territory);
+            }
+        }
+        return replaced;
+    }
+
+    private Result refresh(String fileName, String url, @Nullable String territory,
+                           ImmutableSet<ByteString> trusted, boolean onlyStale) throws Exception {
+        File file = new File(directory, fileName);
+        TSLInfo cached = read(file);
+        if (onlyStale && cached != null && !isStale(cached)) {
+            return new Result(cached, false);
+        }
+
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .header("User-Agent", userAgent);
+        String eTag = cached == null ? null : readETag(file);
+        if (eTag != null) {
+            request.header("If-None-Match", eTag);
+        }
+        try (Response response = httpClient.newCall(request.build()).execute()) {
+            if (response.code() == 304 && cached != null) {
+                Timber.log(Log.DEBUG, "%s not modified", fileName);
+                return new Result(cached, false);
+            }
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Downloading " + fileName + " failed with status "
+                        + response.code());
+            }
+
+            File download = File.createTempFile(fileName, DOWNLOAD_EXTENSION, directory);
+            try {
+                try (BufferedSink sink = Okio.buffer(Okio.sink(download))) {
+                    sink.writeAll(body.source());
+                }
+                TSLInfo downloaded;
+                try (InputStream inputStream = new FileInputStream(download)) {
+                    downloaded = TSLUtil.readInfo(inputStream);
+                }
+                check(fileName, downloaded, cached, territory);
+                TSLSignature.verify(download, trusted);
+                if (!download.renameTo(file)) {
+                    throw new IOException("Failed to replace " + fileName);
+                }
+                writeETag(file, response.header("ETag"));
+                Timber.log(Log.DEBUG, "%s updated to sequence number %d", fileName,
+                        downloaded.sequenceNumber());
+                return new Result(downloaded, true);
+            } finally {
+                if (download.exists() && !download.delete()) {
+                    Timber.log(Log.ERROR, "Failed to delete %s", download);
+                }
+            }
+        }
+    }
+
+    private static void check(String fileName, TSLInfo downloaded, @Nullable TSLInfo cached,
+                              @Nullable String territory) {
+        if (territory != null && !territory.equals(downloaded.territory())) {
+            throw new TSLException(fileName + " is for territory " + downloaded.territory());
+        }
+        if (cached != null && downloaded.sequenceNumber() < cached.sequenceNumber()) {
+            throw new TSLException(fileName + " sequence number " + downloaded.sequenceNumber()
+                    + " is older than cached " + cached.sequenceNumber());
+        }
+        if (downloaded.nextUpdate() != null && downloaded.nextUpdate().isBefore(Instant.now())) {
+            throw new TSLException(fileName + " expired at " + downloaded.nextUpdate());
+        }
+    }
+
+    private static boolean isStale(TSLInfo info) {
+        return info.nextUpdate() == null
+                || info.nextUpdate().minus(STALE_BEFORE_NEXT_UPDATE).isBefore(Instant.now());
+    }
+
+    @Nullable
+    private static TSLInfo read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return TSLUtil.readInfo(inputStream);
+        } catch (Exception e) {
+            Timber.log(Log.ERROR, e, "Failed to read cached %s", file.getName());
+            return null;
+        }
+    }
+
+    @Nullable
+    private static String readETag(File file) {
+        File eTagFile = new File(file.getPath() + ETAG_EXTENSION);
+        if (!eTagFile.isFile()) {
+            return null;
+        }
+        try (BufferedSource source = Okio.buffer(Okio.source(eTagFile))) {
+            String eTag = source.readUtf8().trim();
+            return eTag.isEmpty() ? null : eTag;
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Failed to read %s", eTagFile.getName());
+            return null;
+        }
+    }
+
+    private static void writeETag(File file, @Nullable String eTag) throws IOException {
+        File eTagFile = new File(file.getPath() + ETAG_EXTENSION);
+        if (eTag == null) {
+            if (eTagFile.exists() && !eTagFile.delete()) {
+                throw new IOException("Failed to delete " + eTagFile.getName());
+            }
+            return;
+        }
+        File download = File.createTempFile(eTagFile.getName(), DOWNLOAD_EXTENSION,
+                eTagFile.getParentFile());
+        try {
+            try (BufferedSink sink = Okio.buffer(Okio.sink(download))) {
+                sink.write(eTag.getBytes(StandardCharsets.UTF_8));
+            }
+            if (!download.renameTo(eTagFile)) {
+                throw new IOException("Failed to replace " + eTagFile.getName());
+            }
+        } finally {
+            if (download.exists() && !download.delete()) {
+                Timber.log(Log.ERROR, "Failed to delete %s", download);
+            }
+        }
+    }
+
+    private static final class Result {
+
+        final TSLInfo info;
+        final boolean replaced;
+
+        Result(TSLInfo info, boolean replaced) {
+            this.info = info;
+            this.replaced = replaced;
+        }
+    }
+}
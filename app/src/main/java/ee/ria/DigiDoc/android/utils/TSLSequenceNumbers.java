@@ -0,0 +1,95 @@
+package ee.ria.DigiDoc.android.utils;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import timber.log.Timber;
+
+/**
+ * Sequence numbers of cached TSL files, kept in a sidecar file in the same directory.
+ * <p>
+ * libdigidocpp replaces cached TSLs when it downloads newer ones, so a record also holds the
+ * size and modification time of the file it was read from. When those don't match, the file is
+ * parsed again and the record updated.
+ */
+public final class TSLSequenceNumbers {
+
+    private static final String FILE_NAME = "tsl-sequence-numbers.properties";
+
+    private final File dir;
+    private final Properties records;
+    private boolean changed;
+
+    private TSLSequenceNumbers(File dir, Properties records) {
+        this.dir = dir;
+        this.records = records;
+    }
+
+    public static TSLSequenceNumbers load(File dir) {
+        Properties records = new Properties();
+        File file = new File(dir, FILE_NAME);
+        if (file.isFile()) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                records.load(inputStream);
+            } catch (IOException | IllegalArgumentException e) {
+                Timber.log(Log.ERROR, e, "Failed to read TSL sequence numbers");
+                records.clear();
+            }
+        }
+        return new TSLSequenceNumbers(dir, records);
+    }
+
+    /**
+     * @param fileName Name of the cached TSL file.
+     * @return Sequence number of the cached TSL, null if it doesn't exist.
+     */
+    @Nullable
+    public Integer get(String fileName) throws Exception {
+        File file = new File(dir, fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        String[] record = records.getProperty(fileName, "").split(":");
+        if (record.length == 3 && record[1].equals(Long.toString(file.length()))
+                && record[2].equals(Long.toString(file.lastModified()))) {
+            return Integer.parseInt(record[0]);
+        }
+        int sequenceNumber;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            sequenceNumber = TSLUtil.readSequenceNumber(inputStream);
+        }
+        put(fileName, sequenceNumber);
+        return sequenceNumber;
+    }
+
+    /**
+     * Record the sequence number of a TSL file that was just written to the cache.
+     */
+    public void put(String fileName, int sequenceNumber) {
+        File file = new File(dir, fileName);
+        records.setProperty(fileName,
+                sequenceNumber + ":" + file.length() + ":" + file.lastModified());
+        changed = true;
+    }
+
+    public void save() {
+        if (!changed) {
+            return;
+        }
+        try (OutputStream outputStream = new FileOutputStream(new File(dir, FILE_NAME))) {
+            records.store(outputStream, null);
+            changed = false;
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Failed to write TSL sequence numbers");
+        }
+    }
+}
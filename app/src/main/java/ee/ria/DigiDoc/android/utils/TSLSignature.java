@@ -0,0 +1,521 @@
+package ee.ria.DigiDoc.android.utils;
+
+import android.util.Log;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import okio.ByteString;
+import timber.log.Timber;
+
+/**
+ * Verifies the enveloped XML signature of a TSL before it replaces the cached one.
+ * <p>
+ * Android has no XML signature API, so this covers only what TSLs use: exclusive
+ * canonicalization, the enveloped signature transform, same document references and RSA or
+ * ECDSA signatures with SHA-2. Anything else is rejected. The signature must have a reference
+ * to the whole document, so everything read from the TSL is covered by it.
+ */
+public final class TSLSignature {
+
+    private static final String XMLDSIG_NAMESPACE = "http://www.w3.org/2000/09/xmldsig#";
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+    private static final String EXC_C14N = "http://www.w3.org/2001/10/xml-exc-c14n#";
+    private static final String ENVELOPED_SIGNATURE =
+            "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+
+    private static final String DISALLOW_DOCTYPE =
+            "http://apache.org/xml/features/disallow-doctype-decl";
+    private static final String EXTERNAL_GENERAL_ENTITIES =
+            "http://xml.org/sax/features/external-general-entities";
+    private static final String EXTERNAL_PARAMETER_ENTITIES =
+            "http://xml.org/sax/features/external-parameter-entities";
+
+    private static final ImmutableMap<String, String> DIGEST_ALGORITHMS =
+            ImmutableMap.<String, String>builder()
+                    .put("http://www.w3.org/2001/04/xmlenc#sha256", "SHA-256")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#sha384", "SHA-384")
+                    .put("http://www.w3.org/2001/04/xmlenc#sha512", "SHA-512")
+                    .build();
+
+    private static final ImmutableMap<String, String> SIGNATURE_ALGORITHMS =
+            ImmutableMap.<String, String>builder()
+                    .put("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", "SHA256withRSA")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#rsa-sha384", "SHA384withRSA")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#rsa-sha512", "SHA512withRSA")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha256",
+                            "SHA256withECDSA")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha384",
+                            "SHA384withECDSA")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#ecdsa-sha512",
+                            "SHA512withECDSA")
+                    .build();
+
+    private TSLSignature() {}
+
+    /**
+     * Verify the signature of a TSL file.
+     *
+     * @param file TSL file.
+     * @param trusted DER encoded certificates, one of which must have made the signature.
+     * @throws TSLException When the signature is missing, unsupported or not valid with any of
+     *                      the trusted certificates.
+     */
+    public static void verify(File file, ImmutableSet<ByteString> trusted) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setCoalescing(true);
+        factory.setExpandEntityReferences(false);
+        setFeature(factory, DISALLOW_DOCTYPE, true);
+        setFeature(factory, EXTERNAL_GENERAL_ENTITIES, false);
+        setFeature(factory, EXTERNAL_PARAMETER_ENTITIES, false);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(file);
+        if (document.getDoctype() != null) {
+            throw new TSLException(file.getName() + " has a document type declaration");
+        }
+        verify(document, trusted);
+    }
+
+    /**
+     * Android's parser doesn't support these features and throws. It doesn't load external
+     * entities, and a document type declaration is still rejected after parsing.
+     */
+    private static void setFeature(DocumentBuilderFactory factory, String name, boolean value) {
+        try {
+            factory.setFeature(name, value);
+        } catch (ParserConfigurationException e) {
+            Timber.log(Log.DEBUG, "XML parser does not support %s", name);
+        }
+    }
+
+    static void verify(Document document, ImmutableSet<ByteString> trusted) throws Exception {
+        Element root = document.getDocumentElement();
+        Element signature = null;
+        for (Element child : children(root)) {
+            if (is(child, "Signature")) {
+                if (signature != null) {
+                    throw new TSLException("TSL has more than one signature");
+                }
+                signature = child;
+            }
+        }
+        if (signature == null) {
+            throw new TSLException("TSL is not signed");
+        }
+        Element signedInfo = child(signature, "SignedInfo");
+        Element signatureValue = child(signature, "SignatureValue");
+
+        if (!EXC_C14N.equals(child(signedInfo, "CanonicalizationMethod")
+                .getAttribute("Algorithm"))) {
+            throw new TSLException("Unsupported canonicalization of TSL signature");
+        }
+        String signatureAlgorithm = SIGNATURE_ALGORITHMS.get(
+                child(signedInfo, "SignatureMethod").getAttribute("Algorithm"));
+        if (signatureAlgorithm == null) {
+            throw new TSLException("Unsupported TSL signature method");
+        }
+
+        boolean wholeDocument = false;
+        for (Element reference : children(signedInfo)) {
+            if (is(reference, "Reference")) {
+                wholeDocument |= checkReference(document, signature, reference);
+            }
+        }
+        if (!wholeDocument) {
+            throw new TSLException("TSL signature does not cover the whole document");
+        }
+
+        byte[] canonicalSignedInfo = canonicalize(signedInfo, null, null);
+        byte[] value = decodeBase64(signatureValue);
+        for (ByteString certificate : trusted) {
+            PublicKey publicKey;
+            try {
+                publicKey = certificate(certificate).getPublicKey();
+            } catch (CertificateException e) {
+                continue;
+            }
+            java.security.Signature verifier =
+                    java.security.Signature.getInstance(signatureAlgorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(canonicalSignedInfo);
+            byte[] encodedValue = signatureAlgorithm.endsWith("ECDSA")
+                    ? ecdsaDer(value)
+                    : value;
+            if (encodedValue != null && verifier.verify(encodedValue)) {
+                return;
+            }
+        }
+        throw new TSLException("TSL is not signed with a trusted certificate");
+    }
+
+    /**
+     * @return Whether the reference is to the whole document.
+     */
+    private static boolean checkReference(Document document, Element signature,
+                                          Element reference) throws Exception {
+        if (!reference.hasAttribute("URI")) {
+            throw new TSLException("TSL signature reference has no URI");
+        }
+        String uri = reference.getAttribute("URI");
+        Node target;
+        if (uri.isEmpty()) {
+            target = document;
+        } else if (uri.startsWith("#")) {
+            target = elementById(document.getDocumentElement(), uri.substring(1));
+        } else {
+            throw new TSLException("Unsupported TSL signature reference " + uri);
+        }
+
+        Element excluded = null;
+        Element transforms = optionalChild(reference, "Transforms");
+        String inclusivePrefixes = null;
+        boolean canonicalized = false;
+        if (transforms != null) {
+            for (Element transform : children(transforms)) {
+                String algorithm = transform.getAttribute("Algorithm");
+                if (ENVELOPED_SIGNATURE.equals(algorithm) && !canonicalized) {
+                    excluded = signature;
+                } else if (EXC_C14N.equals(algorithm) && !canonicalized) {
+                    canonicalized = true;
+                    for (Element parameter : children(transform)) {
+                        if ("InclusiveNamespaces".equals(parameter.getLocalName())) {
+                            inclusivePrefixes = parameter.getAttribute("PrefixList");
+                        }
+                    }
+                } else {
+                    throw new TSLException("Unsupported TSL signature transform " + algorithm);
+                }
+            }
+        }
+
+        if (!canonicalized) {
+            throw new TSLException("TSL signature reference " + uri + " is not canonicalized");
+        }
+
+        String digestAlgorithm = DIGEST_ALGORITHMS.get(
+                child(reference, "DigestMethod").getAttribute("Algorithm"));
+        if (digestAlgorithm == null) {
+            throw new TSLException("Unsupported TSL signature digest method");
+        }
+        byte[] digest = MessageDigest.getInstance(digestAlgorithm)
+                .digest(canonicalize(target, excluded, inclusivePrefixes));
+        if (!MessageDigest.isEqual(digest, decodeBase64(child(reference, "DigestValue")))) {
+            throw new TSLException("TSL signature reference " + uri + " does not match");
+        }
+        return uri.isEmpty();
+    }
+
+    private static Element elementById(Element root, String id) {
+        List<Element> found = new ArrayList<>();
+        findById(root, id, found);
+        if (found.size() != 1) {
+            throw new TSLException("TSL has " + found.size() + " elements with ID " + id);
+        }
+        return found.get(0);
+    }
+
+    private static void findById(Element element, String id, List<Element> found) {
+        if (id.equals(element.getAttribute("Id"))) {
+            found.add(element);
+        }
+        for (Element child : children(element)) {
+            findById(child, id, found);
+        }
+    }
+
+    private static byte[] canonicalize(Node node, Element excluded,
+                                       String inclusivePrefixes) throws IOException {
+        ExclusiveCanonicalizer canonicalizer = new ExclusiveCanonicalizer(excluded,
+                inclusivePrefixes == null || inclusivePrefixes.trim().isEmpty()
+                        ? ImmutableSet.of()
+                        : ImmutableSet.copyOf(inclusivePrefixes.trim().split("\\s+")));
+        return canonicalizer.canonicalize(node);
+    }
+
+    private static X509Certificate certificate(ByteString der) throws CertificateException {
+        return (X509Certificate) CertificateFactory.getInstance("X.509")
+                .generateCertificate(new ByteArrayInputStream(der.toByteArray()));
+    }
+
+    private static byte[] decodeBase64(Element element) {
+        ByteString decoded = ByteString.decodeBase64(
+                element.getTextContent().replaceAll("\\s+", ""));
+        if (decoded == null) {
+            throw new TSLException("Invalid base64 in TSL " + element.getLocalName());
+        }
+        return decoded.toByteArray();
+    }
+
+    /**
+     * Convert an XML signature ECDSA value, r and s concatenated, to DER.
+     */
+    private static byte[] ecdsaDer(byte[] value) {
+        if (value.length == 0 || value.length % 2 != 0) {
+            return null;
+        }
+        int half = value.length / 2;
+        byte[] r = new BigInteger(1, Arrays.copyOfRange(value, 0, half)).toByteArray();
+        byte[] s = new BigInteger(1, Arrays.copyOfRange(value, half, value.length))
+                .toByteArray();
+        int length = 2 + r.length + 2 + s.length;
+        okio.Buffer der = new okio.Buffer().writeByte(0x30);
+        if (length > 0x7f) {
+            der.writeByte(0x81);
+        }
+        der.writeByte(length)
+                .writeByte(0x02).writeByte(r.length).write(r)
+                .writeByte(0x02).writeByte(s.length).write(s);
+        return der.readByteArray();
+    }
+
+    private static boolean is(Element element, String localName) {
+        return localName.equals(element.getLocalName())
+                && XMLDSIG_NAMESPACE.equals(element.getNamespaceURI());
+    }
+
+    private static Element child(Element parent, String localName) {
+        Element child = optionalChild(parent, localName);
+        if (child == null) {
+            throw new TSLException("TSL signature has no " + localName);
+        }
+        return child;
+    }
+
+    private static Element optionalChild(Element parent, String localName) {
+        for (Element child : children(parent)) {
+            if (is(child, localName)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> children(Element parent) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Exclusive XML canonicalization without comments of an element subtree, optionally
+     * leaving out one element in it.
+     */
+    private static final class ExclusiveCanonicalizer {
+
+        private final Element excluded;
+        private final ImmutableSet<String> inclusivePrefixes;
+
+        ExclusiveCanonicalizer(Element excluded, ImmutableSet<String> inclusivePrefixes) {
+            this.excluded = excluded;
+            this.inclusivePrefixes = inclusivePrefixes;
+        }
+
+        /**
+         * @param node Element or document to canonicalize.
+         */
+        byte[] canonicalize(Node node) throws IOException {
+            okio.Buffer buffer = new okio.Buffer();
+            try (Writer writer = new OutputStreamWriter(buffer.outputStream(),
+                    StandardCharsets.UTF_8)) {
+                if (node.getNodeType() == Node.DOCUMENT_NODE) {
+                    writeDocument(writer, (Document) node);
+                } else {
+                    write(writer, (Element) node, new HashMap<>());
+                }
+            }
+            return buffer.readByteArray();
+        }
+
+        /**
+         * Processing instructions outside the document element are separated from it with
+         * line feeds, comments and the document type are left out.
+         */
+        private void writeDocument(Writer writer, Document document) throws IOException {
+            boolean afterElement = false;
+            for (Node node = document.getFirstChild(); node != null;
+                 node = node.getNextSibling()) {
+                if (node.getNodeType() == Node.ELEMENT_NODE) {
+                    write(writer, (Element) node, new HashMap<>());
+                    afterElement = true;
+                } else if (node.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE) {
+                    if (afterElement) {
+                        writer.write('\n');
+                    }
+                    writeProcessingInstruction(writer, node);
+                    if (!afterElement) {
+                        writer.write('\n');
+                    }
+                }
+            }
+        }
+
+        private static void writeProcessingInstruction(Writer writer, Node node)
+                throws IOException {
+            writer.write("<?");
+            writer.write(node.getNodeName());
+            String data = node.getNodeValue();
+            if (data != null && !data.isEmpty()) {
+                writer.write(' ');
+                writer.write(data);
+            }
+            writer.write("?>");
+        }
+
+        private void write(Writer writer, Element element, Map<String, String> rendered)
+                throws IOException {
+            if (element == excluded) {
+                return;
+            }
+            Map<String, String> utilized = new TreeMap<>();
+            utilized.put(prefix(element), uri(element.getNamespaceURI()));
+            Map<String, Attr> attributes = new TreeMap<>();
+            NamedNodeMap attributeNodes = element.getAttributes();
+            for (int i = 0; i < attributeNodes.getLength(); i++) {
+                Attr attribute = (Attr) attributeNodes.item(i);
+                String namespace = uri(attribute.getNamespaceURI());
+                if (XMLNS_NAMESPACE.equals(namespace)) {
+                    continue;
+                }
+                String prefix = attribute.getPrefix();
+                if (prefix != null && !XML_NAMESPACE.equals(namespace)) {
+                    utilized.put(prefix, namespace);
+                }
+                String localName = attribute.getLocalName() != null
+                        ? attribute.getLocalName()
+                        : attribute.getName();
+                attributes.put(namespace + '\u0000' + localName, attribute);
+            }
+            for (String prefix : inclusivePrefixes) {
+                String key = prefix.equals("#default") ? "" : prefix;
+                String namespace = element.lookupNamespaceURI(key.isEmpty() ? null : key);
+                if (namespace != null && !utilized.containsKey(key)) {
+                    utilized.put(key, namespace);
+                }
+            }
+
+            Map<String, String> childRendered = new HashMap<>(rendered);
+            writer.write('<');
+            writer.write(element.getTagName());
+            for (Map.Entry<String, String> namespace : utilized.entrySet()) {
+                String prefix = namespace.getKey();
+                String uri = namespace.getValue();
+                String current = rendered.get(prefix);
+                boolean render = prefix.isEmpty() && uri.isEmpty()
+                        ? current != null && !current.isEmpty()
+                        : !uri.equals(current);
+                if (render) {
+                    writer.write(prefix.isEmpty() ? " xmlns=\"" : " xmlns:" + prefix + "=\"");
+                    writeEscaped(writer, uri, true);
+                    writer.write('"');
+                    childRendered.put(prefix, uri);
+                }
+            }
+            for (Attr attribute : attributes.values()) {
+                writer.write(' ');
+                writer.write(attribute.getName());
+                writer.write("=\"");
+                writeEscaped(writer, attribute.getValue(), true);
+                writer.write('"');
+            }
+            writer.write('>');
+
+            for (Node node = element.getFirstChild(); node != null;
+                 node = node.getNextSibling()) {
+                switch (node.getNodeType()) {
+                    case Node.ELEMENT_NODE:
+                        write(writer, (Element) node, childRendered);
+                        break;
+                    case Node.TEXT_NODE:
+                    case Node.CDATA_SECTION_NODE:
+                        writeEscaped(writer, node.getNodeValue(), false);
+                        break;
+                    case Node.PROCESSING_INSTRUCTION_NODE:
+                        writeProcessingInstruction(writer, node);
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            writer.write("</");
+            writer.write(element.getTagName());
+            writer.write('>');
+        }
+
+        private static String prefix(Element element) {
+            return element.getPrefix() == null ? "" : element.getPrefix();
+        }
+
+        private static String uri(String namespace) {
+            return namespace == null ? "" : namespace;
+        }
+
+        private static void writeEscaped(Writer writer, String text, boolean attribute)
+                throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '&':
+                        writer.write("&amp;");
+                        break;
+                    case '<':
+                        writer.write("&lt;");
+                        break;
+                    case '>':
+                        writer.write(attribute ? ">" : "&gt;");
+                        break;
+                    case '"':
+                        writer.write(attribute ? "&quot;" : "\"");
+                        break;
+                    case '\t':
+                        writer.write(attribute ? "&#x9;" : "\t");
+                        break;
+                    case '\n':
+                        writer.write(attribute ? "&#xA;" : "\n");
+                        break;
+                    case '\r':
+                        writer.write("&#xD;");
+                        break;
+                    default:
+                        writer.write(c);
+                        break;
+                }
+            }
+        }
+    }
+}
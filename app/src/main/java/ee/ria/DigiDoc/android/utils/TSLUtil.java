@@ -4,13 +4,28 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
+import com.google.common.collect.ImmutableList;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import okio.ByteString;
 
 public final class TSLUtil {
 
     private static final String TSL_SEQUENCE_NUMBER_ELEMENT = "TSLSequenceNumber";
 
+    /**
+     * Manifest of sequence numbers of TSL files in the assets, generated at build time.
+     */
+    public static final String MANIFEST = "tslFiles.properties";
+
     private TSLUtil() {}
 
     public static Integer readSequenceNumber(InputStream tslInputStream) throws XmlPullParserException, IOException {
@@ -28,4 +43,108 @@ public final class TSLUtil {
         throw new TSLException("Error reading version from TSL");
     }
 
+    /**
+     * Read the fields needed to check a TSL before it replaces the cached one.
+     * <p>
+     * The signature is not verified here, see {@link TSLSignature}.
+     */
+    public static TSLInfo readInfo(InputStream tslInputStream) throws XmlPullParserException, IOException {
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        XmlPullParser parser = factory.newPullParser();
+        parser.setInput(tslInputStream, null);
+
+        Integer sequenceNumber = null;
+        String territory = null;
+        Instant nextUpdate = null;
+        ImmutableList.Builder<TSLInfo.Pointer> pointers = ImmutableList.builder();
+
+        boolean inNextUpdate = false;
+        boolean inPointer = false;
+        String pointerLocation = null;
+        String pointerTerritory = null;
+        String pointerMimeType = null;
+        ImmutableList.Builder<ByteString> pointerCertificates = null;
+
+        int eventType = parser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                String name = parser.getName();
+                if (name.equals("OtherTSLPointer")) {
+                    inPointer = true;
+                    pointerLocation = null;
+                    pointerTerritory = null;
+                    pointerMimeType = null;
+                    pointerCertificates = ImmutableList.builder();
+                } else if (name.equals("NextUpdate") && !inPointer) {
+                    inNextUpdate = true;
+                } else if (name.equals("X509Certificate") && inPointer) {
+                    ByteString certificate = ByteString.decodeBase64(
+                            parser.nextText().replaceAll("\\s+", ""));
+                    if (certificate != null) {
+                        pointerCertificates.add(certificate);
+                    }
+                } else if (name.equals(TSL_SEQUENCE_NUMBER_ELEMENT) && !inPointer) {
+                    sequenceNumber = Integer.parseInt(parser.nextText().trim());
+                } else if (name.equals("SchemeTerritory")) {
+                    if (inPointer) {
+                        pointerTerritory = parser.nextText().trim();
+                    } else if (territory == null) {
+                        territory = parser.nextText().trim();
+                    }
+                } else if (name.equals("dateTime") && inNextUpdate) {
+                    nextUpdate = readDateTime(parser.nextText().trim());
+                } else if (name.equals("TSLLocation") && inPointer) {
+                    pointerLocation = parser.nextText().trim();
+                } else if (name.equals("MimeType") && inPointer) {
+                    String mimeType = parser.nextText().trim();
+                    pointerMimeType = mimeType.isEmpty() ? null : mimeType;
+                }
+            } else if (eventType == XmlPullParser.END_TAG) {
+                String name = parser.getName();
+                if (name.equals("NextUpdate")) {
+                    inNextUpdate = false;
+                } else if (name.equals("OtherTSLPointer")) {
+                    inPointer = false;
+                    if (pointerLocation != null) {
+                        pointers.add(TSLInfo.Pointer.create(pointerLocation, pointerTerritory,
+                                pointerMimeType, pointerCertificates.build()));
+                    }
+                }
+            }
+            eventType = parser.next();
+        }
+        if (sequenceNumber == null) {
+            throw new TSLException("Error reading version from TSL");
+        }
+        return TSLInfo.create(sequenceNumber, territory, nextUpdate, pointers.build());
+    }
+
+    private static Instant readDateTime(String text) {
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new TSLException("Invalid date in TSL: " + text);
+        }
+    }
+
+    /**
+     * Read the sequence numbers from a {@link #MANIFEST}.
+     *
+     * @return TSL file names mapped to sequence numbers.
+     */
+    public static Map<String, Integer> readManifest(InputStream manifestInputStream) throws IOException {
+        Properties properties = new Properties();
+        properties.load(manifestInputStream);
+        Map<String, Integer> sequenceNumbers = new HashMap<>();
+        for (String fileName : properties.stringPropertyNames()) {
+            try {
+                sequenceNumbers.put(fileName, Integer.parseInt(properties.getProperty(fileName).trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid sequence number for " + fileName, e);
+            }
+        }
+        return sequenceNumbers;
+    }
+
 }
@@ -1,13 +1,18 @@
 package ee.ria.DigiDoc.android.utils.files;
 
 import static ee.ria.DigiDoc.android.Constants.DIR_EXTERNALLY_OPENED_FILES;
+import static ee.ria.DigiDoc.android.Constants.DIR_SCHEMA;
 import static ee.ria.DigiDoc.android.Constants.DIR_SIGNATURE_CONTAINERS;
+import static ee.ria.DigiDoc.android.Constants.DIR_SIGNATURE_VALIDATION_CACHE;
+import static ee.ria.DigiDoc.android.Constants.FILE_CONTAINER_INDEX;
 
 import android.app.Application;
 import android.content.Context;
 import android.util.Log;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
@@ -19,27 +24,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
-import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
 import ee.ria.DigiDoc.common.FileUtil;
 import ee.ria.DigiDoc.crypto.CryptoContainer;
+import ee.ria.DigiDoc.sign.DataFile;
 import ee.ria.DigiDoc.sign.SignedContainer;
 import timber.log.Timber;
 
 public final class FileSystem {
 
-    private static final Comparator<File> FILE_MODIFIED_DATE_COMPARATOR = (o1, o2) -> {
-        if (o1.lastModified() == o2.lastModified()) {
-            return 0;
-        }
-        return o1.lastModified() > o2.lastModified() ? -1 : 1;
-    };
-
     private static final String DATA_FILE_DIR = "%s-data-files";
 
     private final Application application;
@@ -70,6 +67,20 @@ public final class FileSystem {
         return file;
     }
 
+    /**
+     * Move an already cached file to signature containers without copying it again.
+     *
+     * @param file Cached file, usually from {@link #ingest(FileStream)}.
+     * @param name Display name of the container.
+     * @return File that the container was moved to.
+     * @throws IOException When the file cannot be moved.
+     */
+    public File addSignatureContainer(File file, String name) throws IOException {
+        File containerFile = generateSignatureContainerFile(name);
+        Files.move(file, containerFile);
+        return containerFile;
+    }
+
     /**
      * Generate signature container file.
      *
@@ -92,20 +103,26 @@ public final class FileSystem {
     /**
      * Get all signature container files currently cached on the device.
      *
-     * The files are sorted by modified date.
+     * The files are not sorted, use the container index for a sorted list.
      *
      * @return File objects for signature containers.
      */
-    public ImmutableList<File> findSignatureContainerFiles() {
+    public ImmutableList<File> listSignatureContainerFiles() {
         File[] signatureContainerFileList = signatureContainersDir().listFiles();
         if (signatureContainerFileList != null) {
-            return ImmutableList.sortedCopyOf(FILE_MODIFIED_DATE_COMPARATOR,
-                    ImmutableList.copyOf(signatureContainerFileList));
+            return ImmutableList.copyOf(signatureContainerFileList);
         }
 
         return ImmutableList.copyOf(new File[]{});
     }
 
+    /**
+     * Check whether the file is stored in the signature containers directory.
+     */
+    public boolean isSignatureContainerFile(File file) {
+        return signatureContainersDir().equals(file.getParentFile());
+    }
+
     /**
      * Add file stream to local cache.
      *
@@ -124,6 +141,28 @@ public final class FileSystem {
         return file;
     }
 
+    /**
+     * Add file stream to local cache, calculating the SHA-256 digest while copying.
+     * <p>
+     * The stream is read once, the cached file can then be moved to its final location with
+     * {@link #addSignatureContainer(File, String)} or used as a data file as is.
+     *
+     * @param fileStream File stream to cache.
+     * @return Cached file and its digest.
+     * @throws IOException When something fails.
+     */
+    public IngestedFile ingest(FileStream fileStream) throws IOException {
+        File file = getCacheFile(fileStream.displayName());
+        try (
+                InputStream inputStream = fileStream.source().openStream();
+                HashingOutputStream outputStream = new HashingOutputStream(Hashing.sha256(),
+                        new FileOutputStream(file))
+        ) {
+            ByteStreams.copy(inputStream, outputStream);
+            return IngestedFile.create(file, outputStream.hash().toString());
+        }
+    }
+
     public File getContainerDataFilesDir(File containerFile) {
         File directory;
         if (containerFile.getParentFile().equals(signatureContainersDir())) {
@@ -143,6 +182,25 @@ public final class FileSystem {
         return dir;
     }
 
+    /**
+     * Directory where libdigidocpp keeps its schema and TSL files.
+     */
+    public File getSchemaDir() {
+        return new File(cacheDir(), DIR_SCHEMA);
+    }
+
+    public File getSignatureValidationCacheDir() {
+        return new File(cacheDir(), DIR_SIGNATURE_VALIDATION_CACHE);
+    }
+
+    /**
+     * File where the index of signature containers is stored, outside of the containers
+     * directory so that it is never listed as a container.
+     */
+    public File getContainerIndexFile() {
+        return new File(application.getFilesDir(), FILE_CONTAINER_INDEX);
+    }
+
     /**
      * Check if byte stream has invalid size in list.
      *
@@ -186,8 +244,12 @@ public final class FileSystem {
         try {
             if (SignedContainer.isContainer(context, containerFile)) {
                 try {
-                    SignedContainer signedContainer = SignedContainer.open(containerFile);
-                    return signedContainer.hasEmptyFiles();
+                    for (DataFile dataFile : SignedContainer.listDataFiles(containerFile)) {
+                        if (dataFile.size() == 0) {
+                            return true;
+                        }
+                    }
+                    return false;
                 } catch (Exception e) {
                     Timber.log(Log.ERROR, e, "Unable to check files in container");
                     return false;
@@ -200,24 +262,15 @@ public final class FileSystem {
     }
 
     /**
-     * Filter out container files
+     * Check whether the file is a signature or crypto container.
      *
      * @param context Context.
-     * @param files List of files.
-     * @return ImmutableList<File> of containers only.
+     * @param file File to check.
+     * @return True if the file should be listed as a container.
+     * @throws Exception When checking a signed PDF fails.
      */
-    public static ImmutableList<File> filterContainers(Context context, ImmutableList<File> files) {
-        return ImmutableList.copyOf(files.stream()
-                .filter(file -> {
-                    try {
-                        return SignedContainer.isContainer(context, file) ||
-                                CryptoContainer.isCryptoContainer(file);
-                    } catch (Exception e) {
-                        Timber.log(Log.ERROR, e, "Unable to check if file is a container");
-                        return false;
-                    }
-                })
-                .collect(Collectors.toList()));
+    public static boolean isContainer(Context context, File file) throws Exception {
+        return SignedContainer.isContainer(context, file) || CryptoContainer.isCryptoContainer(file);
     }
 
     private File cacheDir() {
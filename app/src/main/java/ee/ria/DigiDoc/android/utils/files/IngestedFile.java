@@ -0,0 +1,23 @@
+package ee.ria.DigiDoc.android.utils.files;
+
+import com.google.auto.value.AutoValue;
+
+import java.io.File;
+
+/**
+ * File stream written to the device with the digest calculated while copying.
+ */
+@AutoValue
+public abstract class IngestedFile {
+
+    public abstract File file();
+
+    /**
+     * Lower-case hex SHA-256 of the file content.
+     */
+    public abstract String sha256();
+
+    public static IngestedFile create(File file, String sha256) {
+        return new AutoValue_IngestedFile(file, sha256);
+    }
+}
@@ -0,0 +1,106 @@
+package ee.ria.DigiDoc.android.signature.data.source;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import ee.ria.DigiDoc.android.signature.data.ContainerIndexEntry;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ContainerSearchIndexTest {
+
+    private static final File CONTRACT = new File("Õunaleping_2023.asice");
+    private static final File INVOICE = new File("arve.bdoc");
+
+    @Test
+    public void search_prefixIgnoresAccentsAndCase() {
+        ContainerSearchIndex index = index();
+
+        assertThat(index.search("ouna"))
+                .containsExactly(CONTRACT);
+        assertThat(index.search("ÕUN"))
+                .containsExactly(CONTRACT);
+        assertThat(index.search("2023"))
+                .containsExactly(CONTRACT);
+    }
+
+    @Test
+    public void search_signers() {
+        ContainerSearchIndex index = index();
+
+        assertThat(index.search("joeorg"))
+                .containsExactly(CONTRACT, INVOICE);
+        assertThat(index.search("3800108"))
+                .containsExactly(CONTRACT);
+    }
+
+    @Test
+    public void search_allTermsMustMatch() {
+        ContainerSearchIndex index = index();
+
+        assertThat(index.search("jõeorg arve"))
+                .containsExactly(INVOICE);
+        assertThat(index.search("ouna arve"))
+                .isEmpty();
+    }
+
+    @Test
+    public void search_dataFileNames() {
+        ContainerSearchIndex index = index();
+
+        assertThat(index.search("Lisa-1"))
+                .containsExactly(INVOICE);
+    }
+
+    @Test
+    public void search_noTerms() {
+        ContainerSearchIndex index = index();
+
+        assertThat(index.search(" _.- "))
+                .isNull();
+    }
+
+    @Test
+    public void remove() {
+        ContainerSearchIndex index = index();
+
+        index.remove(CONTRACT);
+
+        assertThat(index.search("joeorg"))
+                .containsExactly(INVOICE);
+        assertThat(index.search("ouna"))
+                .isEmpty();
+    }
+
+    @Test
+    public void put_replacesTerms() {
+        ContainerSearchIndex index = index();
+
+        index.put(entry(CONTRACT, ImmutableList.of(), ImmutableList.of(), ImmutableList.of()));
+
+        assertThat(index.search("3800108"))
+                .isEmpty();
+        assertThat(index.search("ouna"))
+                .containsExactly(CONTRACT);
+    }
+
+    private static ContainerSearchIndex index() {
+        ContainerSearchIndex index = new ContainerSearchIndex();
+        index.put(entry(CONTRACT, ImmutableList.of("leping.pdf"),
+                ImmutableList.of("JÕEORG,JAAK-KRISTJAN,38001085718"),
+                ImmutableList.of("PNOEE-38001085718")));
+        index.put(entry(INVOICE, ImmutableList.of("arve.pdf", "lisa-1.xlsx"),
+                ImmutableList.of("Jõeorg, Mari"), ImmutableList.of()));
+        return index;
+    }
+
+    private static ContainerIndexEntry entry(File file, ImmutableList<String> dataFileNames,
+                                             ImmutableList<String> signerNames,
+                                             ImmutableList<String> signerCodes) {
+        return ContainerIndexEntry.create(file, 1, 1, true, dataFileNames.size(), dataFileNames,
+                signerNames.size(), null, signerNames, signerCodes, true);
+    }
+}
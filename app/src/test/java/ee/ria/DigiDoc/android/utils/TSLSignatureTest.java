@@ -0,0 +1,194 @@
+package ee.ria.DigiDoc.android.utils;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXParseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import okio.ByteString;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class TSLSignatureTest {
+
+    private static final File TSL_DIRECTORY = new File("src/main/assets/tslFiles");
+    private static final String TSL_NAMESPACE = "http://uri.etsi.org/02231/v2#";
+    private static final Pattern SIGNATURE = Pattern.compile(
+            "<ds:Signature .*</ds:Signature>", Pattern.DOTALL);
+
+    private static ImmutableSet<ByteString> lotlCertificates;
+    private static ImmutableSet<ByteString> eeCertificates;
+
+    @Rule public final ExpectedException exception = ExpectedException.none();
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void readPointers() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document lotl = factory.newDocumentBuilder().parse(lotl());
+        lotlCertificates = pointerCertificates(lotl, "EU");
+        eeCertificates = pointerCertificates(lotl, "EE");
+    }
+
+    @Test
+    public void verify_lotl() throws Exception {
+        TSLSignature.verify(lotl(), lotlCertificates);
+    }
+
+    @Test
+    public void verify_memberTsl() throws Exception {
+        TSLSignature.verify(ee(), eeCertificates);
+    }
+
+    @Test
+    public void verify_untrustedCertificate() throws Exception {
+        exception.expect(TSLException.class);
+        exception.expectMessage("not signed with a trusted certificate");
+
+        TSLSignature.verify(ee(), lotlCertificates);
+    }
+
+    @Test
+    public void verify_tampered() throws Exception {
+        File file = write(read(ee()).replace("<TSLSequenceNumber>55</TSLSequenceNumber>",
+                "<TSLSequenceNumber>56</TSLSequenceNumber>"));
+
+        exception.expect(TSLException.class);
+        exception.expectMessage("does not match");
+
+        TSLSignature.verify(file, eeCertificates);
+    }
+
+    @Test
+    public void verify_tamperedSignedProperties() throws Exception {
+        String tsl = read(ee());
+        int signingTime = tsl.indexOf("<xades:SigningTime>") + "<xades:SigningTime>".length();
+        File file = write(tsl.substring(0, signingTime) + "2000"
+                + tsl.substring(signingTime + 4));
+
+        exception.expect(TSLException.class);
+        exception.expectMessage("does not match");
+
+        TSLSignature.verify(file, eeCertificates);
+    }
+
+    /**
+     * The signed TSL is moved inside another one, so the outer document has no signature.
+     */
+    @Test
+    public void verify_wrapped() throws Exception {
+        String tsl = read(ee()).replaceFirst("^<\\?xml[^>]*\\?>", "");
+        File file = write("<TrustServiceStatusList xmlns=\"" + TSL_NAMESPACE + "\">"
+                + "<SchemeInformation><TSLSequenceNumber>99</TSLSequenceNumber>"
+                + "</SchemeInformation>" + tsl + "</TrustServiceStatusList>");
+
+        exception.expect(TSLException.class);
+        exception.expectMessage("TSL is not signed");
+
+        TSLSignature.verify(file, eeCertificates);
+    }
+
+    /**
+     * The signed properties are referenced by ID. Another element in the signature, which
+     * the whole document reference leaves out, gets the same ID.
+     */
+    @Test
+    public void verify_duplicateId() throws Exception {
+        String tsl = read(ee());
+        String id = "xades-id-4b6ccfcefe02cd7b39edef865eda8fa6";
+        String valueId = "value-id-4b6ccfcefe02cd7b39edef865eda8fa6";
+        assertThat(tsl)
+                .contains("Id=\"" + valueId + "\"");
+        File file = write(tsl.replace("Id=\"" + valueId + "\"", "Id=\"" + id + "\""));
+
+        exception.expect(TSLException.class);
+        exception.expectMessage("2 elements with ID " + id);
+
+        TSLSignature.verify(file, eeCertificates);
+    }
+
+    @Test
+    public void verify_unsigned() throws Exception {
+        String tsl = read(ee());
+        assertThat(SIGNATURE.matcher(tsl).find())
+                .isTrue();
+        File file = write(SIGNATURE.matcher(tsl).replaceFirst(""));
+
+        exception.expect(TSLException.class);
+        exception.expectMessage("TSL is not signed");
+
+        TSLSignature.verify(file, eeCertificates);
+    }
+
+    @Test
+    public void verify_externalEntity() throws Exception {
+        File secret = temporaryFolder.newFile("secret.txt");
+        Files.write(secret.toPath(), "secret".getBytes(StandardCharsets.UTF_8));
+        String tsl = read(ee()).replaceFirst("^<\\?xml[^>]*\\?>", "");
+        File file = write("<!DOCTYPE TrustServiceStatusList [<!ENTITY secret SYSTEM \""
+                + secret.toURI() + "\">]>"
+                + tsl.replace("<TSLSequenceNumber>55", "<TSLSequenceNumber>&secret;55"));
+
+        exception.expect(SAXParseException.class);
+
+        TSLSignature.verify(file, eeCertificates);
+    }
+
+    private static File lotl() {
+        return new File(TSL_DIRECTORY, "eu-lotl.xml");
+    }
+
+    private static File ee() {
+        return new File(TSL_DIRECTORY, "EE.xml");
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private File write(String tsl) throws IOException {
+        File file = temporaryFolder.newFile("tsl.xml");
+        Files.write(file.toPath(), tsl.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Certificates in the LOTL pointers to the TSLs of a territory.
+     */
+    private static ImmutableSet<ByteString> pointerCertificates(Document lotl,
+                                                               String territory) {
+        ImmutableSet.Builder<ByteString> certificates = ImmutableSet.builder();
+        NodeList pointers = lotl.getElementsByTagNameNS(TSL_NAMESPACE, "OtherTSLPointer");
+        for (int i = 0; i < pointers.getLength(); i++) {
+            Element pointer = (Element) pointers.item(i);
+            String schemeTerritory = pointer
+                    .getElementsByTagNameNS(TSL_NAMESPACE, "SchemeTerritory")
+                    .item(0).getTextContent();
+            if (!territory.equals(schemeTerritory)) {
+                continue;
+            }
+            NodeList values = pointer.getElementsByTagNameNS(TSL_NAMESPACE, "X509Certificate");
+            for (int j = 0; j < values.getLength(); j++) {
+                certificates.add(ByteString.decodeBase64(
+                        values.item(j).getTextContent().replaceAll("\\s+", "")));
+            }
+        }
+        return certificates.build();
+    }
+}
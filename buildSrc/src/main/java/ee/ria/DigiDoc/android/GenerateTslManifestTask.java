@@ -0,0 +1,119 @@
+package ee.ria.DigiDoc.android;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Writes the sequence numbers of TSL files packaged to the APK assets to a small manifest,
+ * so that the app can compare them to cached TSLs without parsing the XML on startup.
+ * <p>
+ * The manifest is a properties file named {@link #MANIFEST} next to the TSL files in the
+ * generated assets directory, with a line {@code <file name>=<sequence number>} per TSL.
+ */
+public class GenerateTslManifestTask extends DefaultTask {
+
+    public static final String MANIFEST = "tslFiles.properties";
+
+    private static final String TSL_SEQUENCE_NUMBER_ELEMENT = "TSLSequenceNumber";
+
+    private File tslDir;
+    private File outputDir;
+    private String assetsPath = "tslFiles";
+
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public File getTslDir() {
+        return tslDir;
+    }
+
+    public void setTslDir(File tslDir) {
+        this.tslDir = tslDir;
+    }
+
+    /**
+     * Assets directory where the manifest is generated, add it to the assets source set.
+     */
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    @Input
+    public String getAssetsPath() {
+        return assetsPath;
+    }
+
+    public void setAssetsPath(String assetsPath) {
+        this.assetsPath = assetsPath;
+    }
+
+    @TaskAction
+    public void run() throws IOException {
+        File[] tslFiles = tslDir.listFiles((dir, name) -> name.endsWith(".xml"));
+        if (tslFiles == null) {
+            throw new GradleException("Could not list TSL files in " + tslDir);
+        }
+        Arrays.sort(tslFiles);
+
+        File manifestDir = new File(outputDir, assetsPath);
+        Files.createDirectories(manifestDir.toPath());
+        File manifest = new File(manifestDir, MANIFEST);
+        try (OutputStream outputStream = new FileOutputStream(manifest);
+             Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)) {
+            for (File tslFile : tslFiles) {
+                int sequenceNumber = readSequenceNumber(tslFile);
+                getLogger().info(String.format("%s: %d", tslFile.getName(), sequenceNumber));
+                writer.write(tslFile.getName() + "=" + sequenceNumber + "\n");
+            }
+        }
+    }
+
+    private static int readSequenceNumber(File tslFile) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream inputStream = new FileInputStream(tslFile)) {
+            XMLStreamReader reader = factory.createXMLStreamReader(inputStream);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && reader.getLocalName().equals(TSL_SEQUENCE_NUMBER_ELEMENT)) {
+                        return Integer.parseInt(reader.getElementText().trim());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new GradleException("Could not read sequence number from " + tslFile, e);
+        }
+        throw new GradleException("No " + TSL_SEQUENCE_NUMBER_ELEMENT + " in " + tslFile);
+    }
+}
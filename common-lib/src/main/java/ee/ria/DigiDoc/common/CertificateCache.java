@@ -0,0 +1,111 @@
+package ee.ria.DigiDoc.common;
+
+import com.google.auto.value.AutoValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okio.ByteString;
+
+/**
+ * Process-wide cache of parsed certificates keyed by the SHA-256 of their DER encoding.
+ * <p>
+ * Signer, TSA and OCSP certificates repeat heavily across containers, so both the
+ * {@link X509Certificate} and the {@link Certificate} wrapper are kept once parsed.
+ * Least recently used certificates are evicted when the cache is full.
+ */
+public final class CertificateCache {
+
+    static final int MAX_ENTRIES = 256;
+
+    private static final Map<ByteString, Entry> ENTRIES =
+            new LinkedHashMap<ByteString, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteString, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private CertificateCache() {
+    }
+
+    public static X509Certificate x509Certificate(byte[] der) throws CertificateException {
+        return x509Certificate(ByteString.of(der));
+    }
+
+    public static X509Certificate x509Certificate(ByteString der) throws CertificateException {
+        Entry entry = entry(der);
+        synchronized (entry) {
+            if (entry.x509Certificate == null) {
+                MISSES.incrementAndGet();
+                entry.x509Certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                        .generateCertificate(new ByteArrayInputStream(der.toByteArray()));
+            } else {
+                HITS.incrementAndGet();
+            }
+            return entry.x509Certificate;
+        }
+    }
+
+    public static Certificate certificate(ByteString der) throws IOException {
+        Entry entry = entry(der);
+        synchronized (entry) {
+            if (entry.certificate == null) {
+                MISSES.incrementAndGet();
+                entry.certificate = Certificate.create(der);
+            } else {
+                HITS.incrementAndGet();
+            }
+            return entry.certificate;
+        }
+    }
+
+    public static synchronized Stats stats() {
+        return Stats.create(HITS.get(), MISSES.get(), ENTRIES.size());
+    }
+
+    public static synchronized void clear() {
+        ENTRIES.clear();
+        HITS.set(0);
+        MISSES.set(0);
+    }
+
+    private static synchronized Entry entry(ByteString der) {
+        ByteString key = der.sha256();
+        Entry entry = ENTRIES.get(key);
+        if (entry == null) {
+            entry = new Entry();
+            ENTRIES.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static final class Entry {
+
+        X509Certificate x509Certificate;
+        Certificate certificate;
+    }
+
+    @AutoValue
+    public abstract static class Stats {
+
+        public abstract long hits();
+
+        public abstract long misses();
+
+        public abstract int size();
+
+        static Stats create(long hits, long misses, int size) {
+            return new AutoValue_CertificateCache_Stats(hits, misses, size);
+        }
+    }
+}
@@ -17,8 +17,7 @@ public final class CertificateUtil {
     }
 
     public static X509Certificate x509Certificate(byte[] certDer) throws CertificateException {
-        return (X509Certificate) CertificateFactory.getInstance("X.509")
-                .generateCertificate(new ByteArrayInputStream(certDer));
+        return CertificateCache.x509Certificate(certDer);
     }
 
 }
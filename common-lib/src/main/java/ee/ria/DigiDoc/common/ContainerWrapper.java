@@ -26,24 +26,44 @@ import java.security.cert.CertificateException;
 import ee.ria.libdigidocpp.Container;
 import ee.ria.libdigidocpp.Signature;
 
-public class ContainerWrapper {
+/**
+ * Container opened for signing in two steps, close it when signing is done or has failed.
+ */
+public class ContainerWrapper implements AutoCloseable {
 
     private static final String SIGNATURE_PROFILE_TS = "time-stamp";
 
-    private final Container container;
+    private final NativeHandle<Container> container;
+    private final SigningTrace trace;
     private Signature signature;
 
     public ContainerWrapper(String containerPath) {
-        this.container = Container.open(containerPath);
+        this(containerPath, SigningTrace.start("signature"));
+    }
+
+    /**
+     * @param trace Trace for the phases of signing, finished by {@link #finalizeSignature}
+     *              or by the caller when signing fails before that.
+     */
+    public ContainerWrapper(String containerPath, SigningTrace trace) {
+        SignLibReady.await();
+        NativeHandle<Container> container = NativeObjects.open(containerPath);
+        if (container == null) {
+            throw new IllegalStateException("Container.open returned null");
+        }
+        this.container = container;
+        this.trace = trace;
+        trace.mark(SigningTrace.Phase.OPEN);
     }
 
-    public Container getContainer() {
-        return container;
+    public SigningTrace getTrace() {
+        return trace;
     }
 
     public String prepareSignature(String cert) throws CertificateException {
-        signature = container.prepareWebSignature(CertificateUtil.x509Certificate(cert).getEncoded(), SIGNATURE_PROFILE_TS);
+        signature = container.get().prepareWebSignature(CertificateUtil.x509Certificate(cert).getEncoded(), SIGNATURE_PROFILE_TS);
         if (signature != null) {
+            trace.mark(SigningTrace.Phase.PREPARE);
             byte[] dataToSignBytes = Base64.encode(signature.dataToSign());
             String dataToSign = new String(dataToSignBytes, StandardCharsets.UTF_8);
             return removeWhitespaces(dataToSign);
@@ -56,10 +76,28 @@ public class ContainerWrapper {
         if (signature == null) {
             throw new IllegalStateException("Cannot finalize uninitialized signature");
         }
-        byte[] signatureValueBytes = Base64.decode(signatureValue);
-        signature.setSignatureValue(signatureValueBytes);
-        signature.extendSignatureProfile(SIGNATURE_PROFILE_TS);
-        container.save();
+        trace.mark(SigningTrace.Phase.SIGNATURE_RECEIVED);
+        try {
+            byte[] signatureValueBytes = Base64.decode(signatureValue);
+            signature.setSignatureValue(signatureValueBytes);
+            signature.extendSignatureProfile(SIGNATURE_PROFILE_TS);
+            trace.mark(SigningTrace.Phase.EXTEND_SIGNATURE_PROFILE);
+            container.get().save();
+            trace.mark(SigningTrace.Phase.SAVE);
+        } catch (RuntimeException e) {
+            trace.finish(e.getClass().getSimpleName());
+            throw e;
+        }
+        trace.finish(null);
+    }
+
+    /**
+     * Delete the container, the prepared signature is deleted with it.
+     */
+    @Override
+    public void close() {
+        signature = null;
+        container.close();
     }
 
     private String removeWhitespaces(String text) {
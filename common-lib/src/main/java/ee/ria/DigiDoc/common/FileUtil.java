@@ -1,9 +1,7 @@
 package ee.ria.DigiDoc.common;
 
 import android.content.Context;
-import android.graphics.pdf.PdfRenderer;
 import android.net.Uri;
-import android.os.ParcelFileDescriptor;
 import android.webkit.URLUtil;
 
 import org.apache.commons.io.FileUtils;
@@ -128,17 +126,6 @@ public class FileUtil {
         return Uri.parse(FilenameUtils.normalize(filePath));
     }
 
-    public static boolean isPDF(File file) {
-        try (ParcelFileDescriptor parcelFileDescriptor = ParcelFileDescriptor.open(file,
-                ParcelFileDescriptor.MODE_READ_ONLY)) {
-            // Try to render as PDF. Throws exception if not a PDF file.
-            new PdfRenderer(parcelFileDescriptor);
-            return true;
-        } catch (IOException e) {
-            return false;
-        }
-    }
-
     public static Path renameFile(Path path, String fileNameWithExtension) {
         try {
             Files.deleteIfExists(path.resolveSibling(fileNameWithExtension));
@@ -0,0 +1,156 @@
+package ee.ria.DigiDoc.common;
+
+import androidx.annotation.Nullable;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owner of a native object, deletes it when closed.
+ * <p>
+ * SWIG proxies of libdigidocpp free their native memory only when the finalizer runs, use this
+ * with try-with-resources or close it together with the object owning it. Open handles are
+ * counted by type. A handle that is garbage collected without being closed is reported to the
+ * {@link LeakListener}, with the stack trace of where it was created when
+ * {@link #setTrackAllocationSites(boolean) tracking} is on.
+ */
+public final class NativeHandle<T> implements AutoCloseable {
+
+    public interface LeakListener {
+
+        /**
+         * @param type Simple class name of the leaked object.
+         * @param allocationSite Where the handle was created, null when not tracked.
+         */
+        void onLeak(String type, @Nullable Throwable allocationSite);
+    }
+
+    private static final ReferenceQueue<NativeHandle<?>> QUEUE = new ReferenceQueue<>();
+    private static final Set<Tracker> TRACKERS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private static final Map<String, AtomicLong> LIVE = new ConcurrentHashMap<>();
+    private static final AtomicLong LEAKED = new AtomicLong();
+
+    private static volatile boolean trackAllocationSites;
+    @Nullable private static volatile LeakListener leakListener;
+
+    private final T object;
+    private final Runnable deleter;
+    private final Tracker tracker;
+
+    private NativeHandle(T object, Runnable deleter) {
+        this.object = object;
+        this.deleter = deleter;
+        this.tracker = new Tracker(this, object.getClass().getSimpleName(),
+                trackAllocationSites ? new Throwable("Allocation site") : null);
+    }
+
+    /**
+     * @param object Native object to own.
+     * @param deleter Deletes the native object, usually the {@code delete} method of the proxy.
+     */
+    public static <T> NativeHandle<T> of(T object, Runnable deleter) {
+        pollLeaks();
+        NativeHandle<T> handle = new NativeHandle<>(object, deleter);
+        TRACKERS.add(handle.tracker);
+        live(handle.tracker.type).incrementAndGet();
+        return handle;
+    }
+
+    /**
+     * @throws IllegalStateException When the handle is closed.
+     */
+    public T get() {
+        if (tracker.closed.get()) {
+            throw new IllegalStateException(tracker.type + " is already deleted");
+        }
+        return object;
+    }
+
+    @Override
+    public void close() {
+        if (tracker.closed.compareAndSet(false, true)) {
+            TRACKERS.remove(tracker);
+            live(tracker.type).decrementAndGet();
+            deleter.run();
+        }
+        Reference.reachabilityFence(this);
+    }
+
+    /**
+     * Record where handles are created, costs a stack trace per handle so meant for debug builds.
+     */
+    public static void setTrackAllocationSites(boolean track) {
+        trackAllocationSites = track;
+    }
+
+    public static void setLeakListener(@Nullable LeakListener listener) {
+        leakListener = listener;
+    }
+
+    /**
+     * Number of open handles by type.
+     */
+    public static Map<String, Long> live() {
+        pollLeaks();
+        Map<String, Long> live = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : LIVE.entrySet()) {
+            if (entry.getValue().get() > 0) {
+                live.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Number of handles garbage collected without being closed.
+     */
+    public static long leaked() {
+        pollLeaks();
+        return LEAKED.get();
+    }
+
+    private static AtomicLong live(String type) {
+        return LIVE.computeIfAbsent(type, key -> new AtomicLong());
+    }
+
+    private static void pollLeaks() {
+        Reference<? extends NativeHandle<?>> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            Tracker tracker = (Tracker) reference;
+            if (!TRACKERS.remove(tracker) || tracker.closed.get()) {
+                continue;
+            }
+            live(tracker.type).decrementAndGet();
+            LEAKED.incrementAndGet();
+            LeakListener listener = leakListener;
+            if (listener != null) {
+                listener.onLeak(tracker.type, tracker.allocationSite);
+            }
+        }
+    }
+
+    /**
+     * State of a handle that outlives it, so leaks can be reported after it is collected.
+     * The native object itself is then left to the finalizer of its proxy.
+     */
+    private static final class Tracker extends PhantomReference<NativeHandle<?>> {
+
+        final String type;
+        @Nullable final Throwable allocationSite;
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        Tracker(NativeHandle<?> handle, String type, @Nullable Throwable allocationSite) {
+            super(handle, QUEUE);
+            this.type = type;
+            this.allocationSite = allocationSite;
+        }
+    }
+}
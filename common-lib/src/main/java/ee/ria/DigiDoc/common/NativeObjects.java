@@ -0,0 +1,54 @@
+package ee.ria.DigiDoc.common;
+
+import androidx.annotation.Nullable;
+
+import ee.ria.libdigidocpp.Container;
+import ee.ria.libdigidocpp.DataFiles;
+import ee.ria.libdigidocpp.Signature;
+import ee.ria.libdigidocpp.Signatures;
+
+/**
+ * Handles for libdigidocpp objects that must be deleted by the caller.
+ * <p>
+ * {@link DataFiles} and {@link Signatures} are copies of the lists in the container, each call
+ * allocates a new one. The {@link ee.ria.libdigidocpp.DataFile} and {@link Signature} objects
+ * in them, as well as signatures returned by {@code prepareWebSignature}, belong to the
+ * container and are deleted with it, so they must not be used after the container is closed.
+ */
+public final class NativeObjects {
+
+    private NativeObjects() {}
+
+    /**
+     * @return Opened container, null if libdigidocpp could not open it.
+     */
+    @Nullable
+    public static NativeHandle<Container> open(String path) {
+        Container container = Container.open(path);
+        return container == null ? null : NativeHandle.of(container, container::delete);
+    }
+
+    /**
+     * @return New container, null if libdigidocpp could not create it.
+     */
+    @Nullable
+    public static NativeHandle<Container> create(String path) {
+        Container container = Container.create(path);
+        return container == null ? null : NativeHandle.of(container, container::delete);
+    }
+
+    public static NativeHandle<DataFiles> dataFiles(Container container) {
+        DataFiles dataFiles = container.dataFiles();
+        return NativeHandle.of(dataFiles, dataFiles::delete);
+    }
+
+    public static NativeHandle<Signatures> signatures(Container container) {
+        Signatures signatures = container.signatures();
+        return NativeHandle.of(signatures, signatures::delete);
+    }
+
+    public static NativeHandle<Signature.Validator> validator(Signature signature) {
+        Signature.Validator validator = new Signature.Validator(signature);
+        return NativeHandle.of(validator, validator::delete);
+    }
+}
@@ -0,0 +1,94 @@
+package ee.ria.DigiDoc.common;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Barrier for the libdigidocpp initialization, which runs in the background.
+ * <p>
+ * It's in common-lib so that code calling libdigidocpp directly, like {@link ContainerWrapper},
+ * can wait for it too. Time spent waiting is counted to see whether initialization is on the
+ * critical path of what the user is doing.
+ */
+public final class SignLibReady {
+
+    private static final AtomicLong WAITS = new AtomicLong();
+    private static final AtomicLong WAITED_NANOS = new AtomicLong();
+
+    private static volatile Future<?> initialization;
+
+    private SignLibReady() {
+    }
+
+    /**
+     * Set the running initialization, replaces any previous one.
+     */
+    public static void set(Future<?> initialization) {
+        SignLibReady.initialization = initialization;
+    }
+
+    public static boolean isReady() {
+        Future<?> future = initialization;
+        return future != null && future.isDone();
+    }
+
+    /**
+     * Block until libdigidocpp is initialized.
+     *
+     * @throws IllegalStateException When initialization was not started or it failed.
+     */
+    public static void await() {
+        Future<?> future = initialization;
+        if (future == null) {
+            throw new IllegalStateException("libdigidocpp initialization not started");
+        }
+        if (future.isDone()) {
+            get(future);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            get(future);
+        } finally {
+            WAITS.incrementAndGet();
+            WAITED_NANOS.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Number of {@link #await()} calls that had to wait.
+     */
+    public static long waits() {
+        return WAITS.get();
+    }
+
+    /**
+     * Total time {@link #await()} callers have waited.
+     */
+    public static long waitedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(WAITED_NANOS.get());
+    }
+
+    private static void get(Future<?> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("libdigidocpp initialization failed",
+                            e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
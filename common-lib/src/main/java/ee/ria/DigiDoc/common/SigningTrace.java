@@ -0,0 +1,190 @@
+package ee.ria.DigiDoc.common;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of the phases of one signing operation.
+ * <p>
+ * Each phase is marked when it ends, with a monotonic timestamp relative to the start of
+ * the trace, so the time spent in a phase is the gap from the previous mark. This tells apart
+ * local container I/O, waiting for the card or the user, and TSA and OCSP requests made by
+ * {@link Phase#EXTEND_SIGNATURE_PROFILE}. Phases that don't apply to a signing method are
+ * simply not marked.
+ * <p>
+ * Finished traces are kept in memory, the most recent {@link #MAX_TRACES} of them, for the
+ * diagnostics screen.
+ */
+public final class SigningTrace {
+
+    public enum Phase {
+        OPEN,
+        PREPARE,
+        HASH_DELIVERED,
+        SIGNATURE_RECEIVED,
+        EXTEND_SIGNATURE_PROFILE,
+        SAVE,
+        REOPEN
+    }
+
+    public static final int MAX_TRACES = 20;
+
+    private static final Deque<SigningTrace> TRACES = new ArrayDeque<>();
+
+    private final String method;
+    private final long startedAt;
+    private final long startedAtNanos;
+    private final Map<Phase, Long> phases = new EnumMap<>(Phase.class);
+    private long finishedAtNanos = -1;
+    @Nullable private String error;
+
+    private SigningTrace(String method, long startedAt, long startedAtNanos) {
+        this.method = method;
+        this.startedAt = startedAt;
+        this.startedAtNanos = startedAtNanos;
+    }
+
+    /**
+     * @param method Signing method, for example "ID-card" or "Mobile-ID".
+     */
+    public static SigningTrace start(String method) {
+        return new SigningTrace(method, System.currentTimeMillis(), System.nanoTime());
+    }
+
+    public String method() {
+        return method;
+    }
+
+    /**
+     * Wall clock time when the trace was started, only for display.
+     */
+    public long startedAt() {
+        return startedAt;
+    }
+
+    /**
+     * Mark the end of a phase, later marks of the same phase are ignored.
+     */
+    public synchronized void mark(Phase phase) {
+        if (finishedAtNanos < 0 && !phases.containsKey(phase)) {
+            phases.put(phase, System.nanoTime() - startedAtNanos);
+        }
+    }
+
+    /**
+     * Finish the trace and add it to {@link #recent()}, only the first call has an effect.
+     *
+     * @param error Reason why signing failed, null on success.
+     */
+    public void finish(@Nullable String error) {
+        synchronized (this) {
+            if (finishedAtNanos >= 0) {
+                return;
+            }
+            finishedAtNanos = System.nanoTime() - startedAtNanos;
+            this.error = error;
+        }
+        synchronized (TRACES) {
+            TRACES.addFirst(this);
+            while (TRACES.size() > MAX_TRACES) {
+                TRACES.removeLast();
+            }
+        }
+    }
+
+    /**
+     * @return Milliseconds from the start of the trace to the end of the phase,
+     * null if the phase was not marked.
+     */
+    @Nullable
+    public synchronized Long phaseEnd(Phase phase) {
+        Long nanos = phases.get(phase);
+        return nanos == null ? null : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return Milliseconds from the start of the trace until it was finished,
+     * -1 while it's still running.
+     */
+    public synchronized long total() {
+        return finishedAtNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(finishedAtNanos);
+    }
+
+    @Nullable
+    public synchronized String error() {
+        return error;
+    }
+
+    /**
+     * Phase durations in milliseconds, in the order the phases happened.
+     */
+    public synchronized Map<Phase, Long> durations() {
+        Map<Phase, Long> durations = new EnumMap<>(Phase.class);
+        long previous = 0;
+        for (Phase phase : Phase.values()) {
+            Long end = phases.get(phase);
+            if (end != null) {
+                durations.put(phase, TimeUnit.NANOSECONDS.toMillis(end - previous));
+                previous = end;
+            }
+        }
+        return durations;
+    }
+
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("method", method);
+        json.addProperty("startedAt", startedAt);
+        json.addProperty("totalMillis", total());
+        if (error != null) {
+            json.addProperty("error", error);
+        }
+        JsonArray phasesJson = new JsonArray();
+        for (Map.Entry<Phase, Long> duration : durations().entrySet()) {
+            JsonObject phaseJson = new JsonObject();
+            phaseJson.addProperty("phase", duration.getKey().name());
+            phaseJson.addProperty("endMillis", phaseEnd(duration.getKey()));
+            phaseJson.addProperty("durationMillis", duration.getValue());
+            phasesJson.add(phaseJson);
+        }
+        json.add("phases", phasesJson);
+        return json;
+    }
+
+    /**
+     * Finished traces, newest first.
+     */
+    public static List<SigningTrace> recent() {
+        synchronized (TRACES) {
+            return Collections.unmodifiableList(new ArrayList<>(TRACES));
+        }
+    }
+
+    /**
+     * {@link #recent() Recent traces} as a JSON array.
+     */
+    public static String recentJson() {
+        JsonArray json = new JsonArray();
+        for (SigningTrace trace : recent()) {
+            json.add(trace.toJson());
+        }
+        return json.toString();
+    }
+
+    static void clear() {
+        synchronized (TRACES) {
+            TRACES.clear();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ee.ria.DigiDoc.common;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+public final class CertificateCacheTest {
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @Before
+    public void clear() {
+        CertificateCache.clear();
+    }
+
+    @Test
+    public void x509Certificate_parsesOnce() throws Exception {
+        ByteString der = certificate(1);
+
+        X509Certificate first = CertificateCache.x509Certificate(der);
+        X509Certificate second = CertificateCache.x509Certificate(der.toByteArray());
+
+        assertThat(second)
+                .isSameInstanceAs(first);
+        assertThat(first.getSerialNumber())
+                .isEqualTo(BigInteger.ONE);
+        assertThat(CertificateCache.stats())
+                .isEqualTo(CertificateCache.Stats.create(1, 1, 1));
+    }
+
+    @Test
+    public void certificate_sharesEntryWithX509Certificate() throws Exception {
+        ByteString der = certificate(1);
+
+        CertificateCache.x509Certificate(der);
+        Certificate first = CertificateCache.certificate(der);
+        Certificate second = CertificateCache.certificate(der);
+
+        assertThat(second)
+                .isSameInstanceAs(first);
+        assertThat(first.commonName())
+                .isEqualTo("Test 1");
+        assertThat(CertificateCache.stats())
+                .isEqualTo(CertificateCache.Stats.create(1, 2, 1));
+    }
+
+    @Test
+    public void x509Certificate_evictsLeastRecentlyUsed() throws Exception {
+        ByteString[] ders = new ByteString[CertificateCache.MAX_ENTRIES + 1];
+        for (int i = 0; i < ders.length; i++) {
+            ders[i] = certificate(i);
+        }
+        for (int i = 0; i < CertificateCache.MAX_ENTRIES; i++) {
+            CertificateCache.x509Certificate(ders[i]);
+        }
+        CertificateCache.x509Certificate(ders[0]);
+
+        CertificateCache.x509Certificate(ders[CertificateCache.MAX_ENTRIES]);
+
+        assertThat(CertificateCache.stats())
+                .isEqualTo(CertificateCache.Stats.create(1, CertificateCache.MAX_ENTRIES + 1,
+                        CertificateCache.MAX_ENTRIES));
+
+        CertificateCache.x509Certificate(ders[0]);
+        CertificateCache.x509Certificate(ders[1]);
+
+        assertThat(CertificateCache.stats())
+                .isEqualTo(CertificateCache.Stats.create(2, CertificateCache.MAX_ENTRIES + 2,
+                        CertificateCache.MAX_ENTRIES));
+    }
+
+    @Test
+    public void clear_resetsStats() throws Exception {
+        CertificateCache.x509Certificate(certificate(1));
+
+        CertificateCache.clear();
+
+        assertThat(CertificateCache.stats())
+                .isEqualTo(CertificateCache.Stats.create(0, 0, 0));
+    }
+
+    private static ByteString certificate(int serial) throws Exception {
+        X500Name name = new X500Name("CN=Test " + serial);
+        long now = System.currentTimeMillis();
+        return ByteString.of(new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(serial),
+                new Date(now), new Date(now + TimeUnit.DAYS.toMillis(1)), name,
+                keyPair.getPublic())
+                .addExtension(Extension.keyUsage, true,
+                        new KeyUsage(KeyUsage.digitalSignature))
+                .build(new JcaContentSignerBuilder("SHA256withECDSA")
+                        .build(keyPair.getPrivate()))
+                .getEncoded());
+    }
+}
@@ -0,0 +1,46 @@
+package ee.ria.DigiDoc.common;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class NativeHandleTest {
+
+    private static final class Resource {
+    }
+
+    @Test
+    public void close_deletesOnce() {
+        AtomicInteger deletes = new AtomicInteger();
+        NativeHandle<Resource> handle = NativeHandle.of(new Resource(), deletes::incrementAndGet);
+
+        handle.close();
+        handle.close();
+
+        assertThat(deletes.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void live_countsOpenHandlesByType() {
+        NativeHandle<Resource> first = NativeHandle.of(new Resource(), () -> {});
+        NativeHandle<Resource> second = NativeHandle.of(new Resource(), () -> {});
+
+        assertThat(NativeHandle.live()).containsEntry("Resource", 2L);
+
+        first.close();
+        assertThat(NativeHandle.live()).containsEntry("Resource", 1L);
+
+        second.close();
+        assertThat(NativeHandle.live()).doesNotContainKey("Resource");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void get_throwsWhenClosed() {
+        NativeHandle<Resource> handle = NativeHandle.of(new Resource(), () -> {});
+        handle.close();
+
+        handle.get();
+    }
+}
@@ -0,0 +1,85 @@
+package ee.ria.DigiDoc.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SigningTraceTest {
+
+    @Before
+    public void setUp() {
+        SigningTrace.clear();
+    }
+
+    @Test
+    public void durations_onlyMarkedPhasesInOrder() {
+        SigningTrace trace = SigningTrace.start("ID-card");
+        trace.mark(SigningTrace.Phase.OPEN);
+        trace.mark(SigningTrace.Phase.PREPARE);
+        trace.mark(SigningTrace.Phase.SAVE);
+
+        assertThat(trace.durations().keySet())
+                .containsExactly(SigningTrace.Phase.OPEN, SigningTrace.Phase.PREPARE,
+                        SigningTrace.Phase.SAVE)
+                .inOrder();
+        assertThat(trace.phaseEnd(SigningTrace.Phase.REOPEN)).isNull();
+    }
+
+    @Test
+    public void mark_afterFinishIgnored() {
+        SigningTrace trace = SigningTrace.start("ID-card");
+        trace.finish(null);
+        trace.mark(SigningTrace.Phase.OPEN);
+
+        assertThat(trace.durations()).isEmpty();
+        assertThat(trace.total()).isAtLeast(0L);
+    }
+
+    @Test
+    public void finish_onlyFirstCallRecorded() {
+        SigningTrace trace = SigningTrace.start("Mobile-ID");
+        trace.finish("TIMEOUT");
+        trace.finish(null);
+
+        assertThat(SigningTrace.recent()).containsExactly(trace);
+        assertThat(trace.error()).isEqualTo("TIMEOUT");
+    }
+
+    @Test
+    public void recent_newestFirstAndBounded() {
+        SigningTrace first = SigningTrace.start("first");
+        first.finish(null);
+        for (int i = 0; i < SigningTrace.MAX_TRACES; i++) {
+            SigningTrace.start("other").finish(null);
+        }
+        SigningTrace last = SigningTrace.start("last");
+        last.finish(null);
+
+        assertThat(SigningTrace.recent()).hasSize(SigningTrace.MAX_TRACES);
+        assertThat(SigningTrace.recent().get(0)).isSameInstanceAs(last);
+        assertThat(SigningTrace.recent()).doesNotContain(first);
+    }
+
+    @Test
+    public void recentJson() {
+        SigningTrace trace = SigningTrace.start("Smart-ID");
+        trace.mark(SigningTrace.Phase.EXTEND_SIGNATURE_PROFILE);
+        trace.finish("OCSP");
+
+        JsonArray json = new JsonParser().parse(SigningTrace.recentJson()).getAsJsonArray();
+
+        assertThat(json.size()).isEqualTo(1);
+        JsonObject traceJson = json.get(0).getAsJsonObject();
+        assertThat(traceJson.get("method").getAsString()).isEqualTo("Smart-ID");
+        assertThat(traceJson.get("error").getAsString()).isEqualTo("OCSP");
+        JsonObject phaseJson = traceJson.getAsJsonArray("phases").get(0).getAsJsonObject();
+        assertThat(phaseJson.get("phase").getAsString())
+                .isEqualTo("EXTEND_SIGNATURE_PROFILE");
+        assertThat(phaseJson.has("durationMillis")).isTrue();
+    }
+}
@@ -0,0 +1,267 @@
+package ee.ria.DigiDoc.crypto;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import okio.ByteString;
+
+/**
+ * Reads data file names and recipient certificates of a CDOC file without reading the
+ * encrypted payload.
+ * <p>
+ * Recipients are in the beginning of the file and are read until the payload starts. Data file
+ * names are in the encryption properties after the payload, so they are read from the end of
+ * the file. Only when the properties are not found near the end is the whole file read.
+ */
+final class CDOCHeaderParser {
+
+    private static final String XMLENC_NS = "http://www.w3.org/2001/04/xmlenc#";
+    private static final String XMLDSIG_NS = "http://www.w3.org/2000/09/xmldsig#";
+
+    private static final String PROPERTIES = "EncryptionProperties";
+    private static final String DATA_FILE_PROPERTY = "orig_file";
+
+    private static final int TAIL_SIZE = 8 * 1024;
+    private static final int MAX_TAIL_SIZE = 1024 * 1024;
+
+    private CDOCHeaderParser() {}
+
+    static Header parse(File file) throws IOException, XMLStreamException {
+        Map<String, String> namespaces = new LinkedHashMap<>();
+        ImmutableList<ByteString> recipients;
+        String encoding;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            XMLStreamReader reader = inputFactory().createXMLStreamReader(inputStream);
+            try {
+                recipients = readRecipients(reader, namespaces);
+                encoding = reader.getEncoding();
+            } finally {
+                reader.close();
+            }
+        }
+        return Header.create(readDataFileNames(file, namespaces, encoding), recipients);
+    }
+
+    /**
+     * Read certificates of the encrypted keys, stopping at the encrypted payload.
+     *
+     * @param namespaces Filled with the namespaces declared on the root element.
+     */
+    private static ImmutableList<ByteString> readRecipients(XMLStreamReader reader,
+                                                            Map<String, String> namespaces)
+            throws XMLStreamException {
+        ImmutableList.Builder<ByteString> recipients = ImmutableList.builder();
+        ByteString certificate = null;
+        boolean inEncryptedKey = false;
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (depth == 1) {
+                    if (!isElement(reader, XMLENC_NS, "EncryptedData")) {
+                        throw new XMLStreamException("Not a CDOC file", reader.getLocation());
+                    }
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        String prefix = reader.getNamespacePrefix(i);
+                        namespaces.put(prefix == null ? "" : prefix, reader.getNamespaceURI(i));
+                    }
+                } else if (depth == 2 && isElement(reader, XMLENC_NS, "CipherData")) {
+                    return recipients.build();
+                } else if (isElement(reader, XMLENC_NS, "EncryptedKey")) {
+                    inEncryptedKey = true;
+                    certificate = null;
+                } else if (inEncryptedKey && certificate == null
+                        && isElement(reader, XMLDSIG_NS, "X509Certificate")) {
+                    certificate = ByteString.decodeBase64(reader.getElementText());
+                    if (certificate == null) {
+                        throw new XMLStreamException("Invalid recipient certificate",
+                                reader.getLocation());
+                    }
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (inEncryptedKey && isElement(reader, XMLENC_NS, "EncryptedKey")) {
+                    if (certificate == null) {
+                        throw new XMLStreamException("Recipient certificate missing",
+                                reader.getLocation());
+                    }
+                    recipients.add(certificate);
+                    inEncryptedKey = false;
+                }
+                depth--;
+            }
+        }
+        throw new XMLStreamException("Encrypted payload not found");
+    }
+
+    private static ImmutableList<String> readDataFileNames(File file,
+                                                           Map<String, String> namespaces,
+                                                           String encoding)
+            throws IOException, XMLStreamException {
+        if (encoding == null || StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding)
+                || StandardCharsets.US_ASCII.name().equalsIgnoreCase(encoding)) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                long length = randomAccessFile.length();
+                long size = Math.min(TAIL_SIZE, length);
+                while (true) {
+                    byte[] tail = new byte[(int) size];
+                    randomAccessFile.seek(length - size);
+                    randomAccessFile.readFully(tail);
+                    int start = lastPropertiesStartTag(tail);
+                    if (start >= 0) {
+                        InputStream inputStream = new SequenceInputStream(
+                                new ByteArrayInputStream(rootStartTag(namespaces)),
+                                new ByteArrayInputStream(tail, start, tail.length - start));
+                        return readDataFileNames(inputFactory()
+                                .createXMLStreamReader(inputStream, StandardCharsets.UTF_8.name()));
+                    }
+                    if (size == length || size == MAX_TAIL_SIZE) {
+                        break;
+                    }
+                    size = Math.min(Math.min(size * 2, MAX_TAIL_SIZE), length);
+                }
+            }
+        }
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return readDataFileNames(inputFactory().createXMLStreamReader(inputStream));
+        }
+    }
+
+    private static ImmutableList<String> readDataFileNames(XMLStreamReader reader)
+            throws XMLStreamException {
+        try {
+            ImmutableList.Builder<String> dataFileNames = ImmutableList.builder();
+            boolean inProperties = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (isElement(reader, XMLENC_NS, PROPERTIES)) {
+                        inProperties = true;
+                    } else if (inProperties
+                            && isElement(reader, XMLENC_NS, "EncryptionProperty")
+                            && DATA_FILE_PROPERTY.equals(reader.getAttributeValue(null, "Name"))) {
+                        dataFileNames.add(reader.getElementText().split("\\|")[0]);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT
+                        && isElement(reader, XMLENC_NS, PROPERTIES)) {
+                    return dataFileNames.build();
+                }
+            }
+            throw new XMLStreamException("Encryption properties not found");
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Find the last {@code <EncryptionProperties} start tag, with any prefix.
+     * <p>
+     * Base64 payload can't contain {@code <}, so a match is always markup.
+     *
+     * @return Offset of the tag, -1 if not found.
+     */
+    private static int lastPropertiesStartTag(byte[] data) {
+        byte[] name = PROPERTIES.getBytes(StandardCharsets.US_ASCII);
+        for (int i = data.length - name.length - 1; i > 0; i--) {
+            if (!regionMatches(data, i, name)) {
+                continue;
+            }
+            byte next = data[i + name.length];
+            if (next != '>' && next != '/' && !isWhitespace(next)) {
+                continue;
+            }
+            int start = i - 1;
+            if (data[start] == ':') {
+                do {
+                    start--;
+                } while (start >= 0 && isNameChar(data[start]));
+            }
+            if (start >= 0 && data[start] == '<') {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Start tag declaring the namespaces of the root element, so that a fragment of its
+     * children can be parsed on its own.
+     */
+    private static byte[] rootStartTag(Map<String, String> namespaces) {
+        StringBuilder builder = new StringBuilder("<root");
+        for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+            builder.append(namespace.getKey().isEmpty() ? " xmlns" : " xmlns:")
+                    .append(namespace.getKey())
+                    .append("=\"")
+                    .append(namespace.getValue()
+                            .replace("&", "&amp;")
+                            .replace("<", "&lt;")
+                            .replace("\"", "&quot;"))
+                    .append('"');
+        }
+        return builder.append('>').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static boolean regionMatches(byte[] data, int offset, byte[] region) {
+        for (int i = 0; i < region.length; i++) {
+            if (data[offset + i] != region[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '_' || b == '-' || b == '.' || b < 0;
+    }
+
+    private static boolean isElement(XMLStreamReader reader, String namespace, String name) {
+        return name.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI());
+    }
+
+    private static XMLInputFactory inputFactory() {
+        XMLInputFactory inputFactory = new WstxInputFactory();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return inputFactory;
+    }
+
+    @AutoValue
+    abstract static class Header {
+
+        abstract ImmutableList<String> dataFileNames();
+
+        /**
+         * DER encoded recipient certificates.
+         */
+        abstract ImmutableList<ByteString> recipients();
+
+        static Header create(ImmutableList<String> dataFileNames,
+                             ImmutableList<ByteString> recipients) {
+            return new AutoValue_CDOCHeaderParser_Header(dataFileNames, recipients);
+        }
+    }
+}
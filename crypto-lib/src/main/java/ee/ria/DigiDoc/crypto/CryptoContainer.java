@@ -1,5 +1,8 @@
 package ee.ria.DigiDoc.crypto;
 
+import android.util.Log;
+
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.google.auto.value.AutoValue;
@@ -8,20 +11,26 @@ import com.google.common.collect.ImmutableList;
 import org.apache.commons.io.FilenameUtils;
 import org.openeid.cdoc4j.CDOCBuilder;
 import org.openeid.cdoc4j.CDOCDecrypter;
-import org.openeid.cdoc4j.CDOCParser;
-import org.openeid.cdoc4j.Recipient;
+import org.openeid.cdoc4j.DataFile;
 import org.openeid.cdoc4j.exception.DataFileMissingException;
 import org.openeid.cdoc4j.exception.RecipientCertificateException;
 import org.openeid.cdoc4j.exception.RecipientMissingException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
 import ee.ria.DigiDoc.common.Certificate;
 import okio.ByteString;
+import timber.log.Timber;
 
 import static com.google.common.io.Files.getFileExtension;
 import static com.google.common.io.Files.getNameWithoutExtension;
@@ -38,6 +47,22 @@ public abstract class CryptoContainer {
 
     private static final String EXTENSION = "cdoc";
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Progress of encrypting data files.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called every time another percent of the data files is encrypted.
+         *
+         * @param processed Bytes of data files encrypted so far.
+         * @param total Total size of data files in bytes.
+         */
+        void onProgress(long processed, long total);
+    }
+
     /**
      * Location of the container.
      */
@@ -105,20 +130,17 @@ public abstract class CryptoContainer {
      */
     @WorkerThread
     public static CryptoContainer open(File file) throws CryptoException {
-        try (
-                InputStream dataFilesStream = new FileInputStream(file);
-                InputStream recipientsStream = new FileInputStream(file)
-        ) {
+        try {
+            CDOCHeaderParser.Header header = CDOCHeaderParser.parse(file);
             ImmutableList.Builder<File> dataFilesBuilder = ImmutableList.builder();
             ImmutableList.Builder<Certificate> recipientsBuilder = ImmutableList.builder();
 
-            for (String dataFileName : CDOCParser.getDataFileNames(dataFilesStream)) {
+            for (String dataFileName : header.dataFileNames()) {
                 dataFilesBuilder.add(new File(dataFileName));
             }
 
-            for (Recipient recipient : CDOCParser.getRecipients(recipientsStream)) {
-                recipientsBuilder.add(Certificate
-                        .create(ByteString.of(recipient.getCertificate().getEncoded())));
+            for (ByteString recipient : header.recipients()) {
+                recipientsBuilder.add(Certificate.create(recipient));
             }
 
             return create(file, dataFilesBuilder.build(), recipientsBuilder.build(), false);
@@ -130,9 +152,25 @@ public abstract class CryptoContainer {
     /**
      * Create a new crypto container with provided data files and recipients.
      *
+     * @see #encrypt(ImmutableList, ImmutableList, File, ProgressListener)
+     */
+    @WorkerThread
+    public static CryptoContainer encrypt(ImmutableList<File> dataFiles,
+                                          ImmutableList<Certificate> recipients, File file)
+            throws CryptoException {
+        return encrypt(dataFiles, recipients, file, null);
+    }
+
+    /**
+     * Create a new crypto container with provided data files and recipients.
+     *
+     * Data files are streamed through encryption straight to the container file, so memory use
+     * doesn't depend on their size.
+     *
      * @param dataFiles Data files.
      * @param recipients Recipients.
      * @param file Path to the created crypto container file.
+     * @param progressListener Notified of the data file bytes encrypted, on the calling thread.
      * @return Container object.
      * @throws DataFilesEmptyException When no data files provided.
      * @throws RecipientsEmptyException When no recipients provided.
@@ -140,24 +178,85 @@ public abstract class CryptoContainer {
      */
     @WorkerThread
     public static CryptoContainer encrypt(ImmutableList<File> dataFiles,
-                                          ImmutableList<Certificate> recipients, File file)
+                                          ImmutableList<Certificate> recipients, File file,
+                                          @Nullable ProgressListener progressListener)
             throws CryptoException {
+        List<InputStream> inputStreams = new ArrayList<>();
         try {
             CDOCBuilder builder = CDOCBuilder.defaultVersion();
+            long total = 0;
+            for (File dataFile : dataFiles) {
+                total += dataFile.length();
+            }
+            ProgressInputStream.Progress progress = progressListener == null ? null
+                    : new ProgressInputStream.Progress(progressListener, total);
             for (File dataFile : dataFiles) {
-                builder.withDataFile(dataFile);
+                InputStream inputStream = new BufferedInputStream(new FileInputStream(dataFile),
+                        BUFFER_SIZE);
+                inputStreams.add(inputStream);
+                if (progress != null) {
+                    inputStream = new ProgressInputStream(inputStream, progress);
+                }
+                builder.withDataFile(
+                        new DataFile(dataFile.getName(), inputStream, dataFile.length()));
             }
             for (Certificate recipient : recipients) {
                 builder.withRecipient(recipient.x509Certificate());
             }
-            builder.buildToFile(file);
-            return open(file);
+            if (progress != null) {
+                progress.start();
+            }
+            try (OutputStream outputStream = new BufferedOutputStream(
+                    new FileOutputStream(file), BUFFER_SIZE)) {
+                builder.buildToOutputStream(outputStream);
+            }
+            ImmutableList.Builder<String> dataFileNames = ImmutableList.builder();
+            ImmutableList.Builder<File> containerDataFiles = ImmutableList.builder();
+            for (File dataFile : dataFiles) {
+                dataFileNames.add(dataFile.getName());
+                containerDataFiles.add(new File(dataFile.getName()));
+            }
+            verifyHeader(file, dataFileNames.build(), recipients);
+            return create(file, containerDataFiles.build(), recipients, false);
         } catch (DataFileMissingException e) {
             throw new DataFilesEmptyException();
         } catch (RecipientMissingException e) {
             throw new RecipientsEmptyException();
         } catch (Exception e) {
             throw new CryptoException("Encryption failed", e);
+        } finally {
+            for (InputStream inputStream : inputStreams) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    Timber.log(Log.ERROR, e, "Failed to close data file");
+                }
+            }
+        }
+    }
+
+    /**
+     * Check that the written container lists the data files and recipients it was built with,
+     * reading only its header. The file is deleted when the check fails.
+     */
+    private static void verifyHeader(File file, ImmutableList<String> dataFileNames,
+                                     ImmutableList<Certificate> recipients) throws Exception {
+        try {
+            CDOCHeaderParser.Header header = CDOCHeaderParser.parse(file);
+            ImmutableList.Builder<ByteString> recipientData = ImmutableList.builder();
+            for (Certificate recipient : recipients) {
+                recipientData.add(recipient.data());
+            }
+            if (!header.dataFileNames().equals(dataFileNames)
+                    || !header.recipients().equals(recipientData.build())) {
+                throw new IOException("Written container does not match its data files and "
+                        + "recipients");
+            }
+        } catch (Exception e) {
+            if (file.exists() && !file.delete()) {
+                Timber.log(Log.ERROR, "Failed to delete %s", file.getName());
+            }
+            throw e;
         }
     }
 
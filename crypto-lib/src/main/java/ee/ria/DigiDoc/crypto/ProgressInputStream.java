@@ -0,0 +1,80 @@
+package ee.ria.DigiDoc.crypto;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts bytes read from data files into a progress shared by all of them.
+ */
+final class ProgressInputStream extends FilterInputStream {
+
+    private final Progress progress;
+
+    ProgressInputStream(InputStream in, Progress progress) {
+        super(in);
+        this.progress = progress;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            progress.add(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count = super.read(b, off, len);
+        if (count > 0) {
+            progress.add(count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long count = super.skip(n);
+        if (count > 0) {
+            progress.add(count);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Notifies the listener every time another percent of the total is read.
+     */
+    static final class Progress {
+
+        private final CryptoContainer.ProgressListener listener;
+        private final long total;
+
+        private long processed;
+        private long percent = -1;
+
+        Progress(CryptoContainer.ProgressListener listener, long total) {
+            this.listener = listener;
+            this.total = total;
+        }
+
+        void start() {
+            add(0);
+        }
+
+        private void add(long count) {
+            processed += count;
+            long current = total == 0 ? 100 : Math.min(processed * 100 / total, 100);
+            if (current != percent) {
+                percent = current;
+                listener.onProgress(Math.min(processed, total), total);
+            }
+        }
+    }
+}
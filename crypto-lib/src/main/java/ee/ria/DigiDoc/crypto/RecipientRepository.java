@@ -25,6 +25,7 @@ import java.security.GeneralSecurityException;
 import javax.net.ssl.SSLSocketFactory;
 
 import ee.ria.DigiDoc.common.Certificate;
+import ee.ria.DigiDoc.common.CertificateCache;
 import ee.ria.DigiDoc.common.EIDType;
 import okio.ByteString;
 
@@ -104,7 +105,7 @@ public final class RecipientRepository {
             for (SearchResultEntry entry : searchResult.getSearchEntries()) {
                 for (Attribute attribute : entry.getAttributes()) {
                     for (ASN1OctetString value : attribute.getRawValues()) {
-                        Certificate certificate = Certificate.create(ByteString.of(value.getValue()));
+                        Certificate certificate = CertificateCache.certificate(ByteString.of(value.getValue()));
                         if (isSuitableKeyAndNotMobileId(certificate)) {
                             builder.add(certificate);
                         }
@@ -0,0 +1,86 @@
+package ee.ria.DigiDoc.crypto;
+
+import com.google.common.base.Strings;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.stream.XMLStreamException;
+
+import okio.ByteString;
+
+import static com.google.common.io.Files.asCharSink;
+import static com.google.common.io.Files.asCharSource;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.Charset.defaultCharset;
+import static okio.ByteString.decodeBase64;
+
+public final class CDOCHeaderParserTest {
+
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parse_rsaRecipient() throws Exception {
+        CDOCHeaderParser.Header header = CDOCHeaderParser.parse(resource("example1_rsa.cdoc"));
+
+        assertThat(header.dataFileNames())
+                .containsExactly("example1.txt");
+        assertThat(header.recipients())
+                .containsExactly(certificate("37101010021_rsa.cer"));
+    }
+
+    @Test
+    public void parse_ecRecipient() throws Exception {
+        CDOCHeaderParser.Header header = CDOCHeaderParser.parse(resource("example1_ec.cdoc"));
+
+        assertThat(header.dataFileNames())
+                .containsExactly("example1.txt");
+        assertThat(header.recipients())
+                .containsExactly(certificate("37101010021_ec.cer"));
+    }
+
+    @Test
+    public void parse_largePayload() throws Exception {
+        String cdoc = asCharSource(resource("example1_rsa.cdoc"), StandardCharsets.UTF_8).read();
+        String payloadStart = "<denc:CipherData>\n        <denc:CipherValue>";
+        String payload = Strings.repeat(Strings.repeat("A", 64) + "\n", 64 * 1024);
+        String dataFile = "<denc:EncryptionProperty Name=\"orig_file\">"
+                + "example2.txt|9|application/octet-stream|D1</denc:EncryptionProperty>\n";
+        String properties = "<denc:EncryptionProperty Name=\"LibraryVersion\">";
+        cdoc = cdoc.substring(0, cdoc.lastIndexOf(payloadStart) + payloadStart.length())
+                + payload
+                + cdoc.substring(cdoc.lastIndexOf(payloadStart) + payloadStart.length());
+        cdoc = cdoc.replace(properties, dataFile + properties);
+        File file = temporaryFolder.newFile("large.cdoc");
+        asCharSink(file, StandardCharsets.UTF_8).write(cdoc);
+
+        CDOCHeaderParser.Header header = CDOCHeaderParser.parse(file);
+
+        assertThat(header.dataFileNames())
+                .containsExactly("example1.txt", "example2.txt")
+                .inOrder();
+        assertThat(header.recipients())
+                .containsExactly(certificate("37101010021_rsa.cer"));
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void parse_notCdocFile() throws Exception {
+        File file = temporaryFolder.newFile("other.xml");
+        asCharSink(file, StandardCharsets.UTF_8).write("<root><child/></root>");
+
+        CDOCHeaderParser.parse(file);
+    }
+
+    private File resource(String name) {
+        return new File(getClass().getClassLoader().getResource(name).getFile());
+    }
+
+    private ByteString certificate(String name) throws IOException {
+        return decodeBase64(asCharSource(resource(name), defaultCharset()).read());
+    }
+}
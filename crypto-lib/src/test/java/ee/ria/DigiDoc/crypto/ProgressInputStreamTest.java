@@ -0,0 +1,51 @@
+package ee.ria.DigiDoc.crypto;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ProgressInputStreamTest {
+
+    @Test
+    public void read_notifiesOncePerPercentAcrossStreams() throws IOException {
+        List<Long> processed = new ArrayList<>();
+        ProgressInputStream.Progress progress = new ProgressInputStream.Progress(
+                (current, total) -> processed.add(current), 2000);
+
+        progress.start();
+        read(new ProgressInputStream(new ByteArrayInputStream(new byte[1000]), progress));
+        read(new ProgressInputStream(new ByteArrayInputStream(new byte[1000]), progress));
+
+        assertThat(processed)
+                .hasSize(101);
+        assertThat(processed.get(0))
+                .isEqualTo(0);
+        assertThat(processed.get(processed.size() - 1))
+                .isEqualTo(2000);
+    }
+
+    @Test
+    public void start_emptyDataFiles() {
+        List<Long> processed = new ArrayList<>();
+        ProgressInputStream.Progress progress = new ProgressInputStream.Progress(
+                (current, total) -> processed.add(current), 0);
+
+        progress.start();
+
+        assertThat(processed)
+                .containsExactly(0L);
+    }
+
+    private static void read(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[7];
+        while (inputStream.read(buffer) != -1) {
+            // read to the end
+        }
+    }
+}
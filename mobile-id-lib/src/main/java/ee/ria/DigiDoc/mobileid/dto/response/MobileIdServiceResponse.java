@@ -2,12 +2,9 @@ package ee.ria.DigiDoc.mobileid.dto.response;
 
 import com.google.gson.Gson;
 
-import ee.ria.libdigidocpp.Container;
-
 public class MobileIdServiceResponse {
 
     private MobileCreateSignatureSessionStatusResponse.ProcessStatus status;
-    private Container container;
     private String signature;
 
     public static String toJson(MobileIdServiceResponse response) {
@@ -26,14 +23,6 @@ public class MobileIdServiceResponse {
         this.status = status;
     }
 
-    public Container getContainer() {
-        return container;
-    }
-
-    public void setContainer(Container container) {
-        this.container = container;
-    }
-
     public String getSignature() {
         return signature;
     }
@@ -54,6 +54,7 @@ import javax.net.ssl.TrustManager;
 
 import ee.ria.DigiDoc.common.ContainerWrapper;
 import ee.ria.DigiDoc.common.MessageUtil;
+import ee.ria.DigiDoc.common.SigningTrace;
 import ee.ria.DigiDoc.common.TrustManagerUtil;
 import ee.ria.DigiDoc.common.UUIDUtil;
 import ee.ria.DigiDoc.common.VerificationCodeUtil;
@@ -71,7 +72,6 @@ import ee.ria.DigiDoc.mobileid.dto.response.MobileIdServiceResponse;
 import ee.ria.DigiDoc.mobileid.dto.response.RESTServiceFault;
 import ee.ria.DigiDoc.mobileid.rest.MIDRestServiceClient;
 import ee.ria.DigiDoc.mobileid.rest.ServiceGenerator;
-import ee.ria.libdigidocpp.Container;
 import retrofit2.Call;
 import retrofit2.Response;
 import timber.log.Timber;
@@ -175,7 +175,8 @@ public class MobileSignService extends IntentService {
                     if (isResponseError(responseWrapper, response, MobileCreateSignatureCertificateResponse.class)) {
                         return;
                     }
-                    containerWrapper = new ContainerWrapper(request.getContainerPath());
+                    containerWrapper = new ContainerWrapper(request.getContainerPath(),
+                            SigningTrace.start("Mobile-ID"));
                     String base64Hash = containerWrapper.prepareSignature(getCertificatePem(response.getCert()));
                     if (base64Hash != null && !base64Hash.isEmpty()) {
                         Timber.log(Log.DEBUG, "Broadcasting create signature response");
@@ -187,6 +188,7 @@ public class MobileSignService extends IntentService {
                             return;
                         }
                         Timber.log(Log.DEBUG, "Session ID: %s", sessionId);
+                        containerWrapper.getTrace().mark(SigningTrace.Phase.HASH_DELIVERED);
                         doCreateSignatureStatusRequestLoop(new GetMobileCreateSignatureSessionStatusRequest(sessionId));
                     } else {
                         Timber.log(Log.DEBUG, "Base64 (Prepare signature) is empty or null");
@@ -207,6 +209,11 @@ public class MobileSignService extends IntentService {
             } catch (Exception e) {
                 broadcastFault(defaultError(e.getMessage()));
                 Timber.log(Log.ERROR, e, "Failed to sign with Mobile-ID. Failed to get certificate or parse response. Exception message: %s. Exception: %s", e.getMessage(), Arrays.toString(e.getStackTrace()));
+            } finally {
+                if (containerWrapper != null) {
+                    containerWrapper.close();
+                    containerWrapper = null;
+                }
             }
         }
     }
@@ -263,7 +270,7 @@ public class MobileSignService extends IntentService {
                     Timber.log(Log.DEBUG, "Finalizing signature...");
                     containerWrapper.finalizeSignature(response.getSignature().getValue());
                     Timber.log(Log.DEBUG, "Broadcasting create signature status response");
-                    broadcastMobileCreateSignatureStatusResponse(response, containerWrapper.getContainer());
+                    broadcastMobileCreateSignatureStatusResponse(response);
                     return;
                 } catch (Exception e) {
                     if (e.getMessage() != null && e.getMessage().contains("Too Many Requests")) {
@@ -370,17 +377,20 @@ public class MobileSignService extends IntentService {
 
     private void broadcastFault(RESTServiceFault fault) {
         Timber.log(Log.DEBUG, "Broadcasting fault: %s", fault.toString());
+        if (containerWrapper != null) {
+            containerWrapper.getTrace().finish(String.valueOf(fault.getStatus()));
+        }
         Intent localIntent = new Intent(MobileSignConstants.MID_BROADCAST_ACTION)
                 .putExtra(MobileSignConstants.MID_BROADCAST_TYPE_KEY, MobileSignConstants.SERVICE_FAULT)
                 .putExtra(MobileSignConstants.SERVICE_FAULT, RESTServiceFault.toJson(fault));
         LocalBroadcastManager.getInstance(this).sendBroadcast(localIntent);
     }
 
-    private void broadcastMobileCreateSignatureStatusResponse(MobileCreateSignatureSessionStatusResponse response, Container container) {
+    private void broadcastMobileCreateSignatureStatusResponse(MobileCreateSignatureSessionStatusResponse response) {
         Timber.log(Log.DEBUG, "Broadcasting create signature status response: %s", response.toString());
         Intent localIntent = new Intent(MobileSignConstants.MID_BROADCAST_ACTION)
                 .putExtra(MobileSignConstants.MID_BROADCAST_TYPE_KEY, MobileSignConstants.CREATE_SIGNATURE_STATUS)
-                .putExtra(MobileSignConstants.CREATE_SIGNATURE_STATUS, MobileIdServiceResponse.toJson(generateMobileIdResponse(response, container)));
+                .putExtra(MobileSignConstants.CREATE_SIGNATURE_STATUS, MobileIdServiceResponse.toJson(generateMobileIdResponse(response)));
         LocalBroadcastManager.getInstance(this).sendBroadcast(localIntent);
     }
 
@@ -396,9 +406,8 @@ public class MobileSignService extends IntentService {
         return phoneNumber.length() <= 9;
     }
 
-    private MobileIdServiceResponse generateMobileIdResponse(MobileCreateSignatureSessionStatusResponse response, Container container) {
+    private MobileIdServiceResponse generateMobileIdResponse(MobileCreateSignatureSessionStatusResponse response) {
         MobileIdServiceResponse mobileIdResponse = new MobileIdServiceResponse();
-        mobileIdResponse.setContainer(container);
         mobileIdResponse.setStatus(response.getResult());
         mobileIdResponse.setSignature(response.getSignature().getValue());
         Timber.log(Log.DEBUG, "Mobile-ID status: %s, signature: %s", mobileIdResponse.getStatus().toString(), mobileIdResponse.getSignature());
@@ -0,0 +1,416 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Xml;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import okio.ByteString;
+
+/**
+ * Reads ASiC-E and ASiC-S containers without libdigidocpp.
+ * <p>
+ * Only the ZIP central directory and {@code META-INF/manifest.xml} are read, which is enough
+ * to list data files and to read their content. Signatures are only scanned for signing
+ * certificates, they are not validated, use {@link SignedContainer} or
+ * {@link ContainerSession} for that.
+ * <p>
+ * The container screen doesn't use this, its document list needs the data file IDs of
+ * libdigidocpp to open, save and remove documents, and the app has no document previews.
+ * <p>
+ * Data file IDs are positional ({@code D0}, {@code D1}, ...) in manifest order and are
+ * only meant for telling listed files apart, don't pass them to container operations.
+ */
+public final class AsicContainerReader implements Closeable {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int EOCD_MAX_COMMENT = 0xFFFF;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private static final String MIMETYPE = "mimetype";
+    private static final String MANIFEST = "META-INF/manifest.xml";
+    private static final String META_INF = "META-INF/";
+    private static final String MANIFEST_NAMESPACE =
+            "urn:oasis:names:tc:opendocument:xmlns:manifest:1.0";
+    private static final int MANIFEST_MAX_SIZE = 1024 * 1024;
+    private static final String SIGNATURES = "signatures";
+    private static final String DSIG_NAMESPACE = "http://www.w3.org/2000/09/xmldsig#";
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ImmutableMap<String, Entry> entries;
+
+    private AsicContainerReader(RandomAccessFile file, FileChannel channel,
+                                ImmutableMap<String, Entry> entries) {
+        this.file = file;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * Open a container and read its central directory.
+     *
+     * @param containerFile ASiC container file.
+     * @return Reader, close it when done.
+     * @throws ZipException When the file is not a ZIP or uses ZIP64.
+     */
+    public static AsicContainerReader open(File containerFile) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(containerFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return new AsicContainerReader(file, channel, readCentralDirectory(channel));
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Content of the {@code mimetype} entry, empty if there is none.
+     */
+    public String mimeType() throws IOException {
+        Entry entry = entries.get(MIMETYPE);
+        if (entry == null) {
+            return "";
+        }
+        return new String(read(entry, 256), StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * List data files from the manifest, or from the ZIP entries outside {@code META-INF}
+     * when the manifest is missing.
+     */
+    public ImmutableList<DataFile> dataFiles() throws IOException {
+        return dataFiles(Xml::newPullParser);
+    }
+
+    /**
+     * {@link #dataFiles()} reading the manifest with parsers from given supplier, for unit
+     * tests where {@link Xml} is not available.
+     */
+    ImmutableList<DataFile> dataFiles(Supplier<XmlPullParser> parsers) throws IOException {
+        Map<String, String> mediaTypes = manifestMediaTypes(parsers);
+        ImmutableList.Builder<DataFile> dataFiles = ImmutableList.builder();
+        int index = 0;
+        if (mediaTypes != null) {
+            for (Map.Entry<String, String> mediaType : mediaTypes.entrySet()) {
+                Entry entry = entries.get(mediaType.getKey());
+                if (entry != null) {
+                    dataFiles.add(dataFile(index++, entry, mediaType.getValue()));
+                }
+            }
+        } else {
+            for (Entry entry : entries.values()) {
+                if (!entry.name.equals(MIMETYPE) && !entry.name.startsWith(META_INF)
+                        && !entry.name.endsWith("/")) {
+                    dataFiles.add(dataFile(index++, entry, ""));
+                }
+            }
+        }
+        return dataFiles.build();
+    }
+
+    /**
+     * Read the beginning of an entry, for example to show a preview of a data file.
+     *
+     * @param name Entry name, {@link DataFile#name()} for files in the container root.
+     * @param maxBytes Maximum number of bytes to read.
+     * @return Up to {@code maxBytes} of uncompressed content.
+     * @throws FileNotFoundException When there is no such entry.
+     */
+    public byte[] read(String name, int maxBytes) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name);
+        }
+        return read(entry, maxBytes);
+    }
+
+    /**
+     * Signing certificates of XAdES signatures in {@code META-INF/*signatures*.xml}, taken
+     * from the first certificate in the {@code KeyInfo} of each signature.
+     * <p>
+     * The signatures are not validated, so only use these to describe the container.
+     *
+     * @return DER encoded certificates in signature order.
+     */
+    public ImmutableList<ByteString> signingCertificates() throws IOException {
+        ImmutableList.Builder<ByteString> certificates = ImmutableList.builder();
+        for (Entry entry : entries.values()) {
+            if (entry.name.startsWith(META_INF) && entry.name.endsWith(".xml")
+                    && entry.name.substring(META_INF.length()).contains(SIGNATURES)) {
+                try (InputStream input = openStream(entry)) {
+                    readSigningCertificates(input, certificates);
+                }
+            }
+        }
+        return certificates.build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private static void readSigningCertificates(InputStream input,
+                                                ImmutableList.Builder<ByteString> certificates)
+            throws IOException {
+        XmlPullParser parser = Xml.newPullParser();
+        try {
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(input, null);
+            boolean found = false;
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT;
+                 event = parser.next()) {
+                if (event != XmlPullParser.START_TAG
+                        || !DSIG_NAMESPACE.equals(parser.getNamespace())) {
+                    continue;
+                }
+                if ("Signature".equals(parser.getName())) {
+                    found = false;
+                } else if (!found && "X509Certificate".equals(parser.getName())) {
+                    ByteString certificate = ByteString.decodeBase64(parser.nextText());
+                    if (certificate == null) {
+                        throw new IOException("Invalid signing certificate");
+                    }
+                    certificates.add(certificate);
+                    found = true;
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid signatures file", e);
+        }
+    }
+
+    private byte[] read(Entry entry, int maxBytes) throws IOException {
+        int length = (int) Math.min(maxBytes, entry.size);
+        try (InputStream input = openStream(entry)) {
+            byte[] bytes = new byte[length];
+            int read = ByteStreams.read(input, bytes, 0, length);
+            return read == length ? bytes : Arrays.copyOf(bytes, read);
+        }
+    }
+
+    private InputStream openStream(Entry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + entry.name);
+        }
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE
+                + uint16(header, 26) + uint16(header, 28);
+        InputStream data = new ChannelInputStream(channel, dataOffset, entry.compressedSize);
+        switch (entry.method) {
+            case METHOD_STORED:
+                return data;
+            case METHOD_DEFLATED:
+                Inflater inflater = new Inflater(true);
+                return new InflaterInputStream(data, inflater) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method);
+        }
+    }
+
+    /**
+     * @return Media types by full path in manifest order, null when there is no manifest.
+     */
+    @Nullable
+    private Map<String, String> manifestMediaTypes(Supplier<XmlPullParser> parsers)
+            throws IOException {
+        Entry entry = entries.get(MANIFEST);
+        if (entry == null) {
+            return null;
+        }
+        Map<String, String> mediaTypes = new LinkedHashMap<>();
+        XmlPullParser parser = parsers.get();
+        try {
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(new ByteArrayInputStream(read(entry, MANIFEST_MAX_SIZE)), null);
+            for (int event = parser.getEventType(); event != XmlPullParser.END_DOCUMENT;
+                 event = parser.next()) {
+                if (event != XmlPullParser.START_TAG || !"file-entry".equals(parser.getName())) {
+                    continue;
+                }
+                String path = parser.getAttributeValue(MANIFEST_NAMESPACE, "full-path");
+                if (path != null && !path.equals("/")) {
+                    mediaTypes.put(path,
+                            parser.getAttributeValue(MANIFEST_NAMESPACE, "media-type"));
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid manifest", e);
+        }
+        return mediaTypes;
+    }
+
+    private static DataFile dataFile(int index, Entry entry, @Nullable String mediaType) {
+        return DataFile.create("D" + index, new File(entry.name).getName(), entry.size,
+                mediaType);
+    }
+
+    private static ImmutableMap<String, Entry> readCentralDirectory(FileChannel channel)
+            throws IOException {
+        long size = channel.size();
+        if (size < EOCD_SIZE) {
+            throw new ZipException("Not a ZIP file");
+        }
+        long tailOffset = Math.max(0, size - EOCD_SIZE - EOCD_MAX_COMMENT);
+        ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, tailOffset,
+                size - tailOffset).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = -1;
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd == -1) {
+            throw new ZipException("End of central directory not found");
+        }
+        int count = uint16(tail, eocd + 10);
+        long directorySize = uint32(tail, eocd + 12);
+        long directoryOffset = uint32(tail, eocd + 16);
+        if (count == 0xFFFF || directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) {
+            throw new ZipException("ZIP64 is not supported");
+        }
+        if (directoryOffset + directorySize > size) {
+            throw new ZipException("Invalid central directory");
+        }
+
+        ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                directorySize).order(ByteOrder.LITTLE_ENDIAN);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directorySize
+                    || directory.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry");
+            }
+            int method = uint16(directory, position + 10);
+            long compressedSize = uint32(directory, position + 20);
+            long uncompressedSize = uint32(directory, position + 24);
+            int nameLength = uint16(directory, position + 28);
+            int extraLength = uint16(directory, position + 30);
+            int commentLength = uint16(directory, position + 32);
+            long localHeaderOffset = uint32(directory, position + 42);
+            byte[] name = new byte[nameLength];
+            directory.position(position + CENTRAL_HEADER_SIZE);
+            directory.get(name);
+            Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), method,
+                    compressedSize, uncompressedSize, localHeaderOffset);
+            entries.put(entry.name, entry);
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return ImmutableMap.copyOf(entries);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new ZipException("Unexpected end of file");
+            }
+        }
+        return buffer;
+    }
+
+    private static int uint16(ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long uint32(ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads a range of the channel with positional reads, so several entries can be read
+     * at the same time. Closing it doesn't close the channel.
+     */
+    private static final class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        ChannelInputStream(FileChannel channel, long position, long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+            int read = channel.read(buffer, position);
+            if (read > 0) {
+                position += read;
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+
+    private static final class Entry {
+
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import timber.log.Timber;
+
+/**
+ * Adds a signature to an ASiC-E container by appending a {@code META-INF/signatures*.xml}
+ * entry instead of rewriting the whole archive.
+ * <p>
+ * The new entry overwrites the old central directory, and a new central directory that lists
+ * the new entry comes after it. The data files are not touched. Before anything is written,
+ * the old central directory and end record are copied to a journal file next to the
+ * container. Call {@link #commit()} once the result has been checked, or {@link #rollback()}
+ * to restore the original archive. A journal left behind by a crash is restored by
+ * {@link #recover(File)} the next time the container is opened.
+ */
+final class AsicSignatureAppender {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int EOCD_MAX_COMMENT = 0xFFFF;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int VERSION = 20;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int METHOD_DEFLATED = 8;
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final String SIGNATURE_NAME = "META-INF/signatures%d.xml";
+    private static final String JOURNAL_EXTENSION = "append";
+
+    private final File containerFile;
+    private final File journalFile;
+
+    private AsicSignatureAppender(File containerFile, File journalFile) {
+        this.containerFile = containerFile;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Append a signature to the container.
+     * <p>
+     * If writing fails, the original archive is restored before the exception is thrown.
+     *
+     * @param containerFile ASiC-E container.
+     * @param signature XAdES signature document.
+     * @return Appender to commit or roll back the change.
+     * @throws ZipException When the archive can't be appended to, for example ZIP64.
+     */
+    static AsicSignatureAppender append(File containerFile, byte[] signature)
+            throws IOException {
+        File journalFile = journalFile(containerFile);
+        try (RandomAccessFile file = new RandomAccessFile(containerFile, "rw")) {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            ByteBuffer tail = findEndRecord(channel, size);
+            int eocd = tail.position();
+            int count = tail.getShort(eocd + 10) & 0xFFFF;
+            long directorySize = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long directoryOffset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+            int commentLength = tail.getShort(eocd + 20) & 0xFFFF;
+            if (count >= MAX_ENTRIES || directoryOffset + directorySize > size) {
+                throw new ZipException("Unsupported central directory");
+            }
+            ByteBuffer directory = read(channel, directoryOffset,
+                    (int) (size - directoryOffset));
+            String name = signatureName(directory, count);
+
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            byte[] compressed = deflate(signature);
+            CRC32 crc = new CRC32();
+            crc.update(signature);
+            int[] dosTime = dosTime(System.currentTimeMillis());
+
+            ByteBuffer local = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            local.putInt(LOCAL_SIGNATURE)
+                    .putShort((short) VERSION)
+                    .putShort((short) FLAG_UTF8)
+                    .putShort((short) METHOD_DEFLATED)
+                    .putShort((short) dosTime[0])
+                    .putShort((short) dosTime[1])
+                    .putInt((int) crc.getValue())
+                    .putInt(compressed.length)
+                    .putInt(signature.length)
+                    .putShort((short) nameBytes.length)
+                    .putShort((short) 0)
+                    .put(nameBytes);
+
+            long newDirectoryOffset = directoryOffset + local.capacity() + compressed.length;
+            long newDirectorySize = directorySize + CENTRAL_HEADER_SIZE + nameBytes.length;
+            if (newDirectoryOffset + newDirectorySize > MAX_OFFSET) {
+                throw new ZipException("Container is too large to append to");
+            }
+
+            ByteBuffer central = ByteBuffer.allocate((int) newDirectorySize + EOCD_SIZE
+                    + commentLength).order(ByteOrder.LITTLE_ENDIAN);
+            central.put(directory.array(), 0, (int) directorySize);
+            central.putInt(CENTRAL_SIGNATURE)
+                    .putShort((short) VERSION)
+                    .putShort((short) VERSION)
+                    .putShort((short) FLAG_UTF8)
+                    .putShort((short) METHOD_DEFLATED)
+                    .putShort((short) dosTime[0])
+                    .putShort((short) dosTime[1])
+                    .putInt((int) crc.getValue())
+                    .putInt(compressed.length)
+                    .putInt(signature.length)
+                    .putShort((short) nameBytes.length)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    .putInt((int) directoryOffset)
+                    .put(nameBytes);
+            central.putInt(EOCD_SIGNATURE)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) (count + 1))
+                    .putShort((short) (count + 1))
+                    .putInt((int) newDirectorySize)
+                    .putInt((int) newDirectoryOffset)
+                    .putShort((short) commentLength)
+                    .put(tail.array(), eocd + EOCD_SIZE, commentLength);
+
+            writeJournal(journalFile, directoryOffset, directory.array());
+            try {
+                write(channel, directoryOffset, (ByteBuffer) local.flip());
+                write(channel, directoryOffset + local.limit(), ByteBuffer.wrap(compressed));
+                write(channel, newDirectoryOffset, (ByteBuffer) central.flip());
+                channel.truncate(newDirectoryOffset + central.limit());
+                channel.force(true);
+            } catch (IOException | RuntimeException e) {
+                restore(channel, directoryOffset, directory.array());
+                delete(journalFile);
+                throw e;
+            }
+        }
+        return new AsicSignatureAppender(containerFile, journalFile);
+    }
+
+    /**
+     * Keep the appended signature.
+     */
+    void commit() {
+        delete(journalFile);
+    }
+
+    /**
+     * Restore the archive as it was before appending.
+     */
+    void rollback() throws IOException {
+        recover(containerFile);
+    }
+
+    /**
+     * Restore the archive from a journal left behind by an interrupted append, if any.
+     *
+     * @param containerFile Container file.
+     */
+    static void recover(File containerFile) throws IOException {
+        File journalFile = journalFile(containerFile);
+        if (!journalFile.isFile()) {
+            return;
+        }
+        Timber.log(Log.DEBUG, "Restoring %s after an interrupted signature append",
+                containerFile.getName());
+        long offset;
+        byte[] tail;
+        try (DataInputStream input = new DataInputStream(new FileInputStream(journalFile))) {
+            offset = input.readLong();
+            tail = new byte[input.readInt()];
+            input.readFully(tail);
+        } catch (IOException e) {
+            // Journal was not completely written, so the container was not touched yet
+            delete(journalFile);
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(containerFile, "rw")) {
+            restore(file.getChannel(), offset, tail);
+        }
+        delete(journalFile);
+    }
+
+    private static void restore(FileChannel channel, long offset, byte[] tail)
+            throws IOException {
+        write(channel, offset, ByteBuffer.wrap(tail));
+        channel.truncate(offset + tail.length);
+        channel.force(true);
+    }
+
+    private static void writeJournal(File journalFile, long offset, byte[] tail)
+            throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(journalFile);
+             DataOutputStream output = new DataOutputStream(stream)) {
+            output.writeLong(offset);
+            output.writeInt(tail.length);
+            output.write(tail);
+            output.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    /**
+     * @return Buffer with the end of the file, positioned at the end of central directory
+     * record.
+     */
+    private static ByteBuffer findEndRecord(FileChannel channel, long size) throws IOException {
+        if (size < EOCD_SIZE) {
+            throw new ZipException("Not a ZIP file");
+        }
+        long tailOffset = Math.max(0, size - EOCD_SIZE - EOCD_MAX_COMMENT);
+        ByteBuffer tail = read(channel, tailOffset, (int) (size - tailOffset));
+        for (int i = tail.limit() - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE
+                    && i + EOCD_SIZE + (tail.getShort(i + 20) & 0xFFFF) == tail.limit()) {
+                tail.position(i);
+                return tail;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    /**
+     * First unused {@code META-INF/signaturesN.xml} name.
+     */
+    private static String signatureName(ByteBuffer directory, int count) throws ZipException {
+        Set<String> names = new HashSet<>();
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_HEADER_SIZE > directory.limit()
+                    || directory.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry");
+            }
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            names.add(new String(directory.array(), position + CENTRAL_HEADER_SIZE, nameLength,
+                    StandardCharsets.UTF_8));
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        for (int i = 0; ; i++) {
+            String name = String.format(Locale.US, SIGNATURE_NAME, i);
+            if (!names.contains(name)) {
+                return name;
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, data.length + data.length / 1000 + 64)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return MS-DOS time and date fields.
+     */
+    private static int[] dosTime(long millis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(millis);
+        int time = (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | (calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+        int date = ((calendar.get(Calendar.YEAR) - 1980) << 9)
+                | ((calendar.get(Calendar.MONTH) + 1) << 5)
+                | calendar.get(Calendar.DAY_OF_MONTH);
+        return new int[] {time, date};
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new ZipException("Unexpected end of file");
+            }
+        }
+        return buffer;
+    }
+
+    private static void write(FileChannel channel, long position, ByteBuffer buffer)
+            throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static File journalFile(File containerFile) {
+        return new File(containerFile.getParentFile(),
+                "." + containerFile.getName() + "." + JOURNAL_EXTENSION);
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Timber.log(Log.DEBUG, "Failed to delete %s", file.getName());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ee.ria.DigiDoc.common.SigningTrace;
+import ee.ria.DigiDoc.sign.utils.Function;
+import okio.ByteString;
+import timber.log.Timber;
+
+/**
+ * Signs several containers with the same certificate.
+ * <p>
+ * Containers are prepared and their signature values calculated one at a time on the calling
+ * thread, since a token can only do one operation at a time. Extending the signatures with
+ * timestamp and OCSP and saving the containers is network and disk bound, so it runs on a
+ * pool while the next container is signed.
+ * <p>
+ * A failure in one container is reported and the rest are still signed. Failures of the sign
+ * function, for example a wrong PIN, stop the whole batch since they would repeat for every
+ * container. Signatures already being finished are then completed and reported, the queued
+ * ones are dropped and their containers closed before the failure is rethrown.
+ */
+final class ContainerBatchSigner {
+
+    /**
+     * One container being signed, a {@link ContainerSession} outside of unit tests.
+     */
+    interface Session {
+
+        File file();
+
+        /**
+         * Add a signature with the certificate.
+         *
+         * @return Data to sign.
+         */
+        ByteString prepare(ByteString certificate, SigningTrace trace) throws Exception;
+
+        /**
+         * Finish the prepared signature and save the container.
+         */
+        SignedContainer finish(ByteString signatureValue, SigningTrace trace) throws Exception;
+
+        void close();
+    }
+
+    private final int parallelism;
+    private final Function<File, Session> sessions;
+
+    ContainerBatchSigner(int parallelism) {
+        this(parallelism, file -> new NativeSession(ContainerSession.open(file, false)));
+    }
+
+    ContainerBatchSigner(int parallelism, Function<File, Session> sessions) {
+        this.parallelism = parallelism;
+        this.sessions = sessions;
+    }
+
+    void signAll(ImmutableList<File> files, ByteString certificate,
+                 Function<ByteString, ByteString> signFunction,
+                 ContainerSigning.Listener listener) throws Exception {
+        int total = files.size();
+        if (total == 0) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, total)),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("container-sign-%d")
+                        .setDaemon(true)
+                        .build());
+        CompletionService<ContainerSigning> completionService =
+                new ExecutorCompletionService<>(executor);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        int submitted = 0;
+        int completed = 0;
+        try {
+            for (File file : files) {
+                SigningTrace trace = SigningTrace.start("batch");
+                Session session;
+                ByteString dataToSign;
+                try {
+                    session = sessions.apply(file);
+                    trace.mark(SigningTrace.Phase.OPEN);
+                } catch (Exception e) {
+                    trace.finish(e.getClass().getSimpleName());
+                    listener.onSigned(ContainerSigning.failure(file,
+                            SignedContainer.signingException(e), ++completed, total));
+                    continue;
+                }
+                try {
+                    dataToSign = session.prepare(certificate, trace);
+                } catch (Exception e) {
+                    session.close();
+                    trace.finish(e.getClass().getSimpleName());
+                    listener.onSigned(ContainerSigning.failure(file,
+                            SignedContainer.signingException(e), ++completed, total));
+                    continue;
+                }
+                ByteString signatureValue;
+                try {
+                    trace.mark(SigningTrace.Phase.HASH_DELIVERED);
+                    signatureValue = signFunction.apply(dataToSign);
+                    trace.mark(SigningTrace.Phase.SIGNATURE_RECEIVED);
+                } catch (Exception e) {
+                    session.close();
+                    trace.finish(e.getClass().getSimpleName());
+                    throw e;
+                }
+                completionService.submit(() -> cancelled.get()
+                        ? skip(session, trace)
+                        : finish(session, signatureValue, trace));
+                submitted++;
+
+                Future<ContainerSigning> future;
+                while ((future = completionService.poll()) != null) {
+                    submitted--;
+                    listener.onSigned(withCompleted(future.get(), ++completed, total));
+                }
+            }
+            while (submitted > 0) {
+                ContainerSigning signing = completionService.take().get();
+                submitted--;
+                listener.onSigned(withCompleted(signing, ++completed, total));
+            }
+        } catch (Exception e) {
+            cancelled.set(true);
+            executor.shutdown();
+            Uninterruptibles.awaitTerminationUninterruptibly(executor);
+            try {
+                Future<ContainerSigning> future;
+                while ((future = completionService.poll()) != null) {
+                    ContainerSigning signing = future.get();
+                    if (signing != null) {
+                        listener.onSigned(withCompleted(signing, ++completed, total));
+                    }
+                }
+            } catch (Exception reportException) {
+                e.addSuppressed(reportException);
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Release a container whose signature was not finished because the batch stopped.
+     */
+    @Nullable
+    private static ContainerSigning skip(Session session, SigningTrace trace) {
+        session.close();
+        trace.finish(CancellationException.class.getSimpleName());
+        return null;
+    }
+
+    private static ContainerSigning finish(Session session, ByteString signatureValue,
+                                           SigningTrace trace) {
+        try {
+            SignedContainer container = session.finish(signatureValue, trace);
+            trace.finish(null);
+            return ContainerSigning.success(session.file(), container, 0, 0);
+        } catch (Exception e) {
+            trace.finish(e.getClass().getSimpleName());
+            Timber.log(Log.ERROR, e, "Failed to finish signature of %s",
+                    session.file().getName());
+            return ContainerSigning.failure(session.file(), SignedContainer.signingException(e),
+                    0, 0);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static ContainerSigning withCompleted(ContainerSigning signing, int completed,
+                                                  int total) {
+        SignedContainer container = signing.container();
+        return container != null
+                ? ContainerSigning.success(signing.file(), container, completed, total)
+                : ContainerSigning.failure(signing.file(), signing.error(), completed, total);
+    }
+
+    private static final class NativeSession implements Session {
+
+        private final ContainerSession session;
+        private ee.ria.libdigidocpp.Signature signature;
+
+        NativeSession(ContainerSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public File file() {
+            return session.file();
+        }
+
+        @Override
+        public ByteString prepare(ByteString certificate, SigningTrace trace) throws Exception {
+            signature = session.prepareSignature(certificate, trace);
+            return ByteString.of(signature.dataToSign());
+        }
+
+        @Override
+        public SignedContainer finish(ByteString signatureValue, SigningTrace trace)
+                throws Exception {
+            return session.finishSignature(signature, signatureValue, trace);
+        }
+
+        @Override
+        public void close() {
+            session.close();
+        }
+    }
+}
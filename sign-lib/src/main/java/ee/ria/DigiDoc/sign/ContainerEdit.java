@@ -0,0 +1,109 @@
+package ee.ria.DigiDoc.sign;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.File;
+
+/**
+ * Collects data file changes and applies them to the container with a single save.
+ * <p>
+ * Nothing is written, and for {@link SignedContainer#edit()} the container is not even opened,
+ * before {@link #commit()}. If applying the changes or saving fails, the container file is
+ * left as it was.
+ *
+ * <pre>
+ * SignedContainer signedContainer = container.edit()
+ *         .addDataFiles(files)
+ *         .removeDataFile(dataFile)
+ *         .renameDataFile(otherDataFile, "invoice.pdf")
+ *         .commit();
+ * </pre>
+ */
+public final class ContainerEdit {
+
+    /**
+     * Single change to apply to the container.
+     */
+    interface Operation {
+
+        /**
+         * @param session Session the change is applied to.
+         * @param workDir Directory for temporary files of this edit.
+         */
+        void apply(ContainerSession session, File workDir) throws Exception;
+    }
+
+    @Nullable private final ContainerSession session;
+    @Nullable private final SignedContainer container;
+    private final ImmutableList.Builder<Operation> operations = ImmutableList.builder();
+
+    /**
+     * Edit applied to an already opened session, which stays open after the commit.
+     */
+    ContainerEdit(ContainerSession session) {
+        this.session = session;
+        this.container = null;
+    }
+
+    /**
+     * Edit that opens the container only for the commit.
+     */
+    ContainerEdit(SignedContainer container) {
+        this.session = null;
+        this.container = container;
+    }
+
+    public ContainerEdit addDataFile(File dataFile) {
+        operations.add((session, workDir) -> session.addNativeDataFile(dataFile));
+        return this;
+    }
+
+    public ContainerEdit addDataFiles(ImmutableList<File> dataFiles) {
+        for (File dataFile : dataFiles) {
+            addDataFile(dataFile);
+        }
+        return this;
+    }
+
+    public ContainerEdit removeDataFile(DataFile dataFile) {
+        operations.add((session, workDir) -> session.removeNativeDataFile(dataFile));
+        return this;
+    }
+
+    /**
+     * Rename a data file in the container.
+     * <p>
+     * libdigidocpp has no rename, the file is extracted under the new name,
+     * removed and added again.
+     *
+     * @param dataFile Data file to rename.
+     * @param name New name of the data file.
+     */
+    public ContainerEdit renameDataFile(DataFile dataFile, String name) {
+        operations.add((session, workDir) -> {
+            File renamedFile = session.extractNativeDataFile(dataFile, workDir, name);
+            session.removeNativeDataFile(dataFile);
+            session.addNativeDataFile(renamedFile);
+        });
+        return this;
+    }
+
+    /**
+     * Apply all changes and save the container once.
+     *
+     * @return Container with the changes applied.
+     * @throws ContainerDataFilesEmptyException When the changes would remove all data files.
+     * @throws java.io.IOException When saving the container fails, the container is not changed.
+     */
+    @SuppressWarnings("ConstantConditions")
+    public SignedContainer commit() throws Exception {
+        if (session != null) {
+            return session.commit(operations.build());
+        }
+        try (ContainerSession opened = ContainerSession.open(container)) {
+            return opened.commit(operations.build());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ee.ria.DigiDoc.sign;
+
+public enum ContainerFormat {
+
+    /**
+     * ASiC-E container (asice, bdoc).
+     */
+    ASICE("asice", "application/vnd.etsi.asic-e+zip"),
+
+    /**
+     * ASiC-S container.
+     */
+    ASICS("asics", "application/vnd.etsi.asic-s+zip"),
+
+    /**
+     * Lithuanian ADOC container.
+     */
+    ADOC("adoc", "application/vnd.lt.archyvai.adoc-2008"),
+
+    /**
+     * Legacy DigiDoc XML container.
+     */
+    DDOC("ddoc", "application/x-ddoc"),
+
+    /**
+     * Encrypted CDOC container.
+     */
+    CDOC("cdoc", "application/x-cdoc"),
+
+    /**
+     * PDF document, signed or not.
+     */
+    PDF("pdf", "application/pdf"),
+
+    /**
+     * Not a recognized container format.
+     */
+    UNKNOWN("", "");
+
+    private final String extension;
+    private final String mediaType;
+
+    ContainerFormat(String extension, String mediaType) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return File extension without the dot, empty for {@link #UNKNOWN}.
+     */
+    public String extension() {
+        return extension;
+    }
+
+    /**
+     * @return Media type of the format, as libdigidocpp reports it. For ZIP containers the
+     * content of the {@code mimetype} entry, empty for {@link #UNKNOWN}.
+     */
+    public String mediaType() {
+        return mediaType;
+    }
+}
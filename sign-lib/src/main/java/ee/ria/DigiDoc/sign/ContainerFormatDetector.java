@@ -0,0 +1,219 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Log;
+import android.util.Xml;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import timber.log.Timber;
+
+/**
+ * Detects container format from file content.
+ * <p>
+ * Only the beginning of the file is read: the {@code mimetype} entry of a ZIP,
+ * the PDF header or the root element of an XML document.
+ */
+public final class ContainerFormatDetector {
+
+    private static final int HEADER_SIZE = 1024;
+    private static final int ZIP_LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP_MIMETYPE_MAX_SIZE = 256;
+
+    private static final byte[] ZIP_SIGNATURE = {'P', 'K', 3, 4};
+    private static final byte[] PDF_SIGNATURE = {'%', 'P', 'D', 'F', '-'};
+    private static final String ZIP_MIMETYPE_ENTRY = "mimetype";
+
+    private static final String XMLENC_NAMESPACE = "http://www.w3.org/2001/04/xmlenc#";
+    private static final String DDOC_ROOT = "SignedDoc";
+    private static final String DDOC_FORMAT = "DIGIDOC-XML";
+    private static final String CDOC_ROOT = "EncryptedData";
+    private static final String CDOC_PROPERTY = "EncryptionProperty";
+    private static final String CDOC_FORMAT = "DocumentFormat";
+
+    private static final ImmutableMap<String, ContainerFormat> ZIP_MIMETYPES =
+            ImmutableMap.<String, ContainerFormat>builder()
+                    .put(ContainerFormat.ASICE.mediaType(), ContainerFormat.ASICE)
+                    .put(ContainerFormat.ASICS.mediaType(), ContainerFormat.ASICS)
+                    .put(ContainerFormat.ADOC.mediaType(), ContainerFormat.ADOC)
+                    .build();
+
+    private ContainerFormatDetector() {
+    }
+
+    /**
+     * Detect container format of a file.
+     *
+     * @param file File to check, extension is ignored.
+     * @return Detected format, {@link ContainerFormat#UNKNOWN} when not recognized or
+     * the file can't be read.
+     */
+    public static ContainerFormat detect(File file) {
+        return detect(file, Xml::newPullParser);
+    }
+
+    /**
+     * {@link #detect(File)} reading XML with a parser from given supplier, for unit tests
+     * where {@link Xml} is not available.
+     */
+    static ContainerFormat detect(File file, Supplier<XmlPullParser> parsers) {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            input.mark(HEADER_SIZE);
+            byte[] header = new byte[HEADER_SIZE];
+            int length = read(input, header, 0, header.length);
+            input.reset();
+
+            if (startsWith(header, length, 0, ZIP_SIGNATURE)) {
+                return zipFormat(header, length);
+            }
+            int offset = skipBomAndWhitespace(header, length);
+            if (startsWith(header, length, offset, PDF_SIGNATURE)) {
+                return ContainerFormat.PDF;
+            }
+            if (offset < length && header[offset] == '<') {
+                return xmlFormat(input, parsers.get());
+            }
+            return indexOf(header, length, PDF_SIGNATURE) != -1
+                    ? ContainerFormat.PDF
+                    : ContainerFormat.UNKNOWN;
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Unable to detect container format of %s", file.getName());
+            return ContainerFormat.UNKNOWN;
+        }
+    }
+
+    /**
+     * The mimetype entry of ASiC and ADOC containers is the first entry, stored uncompressed.
+     */
+    private static ContainerFormat zipFormat(byte[] header, int length) {
+        if (length < ZIP_LOCAL_HEADER_SIZE) {
+            return ContainerFormat.UNKNOWN;
+        }
+        int compression = uint16(header, 8);
+        int size = (int) Math.min(uint32(header, 18), ZIP_MIMETYPE_MAX_SIZE);
+        int nameLength = uint16(header, 26);
+        int extraLength = uint16(header, 28);
+        int nameOffset = ZIP_LOCAL_HEADER_SIZE;
+        int dataOffset = nameOffset + nameLength + extraLength;
+        if (compression != 0 || dataOffset + size > length
+                || !ZIP_MIMETYPE_ENTRY.equals(new String(header, nameOffset, nameLength,
+                        StandardCharsets.US_ASCII))) {
+            return ContainerFormat.UNKNOWN;
+        }
+        String mimetype = new String(header, dataOffset, size, StandardCharsets.US_ASCII).trim();
+        ContainerFormat format = ZIP_MIMETYPES.get(mimetype);
+        return format == null ? ContainerFormat.UNKNOWN : format;
+    }
+
+    /**
+     * DDOC is decided from the root element. An encrypted document is a CDOC only with the
+     * {@code DocumentFormat} encryption property, which comes after the cipher data.
+     */
+    private static ContainerFormat xmlFormat(InputStream input, XmlPullParser parser) {
+        try {
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(input, null);
+            int eventType = parser.getEventType();
+            while (eventType != XmlPullParser.START_TAG && eventType != XmlPullParser.END_DOCUMENT) {
+                eventType = parser.next();
+            }
+            if (eventType != XmlPullParser.START_TAG) {
+                return ContainerFormat.UNKNOWN;
+            }
+            String name = parser.getName();
+            if (DDOC_ROOT.equals(name)) {
+                return hasAttributeValue(parser, DDOC_FORMAT)
+                        ? ContainerFormat.DDOC
+                        : ContainerFormat.UNKNOWN;
+            } else if (CDOC_ROOT.equals(name) && XMLENC_NAMESPACE.equals(parser.getNamespace())) {
+                while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                    if (eventType == XmlPullParser.START_TAG
+                            && CDOC_PROPERTY.equals(parser.getName())
+                            && XMLENC_NAMESPACE.equals(parser.getNamespace())
+                            && hasAttributeValue(parser, CDOC_FORMAT)) {
+                        return ContainerFormat.CDOC;
+                    }
+                }
+            }
+        } catch (XmlPullParserException | IOException e) {
+            Timber.log(Log.DEBUG, e, "Not an XML container");
+        }
+        return ContainerFormat.UNKNOWN;
+    }
+
+    private static boolean hasAttributeValue(XmlPullParser parser, String value) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            if (value.equals(parser.getAttributeValue(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int read(InputStream input, byte[] buffer, int offset, int length)
+            throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static int skipBomAndWhitespace(byte[] header, int length) {
+        int offset = 0;
+        if (length >= 3 && (header[0] & 0xFF) == 0xEF && (header[1] & 0xFF) == 0xBB
+                && (header[2] & 0xFF) == 0xBF) {
+            offset = 3;
+        }
+        while (offset < length && Character.isWhitespace(header[offset])) {
+            offset++;
+        }
+        return offset;
+    }
+
+    private static boolean startsWith(byte[] buffer, int length, int offset, byte[] prefix) {
+        if (offset + prefix.length > length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * PDF readers accept the header anywhere in the first kilobyte.
+     */
+    private static int indexOf(byte[] buffer, int length, byte[] token) {
+        for (int i = 0; i + token.length <= length; i++) {
+            if (startsWith(buffer, length, i, token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int uint16(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    private static long uint32(byte[] buffer, int offset) {
+        return (uint16(buffer, offset) | (long) uint16(buffer, offset + 2) << 16);
+    }
+}
@@ -0,0 +1,851 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import ee.ria.DigiDoc.common.FileUtil;
+import ee.ria.DigiDoc.common.NativeHandle;
+import ee.ria.DigiDoc.common.NativeObjects;
+import ee.ria.DigiDoc.common.SigningTrace;
+import ee.ria.DigiDoc.sign.utils.Function;
+import ee.ria.libdigidocpp.Container;
+import ee.ria.libdigidocpp.DataFiles;
+import ee.ria.libdigidocpp.Signatures;
+import okio.ByteString;
+import timber.log.Timber;
+
+/**
+ * Long-lived handle to an opened libdigidocpp {@link Container}.
+ * <p>
+ * Edits are applied to the already opened native container and the immutable
+ * {@link SignedContainer} snapshot is refreshed from it without parsing the file again.
+ * Signatures that were already present in the previous snapshot are reused as they are,
+ * so only added signatures are validated.
+ * <p>
+ * If the file is changed on disk by someone else (for example when signing through
+ * {@link SignedContainer#sign(ByteString, Function)}), the native container is reopened
+ * before the next operation.
+ * <p>
+ * Not meant to be shared between screens, all methods are synchronized on the session.
+ * Validation with a {@link SignatureValidationEngine} is the exception: it runs outside the
+ * lock, and operations that change the native container wait until it has finished.
+ */
+public final class ContainerSession implements Closeable {
+
+    private static final String EDIT_DIR_PREFIX = "container-edit";
+
+    private final File file;
+    private final Multiset<NativeHandle<Container>> validating = HashMultiset.create();
+
+    private NativeHandle<Container> container;
+    private SignedContainer snapshot;
+    private long lastModified;
+    private long length;
+    @Nullable private DataFileDigests digests;
+
+    private ContainerSession(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open a session for an existing container.
+     *
+     * @param file Path to existing container.
+     * @return Session with the container opened.
+     * @throws java.io.IOException When file could not be found/opened.
+     */
+    public static ContainerSession open(File file) throws Exception {
+        return open(file, true);
+    }
+
+    /**
+     * Open a session for an existing container.
+     * <p>
+     * When not validating, signatures are read without running the validator and have
+     * status {@link SignatureStatus#UNKNOWN} until passed to {@link #validate(Signature)}.
+     * Signatures added later through the session are always validated.
+     *
+     * @param file Path to existing container.
+     * @param validate Whether to validate signatures while opening.
+     * @return Session with the container opened.
+     * @throws java.io.IOException When file could not be found/opened.
+     */
+    public static ContainerSession open(File file, boolean validate) throws Exception {
+        AsicSignatureAppender.recover(file);
+        ContainerSession session = new ContainerSession(file);
+        session.container = SignedContainer.container(file);
+        try {
+            session.updateFileState();
+            session.snapshot = session.refresh(null, validate);
+        } catch (RuntimeException e) {
+            session.close();
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * Open a session reusing the data already read into given snapshot.
+     *
+     * @param signedContainer Snapshot of the container to open.
+     * @return Session with the container opened.
+     * @throws java.io.IOException When file could not be found/opened.
+     */
+    static ContainerSession open(SignedContainer signedContainer) throws Exception {
+        ContainerSession session = new ContainerSession(signedContainer.file());
+        session.container = SignedContainer.container(signedContainer.file());
+        session.snapshot = signedContainer;
+        session.updateFileState();
+        return session;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    /**
+     * Latest snapshot of the container.
+     */
+    public synchronized SignedContainer container() throws Exception {
+        ensureCurrent();
+        return snapshot;
+    }
+
+    /**
+     * Validate a signature read without validation.
+     * <p>
+     * The validated signature also replaces the one in {@link #container()}.
+     *
+     * @param signature Signature from this session's container.
+     * @return Validated signature, or the given one if it is not in the container anymore.
+     */
+    public synchronized Signature validate(Signature signature) throws Exception {
+        ensureCurrent();
+        if (signature.validated()) {
+            return signature;
+        }
+        try (NativeHandle<Signatures> signatures = NativeObjects.signatures(container.get())) {
+            for (ee.ria.libdigidocpp.Signature nativeSignature : signatures.get()) {
+                if (signature.id().equals(nativeSignature.id())) {
+                    Signature validated = signature
+                            .withStatus(SignedContainer.signatureStatus(nativeSignature));
+                    snapshot = snapshot.withSignature(validated);
+                    return validated;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Validate all signatures read without validation using given engine.
+     * <p>
+     * Each validated signature replaces the one in {@link #container()} before
+     * the listener is called.
+     *
+     * @param engine Engine to run the validations on.
+     * @param listener Called for each validated signature as it finishes.
+     * @return All validations in the order they finished.
+     */
+    public ImmutableList<SignatureValidation> validate(
+            SignatureValidationEngine engine, SignatureValidationEngine.Listener listener)
+            throws Exception {
+        return validate(engine, null, null, listener);
+    }
+
+    /**
+     * Validate all signatures read without validation, using cached results when available.
+     * <p>
+     * Cached signatures are delivered first with zero duration, the rest are validated with
+     * the engine and stored in the cache afterwards.
+     * <p>
+     * The engine runs without holding the session lock, so the session can be read in the
+     * meantime. Operations that change the container wait for the validation to finish.
+     * Results that arrive after the session was closed or the container was reopened are
+     * dropped. The listener must not change the session.
+     *
+     * @param engine Engine to run the validations on.
+     * @param cache Cache to read from and store to, nothing is cached when null.
+     * @param environment Environment the validation result depends on,
+     *                    see {@link SignatureValidationCache}.
+     * @param listener Called for each validated signature as it finishes.
+     * @return All validations in the order they finished, without dropped results.
+     */
+    public ImmutableList<SignatureValidation> validate(
+            SignatureValidationEngine engine, @Nullable SignatureValidationCache cache,
+            @Nullable String environment, SignatureValidationEngine.Listener listener)
+            throws Exception {
+        List<SignatureValidation> cachedValidations = new ArrayList<>();
+        Map<Signature, ee.ria.libdigidocpp.Signature> pending = new LinkedHashMap<>();
+        NativeHandle<Container> validated;
+        synchronized (this) {
+            ensureCurrent();
+            ImmutableMap<String, Signature> cached = cache != null && environment != null
+                    ? cache.get(file, environment)
+                    : ImmutableMap.of();
+            try (NativeHandle<Signatures> signatures =
+                         NativeObjects.signatures(container.get())) {
+                for (Signature signature : snapshot.signatures()) {
+                    if (signature.validated()) {
+                        continue;
+                    }
+                    Signature cachedSignature = cached.get(signature.id());
+                    if (cachedSignature != null) {
+                        cachedValidations.add(SignatureValidation.create(cachedSignature, 0));
+                        snapshot = snapshot.withSignature(cachedSignature);
+                        continue;
+                    }
+                    for (ee.ria.libdigidocpp.Signature nativeSignature : signatures.get()) {
+                        if (signature.id().equals(nativeSignature.id())) {
+                            pending.put(signature, nativeSignature);
+                            break;
+                        }
+                    }
+                }
+            }
+            validated = container;
+            validating.add(validated);
+        }
+
+        ImmutableList.Builder<SignatureValidation> validations = ImmutableList.builder();
+        try {
+            for (SignatureValidation validation : cachedValidations) {
+                validations.add(validation);
+                listener.onValidated(validation);
+            }
+            if (pending.isEmpty()) {
+                return validations.build();
+            }
+            engine.validate(pending, validation -> {
+                if (apply(validated, validation.signature())) {
+                    validations.add(validation);
+                    listener.onValidated(validation);
+                }
+            });
+        } finally {
+            release(validated);
+        }
+        synchronized (this) {
+            if (container == validated && cache != null && environment != null) {
+                cache.put(file, environment, snapshot.signatures());
+            }
+        }
+        return validations.build();
+    }
+
+    /**
+     * Put a validated signature into the snapshot, unless the container it was validated in
+     * is no longer the session's.
+     *
+     * @return Whether the signature was applied.
+     */
+    private synchronized boolean apply(NativeHandle<Container> validated, Signature signature) {
+        if (container != validated) {
+            return false;
+        }
+        snapshot = snapshot.withSignature(signature);
+        return true;
+    }
+
+    /**
+     * End a validation in given container, closing it if it was replaced in the meantime.
+     */
+    private synchronized void release(NativeHandle<Container> validated) {
+        validating.remove(validated);
+        if (validated != container && !validating.contains(validated)) {
+            validated.close();
+        }
+        notifyAll();
+    }
+
+    /**
+     * Start collecting changes to apply with a single save.
+     */
+    public ContainerEdit edit() {
+        return new ContainerEdit(this);
+    }
+
+    public SignedContainer addDataFiles(ImmutableList<File> dataFiles) throws Exception {
+        return edit().addDataFiles(dataFiles).commit();
+    }
+
+    public SignedContainer removeDataFile(DataFile dataFile) throws Exception {
+        return edit().removeDataFile(dataFile).commit();
+    }
+
+    public synchronized File getDataFile(DataFile dataFile, File directory) throws Exception {
+        ensureCurrent();
+        return extractNativeDataFile(dataFile, directory, dataFile.name());
+    }
+
+    /**
+     * Extract data files in one pass over the container.
+     * <p>
+     * libdigidocpp keeps every data file in its own stream once the container is opened,
+     * so different data files can be written to disk in parallel. Files with the same name
+     * get a numbered suffix instead of overwriting each other.
+     *
+     * @param directory Directory to extract to.
+     * @param filter Data files to extract.
+     * @param parallelism Maximum number of files written at the same time.
+     * @param listener Called on the calling thread for each extracted file.
+     * @return Extracted files in the order they finished.
+     */
+    public synchronized ImmutableList<File> extractAll(File directory, Predicate<DataFile> filter,
+                                                       int parallelism,
+                                                       DataFileExtraction.Listener listener)
+            throws Exception {
+        ensureCurrent();
+        Map<String, DataFile> requested = new HashMap<>();
+        for (DataFile dataFile : snapshot.dataFiles()) {
+            if (filter.apply(dataFile)) {
+                requested.put(dataFile.id(), dataFile);
+            }
+        }
+        List<Callable<DataFileExtraction>> tasks = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        try (NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get())) {
+            for (ee.ria.libdigidocpp.DataFile nativeDataFile : dataFiles.get()) {
+                DataFile dataFile = requested.get(nativeDataFile.id());
+                if (dataFile == null) {
+                    continue;
+                }
+                File outputFile = new File(directory,
+                        uniqueName(names, FileUtil.sanitizeString(dataFile.name(), "")));
+                tasks.add(() -> {
+                    nativeDataFile.saveAs(outputFile.getAbsolutePath());
+                    return DataFileExtraction.create(dataFile, outputFile, 0, 0);
+                });
+            }
+
+            ImmutableList.Builder<File> files = ImmutableList.builder();
+            runParallel("data-file-extraction-%d", parallelism, tasks,
+                    (result, completed, total) -> {
+                        DataFileExtraction extraction = DataFileExtraction.create(
+                                result.dataFile(), result.file(), completed, total);
+                        files.add(extraction.file());
+                        listener.onExtracted(extraction);
+                    });
+            return files.build();
+        }
+    }
+
+    /**
+     * Calculate digests of all data files with several methods at once.
+     * <p>
+     * Data files of ZIP based containers are read straight from the container file, each one
+     * exactly once for all methods, in parallel across files. Other containers and methods
+     * unknown to Java fall back to libdigidocpp. The last result is kept and returned again
+     * while the container file is unchanged.
+     *
+     * @param methods Digest method URIs, for example
+     *                {@code http://www.w3.org/2001/04/xmlenc#sha256}.
+     * @param parallelism Maximum number of data files read at the same time.
+     * @return Digests of all data files.
+     */
+    public synchronized DataFileDigests calculateDigests(ImmutableSet<String> methods,
+                                                         int parallelism) throws Exception {
+        ensureCurrent();
+        if (digests != null && digests.isCurrent(file) && digests.covers(methods)) {
+            return digests;
+        }
+        ImmutableSet.Builder<String> streamedBuilder = ImmutableSet.builder();
+        for (String method : methods) {
+            if (DataFileDigests.isSupported(method)) {
+                streamedBuilder.add(method);
+            }
+        }
+        ImmutableSet<String> streamed = streamedBuilder.build();
+
+        ImmutableTable.Builder<String, String, String> table = ImmutableTable.builder();
+        try (ZipFile zipFile = zipFile();
+             NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get())) {
+            List<Callable<Map.Entry<String, ImmutableMap<String, String>>>> tasks =
+                    new ArrayList<>();
+            for (ee.ria.libdigidocpp.DataFile nativeDataFile : dataFiles.get()) {
+                String id = nativeDataFile.id();
+                ZipEntry entry = zipFile == null
+                        ? null
+                        : zipFile.getEntry(nativeDataFile.fileName());
+                tasks.add(() -> {
+                    ImmutableMap.Builder<String, String> row = ImmutableMap.builder();
+                    ImmutableSet<String> remaining = methods;
+                    if (entry != null && !streamed.isEmpty()) {
+                        try (InputStream input = zipFile.getInputStream(entry)) {
+                            row.putAll(DataFileDigests.digest(input, streamed));
+                        }
+                        remaining = Sets.difference(methods, streamed).immutableCopy();
+                    }
+                    for (String method : remaining) {
+                        row.put(method, Base64.encodeToString(nativeDataFile.calcDigest(method),
+                                Base64.DEFAULT));
+                    }
+                    return Maps.immutableEntry(id, row.build());
+                });
+            }
+            runParallel("data-file-digest-%d", parallelism, tasks, (result, completed, total) -> {
+                for (Map.Entry<String, String> digest : result.getValue().entrySet()) {
+                    table.put(result.getKey(), digest.getKey(), digest.getValue());
+                }
+            });
+        }
+        digests = DataFileDigests.create(lastModified, length, table.build());
+        return digests;
+    }
+
+    public synchronized String calculateDataFileDigest(DataFile dataFile, String method)
+            throws Exception {
+        ensureCurrent();
+        return Base64.encodeToString(nativeDataFile(dataFile).calcDigest(method), Base64.DEFAULT);
+    }
+
+    /**
+     * Add a signature created elsewhere.
+     * <p>
+     * For ASiC-E containers the signature is appended to the end of the archive, so the data
+     * files are not written again. If appending fails or libdigidocpp can't read the result,
+     * the archive is restored and the whole container is saved as usual.
+     * <p>
+     * Only signatures that arrive as XAdES documents take this path. ID-card signing
+     * ({@link #finishSignature}) and Mobile-ID and Smart-ID signing ({@code ContainerWrapper})
+     * still save the whole container, because libdigidocpp doesn't expose the XML of a
+     * signature it builds.
+     */
+    public synchronized SignedContainer addAdEsSignature(byte[] adEsSignature) throws Exception {
+        ensureEditable();
+        try {
+            container.get().addAdESSignature(adEsSignature);
+        } catch (Exception e) {
+            throw new SignaturesLockedException();
+        }
+        if (ContainerFormatDetector.detect(file) == ContainerFormat.ASICE) {
+            AsicSignatureAppender appender = null;
+            try {
+                appender = AsicSignatureAppender.append(file, adEsSignature);
+                reopen(snapshot);
+                appender.commit();
+                return snapshot;
+            } catch (Exception e) {
+                Timber.log(Log.ERROR, e, "Failed to append signature to %s, saving container",
+                        file.getName());
+                if (appender != null) {
+                    appender.rollback();
+                }
+            }
+        }
+        return save();
+    }
+
+    /**
+     * Sign the container with a trace of its own, finished when done.
+     */
+    public synchronized SignedContainer sign(ByteString certificate,
+                                             Function<ByteString, ByteString> signFunction)
+            throws Exception {
+        SigningTrace trace = SigningTrace.start("signature");
+        try {
+            SignedContainer signedContainer = sign(certificate, signFunction, trace);
+            trace.finish(null);
+            return signedContainer;
+        } catch (Exception e) {
+            trace.finish(e.getClass().getSimpleName());
+            throw e;
+        }
+    }
+
+    /**
+     * Sign the container, marking the phases in the trace.
+     * <p>
+     * The trace is not finished here, the caller decides when the signing operation ends.
+     */
+    public synchronized SignedContainer sign(ByteString certificate,
+                                             Function<ByteString, ByteString> signFunction,
+                                             SigningTrace trace) throws Exception {
+        try {
+            ee.ria.libdigidocpp.Signature signature = prepareSignature(certificate, trace);
+            ByteString dataToSign = ByteString.of(signature.dataToSign());
+            trace.mark(SigningTrace.Phase.HASH_DELIVERED);
+            ByteString signatureData = signFunction.apply(dataToSign);
+            trace.mark(SigningTrace.Phase.SIGNATURE_RECEIVED);
+            return finishSignature(signature, signatureData, trace);
+        } catch (Exception e) {
+            throw SignedContainer.signingException(e);
+        }
+    }
+
+    /**
+     * First phase of {@link #sign(ByteString, Function)}, adds a signature waiting for its value.
+     */
+    synchronized ee.ria.libdigidocpp.Signature prepareSignature(ByteString certificate,
+                                                               SigningTrace trace)
+            throws Exception {
+        ensureEditable();
+        ee.ria.libdigidocpp.Signature signature = container.get()
+                .prepareWebSignature(certificate.toByteArray(), snapshot.signatureProfile());
+        if (signature == null) {
+            throw new Exception("Empty signature value");
+        }
+        trace.mark(SigningTrace.Phase.PREPARE);
+        return signature;
+    }
+
+    /**
+     * Second phase of {@link #sign(ByteString, Function)}, sets the signature value, extends
+     * the profile with timestamp and OCSP and saves the container.
+     */
+    synchronized SignedContainer finishSignature(ee.ria.libdigidocpp.Signature signature,
+                                                 ByteString signatureValue, SigningTrace trace)
+            throws Exception {
+        awaitValidations();
+        signature.setSignatureValue(signatureValue.toByteArray());
+        signature.extendSignatureProfile(snapshot.signatureProfile());
+        trace.mark(SigningTrace.Phase.EXTEND_SIGNATURE_PROFILE);
+        container.get().save();
+        trace.mark(SigningTrace.Phase.SAVE);
+        updateFileState();
+        snapshot = refresh(snapshot);
+        trace.mark(SigningTrace.Phase.REOPEN);
+        return snapshot;
+    }
+
+    public synchronized SignedContainer removeSignature(Signature signature) throws Exception {
+        ensureEditable();
+        try (NativeHandle<Signatures> signatures = NativeObjects.signatures(container.get())) {
+            for (int i = 0; i < signatures.get().size(); i++) {
+                if (signature.id().equals(signatures.get().get(i).id())) {
+                    container.get().removeSignature(i);
+                    break;
+                }
+            }
+        }
+        return save();
+    }
+
+    /**
+     * Apply edit operations and save the result to a temporary directory before moving it
+     * over the container, so a failed save leaves the original file untouched.
+     * <p>
+     * The temporary directory is on the same file system as the app files, the move replaces
+     * the container atomically.
+     */
+    synchronized SignedContainer commit(ImmutableList<ContainerEdit.Operation> operations)
+            throws Exception {
+        ensureEditable();
+        File workDir = Files.createTempDirectory(EDIT_DIR_PREFIX).toFile();
+        File savedDir = new File(workDir, "saved");
+        File savedFile = new File(savedDir, file.getName());
+        try {
+            for (ContainerEdit.Operation operation : operations) {
+                operation.apply(this, workDir);
+            }
+            try (NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get())) {
+                if (dataFiles.get().isEmpty()) {
+                    throw new ContainerDataFilesEmptyException();
+                }
+            }
+            if (!savedDir.mkdir()) {
+                throw new IOException("Failed to create " + savedDir);
+            }
+            container.get().save(savedFile.getAbsolutePath());
+            Files.move(savedFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            reopen(snapshot);
+            return snapshot;
+        } catch (Exception e) {
+            Timber.log(Log.ERROR, e, "Failed to edit container, rolling back");
+            try {
+                reopen(snapshot);
+            } catch (Exception rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            throw e;
+        } finally {
+            FileUtils.deleteQuietly(workDir);
+        }
+    }
+
+    /**
+     * Delete temporary directories of edits that were interrupted by the process dying.
+     * <p>
+     * Must not be called while containers are being edited.
+     */
+    static void deleteEditLeftovers() {
+        File[] leftovers = new File(System.getProperty("java.io.tmpdir"))
+                .listFiles((dir, name) -> name.startsWith(EDIT_DIR_PREFIX));
+        if (leftovers == null) {
+            return;
+        }
+        for (File leftover : leftovers) {
+            Timber.log(Log.DEBUG, "Deleting container edit leftover %s", leftover.getName());
+            FileUtils.deleteQuietly(leftover);
+        }
+    }
+
+    void addNativeDataFile(File dataFile) {
+        container.get().addDataFile(dataFile.getAbsolutePath(), SignedContainer.mimeType(dataFile));
+    }
+
+    void removeNativeDataFile(DataFile dataFile) {
+        try (NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get())) {
+            for (int i = 0; i < dataFiles.get().size(); i++) {
+                if (dataFile.id().equals(dataFiles.get().get(i).id())) {
+                    container.get().removeDataFile(i);
+                    return;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Could not find file " + dataFile.id() +
+                " in container " + file);
+    }
+
+    File extractNativeDataFile(DataFile dataFile, File directory, String name) {
+        File outputFile = new File(directory, FileUtil.sanitizeString(name, ""));
+        nativeDataFile(dataFile).saveAs(outputFile.getAbsolutePath());
+        return outputFile;
+    }
+
+    /**
+     * @return Container file opened as ZIP, null if it is not a ZIP based container.
+     */
+    @Nullable
+    private ZipFile zipFile() {
+        try {
+            return new ZipFile(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private interface ResultListener<T> {
+
+        void onResult(T result, int completed, int total) throws Exception;
+    }
+
+    /**
+     * Run tasks on a temporary pool and deliver the results on the calling thread
+     * in the order they finish.
+     * <p>
+     * Returns only after all workers have stopped, also when a task fails, so the tasks can
+     * use native objects and files that the caller closes afterwards.
+     */
+    private static <T> void runParallel(String nameFormat, int parallelism,
+                                        List<Callable<T>> tasks, ResultListener<T> listener)
+            throws Exception {
+        int total = tasks.size();
+        if (total == 0) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(parallelism, total)),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(nameFormat)
+                        .setDaemon(true)
+                        .build());
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        try {
+            for (Callable<T> task : tasks) {
+                completionService.submit(task);
+            }
+            for (int completed = 1; completed <= total; completed++) {
+                listener.onResult(completionService.take().get(), completed, total);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executor.shutdownNow();
+            Uninterruptibles.awaitTerminationUninterruptibly(executor);
+        }
+    }
+
+    private static String uniqueName(Set<String> names, String name) {
+        String uniqueName = name;
+        for (int i = 1; !names.add(uniqueName); i++) {
+            String extension = FilenameUtils.getExtension(name);
+            uniqueName = FilenameUtils.getBaseName(name) + " (" + i + ")"
+                    + (extension.isEmpty() ? "" : "." + extension);
+        }
+        return uniqueName;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (container != null) {
+            retire(container);
+            container = null;
+        }
+        notifyAll();
+    }
+
+    private SignedContainer save() throws Exception {
+        container.get().save();
+        updateFileState();
+        snapshot = refresh(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Build a new snapshot from the opened container.
+     * <p>
+     * Data files are read again since it is cheap, signatures are reused by ID
+     * from the previous snapshot. Signatures not seen before are validated
+     * only when {@code validate} is set.
+     */
+    private SignedContainer refresh(SignedContainer previous) {
+        return refresh(previous, true);
+    }
+
+    private SignedContainer refresh(SignedContainer previous, boolean validate) {
+        Map<String, Signature> knownSignatures = new HashMap<>();
+        if (previous != null) {
+            for (Signature signature : previous.signatures()) {
+                knownSignatures.put(signature.id(), signature);
+            }
+        }
+
+        ImmutableList.Builder<DataFile> dataFileBuilder = ImmutableList.builder();
+        ImmutableList.Builder<Signature> signatureBuilder = ImmutableList.builder();
+        try (NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get());
+             NativeHandle<Signatures> signatures = NativeObjects.signatures(container.get())) {
+            for (ee.ria.libdigidocpp.DataFile dataFile : dataFiles.get()) {
+                dataFileBuilder.add(SignedContainer.dataFile(dataFile));
+            }
+            for (ee.ria.libdigidocpp.Signature signature : signatures.get()) {
+                Signature knownSignature = knownSignatures.get(signature.id());
+                if (knownSignature != null) {
+                    signatureBuilder.add(knownSignature);
+                } else if (validate) {
+                    signatureBuilder.add(SignedContainer.signature(signature));
+                } else {
+                    signatureBuilder.add(SignedContainer.unvalidatedSignature(signature));
+                }
+            }
+        }
+
+        return SignedContainer.create(file, dataFileBuilder.build(), signatureBuilder.build());
+    }
+
+    private void ensureCurrent() throws Exception {
+        if (container == null) {
+            throw new IllegalStateException("Container session is closed");
+        }
+        if (file.lastModified() != lastModified || file.length() != length) {
+            Timber.log(Log.DEBUG, "Container %s changed on disk, reopening", file.getName());
+            reopen(snapshot, false);
+        }
+    }
+
+    /**
+     * {@link #ensureCurrent()} for operations that change the native container, after the
+     * validations running in it have let go of its signatures.
+     */
+    private void ensureEditable() throws Exception {
+        ensureCurrent();
+        awaitValidations();
+        ensureCurrent();
+    }
+
+    /**
+     * Wait until no validation runs in the current native container.
+     */
+    private void awaitValidations() throws InterruptedException {
+        while (container != null && validating.contains(container)) {
+            wait();
+        }
+        if (container == null) {
+            throw new IllegalStateException("Container session is closed");
+        }
+    }
+
+    /**
+     * Close a native container the session doesn't use anymore, or leave it to the last
+     * validation still running in it.
+     */
+    private void retire(NativeHandle<Container> retired) {
+        if (!validating.contains(retired)) {
+            retired.close();
+        }
+    }
+
+    private void reopen(SignedContainer previous) throws Exception {
+        reopen(previous, true);
+    }
+
+    /**
+     * Open the container file again, replacing the native container and the snapshot.
+     *
+     * @param previous Snapshot whose signatures are kept by ID.
+     * @param validate Whether signatures not in {@code previous} are validated right away,
+     *                 otherwise they are left for {@link #validate(SignatureValidationEngine,
+     *                 SignatureValidationCache, String, SignatureValidationEngine.Listener)}.
+     */
+    private void reopen(SignedContainer previous, boolean validate) throws Exception {
+        NativeHandle<Container> reopened = SignedContainer.container(file);
+        if (container != null) {
+            retire(container);
+        }
+        container = reopened;
+        updateFileState();
+        snapshot = refresh(previous, validate);
+    }
+
+    private void updateFileState() {
+        lastModified = file.lastModified();
+        length = file.length();
+        digests = null;
+    }
+
+    /**
+     * @return Data file owned by the container, valid until the container is reopened.
+     */
+    private ee.ria.libdigidocpp.DataFile nativeDataFile(DataFile dataFile) {
+        try (NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get())) {
+            for (ee.ria.libdigidocpp.DataFile containerDataFile : dataFiles.get()) {
+                if (dataFile.id().equals(containerDataFile.id())) {
+                    return containerDataFile;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Could not find file " + dataFile.id() +
+                " in container " + file);
+    }
+}
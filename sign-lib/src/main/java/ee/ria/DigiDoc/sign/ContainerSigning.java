@@ -0,0 +1,51 @@
+package ee.ria.DigiDoc.sign;
+
+import androidx.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+import java.io.File;
+
+/**
+ * Progress of {@link SignedContainer#signAll(com.google.common.collect.ImmutableList,
+ * okio.ByteString, ee.ria.DigiDoc.sign.utils.Function, Listener) batch signing}.
+ */
+@AutoValue
+public abstract class ContainerSigning {
+
+    public interface Listener {
+
+        void onSigned(ContainerSigning signing) throws Exception;
+    }
+
+    public abstract File file();
+
+    /**
+     * Signed container, null when signing this container failed.
+     */
+    @Nullable public abstract SignedContainer container();
+
+    /**
+     * Reason why signing this container failed, other containers are still signed.
+     */
+    @Nullable public abstract Exception error();
+
+    /**
+     * Number of containers finished so far, including this one.
+     */
+    public abstract int completed();
+
+    /**
+     * Number of containers to sign.
+     */
+    public abstract int total();
+
+    static ContainerSigning success(File file, SignedContainer container, int completed,
+                                    int total) {
+        return new AutoValue_ContainerSigning(file, container, null, completed, total);
+    }
+
+    static ContainerSigning failure(File file, Exception error, int completed, int total) {
+        return new AutoValue_ContainerSigning(file, null, error, completed, total);
+    }
+}
@@ -0,0 +1,117 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Base64;
+
+import androidx.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Digests of all data files in a container, computed with
+ * {@link ContainerSession#calculateDigests(ImmutableSet, int)}.
+ * <p>
+ * Digests are Base64 encoded like {@link SignedContainer#calculateDataFileDigest(DataFile,
+ * String)} returns them. The table stays valid while the container file has the same
+ * modification time and size, see {@link #isCurrent(File)}.
+ */
+@AutoValue
+public abstract class DataFileDigests {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ImmutableMap<String, String> ALGORITHMS =
+            ImmutableMap.<String, String>builder()
+                    .put("http://www.w3.org/2000/09/xmldsig#sha1", "SHA-1")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#sha224", "SHA-224")
+                    .put("http://www.w3.org/2001/04/xmlenc#sha256", "SHA-256")
+                    .put("http://www.w3.org/2001/04/xmldsig-more#sha384", "SHA-384")
+                    .put("http://www.w3.org/2001/04/xmlenc#sha512", "SHA-512")
+                    .put("http://www.w3.org/2007/05/xmldsig-more#sha3-224", "SHA3-224")
+                    .put("http://www.w3.org/2007/05/xmldsig-more#sha3-256", "SHA3-256")
+                    .put("http://www.w3.org/2007/05/xmldsig-more#sha3-384", "SHA3-384")
+                    .put("http://www.w3.org/2007/05/xmldsig-more#sha3-512", "SHA3-512")
+                    .build();
+
+    public abstract long containerLastModified();
+
+    public abstract long containerSize();
+
+    /**
+     * Digests by data file ID and digest method URI.
+     */
+    public abstract ImmutableTable<String, String, String> digests();
+
+    @Nullable
+    public final String digest(DataFile dataFile, String method) {
+        return digests().get(dataFile.id(), method);
+    }
+
+    /**
+     * @return Whether all data files have digests for all given methods.
+     */
+    public final boolean covers(ImmutableSet<String> methods) {
+        for (Map<String, String> row : digests().rowMap().values()) {
+            if (!row.keySet().containsAll(methods)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the container file is unchanged since the digests were computed.
+     */
+    public final boolean isCurrent(File containerFile) {
+        return containerFile.lastModified() == containerLastModified()
+                && containerFile.length() == containerSize();
+    }
+
+    static DataFileDigests create(long containerLastModified, long containerSize,
+                                  ImmutableTable<String, String, String> digests) {
+        return new AutoValue_DataFileDigests(containerLastModified, containerSize, digests);
+    }
+
+    /**
+     * @return Whether the method can be calculated in Java while streaming the data file.
+     */
+    static boolean isSupported(String method) {
+        return ALGORITHMS.containsKey(method);
+    }
+
+    /**
+     * Read the stream once and update the digests of all methods.
+     *
+     * @return Base64 encoded digests by method.
+     */
+    static ImmutableMap<String, String> digest(InputStream input, ImmutableSet<String> methods)
+            throws IOException, NoSuchAlgorithmException {
+        Map<String, MessageDigest> messageDigests = new LinkedHashMap<>();
+        for (String method : methods) {
+            messageDigests.put(method, MessageDigest.getInstance(ALGORITHMS.get(method)));
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            for (MessageDigest messageDigest : messageDigests.values()) {
+                messageDigest.update(buffer, 0, read);
+            }
+        }
+        ImmutableMap.Builder<String, String> digests = ImmutableMap.builder();
+        for (Map.Entry<String, MessageDigest> entry : messageDigests.entrySet()) {
+            digests.put(entry.getKey(),
+                    Base64.encodeToString(entry.getValue().digest(), Base64.DEFAULT));
+        }
+        return digests.build();
+    }
+}
@@ -0,0 +1,42 @@
+package ee.ria.DigiDoc.sign;
+
+import com.google.auto.value.AutoValue;
+
+import java.io.File;
+
+/**
+ * Progress of {@link ContainerSession#extractAll(File, com.google.common.base.Predicate, int,
+ * Listener) bulk data file extraction}.
+ */
+@AutoValue
+public abstract class DataFileExtraction {
+
+    public interface Listener {
+
+        void onExtracted(DataFileExtraction extraction) throws Exception;
+    }
+
+    /**
+     * Extracted data file.
+     */
+    public abstract DataFile dataFile();
+
+    /**
+     * File the data file was extracted to.
+     */
+    public abstract File file();
+
+    /**
+     * Number of data files extracted so far, including this one.
+     */
+    public abstract int completed();
+
+    /**
+     * Number of data files to extract.
+     */
+    public abstract int total();
+
+    static DataFileExtraction create(DataFile dataFile, File file, int completed, int total) {
+        return new AutoValue_DataFileExtraction(dataFile, file, completed, total);
+    }
+}
@@ -0,0 +1,211 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Log;
+
+import com.google.common.collect.Range;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import timber.log.Timber;
+
+/**
+ * Detects signed PDF files by scanning raw bytes in fixed size chunks.
+ * <p>
+ * The signature dictionary can't be stored in a compressed object stream, its
+ * {@code /ByteRange} refers to raw file offsets around the {@code /Contents} string.
+ * A PDF is considered signed when it contains a well-formed {@code /ByteRange} array and
+ * a supported signature filter or sub-filter.
+ * <p>
+ * Files are first checked with {@link PdfXrefReader}: documents without {@code /SigFlags}
+ * and without signed signature fields are not scanned at all, otherwise only the incremental
+ * updates are scanned before the whole file. The whole file is also scanned when the
+ * cross-references can't be parsed. Streams can't be checked that way and are always scanned,
+ * so they may also match a signature dictionary no field refers to; use them only to decide
+ * whether the file is worth checking.
+ */
+final class PdfSignatureDetector {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Bytes kept between chunks so that a token and its ByteRange array are never split.
+     */
+    private static final int OVERLAP = 128;
+
+    private static final byte[] BYTE_RANGE = ascii("/ByteRange");
+    private static final byte[][] FILTERS = {
+            ascii("/Adobe.PPKLite"),
+            ascii("/ETSI.CAdES.detached"),
+            ascii("/adbe.pkcs7.detached")
+    };
+
+    private boolean byteRange;
+    private boolean filter;
+
+    private PdfSignatureDetector() {
+    }
+
+    static boolean isSigned(File file) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            try {
+                PdfXrefReader xref = PdfXrefReader.read(channel);
+                if (!xref.signaturesExist()) {
+                    return false;
+                }
+                for (Range<Long> range : xref.updateRanges()) {
+                    if (new PdfSignatureDetector().scan(channel, range.lowerEndpoint(),
+                            range.upperEndpoint())) {
+                        return true;
+                    }
+                }
+            } catch (IOException e) {
+                Timber.log(Log.DEBUG, e, "Unable to read PDF cross-references");
+            }
+            return new PdfSignatureDetector().scan(channel, 0, size);
+        }
+    }
+
+    static boolean isSigned(InputStream input) throws IOException {
+        PdfSignatureDetector detector = new PdfSignatureDetector();
+        byte[] window = new byte[OVERLAP + CHUNK_SIZE];
+        int length = 0;
+        while (true) {
+            int read = input.read(window, length, window.length - length);
+            if (read == -1) {
+                return detector.search(window, length, true);
+            }
+            length += read;
+            if (length == window.length) {
+                if (detector.search(window, length, false)) {
+                    return true;
+                }
+                length = detector.carry(window, length);
+            }
+        }
+    }
+
+    private boolean scan(FileChannel channel, long position, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(OVERLAP + CHUNK_SIZE);
+        byte[] window = buffer.array();
+        while (position < end) {
+            buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + end - position));
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                break;
+            }
+            position += read;
+            if (buffer.position() == buffer.capacity()) {
+                if (search(window, buffer.position(), false)) {
+                    return true;
+                }
+                buffer.position(carry(window, buffer.position()));
+            }
+        }
+        return search(window, buffer.position(), true);
+    }
+
+    /**
+     * Search for tokens starting in the window, leaving the overlap for the next chunk
+     * unless this is the last one.
+     */
+    private boolean search(byte[] window, int length, boolean last) {
+        int limit = last ? length : length - OVERLAP;
+        for (int i = 0; i < limit; i++) {
+            if (window[i] != '/') {
+                continue;
+            }
+            if (!byteRange && startsWith(window, length, i, BYTE_RANGE)) {
+                byteRange = isByteRange(window, length, i + BYTE_RANGE.length);
+            } else if (!filter) {
+                for (byte[] name : FILTERS) {
+                    if (startsWith(window, length, i, name)
+                            && isDelimiter(window, length, i + name.length)) {
+                        filter = true;
+                        break;
+                    }
+                }
+            }
+            if (byteRange && filter) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int carry(byte[] window, int length) {
+        System.arraycopy(window, length - OVERLAP, window, 0, OVERLAP);
+        return OVERLAP;
+    }
+
+    /**
+     * Check for an array of four integers [0 offset1 offset2 length2] covering the file
+     * except the signature contents.
+     */
+    private static boolean isByteRange(byte[] window, int length, int index) {
+        index = skipWhitespace(window, length, index);
+        if (index >= length || window[index] != '[') {
+            return false;
+        }
+        long[] values = new long[4];
+        for (int i = 0; i < values.length; i++) {
+            index = skipWhitespace(window, length, index + (i == 0 ? 1 : 0));
+            int start = index;
+            long value = 0;
+            while (index < length && window[index] >= '0' && window[index] <= '9'
+                    && index - start < 18) {
+                value = value * 10 + (window[index++] - '0');
+            }
+            if (index == start) {
+                return false;
+            }
+            values[i] = value;
+        }
+        index = skipWhitespace(window, length, index);
+        return index < length && window[index] == ']'
+                && values[0] == 0 && values[1] > 0 && values[2] > values[1];
+    }
+
+    private static int skipWhitespace(byte[] window, int length, int index) {
+        while (index < length && isWhitespace(window[index])) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean startsWith(byte[] window, int length, int index, byte[] token) {
+        if (index + token.length > length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (window[index + i] != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDelimiter(byte[] window, int length, int index) {
+        if (index >= length) {
+            return true;
+        }
+        byte b = window[index];
+        return isWhitespace(b) || b == '/' || b == '>' || b == ']' || b == '(' || b == '<'
+                || b == '[';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,774 @@
+package ee.ria.DigiDoc.sign;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the cross-reference sections of a PDF file, starting from the last
+ * {@code startxref} and following {@code /Prev}, to find out whether the document claims
+ * to have signatures and where its incremental updates are.
+ * <p>
+ * Both cross-reference tables and streams are supported, objects in object streams are
+ * resolved as well. Only the trailer, catalog, interactive form and its fields are parsed,
+ * everything else is left for {@link PdfSignatureDetector}. Any structure that can't be
+ * read throws an {@link IOException} so the caller can fall back to scanning the file.
+ */
+final class PdfXrefReader {
+
+    private static final int TAIL_SIZE = 1024;
+    private static final int OBJECT_WINDOW = 64 * 1024;
+    private static final int MAX_SECTIONS = 1024;
+    private static final int MAX_STREAM_SIZE = 32 * 1024 * 1024;
+    private static final int MAX_RESOLVE_DEPTH = 8;
+    private static final int MAX_FIELDS = 10000;
+    private static final int MAX_FIELD_DEPTH = 32;
+    private static final int XREF_ENTRY_SIZE = 20;
+
+    /**
+     * {@code SignaturesExist} bit of the interactive form {@code /SigFlags}.
+     */
+    private static final long SIGNATURES_EXIST = 1;
+
+    private static final byte[] STARTXREF = ascii("startxref");
+
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * In-use objects by number, {@code [offset]} for objects stored in the file body and
+     * {@code [stream, index]} for objects in object streams. The newest section wins.
+     */
+    private final Map<Integer, long[]> objects = new HashMap<>();
+    private final List<Range<Long>> updateRanges = new ArrayList<>();
+    private final TreeSet<Long> boundaries = new TreeSet<>();
+    private final Map<Integer, byte[]> objectStreams = new HashMap<>();
+
+    @Nullable private Map<String, Object> trailer;
+
+    private PdfXrefReader(FileChannel channel, long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Read all cross-reference sections of a PDF file.
+     *
+     * @throws IOException When the sections or the trailer can't be parsed.
+     */
+    static PdfXrefReader read(FileChannel channel) throws IOException {
+        PdfXrefReader reader = new PdfXrefReader(channel, channel.size());
+        reader.readSections(reader.startXref());
+        return reader;
+    }
+
+    /**
+     * Whether the interactive form has signatures, either by its {@code /SigFlags} or, as
+     * those are optional, by a signature field with a value.
+     */
+    boolean signaturesExist() throws IOException {
+        Object root = resolve(trailer.get("Root"));
+        if (!(root instanceof Map)) {
+            throw new IOException("Invalid document catalog");
+        }
+        Object acroForm = resolve(((Map<?, ?>) root).get("AcroForm"));
+        if (!(acroForm instanceof Map)) {
+            return false;
+        }
+        Object sigFlags = resolve(((Map<?, ?>) acroForm).get("SigFlags"));
+        if (sigFlags instanceof Long && ((Long) sigFlags & SIGNATURES_EXIST) != 0) {
+            return true;
+        }
+        return hasSignedField(((Map<?, ?>) acroForm).get("Fields"), null, new HashSet<>(), 0);
+    }
+
+    /**
+     * File ranges holding the objects of every section except the oldest one, newest first.
+     * Signatures are added in incremental updates, so their dictionaries are in these.
+     */
+    ImmutableList<Range<Long>> updateRanges() {
+        ImmutableList.Builder<Range<Long>> ranges = ImmutableList.builder();
+        for (Range<Long> range : updateRanges.subList(0, Math.max(0, updateRanges.size() - 1))) {
+            if (range.isEmpty()) {
+                continue;
+            }
+            Long end = boundaries.higher(range.upperEndpoint());
+            ranges.add(Range.closedOpen(range.lowerEndpoint(), end != null ? end : size));
+        }
+        return ranges.build();
+    }
+
+    /**
+     * Walk the field tree for a {@code /Sig} field with a value, the field type is inherited
+     * from parent fields.
+     */
+    private boolean hasSignedField(@Nullable Object fields, @Nullable Object parentType,
+                                   Set<Integer> visited, int depth) throws IOException {
+        Object resolved = resolve(fields);
+        if (!(resolved instanceof List) || depth == MAX_FIELD_DEPTH) {
+            return false;
+        }
+        for (Object field : (List<?>) resolved) {
+            if (field instanceof Reference && (visited.size() == MAX_FIELDS
+                    || !visited.add(((Reference) field).number))) {
+                continue;
+            }
+            Object dictionary = resolve(field);
+            if (!(dictionary instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> fieldDictionary = (Map<?, ?>) dictionary;
+            Object type = fieldDictionary.containsKey("FT")
+                    ? resolve(fieldDictionary.get("FT"))
+                    : parentType;
+            if ("Sig".equals(type) && resolve(fieldDictionary.get("V")) != null) {
+                return true;
+            }
+            if (hasSignedField(fieldDictionary.get("Kids"), type, visited, depth + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long startXref() throws IOException {
+        int length = (int) Math.min(TAIL_SIZE, size);
+        byte[] tail = read(size - length, length);
+        for (int i = length - STARTXREF.length; i >= 0; i--) {
+            if (startsWith(tail, i, STARTXREF)) {
+                Object offset = new Parser(tail, i + STARTXREF.length).value();
+                if (offset instanceof Long) {
+                    return (Long) offset;
+                }
+                break;
+            }
+        }
+        throw new IOException("startxref not found");
+    }
+
+    private void readSections(long offset) throws IOException {
+        Set<Long> visited = new HashSet<>();
+        while (true) {
+            if (visited.size() == MAX_SECTIONS || !visited.add(offset)) {
+                throw new IOException("Cross-reference sections loop");
+            }
+            boundaries.add(offset);
+            long[] bodyRange = {Long.MAX_VALUE, Long.MIN_VALUE};
+            Map<String, Object> sectionTrailer = readSection(offset, bodyRange);
+            Object xrefStream = sectionTrailer.get("XRefStm");
+            if (xrefStream instanceof Long) {
+                boundaries.add((Long) xrefStream);
+                readSection((Long) xrefStream, bodyRange);
+            }
+            updateRanges.add(bodyRange[0] <= bodyRange[1]
+                    ? Range.closed(bodyRange[0], bodyRange[1])
+                    : Range.closedOpen(0L, 0L));
+            if (trailer == null) {
+                trailer = sectionTrailer;
+            }
+            Object prev = sectionTrailer.get("Prev");
+            if (!(prev instanceof Long)) {
+                return;
+            }
+            offset = (Long) prev;
+        }
+    }
+
+    /**
+     * Read one cross-reference table or stream and extend the range of objects it lists.
+     *
+     * @return Trailer dictionary or the dictionary of the cross-reference stream.
+     */
+    private Map<String, Object> readSection(long offset, long[] bodyRange) throws IOException {
+        byte[] window = read(offset, (int) Math.min(OBJECT_WINDOW, size - checkOffset(offset)));
+        Parser parser = new Parser(window, 0);
+        if (parser.keyword("xref")) {
+            return readTable(offset, parser, bodyRange);
+        }
+        IndirectObject object = readObject(offset, window, parser);
+        if (!"XRef".equals(object.dictionary.get("Type"))) {
+            throw new IOException("Invalid cross-reference section");
+        }
+        readStream(object, bodyRange);
+        return object.dictionary;
+    }
+
+    private Map<String, Object> readTable(long offset, Parser parser, long[] bodyRange)
+            throws IOException {
+        long position = offset + parser.position;
+        while (true) {
+            byte[] window = read(position, (int) Math.min(OBJECT_WINDOW, size - position));
+            parser = new Parser(window, 0);
+            if (parser.keyword("trailer")) {
+                Object dictionary = parser.value();
+                if (!(dictionary instanceof Map)) {
+                    throw new IOException("Invalid trailer");
+                }
+                return castDictionary(dictionary);
+            }
+            Object first = parser.value();
+            Object count = parser.value();
+            if (!(first instanceof Long) || !(count instanceof Long) || (Long) count < 0
+                    || (Long) count > size / XREF_ENTRY_SIZE) {
+                throw new IOException("Invalid cross-reference subsection");
+            }
+            parser.skipWhitespace();
+            position += parser.position;
+            int length = (int) ((Long) count * XREF_ENTRY_SIZE);
+            byte[] entries = read(position, length);
+            for (int i = 0; i < (Long) count; i++) {
+                int entry = i * XREF_ENTRY_SIZE;
+                if (entries[entry + 17] == 'n') {
+                    long objectOffset = parseLong(entries, entry, 10);
+                    putObject((int) ((Long) first + i), new long[] {objectOffset}, bodyRange);
+                } else if (entries[entry + 17] != 'f') {
+                    throw new IOException("Invalid cross-reference entry");
+                }
+            }
+            position += length;
+        }
+    }
+
+    private void readStream(IndirectObject object, long[] bodyRange) throws IOException {
+        Map<String, Object> dictionary = object.dictionary;
+        List<?> widths = list(dictionary.get("W"));
+        if (widths.size() != 3) {
+            throw new IOException("Invalid cross-reference stream widths");
+        }
+        int[] w = new int[3];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = (int) number(widths.get(i));
+            if (w[i] < 0 || w[i] > 8) {
+                throw new IOException("Invalid cross-reference stream widths");
+            }
+        }
+        List<?> index = dictionary.containsKey("Index")
+                ? list(dictionary.get("Index"))
+                : ImmutableList.of(0L, number(dictionary.get("Size")));
+        byte[] data = streamData(object);
+        int rowSize = w[0] + w[1] + w[2];
+        int row = 0;
+        for (int i = 0; i + 1 < index.size(); i += 2) {
+            long first = number(index.get(i));
+            long count = number(index.get(i + 1));
+            for (long j = 0; j < count; j++, row++) {
+                int position = row * rowSize;
+                if (position + rowSize > data.length) {
+                    throw new IOException("Truncated cross-reference stream");
+                }
+                long type = w[0] == 0 ? 1 : field(data, position, w[0]);
+                long field2 = field(data, position + w[0], w[1]);
+                long field3 = field(data, position + w[0] + w[1], w[2]);
+                if (type == 1) {
+                    putObject((int) (first + j), new long[] {field2}, bodyRange);
+                } else if (type == 2) {
+                    putObject((int) (first + j), new long[] {field2, field3}, null);
+                }
+            }
+        }
+    }
+
+    private void putObject(int number, long[] entry, @Nullable long[] bodyRange)
+            throws IOException {
+        if (bodyRange != null) {
+            long offset = checkOffset(entry[0]);
+            boundaries.add(offset);
+            bodyRange[0] = Math.min(bodyRange[0], offset);
+            bodyRange[1] = Math.max(bodyRange[1], offset);
+        }
+        objects.putIfAbsent(number, entry);
+    }
+
+    @Nullable
+    private Object resolve(@Nullable Object value) throws IOException {
+        for (int depth = 0; value instanceof Reference; depth++) {
+            if (depth == MAX_RESOLVE_DEPTH) {
+                throw new IOException("Too many indirect references");
+            }
+            value = object(((Reference) value).number);
+        }
+        return value;
+    }
+
+    @Nullable
+    private Object object(int number) throws IOException {
+        long[] entry = objects.get(number);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.length == 1) {
+            return readObject(entry[0]).value;
+        }
+        return compressedObject((int) entry[0], (int) entry[1]);
+    }
+
+    @Nullable
+    private Object compressedObject(int streamNumber, int index) throws IOException {
+        long[] streamEntry = objects.get(streamNumber);
+        if (streamEntry == null || streamEntry.length != 1) {
+            throw new IOException("Invalid object stream " + streamNumber);
+        }
+        IndirectObject stream = readObject(streamEntry[0]);
+        byte[] data = objectStreams.get(streamNumber);
+        if (data == null) {
+            data = streamData(stream);
+            objectStreams.put(streamNumber, data);
+        }
+        long count = number(stream.dictionary.get("N"));
+        long first = number(stream.dictionary.get("First"));
+        if (index >= count || first > data.length) {
+            throw new IOException("Invalid object stream " + streamNumber);
+        }
+        Parser parser = new Parser(data, 0);
+        long offset = -1;
+        for (int i = 0; i <= index; i++) {
+            parser.value();
+            offset = number(parser.value());
+        }
+        return new Parser(data, (int) (first + offset)).value();
+    }
+
+    private IndirectObject readObject(long offset) throws IOException {
+        byte[] window = read(offset, (int) Math.min(OBJECT_WINDOW, size - checkOffset(offset)));
+        return readObject(offset, window, new Parser(window, 0));
+    }
+
+    private IndirectObject readObject(long offset, byte[] window, Parser parser)
+            throws IOException {
+        if (!(parser.value() instanceof Long) || !(parser.value() instanceof Long)
+                || !parser.keyword("obj")) {
+            throw new IOException("Invalid object at " + offset);
+        }
+        Object value = parser.value();
+        long streamOffset = -1;
+        if (value instanceof Map && parser.keyword("stream")) {
+            if (parser.position < window.length && window[parser.position] == '\r') {
+                parser.position++;
+            }
+            if (parser.position < window.length && window[parser.position] == '\n') {
+                parser.position++;
+            }
+            streamOffset = offset + parser.position;
+        }
+        return new IndirectObject(value, streamOffset);
+    }
+
+    private byte[] streamData(IndirectObject object) throws IOException {
+        Map<String, Object> dictionary = object.dictionary;
+        long length = number(resolve(dictionary.get("Length")));
+        if (object.streamOffset < 0 || length < 0 || length > MAX_STREAM_SIZE
+                || object.streamOffset + length > size) {
+            throw new IOException("Invalid stream");
+        }
+        byte[] data = read(object.streamOffset, (int) length);
+        Object filter = dictionary.get("Filter");
+        Object parameters = dictionary.get("DecodeParms");
+        if (filter instanceof List && ((List<?>) filter).size() == 1) {
+            filter = ((List<?>) filter).get(0);
+            if (parameters instanceof List && ((List<?>) parameters).size() == 1) {
+                parameters = ((List<?>) parameters).get(0);
+            }
+        }
+        if (filter == null) {
+            return data;
+        }
+        if (!"FlateDecode".equals(filter)) {
+            throw new IOException("Unsupported stream filter " + filter);
+        }
+        data = inflate(data);
+        if (parameters instanceof Map) {
+            Map<?, ?> decodeParameters = (Map<?, ?>) parameters;
+            long predictor = decodeParameters.containsKey("Predictor")
+                    ? number(decodeParameters.get("Predictor")) : 1;
+            if (predictor >= 10) {
+                long columns = decodeParameters.containsKey("Columns")
+                        ? number(decodeParameters.get("Columns")) : 1;
+                data = unpredict(data, (int) columns);
+            } else if (predictor != 1) {
+                throw new IOException("Unsupported predictor " + predictor);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                output.write(buffer, 0, count);
+                if (output.size() > MAX_STREAM_SIZE) {
+                    throw new IOException("Stream too large");
+                }
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed stream", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Undo PNG predictors of one byte per pixel, as used by cross-reference streams.
+     */
+    private static byte[] unpredict(byte[] data, int columns) throws IOException {
+        if (columns <= 0) {
+            throw new IOException("Invalid predictor columns");
+        }
+        int rows = data.length / (columns + 1);
+        byte[] output = new byte[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            int type = data[row * (columns + 1)];
+            int in = row * (columns + 1) + 1;
+            int out = row * columns;
+            for (int i = 0; i < columns; i++) {
+                int left = i > 0 ? output[out + i - 1] & 0xFF : 0;
+                int up = row > 0 ? output[out - columns + i] & 0xFF : 0;
+                int upLeft = row > 0 && i > 0 ? output[out - columns + i - 1] & 0xFF : 0;
+                int value = data[in + i] & 0xFF;
+                switch (type) {
+                    case 0:
+                        break;
+                    case 1:
+                        value += left;
+                        break;
+                    case 2:
+                        value += up;
+                        break;
+                    case 3:
+                        value += (left + up) / 2;
+                        break;
+                    case 4:
+                        value += paeth(left, up, upLeft);
+                        break;
+                    default:
+                        throw new IOException("Invalid PNG predictor " + type);
+                }
+                output[out + i] = (byte) value;
+            }
+        }
+        return output;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pLeft = Math.abs(p - left);
+        int pUp = Math.abs(p - up);
+        int pUpLeft = Math.abs(p - upLeft);
+        if (pLeft <= pUp && pLeft <= pUpLeft) {
+            return left;
+        }
+        return pUp <= pUpLeft ? up : upLeft;
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer.array();
+    }
+
+    private long checkOffset(long offset) throws IOException {
+        if (offset < 0 || offset >= size) {
+            throw new IOException("Invalid offset " + offset);
+        }
+        return offset;
+    }
+
+    private static long field(byte[] data, int position, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (data[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long parseLong(byte[] data, int position, int length) throws IOException {
+        long value = 0;
+        for (int i = position; i < position + length; i++) {
+            if (data[i] < '0' || data[i] > '9') {
+                throw new IOException("Invalid cross-reference entry");
+            }
+            value = value * 10 + (data[i] - '0');
+        }
+        return value;
+    }
+
+    private static long number(@Nullable Object value) throws IOException {
+        if (!(value instanceof Long)) {
+            throw new IOException("Expected an integer");
+        }
+        return (Long) value;
+    }
+
+    private static List<?> list(@Nullable Object value) throws IOException {
+        if (!(value instanceof List)) {
+            throw new IOException("Expected an array");
+        }
+        return (List<?>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castDictionary(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static boolean startsWith(byte[] data, int index, byte[] token) {
+        if (index + token.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (data[index + i] != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class IndirectObject {
+
+        @Nullable final Object value;
+        final Map<String, Object> dictionary;
+        final long streamOffset;
+
+        IndirectObject(@Nullable Object value, long streamOffset) {
+            this.value = value;
+            this.dictionary = value instanceof Map ? castDictionary(value) : new HashMap<>();
+            this.streamOffset = streamOffset;
+        }
+    }
+
+    private static final class Reference {
+
+        final int number;
+
+        Reference(int number) {
+            this.number = number;
+        }
+    }
+
+    /**
+     * Parses direct objects: dictionaries become maps keyed by names without the slash,
+     * names become strings, integers longs and indirect references {@link Reference}s.
+     * String contents and reals are not needed and are left out of dictionaries.
+     */
+    private static final class Parser {
+
+        private static final Object SKIPPED = new Object();
+
+        private final byte[] data;
+        int position;
+
+        Parser(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        boolean keyword(String keyword) {
+            skipWhitespace();
+            byte[] token = ascii(keyword);
+            if (startsWith(data, position, token)
+                    && (position + token.length == data.length
+                            || isDelimiter(data[position + token.length]))) {
+                position += token.length;
+                return true;
+            }
+            return false;
+        }
+
+        @Nullable
+        Object value() throws IOException {
+            skipWhitespace();
+            if (position >= data.length) {
+                throw new IOException("Unexpected end of object");
+            }
+            byte b = data[position];
+            if (b == '/') {
+                position++;
+                return token();
+            }
+            if (b == '<' && peek(1) == '<') {
+                position += 2;
+                return dictionary();
+            }
+            if (b == '<') {
+                skipHexString();
+                return SKIPPED;
+            }
+            if (b == '(') {
+                skipLiteralString();
+                return SKIPPED;
+            }
+            if (b == '[') {
+                position++;
+                return array();
+            }
+            if (b == '+' || b == '-' || b == '.' || (b >= '0' && b <= '9')) {
+                return number();
+            }
+            String keyword = token();
+            switch (keyword) {
+                case "true":
+                    return Boolean.TRUE;
+                case "false":
+                    return Boolean.FALSE;
+                case "null":
+                    return null;
+                default:
+                    throw new IOException("Unexpected token " + keyword);
+            }
+        }
+
+        void skipWhitespace() {
+            while (position < data.length) {
+                byte b = data[position];
+                if (b == '%') {
+                    while (position < data.length && data[position] != '\n'
+                            && data[position] != '\r') {
+                        position++;
+                    }
+                } else if (isWhitespace(b)) {
+                    position++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private Map<String, Object> dictionary() throws IOException {
+            Map<String, Object> dictionary = new HashMap<>();
+            while (true) {
+                skipWhitespace();
+                if (position + 1 < data.length && data[position] == '>'
+                        && data[position + 1] == '>') {
+                    position += 2;
+                    return dictionary;
+                }
+                Object key = value();
+                if (!(key instanceof String)) {
+                    throw new IOException("Invalid dictionary key");
+                }
+                Object value = value();
+                if (value != null && value != SKIPPED) {
+                    dictionary.put((String) key, value);
+                }
+            }
+        }
+
+        private List<Object> array() throws IOException {
+            List<Object> array = new ArrayList<>();
+            while (true) {
+                skipWhitespace();
+                if (position < data.length && data[position] == ']') {
+                    position++;
+                    return array;
+                }
+                array.add(value());
+            }
+        }
+
+        /**
+         * Parse a number, or an indirect reference when it is followed by a generation
+         * number and {@code R}.
+         */
+        private Object number() throws IOException {
+            String number = token();
+            if (!number.matches("[+-]?\\d{1,18}")) {
+                if (!number.matches("[+-]?\\d*\\.\\d*")) {
+                    throw new IOException("Invalid number " + number);
+                }
+                return SKIPPED;
+            }
+            long value = Long.parseLong(number);
+            int start = position;
+            skipWhitespace();
+            String generation = token();
+            if (!generation.isEmpty() && generation.matches("\\d{1,5}")) {
+                skipWhitespace();
+                if (position < data.length && data[position] == 'R'
+                        && (position + 1 == data.length || isDelimiter(data[position + 1]))) {
+                    position++;
+                    return new Reference((int) value);
+                }
+            }
+            position = start;
+            return value;
+        }
+
+        private String token() {
+            int start = position;
+            while (position < data.length && !isDelimiter(data[position])) {
+                position++;
+            }
+            return new String(data, start, position - start, StandardCharsets.US_ASCII);
+        }
+
+        private void skipHexString() throws IOException {
+            while (position < data.length && data[position] != '>') {
+                position++;
+            }
+            if (position == data.length) {
+                throw new IOException("Unterminated string");
+            }
+            position++;
+        }
+
+        private void skipLiteralString() throws IOException {
+            int depth = 0;
+            while (position < data.length) {
+                byte b = data[position++];
+                if (b == '\\') {
+                    position++;
+                } else if (b == '(') {
+                    depth++;
+                } else if (b == ')' && --depth == 0) {
+                    return;
+                }
+            }
+            throw new IOException("Unterminated string");
+        }
+
+        private int peek(int offset) {
+            return position + offset < data.length ? data[position + offset] : -1;
+        }
+
+        private static boolean isDelimiter(byte b) {
+            return isWhitespace(b) || b == '/' || b == '<' || b == '>' || b == '['
+                    || b == ']' || b == '(' || b == ')' || b == '{' || b == '}' || b == '%';
+        }
+
+        private static boolean isWhitespace(byte b) {
+            return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+        }
+    }
+}
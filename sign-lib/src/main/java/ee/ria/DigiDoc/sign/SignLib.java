@@ -2,6 +2,9 @@ package ee.ria.DigiDoc.sign;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 import android.preference.PreferenceManager;
 import android.system.ErrnoException;
 import android.system.Os;
@@ -9,19 +12,28 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.bouncycastle.util.encoders.Base64;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 
+import ee.ria.DigiDoc.common.NativeHandle;
+import ee.ria.DigiDoc.common.SignLibReady;
 import ee.ria.DigiDoc.configuration.ConfigurationProvider;
 import ee.ria.libdigidocpp.Conf;
 import ee.ria.libdigidocpp.DigiDocConf;
@@ -34,36 +46,91 @@ public final class SignLib {
      * Sub-directory name in {@link Context#getCacheDir() cache dir} for schema.
      */
     private static final String SCHEMA_DIR = "schema";
+    /**
+     * File in the schema dir holding the version of the extracted {@code R.raw.schema} on the
+     * first line and the names of the extracted files on the following lines.
+     */
+    private static final String SCHEMA_STAMP = ".schema-version";
     private static final int LIBDIGIDOCPP_LOG_LEVEL = 4; // Debug messages
 
+    private static final ExecutorService INIT_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("sign-lib-init-%d")
+                    .setDaemon(true)
+                    .build());
+
     private static SharedPreferences.OnSharedPreferenceChangeListener tsaUrlChangeListener;
+    private static boolean initialized;
 
     /**
      * Initialize sign-lib.
      * <p>
      * Unzips the schema, access certificate and initializes libdigidocpp.
+     * <p>
+     * Everything, including loading the native libraries, runs on a background thread so
+     * that the app can start without waiting for libdigidocpp. Calls are run one at a time in
+     * order, so a re-initialization after a configuration update is applied after the
+     * previous one. {@link #awaitReady()} blocks until the latest initialization is done.
+     * <p>
+     * The schema is extracted only when {@code R.raw.schema} has changed since the last
+     * extraction, which is when the app is installed or updated. The first initialization
+     * also deletes temporary files of container edits interrupted by the process dying.
      */
-    public static void init(Context context, String tsaUrlPreferenceKey, ConfigurationProvider configurationProvider, String userAgent, boolean isLoggingEnabled) {
-        initNativeLibs();
-        try {
-            initSchema(context);
-        } catch (IOException e) {
-            Timber.log(Log.ERROR, e, "Init schema failed");
-        }
-
-        initLibDigiDocpp(context, tsaUrlPreferenceKey, configurationProvider, userAgent, isLoggingEnabled);
+    public static synchronized void init(Context context, String tsaUrlPreferenceKey, ConfigurationProvider configurationProvider, String userAgent, boolean isLoggingEnabled) {
+        boolean firstInit = !initialized;
+        initialized = true;
+        SignLibReady.set(INIT_EXECUTOR.submit(() -> {
+            long start = System.nanoTime();
+            if (firstInit) {
+                // Nothing can be edited before the first initialization is ready
+                ContainerSession.deleteEditLeftovers();
+            }
+            initNativeLibs();
+            String schemaVersion = schemaVersion(context);
+            if (!isSchemaCurrent(context, schemaVersion)) {
+                try {
+                    initSchema(context, schemaVersion);
+                } catch (IOException e) {
+                    Timber.log(Log.ERROR, e, "Init schema failed");
+                }
+            }
+            initLibDigiDocpp(context, tsaUrlPreferenceKey, configurationProvider, userAgent, isLoggingEnabled);
+            Timber.log(Log.DEBUG, "SignLib initialized in %d ms",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }));
+    }
 
+    /**
+     * Block until {@link #init} has extracted the schema and initialized libdigidocpp.
+     * <p>
+     * Called by everything in sign-lib that uses libdigidocpp, so callers don't need to.
+     *
+     * @see SignLibReady
+     */
+    public static void awaitReady() {
+        if (SignLibReady.isReady()) {
+            SignLibReady.await();
+            return;
+        }
+        long start = System.nanoTime();
+        SignLibReady.await();
+        Timber.log(Log.DEBUG, "Waited %d ms for SignLib initialization on %s",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                Thread.currentThread().getName());
     }
 
     public static String accessTokenPass() {
+        awaitReady();
         return Objects.requireNonNull(Conf.instance()).PKCS12Pass();
     }
 
     public static String accessTokenPath() {
+        awaitReady();
         return Objects.requireNonNull(Conf.instance()).PKCS12Cert();
     }
 
     public static String libdigidocppVersion() {
+        awaitReady();
         return digidoc.version();
     }
 
@@ -72,8 +139,14 @@ public final class SignLib {
         System.loadLibrary("digidoc_java");
     }
 
-    private static void initSchema(Context context) throws IOException {
+    private static void initSchema(Context context, String schemaVersion) throws IOException {
         File schemaDir = getSchemaDir(context);
+        File stampFile = new File(schemaDir, SCHEMA_STAMP);
+        if (stampFile.exists() && !stampFile.delete()) {
+            throw new IOException("Failed to delete " + stampFile);
+        }
+        List<String> stamp = new ArrayList<>();
+        stamp.add(schemaVersion);
         try (ZipInputStream inputStream = new ZipInputStream(context.getResources()
                 .openRawResource(R.raw.schema))) {
             ZipEntry entry;
@@ -85,8 +158,65 @@ public final class SignLib {
                 FileOutputStream outputStream = new FileOutputStream(entryFile);
                 ByteStreams.copy(inputStream, outputStream);
                 outputStream.close();
+                stamp.add(entry.getName());
             }
         }
+        Files.asCharSink(stampFile, StandardCharsets.UTF_8).writeLines(stamp);
+    }
+
+    /**
+     * Whether the schema dir has the files of this version of {@code R.raw.schema}.
+     * <p>
+     * The stamp is written after all files are extracted, so an interrupted extraction is
+     * redone. The system can delete single files from the cache dir when storage runs low,
+     * so every extracted file is checked too.
+     */
+    private static boolean isSchemaCurrent(Context context, String schemaVersion) {
+        File schemaDir = getSchemaDir(context);
+        File stampFile = new File(schemaDir, SCHEMA_STAMP);
+        if (!stampFile.isFile()) {
+            return false;
+        }
+        try {
+            List<String> stamp = Files.asCharSource(stampFile, StandardCharsets.UTF_8)
+                    .readLines();
+            if (stamp.isEmpty() || !schemaVersion.equals(stamp.get(0))) {
+                return false;
+            }
+            for (String name : stamp.subList(1, stamp.size())) {
+                if (!new File(schemaDir, name).isFile()) {
+                    Timber.log(Log.DEBUG, "Schema file %s is missing", name);
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Failed to read schema version");
+            return false;
+        }
+    }
+
+    /**
+     * {@code R.raw.schema} only changes with the APK, so the install time of the package and
+     * the size of the resource identify it.
+     */
+    private static String schemaVersion(Context context) {
+        long lastUpdateTime;
+        try {
+            lastUpdateTime = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Timber.log(Log.ERROR, e, "Failed to get package info");
+            lastUpdateTime = 0;
+        }
+        long length;
+        try (AssetFileDescriptor descriptor = context.getResources()
+                .openRawResourceFd(R.raw.schema)) {
+            length = descriptor.getLength();
+        } catch (IOException | Resources.NotFoundException e) {
+            length = -1;
+        }
+        return lastUpdateTime + ":" + length;
     }
 
     private static void initLibDigiDocpp(Context context, String tsaUrlPreferenceKey, ConfigurationProvider configurationProvider, String userAgent, boolean isLoggingEnabled) {
@@ -157,10 +287,13 @@ public final class SignLib {
 
     private static void overrideOCSPUrls(Map<String, String> ocspUrls) {
         ee.ria.libdigidocpp.StringMap stringMap = new ee.ria.libdigidocpp.StringMap();
-        for (Map.Entry<String, String> entry : ocspUrls.entrySet()) {
-            stringMap.put(entry.getKey(), entry.getValue());
+        try (NativeHandle<ee.ria.libdigidocpp.StringMap> handle =
+                     NativeHandle.of(stringMap, stringMap::delete)) {
+            for (Map.Entry<String, String> entry : ocspUrls.entrySet()) {
+                handle.get().put(entry.getKey(), entry.getValue());
+            }
+            DigiDocConf.instance().setOCSPUrls(handle.get());
         }
-        DigiDocConf.instance().setOCSPUrls(stringMap);
     }
 
     private static void initTsaUrl(Context context, String preferenceKey, String defaultValue) {
@@ -32,6 +32,14 @@ public abstract class Signature {
      */
     public abstract SignatureStatus status();
 
+    /**
+     * Whether {@link #status()} is the result of validation.
+     * <p>
+     * When false, the signature was read without validating and the status is
+     * {@link SignatureStatus#UNKNOWN} until the validated signature is delivered.
+     */
+    public abstract boolean validated();
+
     /**
      * Whether this signature is valid or invalid.
      *
@@ -160,13 +168,51 @@ public abstract class Signature {
                                    String hashValueOfSignature, String tsCertificateIssuer, X509Certificate tsCertificate,
                                    String ocspCertificateIssuer, X509Certificate ocspCertificate,
                                    String ocspTime, String ocspTimeUTC, String signersMobileTimeUTC) {
-        return new AutoValue_Signature(id, name, createdAt, status, profile,
+        return new AutoValue_Signature(id, name, createdAt, status, true, profile,
                 signersCertificateIssuer, signingCertificate, signatureMethod,
                 signatureFormat, signatureTimestamp, signatureTimestampUTC,
                 hashValueOfSignature, tsCertificateIssuer, tsCertificate, ocspCertificateIssuer,
                 ocspCertificate, ocspTime, ocspTimeUTC, signersMobileTimeUTC);
     }
 
+    /**
+     * Creates a signature object that has not been validated yet.
+     *
+     * @see #create(String, String, Instant, SignatureStatus, String, String, X509Certificate,
+     * String, String, String, String, String, String, X509Certificate, String, X509Certificate,
+     * String, String, String)
+     */
+    static Signature unvalidated(String id, String name, Instant createdAt, String profile,
+                                 String signersCertificateIssuer,
+                                 X509Certificate signingCertificate, String signatureMethod,
+                                 String signatureFormat, String signatureTimestamp,
+                                 String signatureTimestampUTC, String hashValueOfSignature,
+                                 String tsCertificateIssuer, X509Certificate tsCertificate,
+                                 String ocspCertificateIssuer, X509Certificate ocspCertificate,
+                                 String ocspTime, String ocspTimeUTC,
+                                 String signersMobileTimeUTC) {
+        return new AutoValue_Signature(id, name, createdAt, SignatureStatus.UNKNOWN, false,
+                profile, signersCertificateIssuer, signingCertificate, signatureMethod,
+                signatureFormat, signatureTimestamp, signatureTimestampUTC,
+                hashValueOfSignature, tsCertificateIssuer, tsCertificate, ocspCertificateIssuer,
+                ocspCertificate, ocspTime, ocspTimeUTC, signersMobileTimeUTC);
+    }
+
+    /**
+     * Copy of this signature with the validation result applied.
+     *
+     * @param status Validated status.
+     * @return Validated signature.
+     */
+    final Signature withStatus(SignatureStatus status) {
+        return new AutoValue_Signature(id(), name(), createdAt(), status, true, profile(),
+                signersCertificateIssuer(), signingCertificate(), signatureMethod(),
+                signatureFormat(), signatureTimestamp(), signatureTimestampUTC(),
+                hashValueOfSignature(), tsCertificateIssuer(), tsCertificate(),
+                ocspCertificateIssuer(), ocspCertificate(), ocspTime(), ocspTimeUTC(),
+                signersMobileTimeUTC());
+    }
+
     @NonNull
     @Override
     public String toString() {
@@ -175,6 +221,7 @@ public abstract class Signature {
                 ", name=" + name() +
                 ", createdAt=" + createdAt() +
                 ", status=" + status() +
+                ", validated=" + validated() +
                 ", profile=" + profile() +
                 ", signersCertificateIssuer=" + signersCertificateIssuer() +
                 ", signingCertificate exists=" + (signingCertificate() != null) +
@@ -0,0 +1,21 @@
+package ee.ria.DigiDoc.sign;
+
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+public abstract class SignatureValidation {
+
+    /**
+     * Validated signature.
+     */
+    public abstract Signature signature();
+
+    /**
+     * Time spent in the libdigidocpp validator, in milliseconds.
+     */
+    public abstract long durationMillis();
+
+    static SignatureValidation create(Signature signature, long durationMillis) {
+        return new AutoValue_SignatureValidation(signature, durationMillis);
+    }
+}
@@ -0,0 +1,298 @@
+package ee.ria.DigiDoc.sign;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import ee.ria.DigiDoc.common.CertificateCache;
+import timber.log.Timber;
+
+/**
+ * On-disk cache of validated signatures.
+ * <p>
+ * Entries are keyed by the SHA-256 of the container content and an environment string
+ * describing everything else the validation result depends on (TSL sequence numbers and
+ * configuration serial). Invalidation rules:
+ * <ul>
+ *     <li>Any change in container content, TSLs or configuration results in a different key.</li>
+ *     <li>Entries older than {@link #MAX_AGE_MILLIS} are ignored and removed.</li>
+ *     <li>Signatures with status {@link SignatureStatus#UNKNOWN} are never stored, this is
+ *     usually the result of a network error.</li>
+ *     <li>At most {@code maxEntries} containers are kept, least recently used are evicted.</li>
+ * </ul>
+ */
+public final class SignatureValidationCache {
+
+    private static final int VERSION = 1;
+    private static final long MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    private static final String ENTRY_EXTENSION = "sig";
+
+    private final File directory;
+    private final int maxEntries;
+
+    /**
+     * Content digests by path, reused while size and modification time are unchanged.
+     */
+    private final Map<String, ContentDigest> contentDigests = new HashMap<>();
+
+    public SignatureValidationCache(File directory, int maxEntries) {
+        this.directory = directory;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Get cached validated signatures of a container.
+     *
+     * @param containerFile Container file.
+     * @param environment Environment the validation result depends on.
+     * @return Validated signatures by ID, empty when nothing is cached.
+     */
+    public synchronized ImmutableMap<String, Signature> get(File containerFile,
+                                                           String environment) {
+        File entryFile = entryFile(containerFile, environment);
+        if (entryFile == null || !entryFile.isFile()) {
+            return ImmutableMap.of();
+        }
+        if (System.currentTimeMillis() - entryFile.lastModified() > MAX_AGE_MILLIS) {
+            delete(entryFile);
+            return ImmutableMap.of();
+        }
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(entryFile)))) {
+            if (input.readInt() != VERSION) {
+                delete(entryFile);
+                return ImmutableMap.of();
+            }
+            ImmutableMap.Builder<String, Signature> signatures = ImmutableMap.builder();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Signature signature = readSignature(input);
+                signatures.put(signature.id(), signature);
+            }
+            touch(entryFile);
+            return signatures.build();
+        } catch (IOException | CertificateException | RuntimeException e) {
+            Timber.log(Log.ERROR, e, "Failed to read signature validation cache entry");
+            delete(entryFile);
+            return ImmutableMap.of();
+        }
+    }
+
+    /**
+     * Store validated signatures of a container.
+     * <p>
+     * Signatures that are not validated or have unknown status are skipped.
+     *
+     * @param containerFile Container file.
+     * @param environment Environment the validation result depends on.
+     * @param signatures Signatures to store.
+     */
+    public synchronized void put(File containerFile, String environment,
+                                 ImmutableList<Signature> signatures) {
+        File entryFile = entryFile(containerFile, environment);
+        if (entryFile == null) {
+            return;
+        }
+        ImmutableList.Builder<Signature> cacheable = ImmutableList.builder();
+        for (Signature signature : signatures) {
+            if (signature.validated() && signature.status() != SignatureStatus.UNKNOWN) {
+                cacheable.add(signature);
+            }
+        }
+        ImmutableList<Signature> entries = cacheable.build();
+        if (entries.isEmpty()) {
+            return;
+        }
+        // Written next to the entry and renamed into place, so a reader never sees half of it
+        File tmpFile = new File(entryFile.getPath() + ".tmp");
+        try {
+            Files.createParentDirs(entryFile);
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                output.writeInt(VERSION);
+                output.writeInt(entries.size());
+                for (Signature signature : entries) {
+                    writeSignature(output, signature);
+                }
+            }
+            Files.move(tmpFile, entryFile);
+        } catch (IOException | CertificateException e) {
+            Timber.log(Log.ERROR, e, "Failed to write signature validation cache entry");
+            delete(tmpFile);
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Remember the content digest of a container calculated elsewhere, for example while
+     * copying it, so that the first lookup doesn't have to read the whole file.
+     *
+     * @param containerFile Container file, the digest is used while its size and modification
+     *                      time are unchanged.
+     * @param sha256 Lower-case hex SHA-256 of the container content.
+     */
+    public synchronized void putContentDigest(File containerFile, String sha256) {
+        contentDigests.put(containerFile.getAbsolutePath(), new ContentDigest(
+                containerFile.length(), containerFile.lastModified(), sha256));
+    }
+
+    /**
+     * Remove all cached entries.
+     */
+    public synchronized void clear() {
+        File[] entries = directory.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                delete(entry);
+            }
+        }
+        contentDigests.clear();
+    }
+
+    @Nullable
+    private File entryFile(File containerFile, String environment) {
+        String contentDigest = contentDigest(containerFile);
+        if (contentDigest == null) {
+            return null;
+        }
+        String key = Hashing.sha256()
+                .hashString(contentDigest + "|" + environment, StandardCharsets.UTF_8)
+                .toString();
+        return new File(directory, key + "." + ENTRY_EXTENSION);
+    }
+
+    @Nullable
+    private String contentDigest(File containerFile) {
+        String path = containerFile.getAbsolutePath();
+        long length = containerFile.length();
+        long lastModified = containerFile.lastModified();
+        ContentDigest cached = contentDigests.get(path);
+        if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+            return cached.digest;
+        }
+        try {
+            String digest = Files.asByteSource(containerFile).hash(Hashing.sha256()).toString();
+            contentDigests.put(path, new ContentDigest(length, lastModified, digest));
+            return digest;
+        } catch (IOException e) {
+            Timber.log(Log.ERROR, e, "Failed to calculate container digest");
+            return null;
+        }
+    }
+
+    private void evict() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith("." + ENTRY_EXTENSION));
+        if (entries == null || entries.length <= maxEntries) {
+            return;
+        }
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length - maxEntries; i++) {
+            delete(entries[i]);
+        }
+    }
+
+    private static void touch(File file) {
+        if (!file.setLastModified(System.currentTimeMillis())) {
+            Timber.log(Log.DEBUG, "Failed to update access time of %s", file.getName());
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            Timber.log(Log.DEBUG, "Failed to delete %s", file.getName());
+        }
+    }
+
+    private static void writeSignature(DataOutputStream output, Signature signature)
+            throws IOException, CertificateException {
+        output.writeUTF(signature.id());
+        output.writeUTF(signature.name());
+        output.writeLong(signature.createdAt().toEpochMilli());
+        output.writeUTF(signature.status().name());
+        output.writeUTF(signature.profile());
+        output.writeUTF(signature.signersCertificateIssuer());
+        writeCertificate(output, signature.signingCertificate());
+        output.writeUTF(signature.signatureMethod());
+        output.writeUTF(signature.signatureFormat());
+        output.writeUTF(signature.signatureTimestamp());
+        output.writeUTF(signature.signatureTimestampUTC());
+        output.writeUTF(signature.hashValueOfSignature());
+        output.writeUTF(signature.tsCertificateIssuer());
+        writeCertificate(output, signature.tsCertificate());
+        output.writeUTF(signature.ocspCertificateIssuer());
+        writeCertificate(output, signature.ocspCertificate());
+        output.writeUTF(signature.ocspTime());
+        output.writeUTF(signature.ocspTimeUTC());
+        output.writeUTF(signature.signersMobileTimeUTC());
+    }
+
+    private static Signature readSignature(DataInputStream input)
+            throws IOException, CertificateException {
+        return Signature.create(input.readUTF(), input.readUTF(),
+                Instant.ofEpochMilli(input.readLong()), SignatureStatus.valueOf(input.readUTF()),
+                input.readUTF(), input.readUTF(), readCertificate(input), input.readUTF(),
+                input.readUTF(), input.readUTF(), input.readUTF(), input.readUTF(),
+                input.readUTF(), readCertificate(input), input.readUTF(), readCertificate(input),
+                input.readUTF(), input.readUTF(), input.readUTF());
+    }
+
+    private static void writeCertificate(DataOutputStream output,
+                                         @Nullable X509Certificate certificate)
+            throws IOException, CertificateException {
+        if (certificate == null) {
+            output.writeInt(0);
+            return;
+        }
+        byte[] encoded = certificate.getEncoded();
+        output.writeInt(encoded.length);
+        output.write(encoded);
+    }
+
+    @Nullable
+    private static X509Certificate readCertificate(DataInputStream input)
+            throws IOException, CertificateException {
+        int length = input.readInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        input.readFully(encoded);
+        return CertificateCache.x509Certificate(encoded);
+    }
+
+    private static final class ContentDigest {
+
+        final long length;
+        final long lastModified;
+        final String digest;
+
+        ContentDigest(long length, long lastModified, String digest) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ee.ria.DigiDoc.sign;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import timber.log.Timber;
+
+/**
+ * Validates signatures of one container on a bounded pool of worker threads.
+ * <p>
+ * Workers only run the libdigidocpp validator, results are delivered to the
+ * {@link Listener} on the calling thread in the order they finish.
+ * {@link #validate(Map, Listener)} returns only after every worker has let go of the native
+ * signatures, so the container can be closed right after it.
+ */
+public final class SignatureValidationEngine {
+
+    public interface Listener {
+
+        void onValidated(SignatureValidation validation) throws Exception;
+    }
+
+    private final int maxConcurrency;
+    private final ExecutorService executor;
+
+    /**
+     * Engine with one worker per available processor.
+     */
+    public SignatureValidationEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxConcurrency Maximum number of signatures validated at the same time.
+     */
+    public SignatureValidationEngine(int maxConcurrency) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.executor = Executors.newFixedThreadPool(this.maxConcurrency,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("signature-validation-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Validate given signatures and block until all of them are done.
+     * <p>
+     * If the listener throws or the calling thread is interrupted, validations that have not
+     * started yet are skipped. The ones already running can't be stopped, libdigidocpp doesn't
+     * react to interrupts, so this waits for them before returning. The native signatures
+     * must stay valid until then.
+     *
+     * @param signatures Unvalidated signatures with their native counterparts.
+     * @param listener Called on the calling thread for each finished validation.
+     * @return All validations in the order they finished.
+     */
+    ImmutableList<SignatureValidation> validate(
+            Map<Signature, ee.ria.libdigidocpp.Signature> signatures, Listener listener)
+            throws Exception {
+        CompletionService<SignatureValidation> completionService =
+                new ExecutorCompletionService<>(executor);
+        AtomicBoolean cancelled = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(signatures.size());
+        for (Map.Entry<Signature, ee.ria.libdigidocpp.Signature> entry : signatures.entrySet()) {
+            completionService.submit(() -> {
+                try {
+                    if (cancelled.get()) {
+                        return null;
+                    }
+                    long start = SystemClock.elapsedRealtime();
+                    SignatureStatus status = SignedContainer.signatureStatus(entry.getValue());
+                    return SignatureValidation.create(entry.getKey().withStatus(status),
+                            SystemClock.elapsedRealtime() - start);
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        ImmutableList.Builder<SignatureValidation> validations = ImmutableList.builder();
+        try {
+            for (int i = 0; i < signatures.size(); i++) {
+                SignatureValidation validation = completionService.take().get();
+                Timber.log(Log.DEBUG, "Signature %s validated in %d ms",
+                        validation.signature().id(), validation.durationMillis());
+                validations.add(validation);
+                listener.onValidated(validation);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            cancelled.set(true);
+            Uninterruptibles.awaitUninterruptibly(finished);
+        }
+        return validations.build();
+    }
+}
@@ -5,22 +5,19 @@ import static com.google.common.io.Files.getFileExtension;
 
 import android.content.Context;
 import android.text.TextUtils;
-import android.util.Base64;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 
 import androidx.annotation.NonNull;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.base.Predicate;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
 import com.google.common.io.Files;
-import com.tom_roush.pdfbox.android.PDFBoxResourceLoader;
-import com.tom_roush.pdfbox.pdmodel.PDDocument;
-import com.tom_roush.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
 
 import org.apache.commons.io.FilenameUtils;
 import org.bouncycastle.asn1.x500.RDN;
@@ -29,36 +26,27 @@ import org.bouncycastle.asn1.x500.style.BCStyle;
 import org.bouncycastle.asn1.x500.style.IETFUtils;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.util.encoders.Hex;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.NodeList;
 
-import java.io.ByteArrayInputStream;
-import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import ee.ria.DigiDoc.common.Certificate;
+import ee.ria.DigiDoc.common.CertificateCache;
 import ee.ria.DigiDoc.common.FileUtil;
+import ee.ria.DigiDoc.common.NativeHandle;
+import ee.ria.DigiDoc.common.NativeObjects;
+import ee.ria.DigiDoc.common.SigningTrace;
 import ee.ria.DigiDoc.configuration.util.FileUtils;
 import ee.ria.DigiDoc.sign.utils.Function;
 import ee.ria.libdigidocpp.Container;
@@ -119,131 +107,140 @@ public abstract class SignedContainer {
         counts.put(SignatureStatus.UNKNOWN, 0);
         counts.put(SignatureStatus.INVALID, 0);
         for (Signature signature : signatures()) {
-            if (counts.containsKey(signature.status())) {
+            if (signature.validated() && counts.containsKey(signature.status())) {
                 counts.put(signature.status(), counts.get(signature.status()) + 1);
             }
         }
         return ImmutableMap.copyOf(counts);
     }
 
+    /**
+     * Whether all signatures have been validated.
+     */
+    public final boolean signaturesValidated() {
+        for (Signature signature : signatures()) {
+            if (!signature.validated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy of this container with given signature replaced by ID.
+     * Signatures that are not in this container are ignored.
+     *
+     * @param signature Signature to replace, usually a validated one.
+     * @return Container with the signature replaced.
+     */
+    public final SignedContainer withSignature(Signature signature) {
+        ImmutableList.Builder<Signature> signatureBuilder = ImmutableList.builder();
+        for (Signature existingSignature : signatures()) {
+            signatureBuilder.add(existingSignature.id().equals(signature.id())
+                    ? signature
+                    : existingSignature);
+        }
+        return create(file(), dataFiles(), signatureBuilder.build());
+    }
+
     public final String signatureProfile() {
         return SIGNATURE_PROFILE_TS;
     }
 
     public final SignedContainer addDataFiles(ImmutableList<File> dataFiles) throws Exception {
-        Container container = container(file());
-        for (File dataFile : dataFiles) {
-            container.addDataFile(dataFile.getAbsolutePath(), mimeType(dataFile));
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.addDataFiles(dataFiles);
         }
-        container.save();
-        return open(file());
     }
 
     public final SignedContainer removeDataFile(DataFile dataFile) throws Exception {
-        Container container = container(file());
-        if (container.dataFiles().size() == 1) {
-            throw new ContainerDataFilesEmptyException();
-        }
-        DataFiles dataFiles = container.dataFiles();
-        for (int i = 0; i < dataFiles.size(); i++) {
-            if (dataFile.id().equals(dataFiles.get(i).id())) {
-                container.removeDataFile(i);
-                break;
-            }
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.removeDataFile(dataFile);
         }
-        container.save();
-        return open(file());
+    }
+
+    /**
+     * Start collecting data file changes that are saved together on
+     * {@link ContainerEdit#commit()}.
+     *
+     * @return Edit builder for this container.
+     */
+    public final ContainerEdit edit() {
+        return new ContainerEdit(this);
     }
 
     public final File getDataFile(DataFile dataFile, File directory) throws Exception {
-        Container container = container(file());
-        File file = new File(directory, FileUtil.sanitizeString(dataFile.name(), ""));
-        DataFiles dataFiles = container.dataFiles();
-        for (int i = 0; i < dataFiles.size(); i++) {
-            ee.ria.libdigidocpp.DataFile containerDataFile = dataFiles.get(i);
-            if (dataFile.id().equals(containerDataFile.id())) {
-                containerDataFile.saveAs(file.getAbsolutePath());
-                return file;
-            }
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.getDataFile(dataFile, directory);
+        }
+    }
+
+    /**
+     * Extract data files matching the filter with a single open of the container.
+     *
+     * @see ContainerSession#extractAll(File, Predicate, int, DataFileExtraction.Listener)
+     */
+    public final ImmutableList<File> extractAll(File directory, Predicate<DataFile> filter,
+                                                DataFileExtraction.Listener listener)
+            throws Exception {
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.extractAll(directory, filter,
+                    Runtime.getRuntime().availableProcessors(), listener);
         }
-        throw new IllegalArgumentException("Could not find file " + dataFile.id() +
-                " in container " + file());
     }
 
     public final String calculateDataFileDigest(DataFile dataFile, String method) throws Exception {
-        Container container = container(file());
-        DataFiles dataFiles = container.dataFiles();
-        for (int i = 0; i < dataFiles.size(); i++) {
-            ee.ria.libdigidocpp.DataFile containerDataFile = dataFiles.get(i);
-            if (dataFile.id().equals(containerDataFile.id())) {
-                return Base64.encodeToString(containerDataFile.calcDigest(method), Base64.DEFAULT);
-            }
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.calculateDataFileDigest(dataFile, method);
+        }
+    }
+
+    /**
+     * Calculate digests of all data files with a single open of the container.
+     *
+     * @see ContainerSession#calculateDigests(ImmutableSet, int)
+     */
+    public final DataFileDigests calculateDigests(ImmutableSet<String> methods) throws Exception {
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.calculateDigests(methods, Runtime.getRuntime().availableProcessors());
         }
-        throw new IllegalArgumentException("Could not find file " + dataFile.id() +
-                " in container " + file());
     }
 
     public final SignedContainer addAdEsSignature(byte[] adEsSignature) throws Exception {
-        Container container = container(file());
-        try {
-            container.addAdESSignature(adEsSignature);
-        } catch (Exception e) {
-            throw new SignaturesLockedException();
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.addAdEsSignature(adEsSignature);
         }
-        container.save();
-        return open(file());
     }
 
     public final SignedContainer sign(ByteString certificate,
                                       Function<ByteString, ByteString> signFunction) throws
             Exception {
+        return sign(certificate, signFunction, SigningTrace.start("signature"));
+    }
 
-        try {
-            Container container = container(file());
-
-            ee.ria.libdigidocpp.Signature signature = container
-                    .prepareWebSignature(certificate.toByteArray(), signatureProfile());
-            if (signature != null) {
-                ByteString signatureData = signFunction.apply(ByteString.of(signature.dataToSign()));
-                signature.setSignatureValue(signatureData.toByteArray());
-                signature.extendSignatureProfile(signatureProfile());
-                container.save();
-                return open(file());
-            }
-            throw new Exception("Empty signature value");
+    /**
+     * Sign the container and finish the trace when done.
+     *
+     * @see SigningTrace
+     */
+    public final SignedContainer sign(ByteString certificate,
+                                      Function<ByteString, ByteString> signFunction,
+                                      SigningTrace trace) throws Exception {
+        try (ContainerSession session = ContainerSession.open(this)) {
+            trace.mark(SigningTrace.Phase.OPEN);
+            SignedContainer signedContainer = session.sign(certificate, signFunction, trace);
+            trace.finish(null);
+            return signedContainer;
         } catch (Exception e) {
-            if (e.getMessage() != null && e.getMessage().contains("Too Many Requests")) {
-                Timber.log(Log.ERROR, e, "Failed to sign with ID-card - Too Many Requests");
-                throw new TooManyRequestsException();
-            }
-            if (e.getMessage() != null && e.getMessage().contains("OCSP response not in valid time slot")) {
-                Timber.log(Log.ERROR, e, "Failed to sign with ID-card - OCSP response not in valid time slot");
-                throw new OcspInvalidTimeSlotException();
-            }
-            if (e.getMessage() != null && e.getMessage().contains("Certificate status: revoked")) {
-                Timber.log(Log.ERROR, e, "Failed to sign with ID-card - Certificate status: revoked");
-                throw new CertificateRevokedException();
-            }
-            if (e.getMessage() != null && e.getMessage().contains("Failed to connect")) {
-                Timber.log(Log.ERROR, e, "Failed to connect to Internet");
-                throw new NoInternetConnectionException();
-            }
-
+            trace.finish(e.getClass().getSimpleName());
             throw e;
         }
     }
 
     public final SignedContainer removeSignature(Signature signature) throws Exception {
-        Container container = container(file());
-        Signatures signatures = container.signatures();
-        for (int i = 0; i < signatures.size(); i++) {
-            if (signature.id().equals(signatures.get(i).id())) {
-                container.removeSignature(i);
-                break;
-            }
+        try (ContainerSession session = ContainerSession.open(this)) {
+            return session.removeSignature(signature);
         }
-        container.save();
-        return open(file());
     }
 
     public boolean hasEmptyFiles() {
@@ -269,22 +266,45 @@ public abstract class SignedContainer {
         if (dataFiles == null || dataFiles.size() == 0) {
             throw new ContainerDataFilesEmptyException();
         }
-        Container container;
+        SignLib.awaitReady();
+        NativeHandle<Container> container;
         try {
-            container = Container.create(file.getAbsolutePath());
+            container = NativeObjects.create(file.getAbsolutePath());
         } catch (Exception e) {
             throw new IOException(e.getMessage());
         }
         if (container == null) {
             throw new IOException("Container.open returned null");
         }
-        for (File dataFile : dataFiles) {
-            container.addDataFile(dataFile.getAbsolutePath(), mimeType(dataFile));
+        try (NativeHandle<Container> handle = container) {
+            for (File dataFile : dataFiles) {
+                handle.get().addDataFile(dataFile.getAbsolutePath(), mimeType(dataFile));
+            }
+            handle.get().save();
         }
-        container.save();
         return open(file);
     }
 
+    /**
+     * Sign several containers with the same certificate and sign function.
+     * <p>
+     * The sign function is called one container at a time on the calling thread, so a token
+     * session and PIN can be reused for the whole batch. Signatures are extended and the
+     * containers saved in parallel. To cancel the batch, throw from the sign function.
+     *
+     * @param files Containers to sign.
+     * @param certificate Signing certificate.
+     * @param signFunction Function calculating the signature value from data to sign.
+     * @param listener Called on the calling thread with the result of each container.
+     * @throws Exception When the sign function fails, remaining containers are not signed.
+     */
+    public static void signAll(ImmutableList<File> files, ByteString certificate,
+                               Function<ByteString, ByteString> signFunction,
+                               ContainerSigning.Listener listener) throws Exception {
+        new ContainerBatchSigner(Runtime.getRuntime().availableProcessors())
+                .signAll(files, certificate, signFunction, listener);
+    }
+
     /**
      * Open a signed container from {@link File}.
      *
@@ -293,22 +313,53 @@ public abstract class SignedContainer {
      * @throws IOException When file could not be found/opened.
      */
     public static SignedContainer open(File file) throws Exception {
-        Container container = container(file);
-
+        AsicSignatureAppender.recover(file);
         ImmutableList.Builder<DataFile> dataFileBuilder = ImmutableList.builder();
-        DataFiles dataFiles = container.dataFiles();
-        for (int i = 0; i < dataFiles.size(); i++) {
-            dataFileBuilder.add(dataFile(dataFiles.get(i)));
-        }
-
         ImmutableList.Builder<Signature> signatureBuilder = ImmutableList.builder();
-        Signatures signatures = container.signatures();
-        for (int i = 0; i < signatures.size(); i++) {
-            signatureBuilder.add(signature(signatures.get(i)));
+        try (NativeHandle<Container> container = container(file);
+             NativeHandle<DataFiles> dataFiles = NativeObjects.dataFiles(container.get());
+             NativeHandle<Signatures> signatures = NativeObjects.signatures(container.get())) {
+            for (ee.ria.libdigidocpp.DataFile dataFile : dataFiles.get()) {
+                dataFileBuilder.add(dataFile(dataFile));
+            }
+            for (ee.ria.libdigidocpp.Signature signature : signatures.get()) {
+                signatureBuilder.add(signature(signature));
+            }
         }
 
-        return new AutoValue_SignedContainer(file, dataFileBuilder.build(),
-                sortedCopyOf(SIGNATURE_COMPARATOR, signatureBuilder.build()));
+        return create(file, dataFileBuilder.build(), signatureBuilder.build());
+    }
+
+    static SignedContainer create(File file, ImmutableList<DataFile> dataFiles,
+                                  ImmutableList<Signature> signatures) {
+        return new AutoValue_SignedContainer(file, dataFiles,
+                sortedCopyOf(SIGNATURE_COMPARATOR, signatures));
+    }
+
+    /**
+     * Map libdigidocpp signing errors to the exceptions shown to the user.
+     *
+     * @param e Exception thrown while signing.
+     * @return Exception to rethrow.
+     */
+    static Exception signingException(Exception e) {
+        if (e.getMessage() != null && e.getMessage().contains("Too Many Requests")) {
+            Timber.log(Log.ERROR, e, "Failed to sign with ID-card - Too Many Requests");
+            return new TooManyRequestsException();
+        }
+        if (e.getMessage() != null && e.getMessage().contains("OCSP response not in valid time slot")) {
+            Timber.log(Log.ERROR, e, "Failed to sign with ID-card - OCSP response not in valid time slot");
+            return new OcspInvalidTimeSlotException();
+        }
+        if (e.getMessage() != null && e.getMessage().contains("Certificate status: revoked")) {
+            Timber.log(Log.ERROR, e, "Failed to sign with ID-card - Certificate status: revoked");
+            return new CertificateRevokedException();
+        }
+        if (e.getMessage() != null && e.getMessage().contains("Failed to connect")) {
+            Timber.log(Log.ERROR, e, "Failed to connect to Internet");
+            return new NoInternetConnectionException();
+        }
+        return e;
     }
 
     /**
@@ -324,22 +375,48 @@ public abstract class SignedContainer {
             return true;
         }
         if (PDF_EXTENSION.equals(extension)) {
-            try {
-                if (container(file).signatures().size() > 0) {
+            if (!isSignedPDF(file)) {
+                return false;
+            }
+            try (NativeHandle<Container> container = container(file);
+                 NativeHandle<Signatures> signatures = NativeObjects.signatures(container.get())) {
+                if (signatures.get().size() > 0) {
                     return true;
                 }
+            } catch (NoInternetConnectionException e) {
+                throw e;
             } catch (Exception e) {
-                if (e instanceof NoInternetConnectionException) {
-                    if (isSignedPDF(context, file)) {
-                        throw e;
-                    }
-                }
                 return false;
             }
         }
         return false;
     }
 
+    /**
+     * List data files without opening the container in libdigidocpp when possible.
+     * <p>
+     * ASiC-E and ASiC-S containers are read with {@link AsicContainerReader}, other formats
+     * are opened as usual. Data file IDs of the listed files must not be used for container
+     * operations.
+     *
+     * @param file Container file.
+     * @return Data files with names, sizes and media types.
+     */
+    public static ImmutableList<DataFile> listDataFiles(File file) throws Exception {
+        ContainerFormat format = ContainerFormatDetector.detect(file);
+        if (format == ContainerFormat.ASICE || format == ContainerFormat.ASICS) {
+            try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+                return reader.dataFiles();
+            } catch (IOException e) {
+                Timber.log(Log.DEBUG, e, "Unable to list data files of %s, opening container",
+                        file.getName());
+            }
+        }
+        try (ContainerSession session = ContainerSession.open(file, false)) {
+            return session.container().dataFiles();
+        }
+    }
+
     /**
      * Check whether this is a legacy container which needs to be wrapped in a valid container
      * type before adding signature.
@@ -352,19 +429,14 @@ public abstract class SignedContainer {
         return !NON_LEGACY_EXTENSIONS.contains(extension);
     }
 
-    public static String getMediaType(File file) throws Exception {
-         return container(file).mediaType();
-    }
-
-    private static DataFile dataFile(ee.ria.libdigidocpp.DataFile dataFile) {
+    static DataFile dataFile(ee.ria.libdigidocpp.DataFile dataFile) {
         return DataFile.create(dataFile.id(), new File(dataFile.fileName()).getName(),
                 dataFile.fileSize(), dataFile.mediaType());
     }
 
     private static X509Certificate x509Certificate(byte[] bytes) {
         try {
-            return (X509Certificate) CertificateFactory.getInstance("X.509")
-                    .generateCertificate(new ByteArrayInputStream(bytes));
+            return CertificateCache.x509Certificate(bytes);
         } catch (CertificateException e) {
             Timber.log(Log.ERROR, "Can't parse certificate", e);
             return null;
@@ -387,19 +459,23 @@ public abstract class SignedContainer {
                 Splitter.fixedLength(2).split(Hex.toHexString(bytes))).trim();
     }
 
-    private static Signature signature(ee.ria.libdigidocpp.Signature signature) {
+    static Signature signature(ee.ria.libdigidocpp.Signature signature) {
+        return unvalidatedSignature(signature).withStatus(signatureStatus(signature));
+    }
+
+    /**
+     * Read signature data without running the validator.
+     */
+    static Signature unvalidatedSignature(ee.ria.libdigidocpp.Signature signature) {
         String id = signature.id();
         String name = signatureName(signature);
         Instant createdAt = Instant.parse(signature.trustedSigningTime());
-        SignatureStatus status = signatureStatus(signature);
         String profile = signature.profile();
 
         String signersCertificateIssuer = "";
-        X509Certificate signingCertificate = null;
-
-        if (x509Certificate(signature.signingCertificateDer()) != null) {
-            signersCertificateIssuer = getX509CertificateIssuer(x509Certificate(signature.signingCertificateDer()));
-            signingCertificate = x509Certificate(signature.signingCertificateDer());
+        X509Certificate signingCertificate = x509Certificate(signature.signingCertificateDer());
+        if (signingCertificate != null) {
+            signersCertificateIssuer = getX509CertificateIssuer(signingCertificate);
         }
         String signatureMethod = signature.signatureMethod();
         String signatureFormat = signature.profile();
@@ -436,7 +512,7 @@ public abstract class SignedContainer {
 
         String signersMobileTimeUTC = getFormattedDateTime(signature.claimedSigningTime(), true);
 
-        return Signature.create(id, name, createdAt, status, profile, signersCertificateIssuer,
+        return Signature.unvalidated(id, name, createdAt, profile, signersCertificateIssuer,
                 signingCertificate, signatureMethod, signatureFormat, signatureTimestamp,
                 signatureTimestampUTC, hashValueOfSignature, tsCertificateIssuer, tsCertificate,
                 ocspCertificateIssuer, ocspCertificate, ocspTime, ocspTimeUTC, signersMobileTimeUTC);
@@ -459,7 +535,7 @@ public abstract class SignedContainer {
     private static String signatureName(ee.ria.libdigidocpp.Signature signature) {
         String commonName;
         try {
-            commonName = Certificate.create(ByteString.of(signature.signingCertificateDer()))
+            commonName = CertificateCache.certificate(ByteString.of(signature.signingCertificateDer()))
                     .friendlyName();
         } catch (IOException e) {
             Timber.log(Log.ERROR, e, "Can't parse certificate to get CN");
@@ -468,11 +544,12 @@ public abstract class SignedContainer {
         return commonName == null ? signature.signedBy() : commonName;
     }
 
-    private static SignatureStatus signatureStatus(
+    static SignatureStatus signatureStatus(
             ee.ria.libdigidocpp.Signature signature) {
-        Validator validator = new Validator(signature);
-        int status = validator.status().swigValue();
-        validator.delete();
+        int status;
+        try (NativeHandle<Validator> validator = NativeObjects.validator(signature)) {
+            status = validator.get().status().swigValue();
+        }
 
         if (status == Validator.Status.Valid.swigValue()) {
             return SignatureStatus.VALID;
@@ -487,11 +564,15 @@ public abstract class SignedContainer {
         }
     }
 
+    /**
+     * Open the container in libdigidocpp, the caller must close the returned handle.
+     */
     @NonNull
-    private static Container container(File file) throws Exception {
-        Container container;
+    static NativeHandle<Container> container(File file) throws Exception {
+        SignLib.awaitReady();
+        NativeHandle<Container> container;
         try {
-            container = Container.open(file.getAbsolutePath());
+            container = NativeObjects.open(file.getAbsolutePath());
         } catch (Exception e) {
             if (e.getMessage().startsWith("Failed to connect to host")) {
                 throw new NoInternetConnectionException();
@@ -510,24 +591,13 @@ public abstract class SignedContainer {
      * @param file File to check.
      * @return True if it is a container, false otherwise.
      */
-    private static boolean isSignedPDF(Context context, File file) {
-        PDFBoxResourceLoader.init(context);
-        try (PDDocument document = PDDocument.load(file)) {
-            List<PDSignature> signatures = document.getSignatureDictionaries();
-            for (PDSignature signature : signatures) {
-                String filter = signature.getFilter();
-                String subFilter = signature.getSubFilter();
-
-                if (filter.equals("Adobe.PPKLite") ||
-                        (subFilter.equals("ETSI.CAdES.detached") ||
-                                subFilter.equals("adbe.pkcs7.detached"))) {
-                    return true;
-                }
-            }
+    private static boolean isSignedPDF(File file) {
+        try {
+            return PdfSignatureDetector.isSigned(file);
         } catch (IOException e) {
             Timber.log(Log.ERROR, e, "Unable to check if PDF is signed");
+            return false;
         }
-        return false;
     }
 
     /**
@@ -563,20 +633,14 @@ public abstract class SignedContainer {
     public static boolean isSignedPDFFile(ByteSource byteSource, Context context, String fileName) throws IllegalStateException {
         Timber.log(Log.DEBUG, "Checking if PDF is signed");
 
-        try (InputStream in = byteSource.openStream()) {
-            final int length = (int) byteSource.size();
-            byte[] bytes = new byte[length];
-
-            int offset = 0;
-
-            Timber.log(Log.DEBUG, "Reading PDF bytes");
-
-            while (offset < length) {
-                int read = in.read(bytes, offset, length - offset);
-                if (read == -1) {
-                    throw new EOFException("Unexpected end of input");
-                }
-                offset += read;
+        try {
+            boolean isSignedPDF;
+            try (InputStream in = byteSource.openStream()) {
+                isSignedPDF = PdfSignatureDetector.isSigned(in);
+            }
+            if (!isSignedPDF) {
+                Timber.log(Log.DEBUG, "Is PDF signed: false");
+                return false;
             }
 
             File pdfFilesDirectory = new File(context.getFilesDir(), "tempPdfFiles");
@@ -587,9 +651,7 @@ public abstract class SignedContainer {
                     FilenameUtils.getName(FileUtil.sanitizeString(fileName, ""))));
 
             if (!org.apache.commons.io.FileUtils.directoryContains(pdfFilesDirectory, file)) {
-                try (OutputStream outStream = new FileOutputStream(file.getCanonicalPath())) {
-                    outStream.write(bytes);
-                }
+                byteSource.copyTo(Files.asByteSink(file));
             }
 
             boolean isSignedContainer = SignedContainer.isContainer(context, file);
@@ -607,49 +669,6 @@ public abstract class SignedContainer {
         }
     }
 
-    public static boolean isCdoc(File file) {
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(file);
-            NodeList nodes = doc.getElementsByTagName("denc:EncryptionProperty");
-            for (int i = 0; i < nodes.getLength(); i++) {
-                NamedNodeMap attributes = nodes.item(i).getAttributes();
-                for (int j = 0; j < attributes.getLength(); j++) {
-                    if (attributes.item(j).getNodeValue().equals("DocumentFormat")) {
-                        return true;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Timber.log(Log.ERROR, e, "XML parsing failed");
-            return false;
-        }
-
-        return false;
-    }
-
-    public static boolean isDdoc(File file) {
-        DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-        try {
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(file);
-            NodeList nodes = doc.getElementsByTagName("SignedDoc");
-            for (int i = 0; i < nodes.getLength(); i++) {
-                NamedNodeMap attributes = nodes.item(i).getAttributes();
-                for (int j = 0; j < attributes.getLength(); j++) {
-                    if (attributes.item(j).getNodeValue().equals("DIGIDOC-XML")) {
-                        return true;
-                    }
-                }
-            }
-        } catch (Exception e) {
-            Timber.log(Log.ERROR, e, "XML parsing failed");
-            return false;
-        }
-
-        return false;
-    }
     public static boolean isAsicsFile(String fileName) {
         return ASICS_EXTENSIONS.contains(Files.getFileExtension(fileName).toLowerCase());
     }
@@ -0,0 +1,232 @@
+package ee.ria.DigiDoc.sign;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.kxml2.io.KXmlParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class AsicContainerReaderTest {
+
+    private static final String MANIFEST_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<manifest:manifest "
+            + "xmlns:manifest=\"urn:oasis:names:tc:opendocument:xmlns:manifest:1.0\">"
+            + "<manifest:file-entry manifest:full-path=\"/\" "
+            + "manifest:media-type=\"application/vnd.etsi.asic-e+zip\"/>";
+    private static final String MANIFEST_END = "</manifest:manifest>";
+
+    @Rule public final ExpectedException exception = ExpectedException.none();
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mimeType_stored() throws Exception {
+        File file = file(zip(ZipEntry.STORED, "mimetype", ContainerFormat.ASICE.mediaType()));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.mimeType())
+                    .isEqualTo(ContainerFormat.ASICE.mediaType());
+        }
+    }
+
+    @Test
+    public void mimeType_deflated() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED, "mimetype", ContainerFormat.ASICE.mediaType()));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.mimeType())
+                    .isEqualTo(ContainerFormat.ASICE.mediaType());
+        }
+    }
+
+    @Test
+    public void mimeType_missing() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED, "test.txt", "content"));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.mimeType())
+                    .isEmpty();
+        }
+    }
+
+    @Test
+    public void dataFiles_asicsWithoutManifest() throws Exception {
+        File file = file(zip(ZipEntry.STORED,
+                "mimetype", ContainerFormat.ASICS.mediaType(),
+                "META-INF/", "",
+                "META-INF/timestamp.tst", "timestamp",
+                "document.txt", "content"));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.dataFiles())
+                    .containsExactly(DataFile.create("D0", "document.txt", 7, ""));
+        }
+    }
+
+    @Test
+    public void dataFiles_asiceInManifestOrder() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED,
+                "mimetype", ContainerFormat.ASICE.mediaType(),
+                "first.txt", "first",
+                "second.pdf", "second document",
+                "META-INF/manifest.xml", manifest(
+                        "second.pdf", "application/pdf",
+                        "first.txt", "text/plain"),
+                "META-INF/signatures0.xml", "<signature/>"));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.dataFiles(KXmlParser::new))
+                    .containsExactly(
+                            DataFile.create("D0", "second.pdf", 15, "application/pdf"),
+                            DataFile.create("D1", "first.txt", 5, "text/plain"))
+                    .inOrder();
+        }
+    }
+
+    @Test
+    public void dataFiles_asiceNestedPath() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED,
+                "mimetype", ContainerFormat.ASICE.mediaType(),
+                "documents/", "",
+                "documents/nested.txt", "nested",
+                "META-INF/manifest.xml", manifest("documents/nested.txt", "text/plain")));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.dataFiles(KXmlParser::new))
+                    .containsExactly(DataFile.create("D0", "nested.txt", 6, "text/plain"));
+            assertThat(new String(reader.read("documents/nested.txt", 100),
+                    StandardCharsets.US_ASCII))
+                    .isEqualTo("nested");
+        }
+    }
+
+    @Test
+    public void dataFiles_asiceManifestEntryMissingFromZip() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED,
+                "mimetype", ContainerFormat.ASICE.mediaType(),
+                "present.txt", "present",
+                "META-INF/manifest.xml", manifest(
+                        "missing.txt", "text/plain",
+                        "present.txt", "text/plain")));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.dataFiles(KXmlParser::new))
+                    .containsExactly(DataFile.create("D0", "present.txt", 7, "text/plain"));
+        }
+    }
+
+    @Test
+    public void dataFiles_invalidManifest() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED,
+                "mimetype", ContainerFormat.ASICE.mediaType(),
+                "document.txt", "content",
+                "META-INF/manifest.xml", MANIFEST_START + "<manifest:file-entry"));
+
+        exception.expect(IOException.class);
+        exception.expectMessage("Invalid manifest");
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            reader.dataFiles(KXmlParser::new);
+        }
+    }
+
+    @Test
+    public void read_deflatedEntry() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED, "document.txt", "content of the document"));
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(new String(reader.read("document.txt", 7), StandardCharsets.US_ASCII))
+                    .isEqualTo("content");
+        }
+    }
+
+    @Test
+    public void read_entryDoesNotExist() throws Exception {
+        File file = file(zip(ZipEntry.DEFLATED, "document.txt", "content"));
+
+        exception.expect(FileNotFoundException.class);
+
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            reader.read("other.txt", 7);
+        }
+    }
+
+    @Test
+    public void open_zip64() throws Exception {
+        byte[] zip = zip(ZipEntry.STORED, "mimetype", ContainerFormat.ASICE.mediaType());
+        int eocd = zip.length - 22;
+        for (int i = eocd + 16; i < eocd + 20; i++) {
+            zip[i] = (byte) 0xFF;
+        }
+        File file = file(zip);
+
+        exception.expect(ZipException.class);
+        exception.expectMessage("ZIP64");
+
+        AsicContainerReader.open(file).close();
+    }
+
+    @Test
+    public void open_notZip() throws Exception {
+        File file = file("not a zip file at all".getBytes(StandardCharsets.US_ASCII));
+
+        exception.expect(ZipException.class);
+
+        AsicContainerReader.open(file).close();
+    }
+
+    /**
+     * @param entries Full paths and media types of data files, in pairs.
+     */
+    private static String manifest(String... entries) {
+        StringBuilder manifest = new StringBuilder(MANIFEST_START);
+        for (int i = 0; i < entries.length; i += 2) {
+            manifest.append("<manifest:file-entry manifest:full-path=\"").append(entries[i])
+                    .append("\" manifest:media-type=\"").append(entries[i + 1])
+                    .append("\"/>");
+        }
+        return manifest.append(MANIFEST_END).toString();
+    }
+
+    /**
+     * @param entries Names and contents of entries, in pairs.
+     */
+    private static byte[] zip(int method, String... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                byte[] content = entries[i + 1].getBytes(StandardCharsets.UTF_8);
+                ZipEntry entry = new ZipEntry(entries[i]);
+                entry.setMethod(method);
+                if (method == ZipEntry.STORED) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                output.putNextEntry(entry);
+                output.write(content);
+                output.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private File file(byte[] content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content);
+        return file;
+    }
+}
@@ -0,0 +1,253 @@
+package ee.ria.DigiDoc.sign;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class AsicSignatureAppenderTest {
+
+    private static final String SIGNATURE = "<asic:XAdESSignatures "
+            + "xmlns:asic=\"http://uri.etsi.org/02918/v1.2.1#\"/>";
+
+    @Rule public final ExpectedException exception = ExpectedException.none();
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void append_readBack() throws Exception {
+        File file = container(null, "META-INF/signatures0.xml", "first signature");
+
+        AsicSignatureAppender.append(file, bytes(SIGNATURE)).commit();
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertThat(names(zipFile))
+                    .containsExactly("mimetype", "document.txt", "META-INF/manifest.xml",
+                            "META-INF/signatures0.xml", "META-INF/signatures1.xml")
+                    .inOrder();
+            assertThat(content(zipFile, "document.txt"))
+                    .isEqualTo("content of the document");
+            assertThat(content(zipFile, "META-INF/signatures1.xml"))
+                    .isEqualTo(SIGNATURE);
+        }
+        try (AsicContainerReader reader = AsicContainerReader.open(file)) {
+            assertThat(reader.mimeType())
+                    .isEqualTo(ContainerFormat.ASICE.mediaType());
+            assertThat(new String(reader.read("META-INF/signatures1.xml", 1024),
+                    StandardCharsets.UTF_8))
+                    .isEqualTo(SIGNATURE);
+        }
+        assertThat(journal(file).exists())
+                .isFalse();
+    }
+
+    @Test
+    public void append_firstSignature() throws Exception {
+        File file = container(null);
+
+        AsicSignatureAppender.append(file, bytes(SIGNATURE)).commit();
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertThat(content(zipFile, "META-INF/signatures0.xml"))
+                    .isEqualTo(SIGNATURE);
+        }
+    }
+
+    @Test
+    public void append_firstUnusedSignatureName() throws Exception {
+        File file = container(null,
+                "META-INF/signatures0.xml", "first signature",
+                "META-INF/signatures2.xml", "third signature");
+
+        AsicSignatureAppender.append(file, bytes(SIGNATURE)).commit();
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertThat(content(zipFile, "META-INF/signatures1.xml"))
+                    .isEqualTo(SIGNATURE);
+        }
+    }
+
+    @Test
+    public void append_keepsArchiveComment() throws Exception {
+        File file = container("archive comment");
+
+        AsicSignatureAppender.append(file, bytes(SIGNATURE)).commit();
+
+        try (ZipFile zipFile = new ZipFile(file)) {
+            assertThat(zipFile.getComment())
+                    .isEqualTo("archive comment");
+            assertThat(content(zipFile, "META-INF/signatures0.xml"))
+                    .isEqualTo(SIGNATURE);
+        }
+    }
+
+    @Test
+    public void append_keepsJournalUntilCommit() throws Exception {
+        File file = container(null);
+
+        AsicSignatureAppender appender = AsicSignatureAppender.append(file, bytes(SIGNATURE));
+
+        assertThat(journal(file).isFile())
+                .isTrue();
+
+        appender.commit();
+
+        assertThat(journal(file).exists())
+                .isFalse();
+    }
+
+    @Test
+    public void append_notZip() throws Exception {
+        File file = temporaryFolder.newFile("container.asice");
+        Files.write(file.toPath(), bytes("not a zip file at all"));
+
+        exception.expect(ZipException.class);
+
+        try {
+            AsicSignatureAppender.append(file, bytes(SIGNATURE));
+        } finally {
+            assertThat(journal(file).exists())
+                    .isFalse();
+        }
+    }
+
+    @Test
+    public void rollback() throws Exception {
+        File file = container("archive comment", "META-INF/signatures0.xml", "first signature");
+        byte[] original = Files.readAllBytes(file.toPath());
+
+        AsicSignatureAppender.append(file, bytes(SIGNATURE)).rollback();
+
+        assertThat(Files.readAllBytes(file.toPath()))
+                .isEqualTo(original);
+        assertThat(journal(file).exists())
+                .isFalse();
+    }
+
+    @Test
+    public void recover_completeJournal() throws Exception {
+        File file = container(null, "META-INF/signatures0.xml", "first signature");
+        byte[] original = Files.readAllBytes(file.toPath());
+        AsicSignatureAppender.append(file, bytes(SIGNATURE));
+
+        AsicSignatureAppender.recover(file);
+
+        assertThat(Files.readAllBytes(file.toPath()))
+                .isEqualTo(original);
+        assertThat(journal(file).exists())
+                .isFalse();
+    }
+
+    @Test
+    public void recover_truncatedJournal() throws Exception {
+        File file = container(null);
+        byte[] original = Files.readAllBytes(file.toPath());
+        AsicSignatureAppender.append(file, bytes(SIGNATURE));
+        byte[] journal = Files.readAllBytes(journal(file).toPath());
+        AsicSignatureAppender.recover(file);
+        Files.write(journal(file).toPath(), Arrays.copyOf(journal, journal.length / 2));
+
+        AsicSignatureAppender.recover(file);
+
+        assertThat(Files.readAllBytes(file.toPath()))
+                .isEqualTo(original);
+        assertThat(journal(file).exists())
+                .isFalse();
+    }
+
+    @Test
+    public void recover_noJournal() throws Exception {
+        File file = container(null);
+        byte[] original = Files.readAllBytes(file.toPath());
+
+        AsicSignatureAppender.recover(file);
+
+        assertThat(Files.readAllBytes(file.toPath()))
+                .isEqualTo(original);
+    }
+
+    /**
+     * ASiC-E container with a document, a manifest and the given extra entries.
+     *
+     * @param extraEntries Names and contents of entries, in pairs.
+     */
+    private File container(String comment, String... extraEntries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream output = new ZipOutputStream(bytes)) {
+            byte[] mimeType = bytes(ContainerFormat.ASICE.mediaType());
+            CRC32 crc = new CRC32();
+            crc.update(mimeType);
+            ZipEntry mimeTypeEntry = new ZipEntry("mimetype");
+            mimeTypeEntry.setMethod(ZipEntry.STORED);
+            mimeTypeEntry.setSize(mimeType.length);
+            mimeTypeEntry.setCrc(crc.getValue());
+            output.putNextEntry(mimeTypeEntry);
+            output.write(mimeType);
+            output.closeEntry();
+
+            List<String> entries = new ArrayList<>(Arrays.asList(
+                    "document.txt", "content of the document",
+                    "META-INF/manifest.xml", "<manifest:manifest/>"));
+            Collections.addAll(entries, extraEntries);
+            for (int i = 0; i < entries.size(); i += 2) {
+                output.putNextEntry(new ZipEntry(entries.get(i)));
+                output.write(bytes(entries.get(i + 1)));
+                output.closeEntry();
+            }
+            if (comment != null) {
+                output.setComment(comment);
+            }
+        }
+        File file = temporaryFolder.newFile("container.asice");
+        Files.write(file.toPath(), bytes.toByteArray());
+        return file;
+    }
+
+    private static File journal(File file) {
+        return new File(file.getParentFile(), "." + file.getName() + ".append");
+    }
+
+    private static List<String> names(ZipFile zipFile) {
+        List<String> names = new ArrayList<>();
+        for (ZipEntry entry : Collections.list(zipFile.entries())) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    private static String content(ZipFile zipFile, String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        assertThat(entry)
+                .isNotNull();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream input = zipFile.getInputStream(entry)) {
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                output.write(buffer, 0, count);
+            }
+        }
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,277 @@
+package ee.ria.DigiDoc.sign;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ee.ria.DigiDoc.common.SigningTrace;
+import okio.ByteString;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ContainerBatchSignerTest {
+
+    private static final ByteString CERTIFICATE = ByteString.encodeUtf8("certificate");
+
+    @Rule public final ExpectedException exception = ExpectedException.none();
+
+    private final Map<File, FakeSession> sessions = new HashMap<>();
+    private final List<ContainerSigning> signings = new ArrayList<>();
+
+    @Test
+    public void signAll_signsEveryContainer() throws Exception {
+        ImmutableList<File> files = files("a", "b", "c");
+
+        new ContainerBatchSigner(2, this::open).signAll(files, CERTIFICATE, this::sign,
+                signings::add);
+
+        assertThat(signings)
+                .hasSize(3);
+        for (int i = 0; i < signings.size(); i++) {
+            assertThat(signings.get(i).container())
+                    .isNotNull();
+            assertThat(signings.get(i).completed())
+                    .isEqualTo(i + 1);
+            assertThat(signings.get(i).total())
+                    .isEqualTo(3);
+        }
+        for (File file : files) {
+            assertThat(sessions.get(file).signatureValue)
+                    .isEqualTo(ByteString.encodeUtf8("signed " + file.getName()));
+            assertThat(sessions.get(file).closed)
+                    .isTrue();
+        }
+    }
+
+    @Test
+    public void signAll_failureInOneContainer() throws Exception {
+        ImmutableList<File> files = files("a", "b", "c", "d");
+        IOException openFailure = new IOException("open failed");
+        IOException finishFailure = new IOException("finish failed");
+
+        new ContainerBatchSigner(1, file -> {
+            if (file.getName().equals("b")) {
+                throw openFailure;
+            }
+            FakeSession session = open(file);
+            if (file.getName().equals("c")) {
+                session.finishFailure = finishFailure;
+            }
+            return session;
+        }).signAll(files, CERTIFICATE, this::sign, signings::add);
+
+        assertThat(signings)
+                .hasSize(4);
+        assertThat(signing("a").container())
+                .isNotNull();
+        assertThat(signing("b").error())
+                .isSameInstanceAs(openFailure);
+        assertThat(signing("c").container())
+                .isNull();
+        assertThat(signing("c").error())
+                .isSameInstanceAs(finishFailure);
+        assertThat(signing("d").container())
+                .isNotNull();
+        assertThat(sessions.get(files.get(2)).closed)
+                .isTrue();
+    }
+
+    /**
+     * The first container is still being finished and the second is queued behind it when
+     * the sign function fails on the third.
+     */
+    @Test
+    public void signAll_signFunctionFails() throws Exception {
+        ImmutableList<File> files = files("a", "b", "c", "d");
+        IOException signFailure = new IOException("wrong PIN");
+        Thread caller = Thread.currentThread();
+        CountDownLatch finishing = new CountDownLatch(1);
+        CountDownLatch failing = new CountDownLatch(1);
+
+        exception.expect(IOException.class);
+        exception.expectMessage("wrong PIN");
+
+        try {
+            new ContainerBatchSigner(1, file -> {
+                FakeSession session = open(file);
+                if (file.getName().equals("a")) {
+                    session.beforeFinish = () -> {
+                        finishing.countDown();
+                        failing.await();
+                        awaitBlocked(caller);
+                    };
+                }
+                return session;
+            }).signAll(files, CERTIFICATE, dataToSign -> {
+                if (dataToSign.utf8().equals("c")) {
+                    finishing.await();
+                    failing.countDown();
+                    throw signFailure;
+                }
+                return sign(dataToSign);
+            }, signings::add);
+        } finally {
+            assertThat(signings)
+                    .hasSize(1);
+            assertThat(signing("a").container())
+                    .isNotNull();
+            assertThat(sessions.get(files.get(1)).signatureValue)
+                    .isNull();
+            for (File file : files.subList(0, 3)) {
+                assertThat(sessions.get(file).closed)
+                        .isTrue();
+            }
+            assertThat(sessions)
+                    .doesNotContainKey(files.get(3));
+        }
+    }
+
+    /**
+     * The caller is disposed while the first container is being finished. The sign function
+     * checks for it before using the card and stops the batch.
+     */
+    @Test
+    public void signAll_cancelled() throws Exception {
+        ImmutableList<File> files = files("a", "b", "c");
+        AtomicBoolean disposed = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        exception.expect(CancellationException.class);
+
+        try {
+            new ContainerBatchSigner(1, file -> {
+                FakeSession session = open(file);
+                if (file.getName().equals("a")) {
+                    session.beforeFinish = () -> {
+                        disposed.set(true);
+                        finished.countDown();
+                    };
+                }
+                return session;
+            }).signAll(files, CERTIFICATE, dataToSign -> {
+                if (dataToSign.utf8().equals("b")) {
+                    finished.await();
+                }
+                if (disposed.get()) {
+                    throw new CancellationException("Signing cancelled");
+                }
+                return sign(dataToSign);
+            }, signings::add);
+        } finally {
+            assertThat(signings)
+                    .hasSize(1);
+            assertThat(signing("a").container())
+                    .isNotNull();
+            assertThat(sessions.get(files.get(1)).closed)
+                    .isTrue();
+            assertThat(sessions)
+                    .doesNotContainKey(files.get(2));
+        }
+    }
+
+    @Test
+    public void signAll_noFiles() throws Exception {
+        new ContainerBatchSigner(2, this::open).signAll(ImmutableList.of(), CERTIFICATE,
+                this::sign, signings::add);
+
+        assertThat(signings)
+                .isEmpty();
+    }
+
+    private FakeSession open(File file) {
+        FakeSession session = new FakeSession(file);
+        sessions.put(file, session);
+        return session;
+    }
+
+    private ByteString sign(ByteString dataToSign) {
+        return ByteString.encodeUtf8("signed " + dataToSign.utf8());
+    }
+
+    private ContainerSigning signing(String name) {
+        for (ContainerSigning signing : signings) {
+            if (signing.file().getName().equals(name)) {
+                return signing;
+            }
+        }
+        throw new AssertionError("No result for " + name);
+    }
+
+    private static ImmutableList<File> files(String... names) {
+        ImmutableList.Builder<File> files = ImmutableList.builder();
+        for (String name : names) {
+            files.add(new File(name));
+        }
+        return files.build();
+    }
+
+    /**
+     * Wait until the thread is blocked, which the caller of signAll is only while waiting
+     * for the pool after the sign function failed.
+     */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING
+                && thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    private interface Step {
+
+        void run() throws Exception;
+    }
+
+    private static final class FakeSession implements ContainerBatchSigner.Session {
+
+        private final File file;
+
+        Step beforeFinish;
+        Exception finishFailure;
+        volatile ByteString signatureValue;
+        volatile boolean closed;
+
+        FakeSession(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public File file() {
+            return file;
+        }
+
+        @Override
+        public ByteString prepare(ByteString certificate, SigningTrace trace) {
+            return ByteString.encodeUtf8(file.getName());
+        }
+
+        @Override
+        public SignedContainer finish(ByteString signatureValue, SigningTrace trace)
+                throws Exception {
+            if (beforeFinish != null) {
+                beforeFinish.run();
+            }
+            if (finishFailure != null) {
+                throw finishFailure;
+            }
+            this.signatureValue = signatureValue;
+            return SignedContainer.create(file, ImmutableList.of(), ImmutableList.of());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
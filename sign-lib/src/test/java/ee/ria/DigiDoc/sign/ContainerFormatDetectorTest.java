@@ -0,0 +1,196 @@
+package ee.ria.DigiDoc.sign;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kxml2.io.KXmlParser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class ContainerFormatDetectorTest {
+
+    private static final String CDOC_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<denc:EncryptedData xmlns:denc=\"http://www.w3.org/2001/04/xmlenc#\" "
+            + "MimeType=\"http://www.sk.ee/DigiDoc/v1.3.0/digidoc.xsd\">"
+            + "<denc:EncryptionMethod "
+            + "Algorithm=\"http://www.w3.org/2001/04/xmlenc#aes128-cbc\"/>"
+            + "<denc:CipherData><denc:CipherValue>c2VjcmV0</denc:CipherValue></denc:CipherData>";
+
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void detect_asiceWithStoredMimetype() throws Exception {
+        File file = zip(ContainerFormat.ASICE.mediaType(), ZipEntry.STORED);
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.ASICE);
+    }
+
+    @Test
+    public void detect_asicsWithStoredMimetype() throws Exception {
+        File file = zip(ContainerFormat.ASICS.mediaType(), ZipEntry.STORED);
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.ASICS);
+    }
+
+    @Test
+    public void detect_deflatedMimetype() throws Exception {
+        File file = zip(ContainerFormat.ASICE.mediaType(), ZipEntry.DEFLATED);
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_unknownMimetype() throws Exception {
+        File file = zip("application/zip", ZipEntry.STORED);
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_pdf() throws Exception {
+        File file = file("%PDF-1.7\n%%EOF\n");
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.PDF);
+    }
+
+    @Test
+    public void detect_pdfHeaderAfterGarbage() throws Exception {
+        File file = file("garbage\n%PDF-1.4\n%%EOF\n");
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.PDF);
+    }
+
+    @Test
+    public void detect_ddoc() throws Exception {
+        File file = file("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<SignedDoc format=\"DIGIDOC-XML\" version=\"1.3\" "
+                + "xmlns=\"http://www.sk.ee/DigiDoc/v1.3.0#\"></SignedDoc>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.DDOC);
+    }
+
+    @Test
+    public void detect_ddocWithBom() throws Exception {
+        File file = file("\uFEFF<SignedDoc format=\"DIGIDOC-XML\" version=\"1.3\"/>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.DDOC);
+    }
+
+    @Test
+    public void detect_signedDocOfOtherFormat() throws Exception {
+        File file = file("<SignedDoc format=\"SK-XML\" version=\"1.0\"/>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_cdoc() throws Exception {
+        File file = file(CDOC_START
+                + "<denc:EncryptionProperties>"
+                + "<denc:EncryptionProperty Name=\"orig_file\">test.txt</denc:EncryptionProperty>"
+                + "<denc:EncryptionProperty Name=\"DocumentFormat\">ENCDOC-XML|1.1"
+                + "</denc:EncryptionProperty>"
+                + "</denc:EncryptionProperties></denc:EncryptedData>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.CDOC);
+    }
+
+    @Test
+    public void detect_encryptedDataWithoutDocumentFormat() throws Exception {
+        File file = file(CDOC_START + "</denc:EncryptedData>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_encryptedDataInOtherNamespace() throws Exception {
+        File file = file("<EncryptedData xmlns=\"urn:example\"><EncryptionProperties>"
+                + "<EncryptionProperty Name=\"DocumentFormat\"/>"
+                + "</EncryptionProperties></EncryptedData>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_otherXml() throws Exception {
+        File file = file("<?xml version=\"1.0\"?><html><body>DIGIDOC-XML</body></html>");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_malformedXml() throws Exception {
+        File file = file("<SignedDoc format=\"DIGIDOC-XML\"");
+
+        assertThat(detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_emptyFile() throws Exception {
+        File file = file("");
+
+        assertThat(ContainerFormatDetector.detect(file))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    @Test
+    public void detect_fileDoesNotExist() {
+        assertThat(ContainerFormatDetector.detect(new File("does-not-exist.asice")))
+                .isEqualTo(ContainerFormat.UNKNOWN);
+    }
+
+    private static ContainerFormat detect(File file) {
+        return ContainerFormatDetector.detect(file, KXmlParser::new);
+    }
+
+    private File zip(String mimeType, int method) throws IOException {
+        File file = temporaryFolder.newFile();
+        byte[] content = mimeType.getBytes(StandardCharsets.US_ASCII);
+        try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file))) {
+            ZipEntry entry = new ZipEntry("mimetype");
+            entry.setMethod(method);
+            if (method == ZipEntry.STORED) {
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            output.putNextEntry(entry);
+            output.write(content);
+            output.closeEntry();
+            output.putNextEntry(new ZipEntry("test.txt"));
+            output.write("content".getBytes(StandardCharsets.US_ASCII));
+            output.closeEntry();
+        }
+        return file;
+    }
+
+    private File file(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,237 @@
+package ee.ria.DigiDoc.sign;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public final class PdfSignatureDetectorTest {
+
+    private static final String SIGNATURE = "<< /Type /Sig /Filter /Adobe.PPKLite"
+            + " /SubFilter /ETSI.CAdES.detached /ByteRange [0 100 300 50]"
+            + " /Contents <0000> >>";
+
+    @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void isSigned_unsigned() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, "<< /Type /Catalog /Pages 2 0 R >>")
+                .object(2, "<< /Type /Pages /Kids [] /Count 0 >>")
+                .xref("/Root 1 0 R");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isFalse();
+    }
+
+    @Test
+    public void isSigned_signatureInIncrementalUpdate() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, "<< /Type /Catalog /Pages 2 0 R >>")
+                .object(2, "<< /Type /Pages /Kids [] /Count 0 >>")
+                .xref("/Root 1 0 R")
+                .object(1, "<< /Type /Catalog /Pages 2 0 R /AcroForm 3 0 R >>")
+                .object(3, "<< /Fields [4 0 R] /SigFlags 3 >>")
+                .object(4, "<< /FT /Sig /T (Signature1) /V 5 0 R >>")
+                .object(5, SIGNATURE)
+                .xref("/Root 1 0 R");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isTrue();
+    }
+
+    @Test
+    public void isSigned_signatureInIncrementalUpdateWithXrefStreams() throws Exception {
+        Pdf pdf = new Pdf()
+                .objectStream(3, "<< /Type /Catalog /Pages 2 0 R >>", 1)
+                .object(2, "<< /Type /Pages /Kids [] /Count 0 >>")
+                .xrefStream(4, "/Root 1 0 R")
+                .object(1, "<< /Type /Catalog /Pages 2 0 R /AcroForm << /SigFlags 3 >> >>")
+                .object(5, SIGNATURE)
+                .xrefStream(6, "/Root 1 0 R");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isTrue();
+    }
+
+    @Test
+    public void isSigned_signatureWithoutSigFlags() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, "<< /Type /Catalog /Pages 2 0 R /AcroForm 3 0 R >>")
+                .object(2, "<< /Type /Pages /Kids [] /Count 0 >>")
+                .object(3, "<< /Fields [5 0 R] >>")
+                .object(4, SIGNATURE)
+                .object(5, "<< /FT /Sig /Kids [6 0 R] >>")
+                .object(6, "<< /T (Signature1) /V 4 0 R >>")
+                .xref("/Root 1 0 R");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isTrue();
+    }
+
+    @Test
+    public void isSigned_emptySignatureField() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, "<< /Type /Catalog /Pages 2 0 R /AcroForm 3 0 R >>")
+                .object(2, "<< /Type /Pages /Kids [] /Count 0 >>")
+                .object(3, "<< /Fields [4 0 R] >>")
+                .object(4, "<< /FT /Sig /T (Signature1) >>")
+                .xref("/Root 1 0 R");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isFalse();
+    }
+
+    @Test
+    public void isSigned_invalidXrefScansWholeFile() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, "<< /Type /Catalog /Pages 2 0 R /AcroForm << /SigFlags 3 >> >>")
+                .object(2, "<< /Type /Pages /Kids [] /Count 0 >>")
+                .object(3, SIGNATURE)
+                .write("startxref\n7\n%%EOF\n");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isTrue();
+    }
+
+    @Test
+    public void isSigned_stream() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, SIGNATURE);
+
+        assertThat(PdfSignatureDetector.isSigned(new ByteArrayInputStream(pdf.bytes())))
+                .isTrue();
+    }
+
+    @Test
+    public void isSigned_malformedByteRange() throws Exception {
+        Pdf pdf = new Pdf()
+                .object(1, "<< /Type /Catalog /AcroForm << /SigFlags 3 >> >>")
+                .object(2, "<< /Type /Sig /Filter /Adobe.PPKLite /ByteRange [0 100] >>")
+                .xref("/Root 1 0 R");
+
+        assertThat(PdfSignatureDetector.isSigned(pdf.file()))
+                .isFalse();
+    }
+
+    /**
+     * Writes PDF files section by section, with a cross-reference table or stream listing
+     * the objects written since the previous one.
+     */
+    private final class Pdf {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final Map<Integer, long[]> entries = new LinkedHashMap<>();
+        private int size = 1;
+        private long prev = -1;
+
+        Pdf() throws IOException {
+            write("%PDF-1.7\n");
+        }
+
+        Pdf object(int number, String value) throws IOException {
+            entries.put(number, new long[] {1, output.size(), 0});
+            size = Math.max(size, number + 1);
+            return write(number + " 0 obj\n" + value + "\nendobj\n");
+        }
+
+        /**
+         * Write an object stream holding one object.
+         */
+        Pdf objectStream(int number, String value, int objectNumber) throws IOException {
+            String header = objectNumber + " 0 ";
+            byte[] data = (header + value).getBytes(StandardCharsets.US_ASCII);
+            entries.put(objectNumber, new long[] {2, number, 0});
+            size = Math.max(size, objectNumber + 1);
+            return stream(number, "/Type /ObjStm /N 1 /First " + header.length(), data);
+        }
+
+        Pdf xref(String trailer) throws IOException {
+            long offset = output.size();
+            StringBuilder xref = new StringBuilder("xref\n");
+            for (Map.Entry<Integer, long[]> entry : entries.entrySet()) {
+                xref.append(entry.getKey()).append(" 1\n")
+                        .append(String.format("%010d 00000 n\r\n", entry.getValue()[1]));
+            }
+            xref.append("trailer\n<< /Size ").append(size).append(' ').append(trailer)
+                    .append(prev != -1 ? " /Prev " + prev : "").append(" >>\n");
+            return end(xref.toString(), offset);
+        }
+
+        /**
+         * Write a compressed cross-reference stream with the PNG up predictor.
+         */
+        Pdf xrefStream(int number, String trailer) throws IOException {
+            long offset = output.size();
+            entries.put(number, new long[] {1, offset, 0});
+            size = Math.max(size, number + 1);
+            ByteArrayOutputStream rows = new ByteArrayOutputStream();
+            StringBuilder index = new StringBuilder();
+            byte[] previous = new byte[7];
+            for (Map.Entry<Integer, long[]> entry : entries.entrySet()) {
+                index.append(entry.getKey()).append(" 1 ");
+                long[] value = entry.getValue();
+                byte[] row = {(byte) value[0], (byte) (value[1] >> 24), (byte) (value[1] >> 16),
+                        (byte) (value[1] >> 8), (byte) value[1], (byte) (value[2] >> 8),
+                        (byte) value[2]};
+                rows.write(2);
+                for (int i = 0; i < row.length; i++) {
+                    rows.write(row[i] - previous[i]);
+                }
+                previous = row;
+            }
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(data)) {
+                deflater.write(rows.toByteArray());
+            }
+            String dictionary = "/Type /XRef /Size " + size + " /W [1 4 2] /Index [" + index
+                    + "] /Filter /FlateDecode /DecodeParms << /Predictor 12 /Columns 7 >> "
+                    + trailer + (prev != -1 ? " /Prev " + prev : "");
+            stream(number, dictionary, data.toByteArray());
+            return end("", offset);
+        }
+
+        Pdf write(String value) throws IOException {
+            output.write(value.getBytes(StandardCharsets.US_ASCII));
+            return this;
+        }
+
+        byte[] bytes() {
+            return output.toByteArray();
+        }
+
+        File file() throws IOException {
+            File file = temporaryFolder.newFile("document.pdf");
+            Files.write(file.toPath(), bytes());
+            return file;
+        }
+
+        private Pdf stream(int number, String dictionary, byte[] data) throws IOException {
+            if (!entries.containsKey(number)) {
+                entries.put(number, new long[] {1, output.size(), 0});
+                size = Math.max(size, number + 1);
+            }
+            write(number + " 0 obj\n<< " + dictionary + " /Length " + data.length
+                    + " >>\nstream\n");
+            output.write(data);
+            return write("\nendstream\nendobj\n");
+        }
+
+        private Pdf end(String xref, long offset) throws IOException {
+            entries.clear();
+            prev = offset;
+            return write(xref + "startxref\n" + offset + "\n%%EOF\n");
+        }
+    }
+}
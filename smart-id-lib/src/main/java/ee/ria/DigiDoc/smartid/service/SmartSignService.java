@@ -50,6 +50,7 @@ import javax.net.ssl.SSLPeerUnverifiedException;
 
 import ee.ria.DigiDoc.common.ContainerWrapper;
 import ee.ria.DigiDoc.common.MessageUtil;
+import ee.ria.DigiDoc.common.SigningTrace;
 import ee.ria.DigiDoc.common.NotificationUtil;
 import ee.ria.DigiDoc.common.PowerUtil;
 import ee.ria.DigiDoc.common.UUIDUtil;
@@ -85,6 +86,8 @@ public class SmartSignService extends IntentService {
 
     private SIDRestServiceClient SIDRestServiceClient;
 
+    private SigningTrace signingTrace;
+
     public SmartSignService() {
         super(TAG);
         Timber.tag(TAG);
@@ -161,30 +164,33 @@ public class SmartSignService extends IntentService {
 
                     Timber.log(Log.DEBUG, "Session status response: %s", sessionStatusResponse.toString());
 
-                    ContainerWrapper containerWrapper = new ContainerWrapper(request.getContainerPath());
-                    String base64Hash = containerWrapper.prepareSignature(getCertificatePem(sessionStatusResponse.getCert().getValue()));
-                    if (base64Hash != null && !base64Hash.isEmpty()) {
-                        Timber.log(Log.DEBUG, "Broadcasting signature challenge response");
-                        broadcastSmartCreateSignatureChallengeResponse(base64Hash);
-                        Thread.sleep(INITIAL_STATUS_REQUEST_DELAY_IN_MILLISECONDS);
-
-                        String requestString = MessageUtil.toJsonString(getSignatureRequestV2(request, base64Hash));
-
-                        Timber.log(Log.DEBUG, "Request: %s", requestString);
-
-                        sessionStatusResponse = doSessionStatusRequestLoop(SIDRestServiceClient.getCreateSignature(
-                                sessionStatusResponse.getResult().getDocumentNumber(), requestString), false);
-                        if (sessionStatusResponse == null) {
-                            Timber.log(Log.ERROR, "Unable to get session status response");
-                            return;
+                    signingTrace = SigningTrace.start("Smart-ID");
+                    try (ContainerWrapper containerWrapper = new ContainerWrapper(
+                            request.getContainerPath(), signingTrace)) {
+                        String base64Hash = containerWrapper.prepareSignature(getCertificatePem(sessionStatusResponse.getCert().getValue()));
+                        if (base64Hash != null && !base64Hash.isEmpty()) {
+                            Timber.log(Log.DEBUG, "Broadcasting signature challenge response");
+                            broadcastSmartCreateSignatureChallengeResponse(base64Hash);
+                            Thread.sleep(INITIAL_STATUS_REQUEST_DELAY_IN_MILLISECONDS);
+
+                            String requestString = MessageUtil.toJsonString(getSignatureRequestV2(request, base64Hash));
+
+                            Timber.log(Log.DEBUG, "Request: %s", requestString);
+
+                            sessionStatusResponse = doSessionStatusRequestLoop(SIDRestServiceClient.getCreateSignature(
+                                    sessionStatusResponse.getResult().getDocumentNumber(), requestString), false);
+                            if (sessionStatusResponse == null) {
+                                Timber.log(Log.ERROR, "Unable to get session status response");
+                                return;
+                            }
+                            Timber.log(Log.DEBUG, "SessionStatusResponse: %s", sessionStatusResponse);
+                            Timber.log(Log.DEBUG, "Finalizing signature...");
+                            containerWrapper.finalizeSignature(sessionStatusResponse.getSignature().getValue());
+                            Timber.log(Log.DEBUG, "Broadcasting signature status response");
+                            broadcastSmartCreateSignatureStatusResponse(sessionStatusResponse);
+                        } else {
+                            Timber.log(Log.DEBUG, "Base64 (Prepare signature) is empty or null");
                         }
-                        Timber.log(Log.DEBUG, "SessionStatusResponse: %s", sessionStatusResponse);
-                        Timber.log(Log.DEBUG, "Finalizing signature...");
-                        containerWrapper.finalizeSignature(sessionStatusResponse.getSignature().getValue());
-                        Timber.log(Log.DEBUG, "Broadcasting signature status response");
-                        broadcastSmartCreateSignatureStatusResponse(sessionStatusResponse);
-                    } else {
-                        Timber.log(Log.DEBUG, "Base64 (Prepare signature) is empty or null");
                     }
                 } catch (UnknownHostException e) {
                     broadcastFault(new ServiceFault(SessionStatusResponse.ProcessStatus.NO_RESPONSE));
@@ -250,6 +256,9 @@ public class SmartSignService extends IntentService {
                 Timber.log(Log.DEBUG, "Received empty Smart-ID session response");
                 return null;
             }
+            if (!certRequest && signingTrace != null) {
+                signingTrace.mark(SigningTrace.Phase.HASH_DELIVERED);
+            }
 
             while (timeout < TIMEOUT_CANCEL) {
                 Timber.log(Log.DEBUG, "doSessionStatusRequestLoop timeout counter: %s", timeout);
@@ -265,6 +274,9 @@ public class SmartSignService extends IntentService {
                     if (status.equals(SessionStatusResponse.ProcessStatus.OK)) {
                         return sessionStatusResponse;
                     }
+                    if (!certRequest && signingTrace != null) {
+                        signingTrace.finish(String.valueOf(status));
+                    }
                     broadcastSmartCreateSignatureStatusResponse(sessionStatusResponse);
                     Timber.log(Log.DEBUG, "Received Smart-ID session status response: %s", status);
                     return null;
@@ -288,6 +300,9 @@ public class SmartSignService extends IntentService {
 
     private void broadcastFault(ServiceFault serviceFault) {
         Timber.log(Log.DEBUG, "Broadcasting fault: Status: %s, message: %s", serviceFault.getStatus(), serviceFault.getDetailMessage());
+        if (signingTrace != null) {
+            signingTrace.finish(String.valueOf(serviceFault.getStatus()));
+        }
         Intent localIntent = new Intent(SmartSignConstants.SID_BROADCAST_ACTION)
                 .putExtra(SmartSignConstants.SID_BROADCAST_TYPE_KEY, SmartSignConstants.SERVICE_FAULT)
                 .putExtra(SmartSignConstants.SERVICE_FAULT, ServiceFault.toJson(serviceFault));